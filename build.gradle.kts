@@ -81,6 +81,23 @@ sourceSets {
 
 val main = sourceSets.main.get()
 
+// Additions built on Java 9+ API (java.util.concurrent.Flow) live in their own
+// source set, compiled as Java 9 bytecode against the main classes. They are shipped
+// as Java 9 multi-release entries next to module-info, so the jar keeps working on
+// Java 8 without them.
+val java9 = sourceSets.create("java9") {
+  java.srcDir("src/main/java9")
+  compileClasspath += main.output + main.compileClasspath
+}
+
+tasks.named<JavaCompile>("compileJava9Java") {
+  options.release.set(9)
+}
+
+dependencies {
+  testImplementation(java9.output)
+}
+
 // Supplies the module-info compile with the main classes (patched into the module
 // so the exported packages resolve) and the API dependencies (on the module path so
 // `requires` resolves). A managed type rather than a doFirst/closure so the inputs
@@ -103,14 +120,14 @@ abstract class ModuleInfoCompileArgs : CommandLineArgumentProvider {
 
 val execModuleName = moduleName
 tasks.named<JavaCompile>("compileModuleInfoJava") {
-  dependsOn(tasks.named("compileJava"))
+  dependsOn(tasks.named("compileJava"), tasks.named("compileJava9Java"))
   options.release.set(9)
   classpath = files()
   options.compilerArgumentProviders.add(
     objects.newInstance(ModuleInfoCompileArgs::class).apply {
       moduleName.set(execModuleName)
       modulePath.from(main.compileClasspath)
-      patchModuleClasses.from(main.output.classesDirs)
+      patchModuleClasses.from(main.output.classesDirs, java9.output.classesDirs)
     },
   )
 }
@@ -124,10 +141,11 @@ tasks.jar {
       "Multi-Release" to "true",
     )
   }
-  // Ship module-info.class as a Java 9 multi-release entry so the jar stays a
-  // plain classpath jar on Java 8 and becomes a named module on Java 9+.
+  // Ship module-info.class and the Java 9 classes as multi-release entries so the
+  // jar stays a plain classpath jar on Java 8 and becomes a named module on Java 9+.
   into("META-INF/versions/9") {
     from(sourceSets["moduleInfo"].output)
+    from(java9.output)
   }
   // Produce the OSGi bundle manifest (Bundle-SymbolicName, Export-Package, and
   // the computed Import-Package) with bnd, reproducing the bnd-maven-plugin setup.
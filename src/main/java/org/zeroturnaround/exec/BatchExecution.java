@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A batch of processes being executed with bounded concurrency.
+ * <p>
+ * Each process is executed by {@link ProcessExecutor#execute()} on one of a fixed number of worker threads,
+ * which also wait for the processes (no extra waiting thread is needed unless a timeout is set).
+ * The outcomes are available in the order of completion as soon as each process completes.
+ * With fail-fast enabled the first failure cancels the rest of the batch: running processes are stopped
+ * using their {@link org.zeroturnaround.exec.stop.ProcessStopper} and the rest are not started.
+ * </p>
+ * <pre>
+ * BatchExecution batch = ProcessExecutor.startAll(executors, 8, true);
+ * CompletedExecution c;
+ * while ((c = batch.next()) != null) {
+ *   ...
+ * }
+ * </pre>
+ *
+ * @see ProcessExecutor#startAll(Collection, int, boolean)
+ * @since 1.14
+ */
+public class BatchExecution {
+
+  private static final Logger log = LoggerFactory.getLogger(BatchExecution.class);
+
+  private static final AtomicInteger batchCount = new AtomicInteger();
+
+  private final ExecutorService service;
+
+  private final List<Task> tasks;
+
+  /**
+   * Outcomes which have not been returned by {@link #next()} yet.
+   */
+  private final BlockingQueue<CompletedExecution> completed = new LinkedBlockingQueue<CompletedExecution>();
+
+  /**
+   * All outcomes in the order of completion.
+   */
+  private final List<CompletedExecution> completions = new ArrayList<CompletedExecution>();
+
+  private final boolean failFast;
+
+  /**
+   * Value of {@link System#nanoTime()} when the batch was started.
+   */
+  private final long startTime = System.nanoTime();
+
+  /**
+   * Value of {@link System#nanoTime()} when the last process completed.
+   */
+  private volatile long endTime;
+
+  /**
+   * Number of outcomes returned by {@link #next()} (guarded by this batch).
+   */
+  private int returned;
+
+  BatchExecution(Collection<ProcessExecutor> executors, int parallelism, boolean failFast) {
+    if (parallelism <= 0)
+      throw new IllegalArgumentException("Parallelism must be positive.");
+    this.failFast = failFast;
+    final String name = "BatchExecution-" + batchCount.incrementAndGet() + "-";
+    this.service = Executors.newFixedThreadPool(Math.min(parallelism, Math.max(1, executors.size())), new ThreadFactory() {
+      private final AtomicInteger threadCount = new AtomicInteger();
+
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, name + threadCount.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      }
+    });
+    this.tasks = new ArrayList<Task>(executors.size());
+    for (ProcessExecutor executor : executors) {
+      tasks.add(new Task(executor));
+    }
+    if (tasks.isEmpty()) {
+      endTime = startTime;
+    }
+    for (Task task : tasks) {
+      service.execute(task);
+    }
+    service.shutdown();
+  }
+
+  /**
+   * Waits until the next process of this batch completes.
+   *
+   * @return outcome of the next completed process or <code>null</code> if all outcomes have been returned.
+   * @throws InterruptedException if the current thread was interrupted while waiting (the batch keeps running).
+   */
+  public synchronized CompletedExecution next() throws InterruptedException {
+    if (returned == tasks.size()) {
+      return null;
+    }
+    CompletedExecution result = completed.take();
+    returned++;
+    return result;
+  }
+
+  /**
+   * Waits until all processes of this batch have completed.
+   *
+   * @return outcomes and timing statistics of the batch.
+   * @throws InterruptedException if the current thread was interrupted while waiting (the batch is cancelled).
+   */
+  public BatchResult await() throws InterruptedException {
+    try {
+      while (next() != null) {
+        // wait for the rest
+      }
+    }
+    catch (InterruptedException e) {
+      cancel();
+      throw e;
+    }
+    synchronized (completions) {
+      return new BatchResult(completions, endTime - startTime);
+    }
+  }
+
+  /**
+   * Cancels all processes of this batch that have not completed yet.
+   * Running processes are stopped, the rest are not started.
+   * This method doesn't wait for the processes to stop, their outcomes are reported once they have stopped.
+   */
+  public void cancel() {
+    for (Task task : tasks) {
+      task.cancel(true);
+    }
+  }
+
+  /**
+   * @return number of processes in this batch.
+   */
+  public int getCount() {
+    return tasks.size();
+  }
+
+  private void onCompleted(CompletedExecution completion) {
+    synchronized (completions) {
+      completions.add(completion);
+      if (completions.size() == tasks.size()) {
+        endTime = System.nanoTime();
+      }
+    }
+    completed.add(completion);
+    if (failFast && !completion.isSuccess() && !completion.isCancelled()) {
+      log.debug("{} failed, cancelling the rest of the batch", completion);
+      cancel();
+    }
+  }
+
+  /**
+   * Executes a single process and reports its outcome once it completes or gets cancelled.
+   * The outcome is reported by the worker thread when it leaves {@link #run()} (each task is run once, even if it was cancelled),
+   * so a cancelled process has already been stopped by then.
+   */
+  private class Task extends FutureTask<ProcessResult> {
+
+    private final ProcessExecutor executor;
+
+    private volatile long taskStartTime = -1;
+
+    Task(final ProcessExecutor executor) {
+      super(new Callable<ProcessResult>() {
+        public ProcessResult call() throws Exception {
+          return executor.execute();
+        }
+      });
+      this.executor = executor;
+    }
+
+    @Override
+    public void run() {
+      if (!isDone()) {
+        taskStartTime = System.nanoTime();
+      }
+      try {
+        super.run();
+      }
+      finally {
+        // Not in done() which is invoked by cancel() before the process has been stopped
+        report();
+      }
+    }
+
+    private void report() {
+      long duration = taskStartTime < 0 ? -1 : System.nanoTime() - taskStartTime;
+      ProcessResult result = null;
+      Throwable failure = null;
+      try {
+        result = get();
+      }
+      catch (CancellationException e) {
+        failure = e;
+      }
+      catch (ExecutionException e) {
+        failure = e.getCause();
+      }
+      catch (InterruptedException e) {
+        // not possible as the task is done
+        failure = e;
+      }
+      onCompleted(new CompletedExecution(executor, result, failure, duration));
+    }
+
+  }
+
+}
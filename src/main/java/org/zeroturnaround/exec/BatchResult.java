@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcomes and timing statistics of a batch of processes.
+ *
+ * @see ProcessExecutor#executeAll(java.util.Collection, int)
+ * @since 1.14
+ */
+public class BatchResult {
+
+  /**
+   * Outcomes in the order of completion.
+   */
+  private final List<CompletedExecution> completions;
+
+  /**
+   * Time from starting the batch until the last process completed in nanoseconds.
+   */
+  private final long wallTimeNanos;
+
+  /**
+   * Durations of all executions that started, sorted.
+   */
+  private final long[] durations;
+
+  private final int succeeded;
+
+  private final int cancelled;
+
+  /**
+   * @param completions outcomes in the order of completion.
+   * @param wallTimeNanos time from starting the batch until the last process completed in nanoseconds.
+   */
+  public BatchResult(List<CompletedExecution> completions, long wallTimeNanos) {
+    this.completions = Collections.unmodifiableList(new ArrayList<CompletedExecution>(completions));
+    this.wallTimeNanos = wallTimeNanos;
+    int started = 0;
+    int succeeded = 0;
+    int cancelled = 0;
+    long[] durations = new long[completions.size()];
+    for (CompletedExecution c : completions) {
+      if (c.getDurationNanos() >= 0) {
+        durations[started++] = c.getDurationNanos();
+      }
+      if (c.isSuccess()) {
+        succeeded++;
+      }
+      else if (c.isCancelled()) {
+        cancelled++;
+      }
+    }
+    this.durations = Arrays.copyOf(durations, started);
+    Arrays.sort(this.durations);
+    this.succeeded = succeeded;
+    this.cancelled = cancelled;
+  }
+
+  /**
+   * @return outcomes of all processes in the order of completion.
+   */
+  public List<CompletedExecution> getCompletions() {
+    return completions;
+  }
+
+  /**
+   * @return <code>true</code> if all processes finished successfully.
+   */
+  public boolean isSuccess() {
+    return succeeded == completions.size();
+  }
+
+  public int getCount() {
+    return completions.size();
+  }
+
+  public int getSucceededCount() {
+    return succeeded;
+  }
+
+  /**
+   * @return number of processes that failed (not including the cancelled ones).
+   */
+  public int getFailedCount() {
+    return completions.size() - succeeded - cancelled;
+  }
+
+  public int getCancelledCount() {
+    return cancelled;
+  }
+
+  /**
+   * @return time from starting the batch until the last process completed in nanoseconds.
+   */
+  public long getWallTimeNanos() {
+    return wallTimeNanos;
+  }
+
+  /**
+   * @return sum of the durations of all executions in nanoseconds.
+   */
+  public long getTotalTimeNanos() {
+    long result = 0;
+    for (long d : durations) {
+      result += d;
+    }
+    return result;
+  }
+
+  /**
+   * @return shortest duration of an execution in nanoseconds or <code>-1</code> if none started.
+   */
+  public long getMinTimeNanos() {
+    return durations.length == 0 ? -1 : durations[0];
+  }
+
+  /**
+   * @return longest duration of an execution in nanoseconds or <code>-1</code> if none started.
+   */
+  public long getMaxTimeNanos() {
+    return durations.length == 0 ? -1 : durations[durations.length - 1];
+  }
+
+  /**
+   * @return mean duration of an execution in nanoseconds or <code>-1</code> if none started.
+   */
+  public long getMeanTimeNanos() {
+    return durations.length == 0 ? -1 : getTotalTimeNanos() / durations.length;
+  }
+
+  /**
+   * @param percentile percentile between <code>0</code> and <code>100</code>, e.g. <code>99</code>.
+   * @return duration of an execution at the given percentile in nanoseconds (nearest rank) or <code>-1</code> if none started.
+   */
+  public long getPercentileTimeNanos(double percentile) {
+    if (percentile < 0 || percentile > 100)
+      throw new IllegalArgumentException("Percentile must be between 0 and 100.");
+    if (durations.length == 0) {
+      return -1;
+    }
+    int rank = (int) Math.ceil(percentile / 100 * durations.length);
+    return durations[Math.max(0, rank - 1)];
+  }
+
+  @Override
+  public String toString() {
+    return "BatchResult[count=" + getCount() + ", succeeded=" + succeeded + ", failed=" + getFailedCount() + ", cancelled=" + cancelled
+        + ", wall time=" + wallTimeNanos / 1000000 + " ms]";
+  }
+
+}
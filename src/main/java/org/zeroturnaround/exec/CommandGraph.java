@@ -0,0 +1,469 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Directed acyclic graph of processes where each node is started once all the nodes it depends on have finished successfully.
+ * <p>
+ * Nodes are executed by {@link ProcessExecutor#execute()} on a fixed number of worker threads.
+ * Whenever more nodes are ready than there are free workers, the nodes on the longest remaining path
+ * (the critical path) go first. Path lengths are estimated from a {@link DurationHistory}
+ * which is updated with the durations of successful nodes, so sharing it between executions improves the schedule.
+ * Without any history every node counts the same and the deepest chains go first.
+ * </p>
+ * <p>
+ * If a node fails, all nodes depending on it (directly or indirectly) are cancelled without being started;
+ * independent nodes keep running unless {@link #failFast(boolean)} is enabled.
+ * </p>
+ * <pre>
+ * GraphResult result = new CommandGraph()
+ *     .add("generate", new ProcessExecutor("./generate.sh"))
+ *     .add("compile", new ProcessExecutor("make", "compile"), "generate")
+ *     .add("docs", new ProcessExecutor("make", "docs"), "generate")
+ *     .add("test", new ProcessExecutor("make", "test"), "compile")
+ *     .parallelism(Runtime.getRuntime().availableProcessors())
+ *     .execute();
+ * </pre>
+ * <p>
+ * Nodes can only depend on nodes added before them, so a graph can't contain cycles.
+ * </p>
+ *
+ * @since 1.14
+ */
+public class CommandGraph {
+
+  private static final Logger log = LoggerFactory.getLogger(CommandGraph.class);
+
+  private static final AtomicInteger graphCount = new AtomicInteger();
+
+  /**
+   * Nodes in the order they were added, which is also a topological order.
+   */
+  private final Map<String, Node> nodes = new LinkedHashMap<String, Node>();
+
+  private int parallelism = Runtime.getRuntime().availableProcessors();
+
+  private DurationHistory history = new DurationHistory();
+
+  private boolean failFast;
+
+  /**
+   * Adds a node to this graph.
+   *
+   * @param name unique name of the node, also used for looking up its historical duration.
+   * @param executor executor of the process.
+   * @param dependencies names of previously added nodes which must finish successfully before this node starts.
+   * @return This graph.
+   */
+  public CommandGraph add(String name, ProcessExecutor executor, String... dependencies) {
+    if (name == null || executor == null)
+      throw new IllegalArgumentException("Name and executor must be provided.");
+    if (nodes.containsKey(name))
+      throw new IllegalArgumentException("Node '" + name + "' already exists.");
+    List<Node> deps = new ArrayList<Node>(dependencies.length);
+    for (String dependency : dependencies) {
+      Node dep = nodes.get(dependency);
+      if (dep == null)
+        throw new IllegalArgumentException("Node '" + name + "' depends on unknown node '" + dependency + "'.");
+      if (!deps.contains(dep)) {
+        deps.add(dep);
+      }
+    }
+    Node node = new Node(nodes.size(), name, executor, deps);
+    for (Node dep : deps) {
+      dep.dependents.add(node);
+    }
+    nodes.put(name, node);
+    return this;
+  }
+
+  /**
+   * Sets the maximum number of nodes running at the same time.
+   * By default it's the number of available processors.
+   *
+   * @param parallelism maximum number of nodes running at the same time.
+   * @return This graph.
+   */
+  public CommandGraph parallelism(int parallelism) {
+    if (parallelism <= 0)
+      throw new IllegalArgumentException("Parallelism must be positive.");
+    this.parallelism = parallelism;
+    return this;
+  }
+
+  /**
+   * Sets the historical durations used for prioritizing the nodes on the critical path.
+   * It's updated with the durations of the nodes that finish successfully.
+   * By default each graph has its own history.
+   *
+   * @param history historical durations of the nodes by their names.
+   * @return This graph.
+   */
+  public CommandGraph history(DurationHistory history) {
+    if (history == null)
+      throw new IllegalArgumentException("History must be provided.");
+    this.history = history;
+    return this;
+  }
+
+  /**
+   * Sets whether the first failure cancels the whole graph instead of just the nodes depending on the failed one.
+   * Running nodes are stopped using their {@link org.zeroturnaround.exec.stop.ProcessStopper}.
+   *
+   * @param failFast <code>true</code> to cancel all other nodes once any node fails.
+   * @return This graph.
+   */
+  public CommandGraph failFast(boolean failFast) {
+    this.failFast = failFast;
+    return this;
+  }
+
+  /**
+   * @return historical durations used for prioritizing the nodes.
+   */
+  public DurationHistory getHistory() {
+    return history;
+  }
+
+  /**
+   * @return names of the nodes in the order they were added.
+   */
+  public List<String> getNodeNames() {
+    return new ArrayList<String>(nodes.keySet());
+  }
+
+  /**
+   * Executes all nodes of this graph and waits until they have completed.
+   * Failures of the nodes don't throw but are reported by the result.
+   *
+   * @return outcomes and timings of all nodes.
+   * @throws InterruptedException if the current thread was interrupted while waiting (the running nodes are stopped).
+   */
+  public GraphResult execute() throws InterruptedException {
+    return new Run().execute();
+  }
+
+  /**
+   * Computes the length of the longest path from each node to the end of the graph, including the node itself.
+   *
+   * @return priorities of the nodes by their indexes.
+   */
+  private long[] getPriorities() {
+    List<Node> list = new ArrayList<Node>(nodes.values());
+    long[] estimates = new long[list.size()];
+    long known = 0;
+    int knownCount = 0;
+    for (int i = 0; i < estimates.length; i++) {
+      estimates[i] = history.getEstimateNanos(list.get(i).name);
+      if (estimates[i] >= 0) {
+        known += estimates[i];
+        knownCount++;
+      }
+    }
+    // Nodes without history are expected to take an average time
+    long fallback = knownCount == 0 ? 1 : Math.max(1, known / knownCount);
+    long[] result = new long[estimates.length];
+    // Dependents are always added after their dependencies
+    for (int i = list.size() - 1; i >= 0; i--) {
+      long longest = 0;
+      for (Node dependent : list.get(i).dependents) {
+        longest = Math.max(longest, result[dependent.index]);
+      }
+      result[i] = longest + (estimates[i] < 0 ? fallback : estimates[i]);
+    }
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return "CommandGraph" + nodes.keySet();
+  }
+
+  private static final class Node {
+
+    private final int index;
+
+    private final String name;
+
+    private final ProcessExecutor executor;
+
+    private final List<Node> dependencies;
+
+    private final List<Node> dependents = new ArrayList<Node>();
+
+    Node(int index, String name, ProcessExecutor executor, List<Node> dependencies) {
+      this.index = index;
+      this.name = name;
+      this.executor = executor;
+      this.dependencies = dependencies;
+    }
+
+    List<String> getDependencyNames() {
+      List<String> result = new ArrayList<String>(dependencies.size());
+      for (Node dep : dependencies) {
+        result.add(dep.name);
+      }
+      return result;
+    }
+
+  }
+
+  /**
+   * State of a single execution of the graph.
+   */
+  private class Run {
+
+    private final List<Node> list = new ArrayList<Node>(nodes.values());
+
+    private final long[] priorities = getPriorities();
+
+    private final Task[] tasks = new Task[list.size()];
+
+    /**
+     * Number of dependencies which have not finished yet by node indexes.
+     */
+    private final int[] pending = new int[list.size()];
+
+    private final List<NodeExecution> completions = new ArrayList<NodeExecution>();
+
+    private final ThreadPoolExecutor service;
+
+    private final long startTime = System.nanoTime();
+
+    private long endTime;
+
+    private boolean cancelled;
+
+    Run() {
+      final String name = "CommandGraph-" + graphCount.incrementAndGet() + "-";
+      int threads = Math.min(parallelism, Math.max(1, list.size()));
+      // The queue orders ready nodes by their priority
+      service = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+          Thread t = new Thread(r, name + threadCount.incrementAndGet());
+          t.setDaemon(true);
+          return t;
+        }
+      });
+      for (Node node : list) {
+        pending[node.index] = node.dependencies.size();
+      }
+    }
+
+    GraphResult execute() throws InterruptedException {
+      try {
+        synchronized (this) {
+          if (list.isEmpty()) {
+            endTime = startTime;
+          }
+          // Queue all initially ready nodes before any thread picks one
+          for (Node node : list) {
+            if (pending[node.index] == 0) {
+              service.getQueue().add(newTask(node));
+            }
+          }
+          // Start all threads so that every task goes through the priority queue
+          service.prestartAllCoreThreads();
+          while (completions.size() < list.size()) {
+            wait();
+          }
+          return new GraphResult(completions, endTime - startTime);
+        }
+      }
+      catch (InterruptedException e) {
+        cancel();
+        throw e;
+      }
+      finally {
+        service.shutdown();
+      }
+    }
+
+    /**
+     * Must be called while holding the lock.
+     */
+    private void submit(Node node) {
+      service.execute(newTask(node));
+    }
+
+    /**
+     * Must be called while holding the lock.
+     */
+    private Task newTask(Node node) {
+      Task task = new Task(node, System.nanoTime() - startTime);
+      tasks[node.index] = task;
+      return task;
+    }
+
+    private synchronized void onCompleted(Task task, NodeExecution completion) {
+      complete(completion);
+      Node node = task.node;
+      if (completion.isSuccess()) {
+        history.record(node.name, completion.getDurationNanos(), TimeUnit.NANOSECONDS);
+        for (Node dependent : node.dependents) {
+          if (--pending[dependent.index] == 0 && !cancelled) {
+            submit(dependent);
+          }
+        }
+      }
+      else {
+        if (failFast && !completion.isCancelled() && !cancelled) {
+          log.debug("{} failed, cancelling the rest of the graph", completion);
+          cancel();
+        }
+        skipDependents(node);
+      }
+    }
+
+    /**
+     * Cancels all nodes depending on the given one, which can't have been started yet.
+     * Must be called while holding the lock.
+     */
+    private void skipDependents(Node node) {
+      for (Node dependent : node.dependents) {
+        if (tasks[dependent.index] == null) {
+          // Mark it as handled to complete it only once
+          tasks[dependent.index] = new Task(dependent, -1);
+          log.debug("Skipping {} as {} did not finish successfully", dependent.name, node.name);
+          CancellationException e = new CancellationException("Dependency '" + node.name + "' did not finish successfully.");
+          complete(new NodeExecution(dependent.name, dependent.getDependencyNames(), dependent.executor, null, e, -1, -1, -1));
+          skipDependents(dependent);
+        }
+      }
+    }
+
+    /**
+     * Must be called while holding the lock.
+     */
+    private void complete(NodeExecution completion) {
+      completions.add(completion);
+      if (completions.size() == list.size()) {
+        endTime = System.nanoTime();
+        notifyAll();
+      }
+    }
+
+    /**
+     * Cancels all nodes that have not completed yet: running nodes are stopped, the rest are not started.
+     */
+    private synchronized void cancel() {
+      cancelled = true;
+      for (Task task : tasks) {
+        if (task != null) {
+          task.cancel(true);
+        }
+      }
+      for (Node node : list) {
+        if (tasks[node.index] == null) {
+          tasks[node.index] = new Task(node, -1);
+          CancellationException e = new CancellationException("Graph was cancelled.");
+          complete(new NodeExecution(node.name, node.getDependencyNames(), node.executor, null, e, -1, -1, -1));
+        }
+      }
+    }
+
+    /**
+     * Executes a single node and reports its outcome once it completes or gets cancelled.
+     */
+    private class Task extends FutureTask<ProcessResult> implements Comparable<Task> {
+
+      private final Node node;
+
+      private final long readyTime;
+
+      private volatile long taskStartTime = -1;
+
+      Task(final Node node, long readyTime) {
+        super(new Callable<ProcessResult>() {
+          public ProcessResult call() throws Exception {
+            return node.executor.execute();
+          }
+        });
+        this.node = node;
+        this.readyTime = readyTime;
+      }
+
+      public int compareTo(Task o) {
+        // Longest remaining path first, then in the order of adding
+        long p1 = priorities[node.index];
+        long p2 = priorities[o.node.index];
+        if (p1 != p2) {
+          return p1 > p2 ? -1 : 1;
+        }
+        return node.index - o.node.index;
+      }
+
+      @Override
+      public void run() {
+        if (!isDone()) {
+          taskStartTime = System.nanoTime();
+        }
+        super.run();
+      }
+
+      @Override
+      protected void done() {
+        if (readyTime < 0) {
+          // Placeholder of a skipped node
+          return;
+        }
+        long start = taskStartTime;
+        long duration = start < 0 ? -1 : System.nanoTime() - start;
+        ProcessResult result = null;
+        Throwable failure = null;
+        try {
+          result = get();
+        }
+        catch (CancellationException e) {
+          failure = e;
+        }
+        catch (ExecutionException e) {
+          failure = e.getCause();
+        }
+        catch (InterruptedException e) {
+          // not possible as the task is done
+          failure = e;
+        }
+        onCompleted(this, new NodeExecution(node.name, node.getDependencyNames(), node.executor, result, failure,
+            readyTime, start < 0 ? -1 : start - startTime, duration));
+      }
+
+    }
+
+  }
+
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Command line with placeholders which is compiled once and started with different arguments many times.
+ * <p>
+ * The template is created from a {@link ProcessExecutor} whose command contains placeholders <code>{0}</code>, <code>{1}</code>, ...
+ * either as whole arguments or inside them. The placeholders are validated and the executor is compiled into a {@link ProcessSpec}
+ * once, so each invocation only copies the prepared argument array, fills in the placeholders and starts the process
+ * with the same environment, directory and other settings. The {@link org.zeroturnaround.exec.listener.ProcessListener#beforeStart(ProcessExecutor)}
+ * callbacks are not invoked per invocation.
+ * </p>
+ * <pre>
+ * CommandTemplate resize = new CommandTemplate(new ProcessExecutor("convert", "{0}", "-resize", "{1}%", "{2}").exitValueNormal());
+ * resize.execute("in.png", "50", "out.png");
+ * </pre>
+ * <p>
+ * Instances are immutable and can be used by any number of threads at once.
+ * </p>
+ *
+ * @see ProcessSpec
+ * @since 1.14
+ */
+public final class CommandTemplate {
+
+  private static final Pattern PLACEHOLDER = Pattern.compile("\\{(\\d+)\\}");
+
+  private final ProcessSpec spec;
+
+  /**
+   * Command line with the placeholder arguments set to <code>null</code>.
+   */
+  private final String[] fixed;
+
+  /**
+   * Indexes of the arguments which consist of a single placeholder.
+   */
+  private final int[] slots;
+
+  /**
+   * Parameters bound to the arguments in {@link #slots}.
+   */
+  private final int[] slotParameters;
+
+  /**
+   * Indexes of the arguments which contain placeholders among other text.
+   */
+  private final int[] embedded;
+
+  /**
+   * Literal text around the placeholders of the arguments in {@link #embedded}, one more than the placeholders.
+   */
+  private final String[][] embeddedText;
+
+  /**
+   * Parameters bound to the placeholders of the arguments in {@link #embedded}.
+   */
+  private final int[][] embeddedParameters;
+
+  private final int parameterCount;
+
+  /**
+   * Compiles the given executor into a template.
+   * Changing the executor afterwards does not affect the template.
+   *
+   * @param executor executor whose command contains placeholders.
+   * @throws IllegalArgumentException if the placeholders are not numbered from <code>0</code> without gaps.
+   * @throws IllegalStateException if the executor cannot be compiled (see {@link ProcessExecutor#spec()}).
+   */
+  public CommandTemplate(ProcessExecutor executor) {
+    this.spec = executor.spec();
+    List<String> command = spec.getCommand();
+    fixed = command.toArray(new String[command.size()]);
+
+    List<Integer> slotList = new ArrayList<Integer>();
+    List<Integer> slotParameterList = new ArrayList<Integer>();
+    List<Integer> embeddedList = new ArrayList<Integer>();
+    List<String[]> embeddedTextList = new ArrayList<String[]>();
+    List<int[]> embeddedParameterList = new ArrayList<int[]>();
+    int max = -1;
+    for (int i = 0; i < fixed.length; i++) {
+      Matcher m = PLACEHOLDER.matcher(fixed[i]);
+      List<String> text = new ArrayList<String>();
+      List<Integer> parameters = new ArrayList<Integer>();
+      int end = 0;
+      while (m.find()) {
+        text.add(fixed[i].substring(end, m.start()));
+        parameters.add(parseParameter(m.group(1)));
+        end = m.end();
+      }
+      if (parameters.isEmpty()) {
+        continue;
+      }
+      text.add(fixed[i].substring(end));
+      for (int p : parameters) {
+        max = Math.max(max, p);
+      }
+      if (parameters.size() == 1 && text.get(0).isEmpty() && text.get(1).isEmpty()) {
+        slotList.add(i);
+        slotParameterList.add(parameters.get(0));
+      }
+      else {
+        embeddedList.add(i);
+        embeddedTextList.add(text.toArray(new String[text.size()]));
+        embeddedParameterList.add(toArray(parameters));
+      }
+      fixed[i] = null;
+    }
+    slots = toArray(slotList);
+    slotParameters = toArray(slotParameterList);
+    embedded = toArray(embeddedList);
+    embeddedText = embeddedTextList.toArray(new String[embeddedTextList.size()][]);
+    embeddedParameters = embeddedParameterList.toArray(new int[embeddedParameterList.size()][]);
+    parameterCount = max + 1;
+
+    boolean[] used = new boolean[parameterCount];
+    for (int p : slotParameters) {
+      used[p] = true;
+    }
+    for (int[] parameters : embeddedParameters) {
+      for (int p : parameters) {
+        used[p] = true;
+      }
+    }
+    for (int p = 0; p < parameterCount; p++) {
+      if (!used[p])
+        throw new IllegalArgumentException("Placeholder {" + p + "} is missing from " + command + ".");
+    }
+  }
+
+  private static int parseParameter(String digits) {
+    try {
+      return Integer.parseInt(digits);
+    }
+    catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid placeholder {" + digits + "}.", e);
+    }
+  }
+
+  private static int[] toArray(List<Integer> values) {
+    int[] result = new int[values.size()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = values.get(i);
+    }
+    return result;
+  }
+
+  /**
+   * @return number of arguments each invocation must provide.
+   */
+  public int getParameterCount() {
+    return parameterCount;
+  }
+
+  /**
+   * @return the command with placeholders.
+   */
+  public List<String> getCommand() {
+    return spec.getCommand();
+  }
+
+  /**
+   * @return specification of the processes started by this template.
+   */
+  public ProcessSpec getSpec() {
+    return spec;
+  }
+
+  /**
+   * Executes a new process and waits until it exits or the timeout of the executor is reached.
+   *
+   * @param args values of the placeholders.
+   * @return result of the finished process.
+   * @throws IllegalArgumentException if the number of arguments doesn't match or any of them is <code>null</code>.
+   * @throws IOException an error occurred when process was started or stopped.
+   * @throws InterruptedException this thread was interrupted.
+   * @throws TimeoutException timeout of the executor was reached (a {@link ProcessTimeoutException}).
+   * @throws InvalidExitValueException if invalid exit value was returned.
+   * @see ProcessSpec#execute()
+   */
+  public ProcessResult execute(String... args) throws IOException, InterruptedException, TimeoutException, InvalidExitValueException {
+    String[] command = bindInternal(args);
+    return spec.execute(command, spec.newAttributes(command));
+  }
+
+  /**
+   * Starts a new process without waiting for it to exit.
+   *
+   * @param args values of the placeholders.
+   * @return the started process and the future of its result.
+   * @throws IllegalArgumentException if the number of arguments doesn't match or any of them is <code>null</code>.
+   * @throws IOException an error occurred when process was started.
+   * @see ProcessSpec#start()
+   */
+  public StartedProcess start(String... args) throws IOException {
+    String[] command = bindInternal(args);
+    return spec.start(command, spec.newAttributes(command));
+  }
+
+  /**
+   * @param args values of the placeholders.
+   * @return the command line with the placeholders replaced by the given arguments.
+   * @throws IllegalArgumentException if the number of arguments doesn't match or any of them is <code>null</code>.
+   */
+  public List<String> bind(String... args) {
+    return Collections.unmodifiableList(Arrays.asList(bindInternal(args)));
+  }
+
+  private String[] bindInternal(String[] args) {
+    if (args.length != parameterCount)
+      throw new IllegalArgumentException("Expected " + parameterCount + " arguments but got " + args.length + ".");
+    for (String arg : args) {
+      if (arg == null)
+        throw new IllegalArgumentException("Arguments must not be null.");
+    }
+    String[] result = fixed.clone();
+    for (int i = 0; i < slots.length; i++) {
+      result[slots[i]] = ProcessExecutor.fixArgument(args[slotParameters[i]]);
+    }
+    for (int i = 0; i < embedded.length; i++) {
+      String[] text = embeddedText[i];
+      int[] parameters = embeddedParameters[i];
+      StringBuilder sb = new StringBuilder(text[0]);
+      for (int j = 0; j < parameters.length; j++) {
+        sb.append(args[parameters[j]]).append(text[j + 1]);
+      }
+      result[embedded[i]] = ProcessExecutor.fixArgument(sb.toString());
+    }
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return "CommandTemplate" + spec.getCommand();
+  }
+
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outcome of a single process executed as part of a batch.
+ *
+ * @see ProcessExecutor#startAll(java.util.Collection, int, boolean)
+ * @since 1.14
+ */
+public class CompletedExecution {
+
+  private final ProcessExecutor executor;
+
+  private final ProcessResult result;
+
+  private final Throwable failure;
+
+  private final long durationNanos;
+
+  /**
+   * @param executor executor of the process.
+   * @param result result of the process or <code>null</code> if it failed.
+   * @param failure why the execution failed or <code>null</code> if it succeeded.
+   * @param durationNanos how long the execution took in nanoseconds or <code>-1</code> if it never started.
+   */
+  public CompletedExecution(ProcessExecutor executor, ProcessResult result, Throwable failure, long durationNanos) {
+    this.executor = executor;
+    this.result = result;
+    this.failure = failure;
+    this.durationNanos = durationNanos;
+  }
+
+  /**
+   * @return executor of the process.
+   */
+  public ProcessExecutor getExecutor() {
+    return executor;
+  }
+
+  /**
+   * @return result of the process or <code>null</code> if the execution failed.
+   * The result of a process with an unexpected exit value is available from the {@link InvalidResultException}.
+   */
+  public ProcessResult getResult() {
+    return result;
+  }
+
+  /**
+   * @return why the execution failed (e.g. {@link InvalidExitValueException}, {@link java.util.concurrent.TimeoutException}
+   * or {@link CancellationException}) or <code>null</code> if it succeeded.
+   */
+  public Throwable getFailure() {
+    return failure;
+  }
+
+  /**
+   * @return <code>true</code> if the process finished successfully.
+   */
+  public boolean isSuccess() {
+    return failure == null;
+  }
+
+  /**
+   * @return <code>true</code> if the execution was cancelled, e.g. because another process of the batch failed.
+   */
+  public boolean isCancelled() {
+    return failure instanceof CancellationException;
+  }
+
+  /**
+   * @return how long the execution took in nanoseconds or <code>-1</code> if it was cancelled before it started.
+   */
+  public long getDurationNanos() {
+    return durationNanos;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("CompletedExecution[").append(executor.getCommand());
+    if (failure == null) {
+      sb.append(", exit value: ").append(result.getExitValue());
+    }
+    else {
+      sb.append(", failure: ").append(failure);
+    }
+    if (durationNanos >= 0) {
+      sb.append(", ").append(TimeUnit.NANOSECONDS.toMillis(durationNanos)).append(" ms");
+    }
+    return sb.append("]").toString();
+  }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Historical durations of named commands, used by {@link CommandGraph} to estimate how long each node takes.
+ * <p>
+ * Each new observation is blended into an exponential moving average so that estimates follow gradual changes
+ * without jumping on a single outlier. The same instance may be shared between executions of a graph
+ * (and threads) to improve the estimates over time; it can be seeded from a previous run with {@link #record(String, long, TimeUnit)}.
+ * </p>
+ *
+ * @since 1.14
+ */
+public class DurationHistory {
+
+  /**
+   * Weight of a new observation in the moving average.
+   */
+  private static final double ALPHA = 0.5;
+
+  private final Map<String, Long> estimates = new ConcurrentHashMap<String, Long>();
+
+  /**
+   * Records an observed duration of the given command.
+   *
+   * @param name name of the command.
+   * @param duration how long the command took.
+   * @param unit unit of the duration.
+   */
+  public void record(String name, long duration, TimeUnit unit) {
+    long nanos = unit.toNanos(duration);
+    if (nanos < 0)
+      throw new IllegalArgumentException("Duration must not be negative.");
+    synchronized (estimates) {
+      Long previous = estimates.get(name);
+      estimates.put(name, previous == null ? nanos : (long) (ALPHA * nanos + (1 - ALPHA) * previous));
+    }
+  }
+
+  /**
+   * @param name name of the command.
+   * @return estimated duration of the command in nanoseconds or <code>-1</code> if it has never been recorded.
+   */
+  public long getEstimateNanos(String name) {
+    Long result = estimates.get(name);
+    return result == null ? -1 : result;
+  }
+
+  /**
+   * Forgets all recorded durations.
+   */
+  public void clear() {
+    estimates.clear();
+  }
+
+  @Override
+  public String toString() {
+    return "DurationHistory" + estimates;
+  }
+
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+/**
+ * Immutable environment of child processes, prepared once and shared by any number of executions and executors.
+ * <p>
+ * A snapshot starts either from the environment of this JVM ({@link #inherit()}) or from an empty environment ({@link #clean()})
+ * and is derived further by adding, overriding and removing variables. Each derived snapshot is a new instance,
+ * the variables are validated when they are added and an executor copies them into its {@link ProcessBuilder} only once.
+ * </p>
+ * <pre>
+ * EnvironmentSnapshot env = EnvironmentSnapshot.inherit().with("LC_ALL", "C").without("DISPLAY");
+ * new ProcessExecutor("make").environment(env).execute();
+ * new ProcessExecutor("make", "install").environment(env).environment("DESTDIR", dir).execute();
+ * </pre>
+ *
+ * @see ProcessExecutor#environment(EnvironmentSnapshot)
+ * @since 1.14
+ */
+public final class EnvironmentSnapshot {
+
+  private static final boolean IS_OS_WINDOWS = System.getProperty("os.name").startsWith("Windows");
+
+  /**
+   * Environment of this JVM, which doesn't change while it is running.
+   */
+  private static volatile EnvironmentSnapshot jvmEnvironment;
+
+  private static final EnvironmentSnapshot CLEAN = new EnvironmentSnapshot(newMap(), false);
+
+  private final Map<String, String> variables;
+
+  /**
+   * <code>true</code> if the variables are the same as in this JVM.
+   */
+  private final boolean inherited;
+
+  private EnvironmentSnapshot(Map<String, String> variables, boolean inherited) {
+    this.variables = Collections.unmodifiableMap(variables);
+    this.inherited = inherited;
+  }
+
+  /**
+   * @return snapshot of the environment of this JVM.
+   */
+  public static EnvironmentSnapshot inherit() {
+    EnvironmentSnapshot result = jvmEnvironment;
+    if (result == null) {
+      Map<String, String> variables = newMap();
+      variables.putAll(System.getenv());
+      jvmEnvironment = result = new EnvironmentSnapshot(variables, true);
+    }
+    return result;
+  }
+
+  /**
+   * @return empty environment.
+   */
+  public static EnvironmentSnapshot clean() {
+    return CLEAN;
+  }
+
+  /**
+   * @param variables environment variables.
+   * @return environment consisting of the given variables only.
+   * @throws IllegalArgumentException if any of the names or values is invalid.
+   */
+  public static EnvironmentSnapshot of(Map<String, String> variables) {
+    return clean().with(variables);
+  }
+
+  /**
+   * @param name name of the variable.
+   * @param value value of the variable, <code>null</code> removes the variable.
+   * @return new snapshot with the given variable added, overridden or removed.
+   * @throws IllegalArgumentException if the name or value is invalid.
+   */
+  public EnvironmentSnapshot with(String name, String value) {
+    return with(Collections.singletonMap(name, value));
+  }
+
+  /**
+   * @param variables variables to add or override, <code>null</code> values remove the variables.
+   * @return new snapshot with the given variables applied.
+   * @throws IllegalArgumentException if any of the names or values is invalid.
+   */
+  public EnvironmentSnapshot with(Map<String, String> variables) {
+    if (variables.isEmpty()) {
+      return this;
+    }
+    Map<String, String> result = newMap();
+    result.putAll(this.variables);
+    for (Entry<String, String> e : variables.entrySet()) {
+      String name = e.getKey();
+      String value = e.getValue();
+      validateName(name);
+      if (value == null) {
+        result.remove(name);
+      }
+      else {
+        validateValue(name, value);
+        result.put(name, value);
+      }
+    }
+    return new EnvironmentSnapshot(result, false);
+  }
+
+  /**
+   * @param names names of the variables to remove.
+   * @return new snapshot without the given variables.
+   */
+  public EnvironmentSnapshot without(String... names) {
+    Map<String, String> result = newMap();
+    result.putAll(variables);
+    boolean changed = false;
+    for (String name : names) {
+      changed |= result.remove(name) != null;
+    }
+    return changed ? new EnvironmentSnapshot(result, false) : this;
+  }
+
+  /**
+   * @return the variables of this snapshot (unmodifiable).
+   */
+  public Map<String, String> getVariables() {
+    return variables;
+  }
+
+  /**
+   * @param name name of a variable.
+   * @return value of the variable or <code>null</code> if it's not set.
+   */
+  public String get(String name) {
+    return variables.get(name);
+  }
+
+  /**
+   * @return <code>true</code> if this is the unchanged environment of this JVM, so the child processes can simply inherit it.
+   */
+  public boolean isInherited() {
+    return inherited;
+  }
+
+  /**
+   * Applies the given variables to the variables of a snapshot.
+   *
+   * @param base environment to start from, <code>null</code> means the environment of this JVM.
+   * @param overrides variables to add or override, <code>null</code> values remove the variables.
+   * @return the resulting environment.
+   */
+  static EnvironmentSnapshot apply(EnvironmentSnapshot base, Map<String, String> overrides) {
+    return (base == null ? inherit() : base).with(overrides);
+  }
+
+  private static Map<String, String> newMap() {
+    // Variable names are case-insensitive on Windows
+    return IS_OS_WINDOWS ? new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER) : new HashMap<String, String>();
+  }
+
+  private static void validateName(String name) {
+    if (name == null || name.isEmpty() || name.indexOf('=', IS_OS_WINDOWS ? 1 : 0) != -1 || name.indexOf('\u0000') != -1)
+      throw new IllegalArgumentException("Invalid environment variable name: \"" + name + "\"");
+  }
+
+  private static void validateValue(String name, String value) {
+    if (value.indexOf('\u0000') != -1)
+      throw new IllegalArgumentException("Invalid value of environment variable " + name);
+  }
+
+  @Override
+  public String toString() {
+    // The values may contain secrets
+    return "EnvironmentSnapshot[" + (inherited ? "inherited, " : "") + variables.size() + " variables]";
+  }
+
+}
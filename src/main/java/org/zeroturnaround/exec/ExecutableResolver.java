@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Resolves bare program names (e.g. <code>git</code>) to the absolute paths of the executables found in <code>PATH</code>
+ * and caches the results, so that starting the same program again doesn't search all <code>PATH</code> directories.
+ * <p>
+ * The cache is keyed by the value of <code>PATH</code>, so changing it leads to a new search.
+ * A cached executable which has been removed is detected when starting it fails with <code>ENOENT</code>,
+ * then the entry is dropped and the program is resolved again (see {@link ProcessExecutor#resolver(ExecutableResolver)}).
+ * Program names containing a directory, programs which are not found and <code>PATH</code> values with relative directories
+ * are left to the operating system as usual. Programs are not resolved on Windows, where <code>CreateProcess</code>
+ * also searches other directories before <code>PATH</code>.
+ * </p>
+ * <p>
+ * Instances are thread-safe and are meant to be shared by many executors.
+ * </p>
+ *
+ * @since 1.14
+ */
+public class ExecutableResolver {
+
+  private static final boolean IS_OS_WINDOWS = System.getProperty("os.name").startsWith("Windows");
+
+  /**
+   * Error code of a missing file.
+   */
+  private static final int ENOENT = 2;
+
+  /**
+   * Resolved paths by program names by <code>PATH</code> values.
+   */
+  private final ConcurrentMap<String, ConcurrentMap<String, String>> cache = new ConcurrentHashMap<String, ConcurrentMap<String, String>>();
+
+  private final AtomicLong hits = new AtomicLong();
+
+  private final AtomicLong misses = new AtomicLong();
+
+  /**
+   * Resolves a program using the current <code>PATH</code>.
+   *
+   * @param program name or path of the program.
+   * @return absolute path of the executable or <code>null</code> if the program is not a bare name or it was not found.
+   */
+  public String resolve(String program) {
+    if (IS_OS_WINDOWS || !isBareName(program)) {
+      return null;
+    }
+    String path = getSearchPath();
+    if (path == null) {
+      return null;
+    }
+    ConcurrentMap<String, String> resolved = cache.get(path);
+    if (resolved == null) {
+      resolved = new ConcurrentHashMap<String, String>();
+      ConcurrentMap<String, String> existing = cache.putIfAbsent(path, resolved);
+      if (existing != null) {
+        resolved = existing;
+      }
+    }
+    String result = resolved.get(program);
+    if (result != null) {
+      hits.incrementAndGet();
+      return result;
+    }
+    misses.incrementAndGet();
+    result = search(program, path);
+    if (result != null) {
+      resolved.put(program, result);
+    }
+    return result;
+  }
+
+  /**
+   * Drops the cached path of the given program, e.g. because the executable has been removed.
+   *
+   * @param program name of the program.
+   */
+  public void invalidate(String program) {
+    for (ConcurrentMap<String, String> resolved : cache.values()) {
+      resolved.remove(program);
+    }
+  }
+
+  /**
+   * Drops all cached paths.
+   */
+  public void clear() {
+    cache.clear();
+  }
+
+  /**
+   * @return number of programs resolved from the cache.
+   */
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  /**
+   * @return number of programs searched from the <code>PATH</code> directories.
+   */
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  /**
+   * Returns the directories to search for the programs. By default this is the <code>PATH</code> of this JVM
+   * which is also used by the JDK for finding the programs.
+   *
+   * @return list of directories separated by {@link File#pathSeparator} or <code>null</code> if unknown.
+   */
+  protected String getSearchPath() {
+    return System.getenv("PATH");
+  }
+
+  /**
+   * @param program name or path of a program.
+   * @return <code>true</code> if the program is given by name only and is looked up from <code>PATH</code>.
+   */
+  public static boolean isBareName(String program) {
+    return program != null && !program.isEmpty() && program.indexOf(File.separatorChar) == -1 && program.indexOf('/') == -1;
+  }
+
+  /**
+   * @param e exception thrown when starting a process.
+   * @return <code>true</code> if the process failed to start because the executable was not found.
+   */
+  static boolean isNotFound(IOException e) {
+    ProcessInitException p = e instanceof ProcessInitException ? (ProcessInitException) e : ProcessInitException.newInstance("", e);
+    return p != null && p.getErrorCode() == ENOENT;
+  }
+
+  /**
+   * @param program name or path of the program which could not be started.
+   * @param path path the program was resolved to or <code>null</code> if it was not resolved.
+   * @return sentence describing how the program was resolved to be appended to an error message.
+   */
+  static String getMessage(String program, String path) {
+    if (path != null) {
+      return " Resolved " + program + " to " + path + ".";
+    }
+    if (!IS_OS_WINDOWS && isBareName(program)) {
+      return " " + program + " was not found in PATH.";
+    }
+    return "";
+  }
+
+  private static String search(String program, String path) {
+    for (String dir : path.split(File.pathSeparator, -1)) {
+      File directory = new File(dir);
+      if (!directory.isAbsolute()) {
+        // Relative directories depend on the working directory of the process
+        return null;
+      }
+      File file = new File(directory, program);
+      if (file.isFile() && file.canExecute()) {
+        return file.getAbsolutePath();
+      }
+    }
+    return null;
+  }
+
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Outcomes and timings of all nodes of an executed {@link CommandGraph}.
+ *
+ * @see CommandGraph#execute()
+ * @since 1.14
+ */
+public class GraphResult extends BatchResult {
+
+  private final List<NodeExecution> nodes;
+
+  private final Map<String, NodeExecution> nodesByName = new LinkedHashMap<String, NodeExecution>();
+
+  /**
+   * @param nodes outcomes of the nodes in the order of completion.
+   * @param wallTimeNanos time from starting the graph until the last node completed in nanoseconds.
+   */
+  public GraphResult(List<NodeExecution> nodes, long wallTimeNanos) {
+    super(new ArrayList<CompletedExecution>(nodes), wallTimeNanos);
+    this.nodes = Collections.unmodifiableList(new ArrayList<NodeExecution>(nodes));
+    for (NodeExecution node : nodes) {
+      nodesByName.put(node.getName(), node);
+    }
+  }
+
+  /**
+   * @return outcomes of the nodes in the order of completion.
+   */
+  public List<NodeExecution> getNodes() {
+    return nodes;
+  }
+
+  /**
+   * @param name name of the node.
+   * @return outcome of the given node or <code>null</code> if there's no such node.
+   */
+  public NodeExecution getNode(String name) {
+    return nodesByName.get(name);
+  }
+
+  @Override
+  public String toString() {
+    return "GraphResult[count=" + getCount() + ", succeeded=" + getSucceededCount() + ", failed=" + getFailedCount()
+        + ", cancelled=" + getCancelledCount() + ", wall time=" + getWallTimeNanos() / 1000000 + " ms]";
+  }
+
+}
@@ -1,6 +1,6 @@
 package org.zeroturnaround.exec;
 
-import java.util.Set;
+import java.util.Arrays;
 import java.util.concurrent.TimeoutException;
 
 /**
@@ -18,11 +18,13 @@ class InvalidExitUtil {
    * Check the process exit value.
    */
   public static void checkExit(ProcessAttributes attributes, ProcessResult result) {
-    Set<Integer> allowedExitValues = attributes.getAllowedExitValues();
-    if (allowedExitValues != null && !allowedExitValues.contains(result.getExitValue())) {
+    if (!attributes.isAllowedExitValue(result.getExitValue())) {
       StringBuilder sb = new StringBuilder();
       sb.append("Unexpected exit value: ").append(result.getExitValue());
-      sb.append(", allowed exit values: ").append(allowedExitValues);
+      sb.append(", allowed exit values: ").append(Arrays.toString(attributes.getAllowedExitValues()));
+      if (result.getMatchedPattern() != null) {
+        sb.append(", process was stopped on output '").append(result.getMatchedPattern()).append("'");
+      }
       addExceptionMessageSuffix(attributes, sb, result.hasOutput() ? result.getOutput() : null);
       throw new InvalidExitValueException(sb.toString(), result);
     }
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outcome of a single node of a {@link CommandGraph} with its timings relative to the start of the graph.
+ *
+ * @see GraphResult
+ * @since 1.14
+ */
+public class NodeExecution extends CompletedExecution {
+
+  private final String name;
+
+  private final List<String> dependencies;
+
+  private final long readyNanos;
+
+  private final long startNanos;
+
+  /**
+   * @param name name of the node.
+   * @param dependencies names of the nodes this node depends on.
+   * @param executor executor of the process.
+   * @param result result of the process or <code>null</code> if it failed.
+   * @param failure why the execution failed or <code>null</code> if it succeeded.
+   * @param readyNanos when all dependencies of the node had completed, in nanoseconds since the graph started, or <code>-1</code> if they never did.
+   * @param startNanos when the node started, in nanoseconds since the graph started, or <code>-1</code> if it never started.
+   * @param durationNanos how long the execution took in nanoseconds or <code>-1</code> if it never started.
+   */
+  public NodeExecution(String name, List<String> dependencies, ProcessExecutor executor, ProcessResult result, Throwable failure,
+      long readyNanos, long startNanos, long durationNanos) {
+    super(executor, result, failure, durationNanos);
+    this.name = name;
+    this.dependencies = Collections.unmodifiableList(dependencies);
+    this.readyNanos = readyNanos;
+    this.startNanos = startNanos;
+  }
+
+  /**
+   * @return name of the node.
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return names of the nodes this node depends on.
+   */
+  public List<String> getDependencies() {
+    return dependencies;
+  }
+
+  /**
+   * @return when all dependencies of the node had completed, in nanoseconds since the graph started, or <code>-1</code> if they never did.
+   */
+  public long getReadyNanos() {
+    return readyNanos;
+  }
+
+  /**
+   * @return when the node started, in nanoseconds since the graph started, or <code>-1</code> if it never started.
+   */
+  public long getStartNanos() {
+    return startNanos;
+  }
+
+  /**
+   * @return when the node completed, in nanoseconds since the graph started, or <code>-1</code> if it never started.
+   */
+  public long getEndNanos() {
+    return startNanos < 0 ? -1 : startNanos + getDurationNanos();
+  }
+
+  /**
+   * @return how long the node waited for a free worker after its dependencies had completed in nanoseconds
+   * or <code>-1</code> if it never started.
+   */
+  public long getQueuedNanos() {
+    return startNanos < 0 ? -1 : startNanos - readyNanos;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("NodeExecution[").append(name);
+    if (isSuccess()) {
+      sb.append(", exit value: ").append(getResult().getExitValue());
+    }
+    else {
+      sb.append(", failure: ").append(getFailure());
+    }
+    if (startNanos >= 0) {
+      sb.append(", started at ").append(TimeUnit.NANOSECONDS.toMillis(startNanos)).append(" ms");
+      sb.append(", took ").append(TimeUnit.NANOSECONDS.toMillis(getDurationNanos())).append(" ms");
+    }
+    return sb.append("]").toString();
+  }
+
+}
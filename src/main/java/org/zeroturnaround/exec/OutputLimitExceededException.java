@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec;
+
+/**
+ * Process wrote more output than allowed.
+ * <p>
+ * Only the allowed amount of the output was retained, the rest was discarded.
+ * </p>
+ *
+ * @see ProcessExecutor#maxOutputBytes(long)
+ * @see ProcessExecutor#maxOutputBytes(long, long)
+ * @since 1.14
+ */
+public class OutputLimitExceededException extends InvalidOutputException {
+
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Number of bytes the process wrote to its output and error streams.
+   */
+  private final long bytesSeen;
+
+  /**
+   * Number of bytes retained, the rest was discarded.
+   */
+  private final long bytesRetained;
+
+  /**
+   * @param message the detail message of the exception
+   * @param result result of execution (contains also the exit value)
+   * @param bytesSeen number of bytes the process wrote to its output and error streams
+   * @param bytesRetained number of bytes retained
+   */
+  public OutputLimitExceededException(String message, ProcessResult result, long bytesSeen, long bytesRetained) {
+    super(message, result);
+    this.bytesSeen = bytesSeen;
+    this.bytesRetained = bytesRetained;
+  }
+
+  /**
+   * @return number of bytes the process wrote to its output and error streams.
+   */
+  public long getBytesSeen() {
+    return bytesSeen;
+  }
+
+  /**
+   * @return number of bytes retained, the rest was discarded.
+   */
+  public long getBytesRetained() {
+    return bytesRetained;
+  }
+
+}
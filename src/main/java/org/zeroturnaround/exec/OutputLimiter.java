@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec;
+
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.zeroturnaround.exec.stop.ProcessStopper;
+import org.zeroturnaround.exec.stream.LimitedOutputStream;
+import org.zeroturnaround.exec.stream.PumpStreamHandler;
+
+/**
+ * Limits the amount of output retained from a started process and optionally stops it once the limit is exceeded.
+ */
+class OutputLimiter {
+
+  private static final Logger log = LoggerFactory.getLogger(OutputLimiter.class);
+
+  /**
+   * Maximum number of bytes retained from the output stream (or both streams in case the limit is shared).
+   */
+  private final long maxOutputBytes;
+
+  /**
+   * Maximum number of bytes retained from the error stream (unused in case the limit is shared).
+   */
+  private final long maxErrorBytes;
+
+  private final AtomicLong outputCount = new AtomicLong();
+
+  private final AtomicLong errorCount;
+
+  private final AtomicBoolean exceeded = new AtomicBoolean();
+
+  private final Process process;
+
+  /**
+   * Helper for stopping the process once the limit is exceeded or <code>null</code> if the process keeps running.
+   */
+  private final ProcessStopper stopper;
+
+  /**
+   * @param maxOutputBytes maximum number of bytes retained from the output stream (or both streams if <code>maxErrorBytes</code> is <code>null</code>).
+   * @param maxErrorBytes maximum number of bytes retained from the error stream or <code>null</code> if the limit is shared.
+   * @param process the started process.
+   * @param stopper helper for stopping the process once the limit is exceeded or <code>null</code> if the process keeps running.
+   */
+  public OutputLimiter(long maxOutputBytes, Long maxErrorBytes, Process process, ProcessStopper stopper) {
+    this.maxOutputBytes = maxOutputBytes;
+    this.maxErrorBytes = maxErrorBytes == null ? maxOutputBytes : maxErrorBytes;
+    this.errorCount = maxErrorBytes == null ? outputCount : new AtomicLong();
+    this.process = process;
+    this.stopper = stopper;
+  }
+
+  /**
+   * @return new stream handler which limits the output and error streams of the given one.
+   */
+  public PumpStreamHandler apply(PumpStreamHandler pumps) {
+    return new PumpStreamHandler(limit(pumps.getOut(), outputCount, maxOutputBytes), limit(pumps.getErr(), errorCount, maxErrorBytes), pumps.getInput());
+  }
+
+  private OutputStream limit(OutputStream out, AtomicLong count, long limit) {
+    if (out == null) {
+      return null;
+    }
+    return new LimitedOutputStream(out, count, limit, new Runnable() {
+      public void run() {
+        onLimitExceeded();
+      }
+    });
+  }
+
+  private void onLimitExceeded() {
+    if (!exceeded.compareAndSet(false, true)) {
+      return;
+    }
+    if (stopper == null) {
+      log.debug("{} exceeded its output limit, discarding further output", process);
+    }
+    else {
+      log.debug("{} exceeded its output limit, stopping it", process);
+      stopper.stop(process);
+    }
+  }
+
+  /**
+   * @return <code>true</code> if any output was discarded.
+   */
+  public boolean isExceeded() {
+    return exceeded.get();
+  }
+
+  /**
+   * Check that the process didn't exceed the output limit.
+   *
+   * @throws OutputLimitExceededException if the limit was exceeded.
+   */
+  public void check(ProcessAttributes attributes, ProcessResult result) {
+    if (!isExceeded()) {
+      return;
+    }
+    long seen = outputCount.get() + (errorCount == outputCount ? 0 : errorCount.get());
+    long retained = Math.min(outputCount.get(), maxOutputBytes) + (errorCount == outputCount ? 0 : Math.min(errorCount.get(), maxErrorBytes));
+    StringBuilder sb = new StringBuilder();
+    sb.append("Output limit exceeded");
+    if (errorCount == outputCount) {
+      sb.append(", limit: ").append(maxOutputBytes).append(" bytes");
+    }
+    else {
+      sb.append(", limits: ").append(maxOutputBytes).append(" bytes of output, ").append(maxErrorBytes).append(" bytes of error");
+    }
+    sb.append(", seen ").append(seen).append(" bytes, retained ").append(retained).append(" bytes");
+    if (stopper != null) {
+      sb.append(", process was stopped");
+    }
+    InvalidExitUtil.addExceptionMessageSuffix(attributes, sb, result.hasOutput() ? result.getOutput() : null);
+    throw new OutputLimitExceededException(sb.toString(), result, seen, retained);
+  }
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec;
+
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.zeroturnaround.exec.stop.ProcessStopper;
+import org.zeroturnaround.exec.stream.MatchingOutputStream;
+import org.zeroturnaround.exec.stream.MultiPatternMatcher;
+import org.zeroturnaround.exec.stream.PumpStreamHandler;
+
+/**
+ * Stops a started process as soon as its output contains any of the given patterns.
+ */
+class OutputMatcher {
+
+  private static final Logger log = LoggerFactory.getLogger(OutputMatcher.class);
+
+  private final MultiPatternMatcher matcher;
+
+  /**
+   * The first pattern found in either stream.
+   */
+  private final AtomicReference<String> match = new AtomicReference<String>();
+
+  private final Process process;
+
+  private final ProcessStopper stopper;
+
+  /**
+   * @param matcher patterns to search for.
+   * @param process the started process.
+   * @param stopper helper for stopping the process once a pattern is found.
+   */
+  public OutputMatcher(MultiPatternMatcher matcher, Process process, ProcessStopper stopper) {
+    this.matcher = matcher;
+    this.process = process;
+    this.stopper = stopper;
+  }
+
+  /**
+   * @return new stream handler which searches the output and error streams of the given one.
+   */
+  public PumpStreamHandler apply(PumpStreamHandler pumps) {
+    return new PumpStreamHandler(match(pumps.getOut()), match(pumps.getErr()), pumps.getInput());
+  }
+
+  private OutputStream match(OutputStream out) {
+    if (out == null) {
+      return null;
+    }
+    // Each stream has its own search state
+    return new MatchingOutputStream(out, matcher, new MatchingOutputStream.MatchListener() {
+      public void matched(String pattern) {
+        onMatch(pattern);
+      }
+    });
+  }
+
+  private void onMatch(String pattern) {
+    if (!match.compareAndSet(null, pattern)) {
+      return;
+    }
+    log.debug("{} wrote '{}', stopping it", process, pattern);
+    stopper.stop(process);
+  }
+
+  /**
+   * @return the first pattern found or <code>null</code> if none was.
+   */
+  public String getMatchedPattern() {
+    return match.get();
+  }
+
+}
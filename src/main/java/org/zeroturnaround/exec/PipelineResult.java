@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result of a finished pipeline: the exit value and output of its last stage and the results of all stages.
+ *
+ * @see ProcessPipeline
+ * @since 1.14
+ */
+public class PipelineResult extends ProcessResult {
+
+  /**
+   * Results of all stages in the order of the pipeline.
+   */
+  private final List<ProcessResult> stageResults;
+
+  /**
+   * @param stageResults results of all stages in the order of the pipeline (not empty).
+   */
+  public PipelineResult(List<ProcessResult> stageResults) {
+    this(stageResults.get(stageResults.size() - 1), stageResults);
+  }
+
+  private PipelineResult(ProcessResult last, List<ProcessResult> stageResults) {
+    super(last.getExitValue(), last.hasOutput() ? last.getOutput() : null, last.isOutputTruncated(), last.getOutputByteCount(), last.getMatchedPattern());
+    this.stageResults = Collections.unmodifiableList(stageResults);
+  }
+
+  /**
+   * @return results of all stages in the order of the pipeline.
+   */
+  public List<ProcessResult> getStageResults() {
+    return stageResults;
+  }
+
+}
@@ -18,6 +18,8 @@
 package org.zeroturnaround.exec;
 
 import java.io.File;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -43,17 +45,34 @@ class ProcessAttributes {
   private final Map<String,String> environment;
 
   /**
-   * Set of accepted exit codes or <code>null</code> if all exit codes are allowed.
+   * Sorted accepted exit codes or <code>null</code> if all exit codes are allowed.
    */
-  private final Set<Integer> allowedExitValues;
+  private final int[] allowedExitValues;
 
   public ProcessAttributes(List<String> command, File directory, Map<String, String> environment, Set<Integer> allowedExitValues) {
+    this(command, directory, environment, toSortedArray(allowedExitValues));
+  }
+
+  public ProcessAttributes(List<String> command, File directory, Map<String, String> environment, int[] allowedExitValues) {
     this.command = command;
     this.directory = directory;
     this.environment = environment;
     this.allowedExitValues = allowedExitValues;
   }
 
+  static int[] toSortedArray(Set<Integer> values) {
+    if (values == null) {
+      return null;
+    }
+    int[] result = new int[values.size()];
+    Iterator<Integer> it = values.iterator();
+    for (int i = 0; i < result.length; i++) {
+      result[i] = it.next();
+    }
+    Arrays.sort(result);
+    return result;
+  }
+
   public List<String> getCommand() {
     return command;
   }
@@ -66,8 +85,19 @@ class ProcessAttributes {
     return environment;
   }
 
-  public Set<Integer> getAllowedExitValues() {
+  /**
+   * @return sorted accepted exit codes or <code>null</code> if all exit codes are allowed.
+   */
+  public int[] getAllowedExitValues() {
     return allowedExitValues;
   }
 
+  /**
+   * @param exitValue exit code of a process.
+   * @return <code>true</code> if the given exit code is accepted.
+   */
+  public boolean isAllowedExitValue(int exitValue) {
+    return allowedExitValues == null || Arrays.binarySearch(allowedExitValues, exitValue) >= 0;
+  }
+
 }
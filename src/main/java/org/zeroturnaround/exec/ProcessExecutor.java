@@ -20,10 +20,14 @@ package org.zeroturnaround.exec;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
+import org.zeroturnaround.exec.admission.AdmissionController;
+import org.zeroturnaround.exec.admission.AdmissionRejectedException;
+import org.zeroturnaround.exec.close.DrainPolicy;
 import org.zeroturnaround.exec.close.ProcessCloser;
 import org.zeroturnaround.exec.close.StandardProcessCloser;
 import org.zeroturnaround.exec.close.TimeoutProcessCloser;
 import org.zeroturnaround.exec.listener.*;
+import org.zeroturnaround.exec.spawn.ProcessSpawner;
 import org.zeroturnaround.exec.stop.DestroyProcessStopper;
 import org.zeroturnaround.exec.stop.NopProcessStopper;
 import org.zeroturnaround.exec.stop.ProcessStopper;
@@ -36,6 +40,7 @@ import java.io.*;
 import java.util.*;
 import java.util.Map.Entry;
 import java.util.concurrent.*;
+import java.util.regex.Pattern;
 
 
 
@@ -90,6 +95,16 @@ public class ProcessExecutor {
    */
   private final Map<String, String> environment = new LinkedHashMap<String, String>();
 
+  /**
+   * Environment which {@link #environment} is applied to or <code>null</code> if the environment of this JVM is inherited.
+   */
+  private EnvironmentSnapshot baseEnvironment;
+
+  /**
+   * Snapshot whose variables have been copied into the {@link ProcessBuilder} or <code>null</code> if it still has the inherited ones.
+   */
+  private EnvironmentSnapshot appliedEnvironment;
+
   /**
    * Set of accepted exit codes or <code>null</code> if all exit codes are allowed.
    */
@@ -101,11 +116,43 @@ public class ProcessExecutor {
   private Long timeout;
   private TimeUnit timeoutUnit;
 
+  /**
+   * Timeout for the process not producing any output. If the process stays silent too long a {@link TimeoutException} is thrown and the process is destroyed.
+   */
+  private Long idleTimeout;
+  private TimeUnit idleTimeoutUnit;
+
+  /**
+   * Timeout for the process producing its first output. If the process doesn't write anything in time a {@link TimeoutException} is thrown and the process is destroyed.
+   */
+  private Long firstOutputTimeout;
+  private TimeUnit firstOutputTimeoutUnit;
+
   /**
    * Helper for stopping the process in case of timeout or cancellation.
    */
   private ProcessStopper stopper;
 
+  /**
+   * Helper for starting the process or <code>null</code> if {@link ProcessBuilder#start()} is used.
+   */
+  private ProcessSpawner spawner;
+
+  /**
+   * Resolver of the program from <code>PATH</code> or <code>null</code> if it's left to {@link ProcessBuilder#start()}.
+   */
+  private ExecutableResolver resolver;
+
+  /**
+   * Controller granting permits to start the process or <code>null</code> if starting is not limited.
+   */
+  private AdmissionController admission;
+
+  /**
+   * Priority of the process when waiting for a permit from {@link #admission}.
+   */
+  private int admissionPriority;
+
   /**
    * Process stream Handler (copied from Commons Exec library). If <code>null</code> streams are not handled.
    */
@@ -117,11 +164,37 @@ public class ProcessExecutor {
   private Long closeTimeout;
   private TimeUnit closeTimeoutUnit;
 
+  /**
+   * Limits for pumping the process' output and error streams after it has exited or <code>null</code> if the pumps are waited for until the streams end.
+   */
+  private DrainPolicy drainPolicy;
+
   /**
    * <code>true</code> if the process output should be read to a buffer and returned by {@link ProcessResult#output()}.
    */
   private boolean readOutput;
 
+  /**
+   * Maximum number of bytes retained from the process' output stream (or both output and error stream if {@link #maxErrorBytes} is <code>null</code>)
+   * or <code>null</code> if there's no limit.
+   */
+  private Long maxOutputBytes;
+
+  /**
+   * Maximum number of bytes retained from the process' error stream or <code>null</code> if it shares the limit with the output stream.
+   */
+  private Long maxErrorBytes;
+
+  /**
+   * <code>true</code> if the process is stopped once it exceeds the output limit.
+   */
+  private boolean stopOnOutputLimit = true;
+
+  /**
+   * Patterns which stop the process once found in its output or <code>null</code> if the output is not searched.
+   */
+  private MultiPatternMatcher stopPatterns;
+
   /**
    * Process event handlers.
    */
@@ -301,6 +374,36 @@ public class ProcessExecutor {
     return this;
   }
 
+  /**
+   * Sets the environment which the additional variables of this executor are applied to,
+   * instead of the environment of this JVM. The same snapshot can be shared by any number of executors.
+   *
+   * @param environment prepared environment (<code>null</code> means the environment of this JVM is inherited).
+   * @return This process executor.
+   * @see EnvironmentSnapshot#clean()
+   * @since 1.14
+   */
+  public ProcessExecutor environment(EnvironmentSnapshot environment) {
+    this.baseEnvironment = environment;
+    return this;
+  }
+
+  /**
+   * @return environment which the additional variables of this executor are applied to
+   * or <code>null</code> if the environment of this JVM is inherited.
+   * @since 1.14
+   */
+  public EnvironmentSnapshot getBaseEnvironment() {
+    return baseEnvironment;
+  }
+
+  /**
+   * @return complete environment of the process being started, including the additional variables.
+   */
+  EnvironmentSnapshot getEffectiveEnvironment() {
+    return EnvironmentSnapshot.apply(baseEnvironment, environment);
+  }
+
   /**
    * Sets this process executor's <code>redirectErrorStream</code> property.
    *
@@ -374,6 +477,12 @@ public class ProcessExecutor {
   /**
    * Sets a timeout for the process being executed. When this timeout is reached a {@link TimeoutException} is thrown and the process is destroyed.
    * This only applies to <code>execute</code> methods not <code>start</code> methods.
+   * <p>
+   * The timeout is an absolute deadline for the whole execution: starting the process, running it and closing its streams.
+   * If a limit for draining the streams is set (see {@link #drainTimeout(long, long, TimeUnit)}) draining is also limited by it,
+   * otherwise the streams are pumped until they end and the timeout is reached in the {@link ProcessTimeoutException.Phase#CLOSE} phase.
+   * The thrown {@link ProcessTimeoutException} identifies the phase which ran out of time.
+   * </p>
    *
    * @param timeout timeout for running a process.
    * @param unit the time unit of the timeout
@@ -385,6 +494,52 @@ public class ProcessExecutor {
     return this;
   }
 
+  /**
+   * Sets an inactivity timeout for the process being executed.
+   * When the process hasn't written anything to its output or error stream within this time a {@link TimeoutException} is thrown
+   * and the process is stopped (see {@link #stopper(ProcessStopper)}).
+   * Every chunk of data read from either stream resets the timer.
+   * <p>
+   * Unlike {@link #timeout(long, TimeUnit)} this allows legitimately long processes to run as long as they keep producing output
+   * while stuck ones are stopped early.
+   * The output must be pumped by a {@link PumpStreamHandler} (which is the default).
+   * Both timeouts can be used together.
+   * This only applies to <code>execute</code> methods not <code>start</code> methods.
+   * </p>
+   *
+   * @param timeout maximum time without any output.
+   * @param unit the time unit of the timeout
+   * @return This process executor.
+   * @since 1.14
+   */
+  public ProcessExecutor idleTimeout(long timeout, TimeUnit unit) {
+    this.idleTimeout = timeout;
+    this.idleTimeoutUnit = unit;
+    return this;
+  }
+
+  /**
+   * Sets a timeout for the process producing its first output.
+   * When the process hasn't written anything to its output or error stream within this time after starting
+   * a {@link ProcessTimeoutException} with phase {@link ProcessTimeoutException.Phase#FIRST_OUTPUT FIRST_OUTPUT} is thrown
+   * and the process is stopped (see {@link #stopper(ProcessStopper)}).
+   * <p>
+   * This detects a stuck startup early while {@link #timeout(long, TimeUnit)} limits the whole execution.
+   * The output must be pumped by a {@link PumpStreamHandler} (which is the default).
+   * This only applies to <code>execute</code> methods not <code>start</code> methods.
+   * </p>
+   *
+   * @param timeout maximum time until the first output.
+   * @param unit the time unit of the timeout
+   * @return This process executor.
+   * @since 1.14
+   */
+  public ProcessExecutor firstOutputTimeout(long timeout, TimeUnit unit) {
+    this.firstOutputTimeout = timeout;
+    this.firstOutputTimeoutUnit = unit;
+    return this;
+  }
+
   /**
    * Sets the helper for stopping the process in case of timeout or cancellation.
    * <p>
@@ -401,6 +556,66 @@ public class ProcessExecutor {
     return this;
   }
 
+  /**
+   * Sets the helper for starting the process instead of {@link ProcessBuilder#start()},
+   * e.g. a {@link org.zeroturnaround.exec.spawn.ZygoteSpawner} which avoids forking a JVM with a large heap.
+   * Input and output redirects set directly on the {@link ProcessBuilder} are not supported by spawners.
+   *
+   * @param spawner helper for starting the process (<code>null</code> means {@link ProcessBuilder#start()} is used).
+   * @return This process executor.
+   * @since 1.14
+   */
+  public ProcessExecutor spawner(ProcessSpawner spawner) {
+    this.spawner = spawner;
+    return this;
+  }
+
+  /**
+   * Sets the resolver which looks up a program given by a bare name from <code>PATH</code> and caches its absolute path,
+   * instead of letting the JDK search all <code>PATH</code> directories on each start.
+   * If starting a cached executable fails because it has been removed, the program is resolved again and started once more.
+   *
+   * @param resolver resolver shared by the executors (<code>null</code> means the program is looked up by the JDK).
+   * @return This process executor.
+   * @since 1.14
+   */
+  public ProcessExecutor resolver(ExecutableResolver resolver) {
+    this.resolver = resolver;
+    return this;
+  }
+
+  /**
+   * Sets the controller which must grant a permit before the process is started, with the default priority <code>0</code>.
+   *
+   * @param admission controller shared by the executors whose processes are limited together (<code>null</code> means starting is not limited).
+   * @return This process executor.
+   * @see #admission(AdmissionController, int)
+   * @since 1.14
+   */
+  public ProcessExecutor admission(AdmissionController admission) {
+    return admission(admission, 0);
+  }
+
+  /**
+   * Sets the controller which must grant a permit before the process is started.
+   * <p>
+   * The permit is requested right before {@link ProcessBuilder#start()} is called and released once the process has finished
+   * and its streams have been closed. The time spent waiting for the permit counts towards {@link #timeout(long, TimeUnit)}.
+   * If the permit is refused, {@link #start()} and {@link #execute()} throw an {@link AdmissionRejectedException} without starting the process.
+   * Stages of a {@link ProcessPipeline} don't request permits.
+   * </p>
+   *
+   * @param admission controller shared by the executors whose processes are limited together (<code>null</code> means starting is not limited).
+   * @param priority priority of the process when waiting for a permit, higher goes first.
+   * @return This process executor.
+   * @since 1.14
+   */
+  public ProcessExecutor admission(AdmissionController admission, int priority) {
+    this.admission = admission;
+    this.admissionPriority = priority;
+    return this;
+  }
+
   /**
    * @return current stream handler for the process being executed.
    */
@@ -442,6 +657,44 @@ public class ProcessExecutor {
     return this;
   }
 
+  /**
+   * Limits pumping the output and error streams after the process has exited.
+   * <p>
+   * By default the output and error streams are pumped until they end.
+   * If a background grandchild process inherited them this only happens when the grandchild exits as well.
+   * With this limit a pump is abandoned once it hasn't read any data within <code>idleTimeout</code>
+   * or draining has taken <code>totalTimeout</code> altogether.
+   * The pipe is then closed and {@link ProcessResult#isOutputTruncated()} returns <code>true</code>.
+   * </p>
+   * <p>
+   * Unlike {@link #closeTimeout(long, TimeUnit)} this doesn't use an additional thread and stops the abandoned pumps from writing any further data.
+   * Closing the pipe doesn't unblock a pending read on every platform (e.g. not on Linux), so the thread of an abandoned pump (a daemon thread by default)
+   * stays blocked until the pipe is closed by the grandchild as well.
+   * </p>
+   *
+   * @param idleTimeout maximum time without any data read from a stream.
+   * @param totalTimeout maximum total time for draining the streams.
+   * @param unit the time unit of the timeouts
+   * @return This process executor.
+   * @since 1.14
+   */
+  public ProcessExecutor drainTimeout(long idleTimeout, long totalTimeout, TimeUnit unit) {
+    return drainPolicy(new DrainPolicy(idleTimeout, totalTimeout, unit));
+  }
+
+  /**
+   * Sets the limits for pumping the output and error streams after the process has exited.
+   *
+   * @param drainPolicy limits for pumping the streams (<code>null</code> means the streams are pumped until they end).
+   * @return This process executor.
+   * @see #drainTimeout(long, long, TimeUnit)
+   * @since 1.14
+   */
+  public ProcessExecutor drainPolicy(DrainPolicy drainPolicy) {
+    this.drainPolicy = drainPolicy;
+    return this;
+  }
+
   /**
    * Sets the input stream to redirect to the process' input stream.
    * If this method is invoked multiple times each call overwrites the previous.
@@ -564,7 +817,7 @@ public class ProcessExecutor {
    *
    * @return new stream handler created.
    */
-  private static PumpStreamHandler redirectOutputAlsoTo(PumpStreamHandler pumps, OutputStream output) {
+  static PumpStreamHandler redirectOutputAlsoTo(PumpStreamHandler pumps, OutputStream output) {
     if (output == null)
       throw new IllegalArgumentException("OutputStream must be provided.");
     OutputStream current = pumps.getOut();
@@ -605,6 +858,118 @@ public class ProcessExecutor {
     return this;
   }
 
+  /**
+   * @return <code>true</code> if the process output is read to a buffer.
+   */
+  boolean isReadOutput() {
+    return readOutput;
+  }
+
+  /**
+   * Writes the settings which affect the output of the result (limits and stop patterns), e.g. for computing a cache key.
+   */
+  void writeOutputSettings(DataOutputStream out) throws IOException {
+    out.writeLong(maxOutputBytes == null ? -1 : maxOutputBytes);
+    out.writeLong(maxErrorBytes == null ? -1 : maxErrorBytes);
+    out.writeBoolean(stopOnOutputLimit);
+    List<String> patterns = stopPatterns == null ? Collections.<String>emptyList() : stopPatterns.getPatterns();
+    out.writeInt(patterns.size());
+    for (String pattern : patterns) {
+      out.writeUTF(pattern);
+    }
+  }
+
+  /**
+   * Limits the output the process may write to its output and error stream together.
+   * <p>
+   * The bytes are counted while the streams are pumped. Once the limit is exceeded any further output is discarded,
+   * the process is stopped (see {@link #stopOnOutputLimit(boolean)} and {@link #stopper(ProcessStopper)})
+   * and after it has finished an {@link OutputLimitExceededException} is thrown.
+   * {@link ProcessResult#getOutputByteCount()} reports the number of bytes seen, the retained output is available from the result.
+   * </p>
+   * <p>
+   * The output must be pumped by a {@link PumpStreamHandler} (which is the default).
+   * </p>
+   *
+   * @param maxBytes maximum number of bytes written to the output and error stream together.
+   * @return This process executor.
+   * @since 1.14
+   */
+  public ProcessExecutor maxOutputBytes(long maxBytes) {
+    if (maxBytes < 0)
+      throw new IllegalArgumentException("Output limit must not be negative.");
+    this.maxOutputBytes = maxBytes;
+    this.maxErrorBytes = null;
+    return this;
+  }
+
+  /**
+   * Limits the output the process may write to its output and error stream separately.
+   *
+   * @param maxOutputBytes maximum number of bytes written to the output stream.
+   * @param maxErrorBytes maximum number of bytes written to the error stream (not used if the error stream is redirected to the output stream).
+   * @return This process executor.
+   * @see #maxOutputBytes(long)
+   * @since 1.14
+   */
+  public ProcessExecutor maxOutputBytes(long maxOutputBytes, long maxErrorBytes) {
+    if (maxOutputBytes < 0 || maxErrorBytes < 0)
+      throw new IllegalArgumentException("Output limit must not be negative.");
+    this.maxOutputBytes = maxOutputBytes;
+    this.maxErrorBytes = maxErrorBytes;
+    return this;
+  }
+
+  /**
+   * Removes any output limit set by {@link #maxOutputBytes(long)} or {@link #maxOutputBytes(long, long)}.
+   *
+   * @return This process executor.
+   * @since 1.14
+   */
+  public ProcessExecutor maxOutputBytesUnlimited() {
+    this.maxOutputBytes = null;
+    this.maxErrorBytes = null;
+    return this;
+  }
+
+  /**
+   * Sets whether the process is stopped once it exceeds its output limit.
+   * Otherwise the process keeps running and its further output is discarded.
+   * In both cases an {@link OutputLimitExceededException} is thrown after the process has finished.
+   * The initial value is <code>true</code>.
+   *
+   * @param stop <code>true</code> if the process is stopped once it exceeds its output limit.
+   * @return This process executor.
+   * @since 1.14
+   */
+  public ProcessExecutor stopOnOutputLimit(boolean stop) {
+    this.stopOnOutputLimit = stop;
+    return this;
+  }
+
+  /**
+   * Stops the process as soon as its output or error stream contains any of the given patterns
+   * (e.g. a fatal error marker), instead of waiting for it to finish.
+   * <p>
+   * The patterns are encoded in UTF-8 and compiled once into a single automaton which searches the raw bytes
+   * as they are pumped, so there's no decoding into lines and a pattern is found even if it spans separate reads.
+   * The pattern found is available from {@link ProcessResult#getMatchedPattern()}.
+   * The output is still pumped after the match until the streams are closed.
+   * </p>
+   * <p>
+   * The output must be pumped by a {@link PumpStreamHandler} (which is the default).
+   * </p>
+   *
+   * @param patterns literal patterns which stop the process, none to not search the output.
+   * @return This process executor.
+   * @see #stopper(ProcessStopper)
+   * @since 1.14
+   */
+  public ProcessExecutor stopOnOutput(String... patterns) {
+    this.stopPatterns = patterns.length == 0 ? null : new MultiPatternMatcher(patterns);
+    return this;
+  }
+
   /**
    * Validates that if <code>readOutput</code> is <code>true</code> the output could be read with the given {@link ExecuteStreamHandler} instance.
    */
@@ -925,11 +1290,35 @@ public class ProcessExecutor {
    * @return exit code of the finished process.
    * @throws IOException an error occurred when process was started or stopped.
    * @throws InterruptedException this thread was interrupted.
-   * @throws TimeoutException timeout set by {@link #timeout(long, TimeUnit)} was reached.
+   * @throws TimeoutException timeout set by {@link #timeout(long, TimeUnit)}, {@link #firstOutputTimeout(long, TimeUnit)} or {@link #idleTimeout(long, TimeUnit)} was reached
+   * (a {@link ProcessTimeoutException} identifying the phase which ran out of time).
    * @throws InvalidExitValueException if invalid exit value was returned (@see {@link #exitValues(Integer...)}).
    */
   public ProcessResult execute() throws IOException, InterruptedException, TimeoutException, InvalidExitValueException {
-    return waitFor(startInternal());
+    return waitFor(startInternal(System.nanoTime(), true, null));
+  }
+
+  /**
+   * Executes the sub process writing the given bytes to its input instead of the input stream set on this executor.
+   * The input is only replaced while starting the process, this executor is left as it was.
+   *
+   * @param input bytes written to the input of the process or <code>null</code> to use the input stream set on this executor.
+   */
+  ProcessResult execute(byte[] input) throws IOException, InterruptedException, TimeoutException, InvalidExitValueException {
+    if (input == null) {
+      return execute();
+    }
+    long startTime = System.nanoTime();
+    ExecuteStreamHandler original = streams;
+    redirectInput(new ByteArrayInputStream(input));
+    WaitForProcess task;
+    try {
+      task = startInternal(startTime, true, null);
+    }
+    finally {
+      streams = original;
+    }
+    return waitFor(task);
   }
 
   /**
@@ -963,11 +1352,21 @@ public class ProcessExecutor {
    *
    * @return Future representing the exit value of the finished process.
    * @throws IOException an error occurred when process was started.
+   * @throws RejectedExecutionException if the executor did not accept the task (the process is destroyed as well).
    */
   public StartedProcess start() throws IOException {
-    WaitForProcess task = startInternal();
+    return start(startInternal());
+  }
+
+  /**
+   * Waits for the given started process in the background.
+   *
+   * @param task the task waiting for the process, e.g. of a {@link ProcessSpec}.
+   * @return the process and the future of its result.
+   */
+  StartedProcess start(WaitForProcess task) {
     ExecutorService service = newExecutor(task);
-    Future<ProcessResult> future = invokeSubmit(service, task);
+    Future<ProcessResult> future = submit(service, task, task);
     // Previously submitted tasks are executed but no new tasks will be accepted.
     // However sub classes could return null as the ExecutorService
     if (service != null) {
@@ -976,6 +1375,325 @@ public class ProcessExecutor {
     return new StartedProcess(task.getProcess(), future);
   }
 
+  /**
+   * Submits a task waiting for the given process, which is destroyed if the task is rejected
+   * (e.g. by the shut down threads of a closed {@link ProcessExecutorGroup}).
+   */
+  private <T> Future<T> submit(ExecutorService service, WaitForProcess task, Callable<T> callable) {
+    try {
+      return invokeSubmit(service, callable);
+    }
+    catch (RejectedExecutionException e) {
+      stopRejected(task);
+      throw e;
+    }
+  }
+
+  /**
+   * Destroys the process of a task which could not be submitted and releases its resources on the current thread.
+   * The process is destroyed forcibly so the current thread doesn't wait for it to exit on its own.
+   */
+  private void stopRejected(WaitForProcess task) {
+    task.getProcess().destroyForcibly();
+    try {
+      task.call();
+    }
+    catch (Exception ignored) {
+      // the original error is more relevant
+    }
+  }
+
+  /**
+   * Start the sub process and wait for it on the given executor without blocking the current thread.
+   * Timeouts set by {@link #timeout(long, TimeUnit)}, {@link #idleTimeout(long, TimeUnit)} and {@link #firstOutputTimeout(long, TimeUnit)} apply.
+   * If any of them is set, a second task checking the timeouts is run on the executor as well,
+   * so the executor must be able to run both tasks at the same time for the timeouts to be reached.
+   * <p>
+   * The stage is completed with the same exceptions that {@link #execute()} throws (e.g. {@link InvalidExitValueException}
+   * or {@link ProcessTimeoutException}), not wrapped into an {@link ExecutionException}.
+   * Cancelling the stage (<code>stage.toCompletableFuture().cancel(true)</code>) stops the process with the
+   * {@link #stopper(ProcessStopper) stopper} of this executor. Cancelling dependent stages doesn't affect the process.
+   * </p>
+   *
+   * @param executor executor which runs the tasks waiting for the process.
+   * @return stage completed with the result of the finished process.
+   * @throws IOException an error occurred when process was started.
+   * @throws RejectedExecutionException if the executor did not accept a task (the process is destroyed forcibly as well).
+   * @since 1.14
+   */
+  public CompletionStage<ProcessResult> startAsync(Executor executor) throws IOException {
+    final WaitForProcess task = startInternal(System.nanoTime(), true, null);
+    final AsyncResult result = new AsyncResult(task.getProcess(), stopper);
+    final FutureTask<ProcessResult> future = new FutureTask<ProcessResult>(wrapTask(task));
+    // Copy values to not conflict with further executions
+    final Long _timeout = timeout;
+    final TimeUnit unit = timeoutUnit;
+    final Long _idleTimeout = idleTimeout;
+    final TimeUnit idleUnit = idleTimeoutUnit;
+    final Long _firstOutputTimeout = firstOutputTimeout;
+    final TimeUnit firstOutputUnit = firstOutputTimeoutUnit;
+    final boolean timed = task.getDeadline() != null || _idleTimeout != null || _firstOutputTimeout != null;
+    final Callable<ProcessResult> await = wrapTask(new Callable<ProcessResult>() {
+      public ProcessResult call() throws Exception {
+        try {
+          if (timed) {
+            return getResult(future, task, _timeout, unit, _idleTimeout, idleUnit, _firstOutputTimeout, firstOutputUnit);
+          }
+          return future.get();
+        }
+        catch (ExecutionException e) {
+          throw unwrap(e);
+        }
+        finally {
+          // Interrupt the task if it's still running
+          future.cancel(true);
+        }
+      }
+    });
+    final Runnable complete = new Runnable() {
+      public void run() {
+        try {
+          result.complete(await.call());
+        }
+        catch (Throwable t) {
+          result.completeExceptionally(t);
+        }
+      }
+    };
+    try {
+      if (timed) {
+        executor.execute(future);
+      }
+      else {
+        executor.execute(new Runnable() {
+          public void run() {
+            future.run();
+            complete.run();
+          }
+        });
+      }
+    }
+    catch (RejectedExecutionException e) {
+      stopRejected(task);
+      throw e;
+    }
+    if (timed) {
+      try {
+        executor.execute(complete);
+      }
+      catch (RejectedExecutionException e) {
+        // The waiting task finishes once the process has exited
+        task.getProcess().destroyForcibly();
+        throw e;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Result of a process started by {@link #startAsync(Executor)}, stopping the process when cancelled.
+   */
+  private static class AsyncResult extends CompletableFuture<ProcessResult> {
+
+    private final Process process;
+
+    private final ProcessStopper stopper;
+
+    AsyncResult(Process process, ProcessStopper stopper) {
+      this.process = process;
+      this.stopper = stopper;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      boolean result = super.cancel(mayInterruptIfRunning);
+      if (result) {
+        // The waiting task finishes once the process has stopped
+        stopper.stop(process);
+      }
+      return result;
+    }
+
+  }
+
+  /**
+   * Executes the given processes concurrently, at most <code>parallelism</code> at a time, and waits for all of them.
+   * Failures of individual processes are reported in the result instead of being thrown.
+   * Each process must have its own {@link ProcessExecutor} instance.
+   *
+   * @param executors executors of the processes.
+   * @param parallelism maximum number of processes running at once.
+   * @return outcomes in the order of completion and timing statistics.
+   * @throws InterruptedException if the current thread was interrupted (the running processes are stopped as well).
+   * @see #startAll(Collection, int, boolean)
+   * @since 1.14
+   */
+  public static BatchResult executeAll(Collection<ProcessExecutor> executors, int parallelism) throws InterruptedException {
+    return executeAll(executors, parallelism, false);
+  }
+
+  /**
+   * Executes the given processes concurrently, at most <code>parallelism</code> at a time, and waits for all of them.
+   *
+   * @param executors executors of the processes.
+   * @param parallelism maximum number of processes running at once.
+   * @param failFast <code>true</code> if the first failure cancels the rest of the processes.
+   * @return outcomes in the order of completion and timing statistics.
+   * @throws InterruptedException if the current thread was interrupted (the running processes are stopped as well).
+   * @see #startAll(Collection, int, boolean)
+   * @since 1.14
+   */
+  public static BatchResult executeAll(Collection<ProcessExecutor> executors, int parallelism, boolean failFast) throws InterruptedException {
+    return startAll(executors, parallelism, failFast).await();
+  }
+
+  /**
+   * Starts executing the given processes concurrently, at most <code>parallelism</code> at a time,
+   * returning their outcomes in the order of completion as they complete.
+   * Each process must have its own {@link ProcessExecutor} instance.
+   *
+   * @param executors executors of the processes.
+   * @param parallelism maximum number of processes running at once.
+   * @param failFast <code>true</code> if the first failure cancels the rest of the processes.
+   * @return the batch being executed.
+   * @since 1.14
+   */
+  public static BatchExecution startAll(Collection<ProcessExecutor> executors, int parallelism, boolean failFast) {
+    return new BatchExecution(executors, parallelism, failFast);
+  }
+
+  /**
+   * Start the sub process and wait until it's ready, i.e. its output or error stream contains the given text.
+   * This is useful for launching servers which announce when they start accepting requests.
+   * <p>
+   * The text is encoded in UTF-8 and searched in the raw bytes as they are pumped.
+   * Once it has been found the output is only passed on without searching it any further.
+   * </p>
+   * <p>
+   * The output must be pumped by a {@link PumpStreamHandler} (which is the default).
+   * {@link #timeout(long, TimeUnit)}, {@link #idleTimeout(long, TimeUnit)} and {@link #firstOutputTimeout(long, TimeUnit)} are not used.
+   * </p>
+   *
+   * @param output literal text which indicates that the process is ready.
+   * @param timeout maximum time to wait for the process to become ready.
+   * @param unit unit of the <code>timeout</code>.
+   * @return the started process which is ready.
+   *
+   * @throws IOException an error occurred when process was started.
+   * @throws InterruptedException if the caller thread was interrupted (the process is stopped as well).
+   * @throws ProcessTimeoutException if the process did not become ready within the timeout (the process is stopped as well).
+   * @throws InvalidOutputException if the process finished without becoming ready.
+   * @since 1.14
+   */
+  public StartedProcess startAndAwait(String output, long timeout, TimeUnit unit) throws IOException, InterruptedException, TimeoutException {
+    return startAndAwait(new ReadinessProbe(output), timeout, unit);
+  }
+
+  /**
+   * Start the sub process and wait until it's ready, i.e. a line of its output or error stream matches the given regular expression.
+   * <p>
+   * The output is decoded into lines using platform's default encoding only until the process is ready.
+   * After that it's only passed on without decoding it any further.
+   * </p>
+   *
+   * @param pattern regular expression searched in each line which indicates that the process is ready.
+   * @param timeout maximum time to wait for the process to become ready.
+   * @param unit unit of the <code>timeout</code>.
+   * @return the started process which is ready.
+   *
+   * @throws IOException an error occurred when process was started.
+   * @throws InterruptedException if the caller thread was interrupted (the process is stopped as well).
+   * @throws ProcessTimeoutException if the process did not become ready within the timeout (the process is stopped as well).
+   * @throws InvalidOutputException if the process finished without becoming ready.
+   * @see #startAndAwait(String, long, TimeUnit)
+   * @since 1.14
+   */
+  public StartedProcess startAndAwait(Pattern pattern, long timeout, TimeUnit unit) throws IOException, InterruptedException, TimeoutException {
+    return startAndAwait(new ReadinessProbe(pattern), timeout, unit);
+  }
+
+  private StartedProcess startAndAwait(final ReadinessProbe probe, long timeout, TimeUnit unit) throws IOException, InterruptedException, TimeoutException {
+    final WaitForProcess task = startInternal(System.nanoTime(), false, probe);
+    ExecutorService service = newExecutor(task);
+    Future<ProcessResult> future = submit(service, task, new Callable<ProcessResult>() {
+      public ProcessResult call() throws Exception {
+        try {
+          return task.call();
+        }
+        finally {
+          probe.finish();
+        }
+      }
+    });
+    if (service != null) {
+      service.shutdown();
+    }
+    try {
+      probe.await(timeout, unit);
+    }
+    catch (InterruptedException e) {
+      // Stops the process
+      future.cancel(true);
+      throw e;
+    }
+    if (probe.isReady()) {
+      return new StartedProcess(task.getProcess(), future);
+    }
+    if (!probe.isDone()) {
+      future.cancel(true);
+      messageLogger.message(log, "{} did not become ready in time", task);
+      StringBuilder sb = new StringBuilder();
+      sb.append("Timed out waiting for ").append(task.getProcess()).append(" to write ").append(probe);
+      sb.append(", timeout: ").append(timeout).append(" ").append(getUnitsAsString(timeout, unit));
+      task.addExceptionMessageSuffix(sb);
+      throw new ProcessTimeoutException(sb.toString(), ProcessTimeoutException.Phase.READY);
+    }
+    ProcessResult result;
+    try {
+      result = future.get();
+    }
+    catch (ExecutionException e) {
+      throw unwrap(e);
+    }
+    StringBuilder sb = new StringBuilder();
+    sb.append(task.getProcess()).append(" finished without writing ").append(probe);
+    sb.append(", exit value: ").append(result.getExitValue());
+    task.addExceptionMessageSuffix(sb);
+    throw new InvalidOutputException(sb.toString(), result);
+  }
+
+  /**
+   * Compiles the current configuration of this executor into an immutable {@link ProcessSpec}.
+   * The spec can be started by any number of threads at once without copying the attributes of this executor
+   * and computing the environment each time.
+   * The {@link ProcessListener#beforeStart(ProcessExecutor)} callbacks are invoked once by this method,
+   * changing this executor afterwards does not affect the spec.
+   *
+   * @return new immutable process specification.
+   * @throws IllegalStateException if the command has not been set or the configuration cannot be shared
+   * (a custom stream handler, an input stream, output limits or patterns, idle or first output timeouts).
+   * @since 1.14
+   */
+  public ProcessSpec spec() {
+    listeners.beforeStart(this);
+    if (builder.command().isEmpty()) {
+      throw new IllegalStateException("Command has not been set.");
+    }
+    validateStreams(streams, readOutput);
+    if (streams != null && streams.getClass() != PumpStreamHandler.class)
+      throw new IllegalStateException("Only PumpStreamHandler is supported by ProcessSpec.");
+    if (streams != null && ((PumpStreamHandler) streams).getInput() != null)
+      throw new IllegalStateException("Input stream can't be shared by the processes of a ProcessSpec.");
+    if (maxOutputBytes != null || stopPatterns != null)
+      throw new IllegalStateException("Output limits and patterns are not supported by ProcessSpec.");
+    if (idleTimeout != null || firstOutputTimeout != null)
+      throw new IllegalStateException("Idle and first output timeouts are not supported by ProcessSpec.");
+    return new ProcessSpec(this, getCommand(), getDirectory(), baseEnvironment, environment, builder.redirectErrorStream(),
+        ProcessAttributes.toSortedArray(allowedExitValues), (PumpStreamHandler) streams, readOutput,
+        timeout, timeoutUnit, closeTimeout, closeTimeoutUnit, drainPolicy,
+        stopper, spawner, resolver, admission, admissionPriority, listeners.clone(), messageLogger);
+  }
+
   /**
    * Start the process and its stream handlers.
    *
@@ -983,8 +1701,45 @@ public class ProcessExecutor {
    * @throws IOException the process or its stream handlers couldn't start (in the latter case we also destroy the process).
    */
   protected final WaitForProcess startInternal() throws IOException {
+    return startInternal(System.nanoTime(), false, null);
+  }
+
+  /**
+   * Start the process and its stream handlers.
+   *
+   * @param startTime value of {@link System#nanoTime()} when the execution began.
+   * @param useTimeout <code>true</code> if {@link #timeout(long, TimeUnit)} applies to the process.
+   * @param probe readiness probe searching the output or <code>null</code> if not used.
+   */
+  private WaitForProcess startInternal(long startTime, boolean useTimeout, ReadinessProbe probe) throws IOException {
+    Long deadline = prepareStart(startTime, useTimeout);
+    AdmissionController.Permit permit = acquirePermit(deadline);
+    boolean started = false;
+    try {
+      Process process = invokeStart();
+      WaitForProcess result = startInternal(process, startTime, deadline, probe);
+      result.setPermit(permit);
+      started = true;
+      return result;
+    }
+    finally {
+      if (!started && permit != null) {
+        permit.cancel();
+      }
+    }
+  }
+
+  /**
+   * Prepare the {@link ProcessBuilder} for starting the process.
+   *
+   * @param startTime value of {@link System#nanoTime()} when the execution began.
+   * @param useTimeout <code>true</code> if {@link #timeout(long, TimeUnit)} applies to the process.
+   * @return value of {@link System#nanoTime()} by which the execution must finish or <code>null</code> if there's no deadline.
+   */
+  Long prepareStart(long startTime, boolean useTimeout) {
     // Invoke listeners - they can modify this executor
     listeners.beforeStart(this);
+    Long deadline = useTimeout && timeout != null ? startTime + timeoutUnit.toNanos(timeout) : null;
 
     if (builder.command().isEmpty()) {
       throw new IllegalStateException("Command has not been set.");
@@ -993,7 +1748,63 @@ public class ProcessExecutor {
 
     applyEnvironment();
     messageLogger.message(log, getExecutingLogMessage());
-    Process process = invokeStart();
+    return deadline;
+  }
+
+  /**
+   * Waits for a permit of the admission controller set by {@link #admission(AdmissionController, int)}.
+   *
+   * @param deadline value of {@link System#nanoTime()} by which the execution must finish or <code>null</code> if there's no deadline.
+   * @return the permit or <code>null</code> if no admission controller is set.
+   */
+  AdmissionController.Permit acquirePermit(Long deadline) throws IOException {
+    return acquirePermit(admission, admissionPriority, deadline);
+  }
+
+  /**
+   * Waits for a permit of the given admission controller.
+   *
+   * @param admission the admission controller or <code>null</code> if the process is admitted right away.
+   * @param priority priority of the process, higher is admitted first.
+   * @param deadline value of {@link System#nanoTime()} by which the execution must finish or <code>null</code> if there's no deadline.
+   * @return the permit or <code>null</code> if no admission controller is given.
+   */
+  static AdmissionController.Permit acquirePermit(AdmissionController admission, int priority, Long deadline) throws IOException {
+    return admission == null ? null : admission.acquire(priority, deadline);
+  }
+
+  /**
+   * @return path of the program looked up by the {@link ExecutableResolver} or <code>null</code> if the program is started by its name.
+   */
+  String resolveProgram() {
+    return resolver == null ? null : resolver.resolve(builder.command().get(0));
+  }
+
+  /**
+   * Forgets the cached path of the program, e.g. after it failed to start.
+   */
+  void invalidateProgram() {
+    if (resolver != null) {
+      resolver.invalidate(builder.command().get(0));
+    }
+  }
+
+  /**
+   * @return the {@link ProcessBuilder} prepared by {@link #prepareStart(long, boolean)}.
+   */
+  ProcessBuilder getProcessBuilder() {
+    return builder;
+  }
+
+  /**
+   * Start the stream handlers of a process started from the {@link ProcessBuilder} prepared by {@link #prepareStart(long, boolean)}.
+   *
+   * @param process the started process.
+   * @param startTime value of {@link System#nanoTime()} when the execution began.
+   * @param deadline value of {@link System#nanoTime()} by which the execution must finish or <code>null</code> if there's no deadline.
+   * @param probe readiness probe searching the output or <code>null</code> if not used.
+   */
+  WaitForProcess startInternal(Process process, long startTime, Long deadline, ReadinessProbe probe) throws IOException {
     messageLogger.message(log, "Started {}", process);
     ProcessAttributes attributes = getAttributes();
 
@@ -1004,41 +1815,142 @@ public class ProcessExecutor {
       out = new ByteArrayOutputStream();
       newStreams = redirectOutputAlsoTo(pumps, out);
     }
-    return startInternal(process, attributes, newStreams, out);
+    OutputLimiter outputLimiter = null;
+    if (maxOutputBytes != null) {
+      if (!(newStreams instanceof PumpStreamHandler)) {
+        process.destroy();
+        throw new IllegalStateException("Only PumpStreamHandler is supported if output is limited.");
+      }
+      outputLimiter = new OutputLimiter(maxOutputBytes, maxErrorBytes, process, stopOnOutputLimit ? stopper : null);
+      newStreams = outputLimiter.apply((PumpStreamHandler) newStreams);
+    }
+    OutputMatcher outputMatcher = null;
+    if (stopPatterns != null) {
+      if (!(newStreams instanceof PumpStreamHandler)) {
+        process.destroy();
+        throw new IllegalStateException("Only PumpStreamHandler is supported if output is searched.");
+      }
+      outputMatcher = new OutputMatcher(stopPatterns, process, stopper);
+      newStreams = outputMatcher.apply((PumpStreamHandler) newStreams);
+    }
+    if (probe != null) {
+      if (!(newStreams instanceof PumpStreamHandler)) {
+        process.destroy();
+        throw new IllegalStateException("Only PumpStreamHandler is supported if output is awaited.");
+      }
+      newStreams = probe.apply((PumpStreamHandler) newStreams);
+    }
+    return startInternal(process, attributes, newStreams, outputLimiter, outputMatcher, out, startTime, deadline);
   }
 
   /**
    * Capture a snapshot of this process executor's main state.
    */
-  private ProcessAttributes getAttributes() {
+  ProcessAttributes getAttributes() {
     return new ProcessAttributes(
           getCommand(),
           getDirectory(),
           new LinkedHashMap<String, String>(environment),
-          allowedExitValues == null ? null : new HashSet<Integer>(allowedExitValues));
+          ProcessAttributes.toSortedArray(allowedExitValues));
   }
 
   private Process invokeStart() throws IOException {
+    return invokeStart(builder, spawner, resolver, getExecutingErrorMessage());
+  }
+
+  /**
+   * Starts the process of the given builder with the spawner and looks up the program with the resolver.
+   * If the cached path of the program doesn't exist any more it is looked up again.
+   *
+   * @param builder builder of the process, its command is restored after the start.
+   * @param spawner spawner starting the process or <code>null</code> to start it with the builder.
+   * @param resolver resolver looking up the program or <code>null</code> to start it by its name.
+   * @param errorMessage message of the exception thrown if the process could not be started.
+   * @return the started process.
+   */
+  static Process invokeStart(ProcessBuilder builder, ProcessSpawner spawner, ExecutableResolver resolver, String errorMessage) throws IOException {
+    String program = builder.command().get(0);
+    String path = resolver == null ? null : resolver.resolve(program);
     try {
-      return builder.start();
-    }
-    catch (IOException e) {
-      if (e.getClass().equals(IOException.class)) {
-        String message = getExecutingErrorMessage();
-        ProcessInitException p = ProcessInitException.newInstance(message, e);
-        if (p != null) {
-          throw p;
+      try {
+        return invokeStart(builder, spawner, program, path);
+      }
+      catch (IOException e) {
+        if (path == null || !ExecutableResolver.isNotFound(e)) {
+          throw e;
         }
-        throw new IOException(message, e);
+        // The cached executable has been removed, look it up again
+        resolver.invalidate(program);
+        path = resolver.resolve(program);
+        if (path == null) {
+          throw e;
+        }
+        return invokeStart(builder, spawner, program, path);
       }
-      throw e;
+    }
+    catch (IOException e) {
+      throw newStartException(errorMessage + getResolvedMessage(resolver, program, path), e);
     }
     catch (RuntimeException e) {
-      if (e.getClass().equals(IllegalArgumentException.class)) {
-        throw new IllegalArgumentException(getExecutingErrorMessage(), e);
+      throw newStartException(errorMessage + getResolvedMessage(resolver, program, path), e);
+    }
+  }
+
+  /**
+   * Starts the process using the given path of the program instead of its name.
+   */
+  private static Process invokeStart(ProcessBuilder builder, ProcessSpawner spawner, String program, String path) throws IOException {
+    List<String> command = builder.command();
+    if (path != null) {
+      command.set(0, path);
+    }
+    try {
+      if (spawner != null) {
+        return spawner.spawn(command, builder.directory(), builder.environment(), builder.redirectErrorStream());
       }
-      throw e;
+      return builder.start();
     }
+    finally {
+      if (path != null) {
+        command.set(0, program);
+      }
+    }
+  }
+
+  private static String getResolvedMessage(ExecutableResolver resolver, String program, String path) {
+    return resolver == null ? "" : ExecutableResolver.getMessage(program, path);
+  }
+
+  /**
+   * Adds the given message to a plain exception thrown when starting a process.
+   *
+   * @param message description of the process which could not be started.
+   * @param e exception thrown when starting the process.
+   * @return exception to throw.
+   */
+  static IOException newStartException(String message, IOException e) {
+    if (e.getClass().equals(IOException.class)) {
+      ProcessInitException p = ProcessInitException.newInstance(message, e);
+      if (p != null) {
+        return p;
+      }
+      return new IOException(message, e);
+    }
+    return e;
+  }
+
+  /**
+   * Adds the given message to a plain {@link IllegalArgumentException} thrown when starting a process.
+   *
+   * @param message description of the process which could not be started.
+   * @param e exception thrown when starting the process.
+   * @return exception to throw.
+   */
+  static RuntimeException newStartException(String message, RuntimeException e) {
+    if (e.getClass().equals(IllegalArgumentException.class)) {
+      return new IllegalArgumentException(message, e);
+    }
+    return e;
   }
 
   private String getExecutingLogMessage() {
@@ -1061,80 +1973,81 @@ public class ProcessExecutor {
     return result;
   }
 
-  private WaitForProcess startInternal(Process process, ProcessAttributes attributes, ExecuteStreamHandler streams, ByteArrayOutputStream out) throws IOException {
+  private WaitForProcess startInternal(Process process, ProcessAttributes attributes, ExecuteStreamHandler streams, OutputLimiter outputLimiter, OutputMatcher outputMatcher, ByteArrayOutputStream out, long startTime, Long deadline) throws IOException {
     if (streams != null) {
-      try {
-        streams.setProcessInputStream(process.getOutputStream());
-        streams.setProcessOutputStream(process.getInputStream());
-        if (!builder.redirectErrorStream())
-          streams.setProcessErrorStream(process.getErrorStream());
-      }
-      catch (IOException e) {
-        process.destroy();
-        throw e;
-      }
-      streams.start();
+      startStreams(process, streams, builder.redirectErrorStream());
     }
 
-    ProcessCloser closer = newProcessCloser(streams);
+    ProcessCloser closer = newProcessCloser(streams, drainPolicy, closeTimeout, closeTimeoutUnit, deadline);
 
-    WaitForProcess result = new WaitForProcess(process, attributes, stopper, closer, out, listeners.clone(), messageLogger);
+    WaitForProcess result = new WaitForProcess(process, attributes, stopper, closer, streams, outputLimiter, outputMatcher, out, listeners.clone(), messageLogger, startTime, deadline);
     // Invoke listeners - changing this executor does not affect the started process any more
     listeners.afterStart(process, this);
     return result;
   }
 
-  private ProcessCloser newProcessCloser(ExecuteStreamHandler streams) {
+  /**
+   * Connects the stream handler to the streams of the process and starts it.
+   * The process is destroyed if the streams can't be connected.
+   */
+  static void startStreams(Process process, ExecuteStreamHandler streams, boolean redirectErrorStream) throws IOException {
+    try {
+      streams.setProcessInputStream(process.getOutputStream());
+      streams.setProcessOutputStream(process.getInputStream());
+      if (!redirectErrorStream)
+        streams.setProcessErrorStream(process.getErrorStream());
+    }
+    catch (IOException e) {
+      process.destroy();
+      throw e;
+    }
+    streams.start();
+  }
+
+  /**
+   * Creates the closer of a process with the given drain policy and close timeout.
+   */
+  static ProcessCloser newProcessCloser(ExecuteStreamHandler streams, DrainPolicy drainPolicy, Long closeTimeout, TimeUnit closeTimeoutUnit, Long deadline) {
+    DrainPolicy policy = drainPolicy;
+    if (policy != null && deadline != null) {
+      // Draining must also fit into the execution timeout.
+      // Without an explicit drain policy the streams are pumped until they end (or the caller times out in the CLOSE phase).
+      policy = policy.withDeadline(deadline);
+    }
     if (closeTimeout == null) {
-      return new StandardProcessCloser(streams);
+      return new StandardProcessCloser(streams, policy);
     }
-    return new TimeoutProcessCloser(streams, closeTimeout, closeTimeoutUnit);
+    return new TimeoutProcessCloser(streams, closeTimeout, closeTimeoutUnit, policy);
   }
 
   /**
    * Wait until the process stops, a timeout occurs and the caller thread gets interrupted.
    * In the latter cases the process gets destroyed as well.
    */
-  private ProcessResult waitFor(WaitForProcess task) throws IOException, InterruptedException, TimeoutException {
+  ProcessResult waitFor(WaitForProcess task) throws IOException, InterruptedException, TimeoutException {
+    // Copy values to not conflict with further executions
+    return waitFor(task, timeout, timeoutUnit, idleTimeout, idleTimeoutUnit, firstOutputTimeout, firstOutputTimeoutUnit);
+  }
+
+  /**
+   * Wait until the process stops using the given timeouts instead of the ones of this executor (e.g. those of a {@link ProcessSpec}).
+   */
+  ProcessResult waitFor(WaitForProcess task, Long timeout, TimeUnit unit, Long idleTimeout, TimeUnit idleUnit,
+      Long firstOutputTimeout, TimeUnit firstOutputUnit) throws IOException, InterruptedException, TimeoutException {
     ProcessResult result;
-    if (timeout == null) {
+    if (task.getDeadline() == null && idleTimeout == null && firstOutputTimeout == null) {
       // Use the current thread
       result = task.call();
     }
     else {
       // Fork another thread to invoke Process.waitFor()
       ExecutorService service = newExecutor(task);
-      // Copy values to not conflict with further executions
-      long _timeout = timeout;
-      TimeUnit unit = timeoutUnit;
       try {
-        result = invokeSubmit(service, task).get(_timeout, unit);
+        Future<ProcessResult> future = submit(service, task, task);
+        result = getResult(future, task, timeout, unit, idleTimeout, idleUnit, firstOutputTimeout, firstOutputUnit);
       }
       catch (ExecutionException e) {
-        Throwable c = e.getCause();
-        if (c instanceof IOException) {
-          throw (IOException) c;
-        }
-        if (c instanceof InterruptedException) {
-          throw (InterruptedException) c;
-        }
-        if (c instanceof InvalidExitValueException) {
-          InvalidExitValueException i = (InvalidExitValueException) c;
-          throw new InvalidExitValueException(i.getMessage(), i.getResult());
-        }
-        if (c instanceof InvalidOutputException) {
-          InvalidOutputException i = (InvalidOutputException) c;
-          throw new InvalidOutputException(i.getMessage(), i.getResult());
-        }
-        if (c.getClass().equals(InvalidResultException.class)) {
-          InvalidResultException p = (InvalidResultException) c;
-          throw new InvalidResultException(p.getMessage(), p.getResult());
-        }
-        throw new IllegalStateException("Error occured while waiting for process to finish:", c);
-      }
-      catch (TimeoutException e) {
-        messageLogger.message(log, "{} is running too long", task);
-        throw newTimeoutException(_timeout, unit, task);
+        throw unwrap(e);
       }
       finally {
         // Interrupt the task if it's still running and release the ExecutorService's resources
@@ -1144,7 +2057,84 @@ public class ProcessExecutor {
     return result;
   }
 
-  private ExecutorService newExecutor(WaitForProcess task) {
+  /**
+   * Rethrows the cause of the given exception thrown by {@link WaitForProcess} from the current thread.
+   *
+   * @return exception to throw if the cause was unexpected.
+   */
+  static IllegalStateException unwrap(ExecutionException e) throws IOException, InterruptedException {
+    Throwable c = e.getCause();
+    if (c instanceof IOException) {
+      throw (IOException) c;
+    }
+    if (c instanceof InterruptedException) {
+      throw (InterruptedException) c;
+    }
+    if (c instanceof InvalidExitValueException) {
+      InvalidExitValueException i = (InvalidExitValueException) c;
+      throw new InvalidExitValueException(i.getMessage(), i.getResult());
+    }
+    if (c instanceof OutputLimitExceededException) {
+      OutputLimitExceededException i = (OutputLimitExceededException) c;
+      throw new OutputLimitExceededException(i.getMessage(), i.getResult(), i.getBytesSeen(), i.getBytesRetained());
+    }
+    if (c instanceof InvalidOutputException) {
+      InvalidOutputException i = (InvalidOutputException) c;
+      throw new InvalidOutputException(i.getMessage(), i.getResult());
+    }
+    if (c.getClass().equals(InvalidResultException.class)) {
+      InvalidResultException p = (InvalidResultException) c;
+      throw new InvalidResultException(p.getMessage(), p.getResult());
+    }
+    return new IllegalStateException("Error occured while waiting for process to finish:", c);
+  }
+
+  /**
+   * Wait until the task finishes or any of the timeouts is reached.
+   */
+  private ProcessResult getResult(Future<ProcessResult> future, WaitForProcess task,
+      Long timeout, TimeUnit unit, Long idleTimeout, TimeUnit idleUnit, Long firstOutputTimeout, TimeUnit firstOutputUnit)
+      throws ExecutionException, InterruptedException, TimeoutException {
+    Long deadline = task.getDeadline();
+    while (true) {
+      long now = System.nanoTime();
+      long wait = Long.MAX_VALUE;
+      if (deadline != null) {
+        long remaining = deadline - now;
+        if (remaining <= 0) {
+          messageLogger.message(log, "{} is running too long", task);
+          throw newTimeoutException(timeout, unit, task);
+        }
+        wait = remaining;
+      }
+      boolean running = getExitCodeOrNull(task.getProcess()) == null;
+      if (firstOutputTimeout != null && running && !task.hasReadOutput()) {
+        long remaining = task.getStartedTime() + firstOutputUnit.toNanos(firstOutputTimeout) - now;
+        if (remaining <= 0) {
+          messageLogger.message(log, "{} has not produced any output for too long", task);
+          throw newFirstOutputTimeoutException(firstOutputTimeout, firstOutputUnit, task);
+        }
+        wait = Math.min(wait, remaining);
+      }
+      if (idleTimeout != null) {
+        long silent = now - task.getLastActivity();
+        long remaining = idleUnit.toNanos(idleTimeout) - silent;
+        if (remaining <= 0) {
+          messageLogger.message(log, "{} has not produced any output for too long", task);
+          throw newIdleTimeoutException(silent, idleTimeout, idleUnit, task);
+        }
+        wait = Math.min(wait, remaining);
+      }
+      try {
+        return future.get(wait, TimeUnit.NANOSECONDS);
+      }
+      catch (TimeoutException e) {
+        // check the timeouts again
+      }
+    }
+  }
+
+  ExecutorService newExecutor(WaitForProcess task) {
     return newExecutor(task.getProcess().toString());
   }
 
@@ -1190,20 +2180,29 @@ public class ProcessExecutor {
     return task;
   }
 
-  private TimeoutException newTimeoutException(long timeout, TimeUnit unit, WaitForProcess task) {
+  static TimeoutException newTimeoutException(long timeout, TimeUnit unit, WaitForProcess task) {
     StringBuilder sb = new StringBuilder();
     Process process = task.getProcess();
     Integer exitValue = getExitCodeOrNull(process);
-    if (exitValue == null) {
+    ProcessTimeoutException.Phase phase;
+    if (task.getStartedTime() - task.getDeadline() >= 0) {
+      phase = ProcessTimeoutException.Phase.START;
+      long millis = TimeUnit.NANOSECONDS.toMillis(task.getStartedTime() - task.getStartTime());
+      sb.append("Timed out starting ").append(process);
+      sb.append(", starting took ").append(millis).append(" ").append(getUnitsAsString(millis, TimeUnit.MILLISECONDS));
+    }
+    else if (exitValue == null) {
+      phase = ProcessTimeoutException.Phase.RUNNING;
       sb.append("Timed out waiting for ").append(process).append(" to finish");
     }
     else {
+      phase = ProcessTimeoutException.Phase.CLOSE;
       sb.append("Timed out finishing ").append(process);
       sb.append(", exit value: ").append(exitValue);
     }
     sb.append(", timeout: ").append(timeout).append(" ").append(getUnitsAsString(timeout, unit));
     task.addExceptionMessageSuffix(sb);
-    TimeoutException result = new TimeoutException(sb.toString());
+    TimeoutException result = new ProcessTimeoutException(sb.toString(), phase);
     if (exitValue != null) {
       StackTraceElement[] stackTrace = task.getStackTrace();
       if (stackTrace != null) {
@@ -1215,6 +2214,24 @@ public class ProcessExecutor {
     return result;
   }
 
+  private TimeoutException newFirstOutputTimeoutException(long firstOutputTimeout, TimeUnit firstOutputUnit, WaitForProcess task) {
+    StringBuilder sb = new StringBuilder();
+    sb.append("Timed out waiting for ").append(task.getProcess()).append(" to produce its first output");
+    sb.append(", first output timeout: ").append(firstOutputTimeout).append(" ").append(getUnitsAsString(firstOutputTimeout, firstOutputUnit));
+    task.addExceptionMessageSuffix(sb);
+    return new ProcessTimeoutException(sb.toString(), ProcessTimeoutException.Phase.FIRST_OUTPUT);
+  }
+
+  private TimeoutException newIdleTimeoutException(long silentNanos, long idleTimeout, TimeUnit idleUnit, WaitForProcess task) {
+    StringBuilder sb = new StringBuilder();
+    long silentMillis = TimeUnit.NANOSECONDS.toMillis(silentNanos);
+    sb.append("Timed out waiting for ").append(task.getProcess()).append(" to produce output");
+    sb.append(", silent for ").append(silentMillis).append(" ").append(getUnitsAsString(silentMillis, TimeUnit.MILLISECONDS));
+    sb.append(", idle timeout: ").append(idleTimeout).append(" ").append(getUnitsAsString(idleTimeout, idleUnit));
+    task.addExceptionMessageSuffix(sb);
+    return new ProcessTimeoutException(sb.toString(), ProcessTimeoutException.Phase.IDLE);
+  }
+
   private static String getUnitsAsString(long d, TimeUnit unit) {
     String result = unit.toString().toLowerCase();
     if (d == 1) {
@@ -1233,6 +2250,14 @@ public class ProcessExecutor {
   }
 
   private void applyEnvironment() {
+    EnvironmentSnapshot base = baseEnvironment != null && baseEnvironment.isInherited() ? null : baseEnvironment;
+    if (base != appliedEnvironment) {
+      // Copy the snapshot only once as long as it's not changed
+      Map<String, String> env = builder.environment();
+      env.clear();
+      env.putAll((base == null ? EnvironmentSnapshot.inherit() : base).getVariables());
+      appliedEnvironment = base;
+    }
     if (environment.isEmpty()) {
       return; // skip
     }
@@ -1260,12 +2285,22 @@ public class ProcessExecutor {
       return command;
     }
     List<String> result = new ArrayList<String>(command);
-    for (ListIterator it = result.listIterator(); it.hasNext(); ) {
-      if ("".equals(it.next())) {
-        it.set("\"\"");
-      }
+    for (ListIterator<String> it = result.listIterator(); it.hasNext(); ) {
+      it.set(fixArgument(it.next()));
     }
     return result;
   }
 
+  /**
+   * Fixes a single command line argument on Windows by replacing an empty argument with <code>""</code>.
+   *
+   * @see #fixArguments(List)
+   */
+  static String fixArgument(String arg) {
+    if (IS_OS_WINDOWS && "".equals(arg)) {
+      return "\"\"";
+    }
+    return arg;
+  }
+
 }
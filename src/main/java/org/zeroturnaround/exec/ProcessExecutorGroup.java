@@ -0,0 +1,454 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.zeroturnaround.exec.admission.AdmissionController;
+import org.zeroturnaround.exec.listener.ProcessListener;
+
+/**
+ * Group of {@link ProcessExecutor}s sharing threads, admission limits, listeners and a registry of their running processes.
+ * <p>
+ * Executors created by {@link #newExecutor(String...)} wait for their processes and enforce their timeouts on a thread pool
+ * shared by the group instead of creating new threads for each process, request permits from the group's
+ * {@link AdmissionController} (if set) and notify the group's listeners. The group keeps track of the processes
+ * that are running and counts started, finished and failed processes.
+ * {@link #close()} refuses to start any more processes and destroys all running processes in parallel.
+ * </p>
+ * <pre>
+ * ProcessExecutorGroup group = new ProcessExecutorGroup("tenant-42").admission(new AdmissionController(8));
+ * ProcessResult result = group.newExecutor("convert", in, out).timeout(1, TimeUnit.MINUTES).execute();
+ * ...
+ * group.close();
+ * </pre>
+ * <p>
+ * The threads pumping the standard streams are still created per process by the {@link org.zeroturnaround.exec.stream.PumpStreamHandler},
+ * as they are joined when the streams are closed.
+ * </p>
+ *
+ * @since 1.14
+ */
+public class ProcessExecutorGroup {
+
+  private static final Logger log = LoggerFactory.getLogger(ProcessExecutorGroup.class);
+
+  private final String name;
+
+  /**
+   * Threads waiting for the processes of this group.
+   */
+  private final ExecutorService service;
+
+  private final List<ProcessListener> listeners = new CopyOnWriteArrayList<ProcessListener>();
+
+  /**
+   * Running processes with the executors that started them.
+   */
+  private final Map<Process, ProcessExecutor> live = new IdentityHashMap<Process, ProcessExecutor>();
+
+  private volatile AdmissionController admission;
+
+  private volatile boolean closed;
+
+  private final AtomicLong started = new AtomicLong();
+
+  private final AtomicLong finished = new AtomicLong();
+
+  private final AtomicLong stopped = new AtomicLong();
+
+  /**
+   * @param name name of the group, used for naming its threads.
+   */
+  public ProcessExecutorGroup(String name) {
+    this.name = name;
+    final String prefix = "ProcessExecutorGroup-" + name + "-";
+    this.service = Executors.newCachedThreadPool(new ThreadFactory() {
+      private final AtomicInteger threadCount = new AtomicInteger();
+
+      public Thread newThread(Runnable r) {
+        // Use daemon threads as we don't want to postpone the shutdown
+        Thread t = new Thread(r, prefix + threadCount.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      }
+    });
+  }
+
+  /**
+   * Sets the controller which grants permits to all processes of this group.
+   * It applies to the executors created by this group afterwards.
+   *
+   * @param admission controller shared by the processes of this group (<code>null</code> means starting is not limited).
+   * @return This group.
+   */
+  public ProcessExecutorGroup admission(AdmissionController admission) {
+    this.admission = admission;
+    return this;
+  }
+
+  /**
+   * @return controller which grants permits to the processes of this group or <code>null</code> if starting is not limited.
+   */
+  public AdmissionController getAdmission() {
+    return admission;
+  }
+
+  /**
+   * Adds a listener notified about the processes of all executors of this group, including the ones created before.
+   *
+   * @param listener process event listener to be added.
+   * @return This group.
+   */
+  public ProcessExecutorGroup addListener(ProcessListener listener) {
+    listeners.add(listener);
+    return this;
+  }
+
+  /**
+   * Removes a listener added by {@link #addListener(ProcessListener)}.
+   *
+   * @param listener process event listener to be removed.
+   * @return This group.
+   */
+  public ProcessExecutorGroup removeListener(ProcessListener listener) {
+    listeners.remove(listener);
+    return this;
+  }
+
+  /**
+   * Creates a new executor belonging to this group.
+   *
+   * @param command the program and its arguments.
+   * @return new executor.
+   * @throws IllegalStateException if this group has been closed.
+   */
+  public ProcessExecutor newExecutor(String... command) {
+    if (closed)
+      throw new IllegalStateException(this + " is closed.");
+    ProcessExecutor result = new GroupExecutor().command(command);
+    result.addListener(new GroupListener());
+    if (admission != null) {
+      result.admission(admission);
+    }
+    return result;
+  }
+
+  /**
+   * Creates a new executor belonging to this group.
+   *
+   * @param command the program and its arguments.
+   * @return new executor.
+   * @throws IllegalStateException if this group has been closed.
+   */
+  public ProcessExecutor newExecutor(List<String> command) {
+    return newExecutor(command.toArray(new String[command.size()]));
+  }
+
+  /**
+   * @return name of this group.
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return processes of this group which are running at the moment.
+   */
+  public List<Process> getLiveProcesses() {
+    synchronized (live) {
+      return new ArrayList<Process>(live.keySet());
+    }
+  }
+
+  /**
+   * @return number of processes of this group which are running at the moment.
+   */
+  public int getLiveCount() {
+    synchronized (live) {
+      return live.size();
+    }
+  }
+
+  /**
+   * @return number of processes started by this group.
+   */
+  public long getStartedCount() {
+    return started.get();
+  }
+
+  /**
+   * @return number of processes of this group which finished with an allowed exit value.
+   */
+  public long getFinishedCount() {
+    return finished.get();
+  }
+
+  /**
+   * @return number of processes of this group which were stopped, timed out or finished with an unexpected exit value.
+   */
+  public long getFailedCount() {
+    return stopped.get() - finished.get();
+  }
+
+  /**
+   * @return <code>true</code> if {@link #close()} has been invoked.
+   */
+  public boolean isClosed() {
+    return closed;
+  }
+
+  /**
+   * Refuses to start any more processes and destroys the running ones, waiting at most 10 seconds for them to exit.
+   *
+   * @throws InterruptedException if the current thread was interrupted while waiting.
+   */
+  public void close() throws InterruptedException {
+    close(10, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Refuses to start any more processes and destroys the running ones in parallel.
+   * Processes which haven't exited within the given time are destroyed forcibly.
+   * Processes which were already being started when the group was closed are destroyed forcibly once they have started.
+   *
+   * @param timeout maximum time to wait for the processes to exit after destroying them.
+   * @param unit unit of the timeout.
+   * @return <code>true</code> if all processes exited in time.
+   * @throws InterruptedException if the current thread was interrupted while waiting.
+   */
+  public boolean close(final long timeout, final TimeUnit unit) throws InterruptedException {
+    List<Process> processes;
+    synchronized (live) {
+      // Processes registered from now on are destroyed by the listener
+      closed = true;
+      processes = new ArrayList<Process>(live.keySet());
+    }
+    log.debug("Closing {} with {} running processes", this, processes.size());
+    List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>(processes.size());
+    for (final Process process : processes) {
+      tasks.add(new Callable<Boolean>() {
+        public Boolean call() throws Exception {
+          process.destroy();
+          if (process.waitFor(timeout, unit)) {
+            return true;
+          }
+          log.debug("{} did not exit in time, destroying it forcibly", process);
+          process.destroyForcibly();
+          return false;
+        }
+      });
+    }
+    boolean result = true;
+    try {
+      for (Future<Boolean> future : service.invokeAll(tasks)) {
+        try {
+          result &= future.get();
+        }
+        catch (ExecutionException e) {
+          log.warn("Could not destroy a process of " + this + ":", e.getCause());
+          result = false;
+        }
+      }
+    }
+    finally {
+      // Let the waiting tasks finish on their own
+      service.shutdown();
+    }
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return "ProcessExecutorGroup[" + name + "]";
+  }
+
+  /**
+   * Executor using the threads of the group.
+   */
+  private class GroupExecutor extends ProcessExecutor {
+
+    @Override
+    protected ExecutorService newExecutor(String processName) {
+      return new SharedExecutorService(service);
+    }
+
+  }
+
+  /**
+   * Registers the processes of the group and forwards their events to the listeners of the group.
+   */
+  private class GroupListener extends ProcessListener {
+
+    @Override
+    public void beforeStart(ProcessExecutor executor) {
+      if (closed)
+        throw new IllegalStateException(ProcessExecutorGroup.this + " is closed.");
+      for (ProcessListener listener : listeners) {
+        listener.beforeStart(executor);
+      }
+    }
+
+    @Override
+    public void afterStart(Process process, ProcessExecutor executor) {
+      started.incrementAndGet();
+      boolean late;
+      synchronized (live) {
+        live.put(process, executor);
+        late = closed;
+      }
+      if (late) {
+        // Passed beforeStart before the group was closed (e.g. while waiting for admission) but missed by close()
+        log.debug("{} was started after {} was closed, destroying it", process, ProcessExecutorGroup.this);
+        process.destroyForcibly();
+      }
+      for (ProcessListener listener : listeners) {
+        listener.afterStart(process, executor);
+      }
+    }
+
+    @Override
+    public void afterFinish(Process process, ProcessResult result) {
+      finished.incrementAndGet();
+      for (ProcessListener listener : listeners) {
+        listener.afterFinish(process, result);
+      }
+    }
+
+    @Override
+    public void afterStop(Process process) {
+      stopped.incrementAndGet();
+      synchronized (live) {
+        live.remove(process);
+      }
+      for (ProcessListener listener : listeners) {
+        listener.afterStop(process);
+      }
+    }
+
+  }
+
+  /**
+   * View of a shared {@link ExecutorService} for the tasks of a single process.
+   * Shutting it down only affects the tasks submitted through it, the shared threads keep running.
+   */
+  private static class SharedExecutorService extends AbstractExecutorService {
+
+    private final ExecutorService delegate;
+
+    private final Set<Future<?>> tasks = Collections.newSetFromMap(new IdentityHashMap<Future<?>, Boolean>());
+
+    private volatile boolean shutdown;
+
+    SharedExecutorService(ExecutorService delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+      return track(new FutureTask<T>(callable));
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+      return track(new FutureTask<T>(runnable, value));
+    }
+
+    private <T> RunnableFuture<T> track(RunnableFuture<T> task) {
+      synchronized (tasks) {
+        tasks.add(task);
+      }
+      return task;
+    }
+
+    public void execute(Runnable command) {
+      if (shutdown)
+        throw new RejectedExecutionException("Executor has been shut down.");
+      delegate.execute(command);
+    }
+
+    public void shutdown() {
+      shutdown = true;
+    }
+
+    public List<Runnable> shutdownNow() {
+      shutdown = true;
+      synchronized (tasks) {
+        // Interrupt the tasks that are still running
+        for (Future<?> task : tasks) {
+          task.cancel(true);
+        }
+        tasks.clear();
+      }
+      return Collections.emptyList();
+    }
+
+    public boolean isShutdown() {
+      return shutdown;
+    }
+
+    public boolean isTerminated() {
+      if (!shutdown) {
+        return false;
+      }
+      synchronized (tasks) {
+        for (Future<?> task : tasks) {
+          if (!task.isDone()) {
+            return false;
+          }
+        }
+      }
+      return true;
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+      long deadline = System.nanoTime() + unit.toNanos(timeout);
+      while (!isTerminated()) {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+          return false;
+        }
+        Thread.sleep(Math.max(1, Math.min(10, TimeUnit.NANOSECONDS.toMillis(remaining))));
+      }
+      return true;
+    }
+
+  }
+
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeoutException;
+
+import org.zeroturnaround.exec.admission.AdmissionController;
+
+/**
+ * Pipeline of processes connected by operating system pipes, like <code>cmd1 | cmd2 | cmd3</code> in a shell.
+ * <p>
+ * The stages are started together using <code>ProcessBuilder.startPipeline</code> (Java 9 or later),
+ * so the output of each stage flows directly into the input of the next one without being copied through the JVM.
+ * Each stage is configured by its own {@link ProcessExecutor}: its exit values, timeouts, stopper and listeners
+ * apply to that stage, and its error stream is handled as usual.
+ * The error streams of the stages before the last one are never merged into their output (which is piped into the next stage),
+ * even if {@link ProcessExecutor#redirectErrorStream(boolean)} is set, so they are pumped separately by their stream handlers.
+ * The input of the first stage and the output of the last stage are handled by their executors as well,
+ * so e.g. {@link ProcessExecutor#readOutput(boolean)} on the last stage captures the output of the whole pipeline.
+ * </p>
+ * <pre>
+ * String count = new ProcessPipeline(
+ *     new ProcessExecutor("cat", "access.log"),
+ *     new ProcessExecutor("grep", "ERROR"),
+ *     new ProcessExecutor("wc", "-l").readOutput(true)
+ * ).execute().outputUTF8();
+ * </pre>
+ * <p>
+ * If any stage fails (e.g. with an unexpected exit value or a timeout) the other stages are stopped
+ * and the failure of the stage is thrown. Note that earlier stages may be stopped by <code>SIGPIPE</code>
+ * once a later stage exits without reading all of its input, allow their exit values if that's expected.
+ * Spawners set by {@link ProcessExecutor#spawner(org.zeroturnaround.exec.spawn.ProcessSpawner)} are not used.
+ * </p>
+ * <p>
+ * Each stage holds a permit of its {@link ProcessExecutor#admission(AdmissionController) admission controller} while it runs.
+ * The permits of all stages are acquired before the pipeline is started (one pipeline at a time, so that pipelines
+ * waiting for permits can't block each other), so a controller must allow at least as many processes as there are stages using it.
+ * Programs are looked up by the {@link ProcessExecutor#resolver(ExecutableResolver) resolver} of each stage.
+ * </p>
+ *
+ * @since 1.14
+ */
+public class ProcessPipeline {
+
+  /**
+   * <code>ProcessBuilder.startPipeline(List)</code> added in Java 9.
+   */
+  private static final Method METHOD_START_PIPELINE = findStartPipeline();
+
+  private static Method findStartPipeline() {
+    try {
+      return ProcessBuilder.class.getMethod("startPipeline", List.class);
+    }
+    catch (Exception e) {
+      // ignore
+    }
+    return null;
+  }
+
+  /**
+   * Held while acquiring the admission permits of the stages of a pipeline.
+   * Single processes hold at most one permit, so only pipelines could otherwise block each other by holding some permits each.
+   */
+  private static final Object ADMISSION_LOCK = new Object();
+
+  private final List<ProcessExecutor> stages;
+
+  /**
+   * @param stages executors of the stages in the order of the pipeline.
+   */
+  public ProcessPipeline(ProcessExecutor... stages) {
+    this(Arrays.asList(stages));
+  }
+
+  /**
+   * @param stages executors of the stages in the order of the pipeline.
+   */
+  public ProcessPipeline(List<ProcessExecutor> stages) {
+    if (stages.isEmpty())
+      throw new IllegalArgumentException("Pipeline must have at least one stage.");
+    this.stages = Collections.unmodifiableList(new ArrayList<ProcessExecutor>(stages));
+  }
+
+  /**
+   * @return <code>true</code> if native pipelines are supported by the current JVM (Java 9 or later).
+   */
+  public static boolean isSupported() {
+    return METHOD_START_PIPELINE != null;
+  }
+
+  /**
+   * @return executors of the stages in the order of the pipeline.
+   */
+  public List<ProcessExecutor> getStages() {
+    return stages;
+  }
+
+  /**
+   * Starts all stages and waits until they have finished.
+   *
+   * @return exit value and output of the last stage and the results of all stages.
+   * @throws IOException an error occurred when the processes were started or their output was read.
+   * @throws InterruptedException if the current thread was interrupted (all stages are stopped as well).
+   * @throws TimeoutException if a stage timed out (all stages are stopped as well).
+   * @throws InvalidExitValueException if a stage exited with an unexpected exit value (all stages are stopped as well).
+   * @throws UnsupportedOperationException if the current JVM does not support native pipelines.
+   */
+  public PipelineResult execute() throws IOException, InterruptedException, TimeoutException, InvalidExitValueException {
+    final List<WaitForProcess> tasks = start();
+    ExecutorService service = newExecutor(tasks.size());
+    List<Future<ProcessResult>> futures = new ArrayList<Future<ProcessResult>>();
+    try {
+      ExecutorCompletionService<ProcessResult> completion = new ExecutorCompletionService<ProcessResult>(service);
+      for (int i = 0; i < tasks.size(); i++) {
+        final ProcessExecutor stage = stages.get(i);
+        final WaitForProcess task = tasks.get(i);
+        futures.add(completion.submit(stage.wrapTask(new Callable<ProcessResult>() {
+          public ProcessResult call() throws Exception {
+            return stage.waitFor(task);
+          }
+        })));
+      }
+      // Wait in the order of completion so that the first failure stops the rest
+      for (int i = 0; i < tasks.size(); i++) {
+        completion.take().get();
+      }
+      List<ProcessResult> results = new ArrayList<ProcessResult>(futures.size());
+      for (Future<ProcessResult> future : futures) {
+        results.add(future.get());
+      }
+      return new PipelineResult(results);
+    }
+    catch (ExecutionException e) {
+      Throwable c = e.getCause();
+      if (c instanceof TimeoutException) {
+        throw (TimeoutException) c;
+      }
+      if (c instanceof RuntimeException) {
+        throw (RuntimeException) c;
+      }
+      if (c instanceof Error) {
+        throw (Error) c;
+      }
+      throw ProcessExecutor.unwrap(e);
+    }
+    finally {
+      // Interrupting the waiting tasks stops the processes which are still running
+      for (Future<ProcessResult> future : futures) {
+        future.cancel(true);
+      }
+      service.shutdownNow();
+    }
+  }
+
+  private List<WaitForProcess> start() throws IOException {
+    if (METHOD_START_PIPELINE == null) {
+      throw new UnsupportedOperationException("Native process pipelines require Java 9 or later.");
+    }
+    long startTime = System.nanoTime();
+    List<Long> deadlines = new ArrayList<Long>(stages.size());
+    List<ProcessBuilder> builders = new ArrayList<ProcessBuilder>(stages.size());
+    for (ProcessExecutor stage : stages) {
+      deadlines.add(stage.prepareStart(startTime, true));
+      builders.add(stage.getProcessBuilder());
+    }
+    // Only the error stream of the last stage may be merged, the others would end up in the input of the next stage
+    boolean[] redirectErrorStreams = new boolean[builders.size() - 1];
+    for (int i = 0; i < redirectErrorStreams.length; i++) {
+      redirectErrorStreams[i] = builders.get(i).redirectErrorStream();
+      builders.get(i).redirectErrorStream(false);
+    }
+    List<AdmissionController.Permit> permits = new ArrayList<AdmissionController.Permit>(stages.size());
+    List<Process> processes = null;
+    List<WaitForProcess> result = new ArrayList<WaitForProcess>(stages.size());
+    boolean started = false;
+    try {
+      synchronized (ADMISSION_LOCK) {
+        for (int i = 0; i < stages.size(); i++) {
+          permits.add(stages.get(i).acquirePermit(deadlines.get(i)));
+        }
+      }
+      processes = startPipeline(builders);
+      for (int i = 0; i < processes.size(); i++) {
+        WaitForProcess task = stages.get(i).startInternal(processes.get(i), startTime, deadlines.get(i), null);
+        result.add(task);
+        // Released by the task once the stage has finished
+        task.setPermit(permits.get(i));
+      }
+      started = true;
+    }
+    finally {
+      for (int i = 0; i < redirectErrorStreams.length; i++) {
+        builders.get(i).redirectErrorStream(redirectErrorStreams[i]);
+      }
+      if (!started) {
+        if (processes != null) {
+          for (Process process : processes) {
+            process.destroy();
+          }
+        }
+        // The tasks are never run, so they don't release their permits
+        for (AdmissionController.Permit permit : permits) {
+          if (permit != null) {
+            permit.cancel();
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Starts the processes using the paths of the programs looked up by the resolvers of the stages.
+   */
+  private List<Process> startPipeline(List<ProcessBuilder> builders) throws IOException {
+    List<String> programs = new ArrayList<String>(builders.size());
+    for (int i = 0; i < builders.size(); i++) {
+      List<String> command = builders.get(i).command();
+      programs.add(command.get(0));
+      String path = stages.get(i).resolveProgram();
+      if (path != null) {
+        command.set(0, path);
+      }
+    }
+    try {
+      return invokeStartPipeline(builders);
+    }
+    catch (IOException e) {
+      if (ExecutableResolver.isNotFound(e)) {
+        // A cached executable may have been removed, look it up again next time
+        for (ProcessExecutor stage : stages) {
+          stage.invalidateProgram();
+        }
+      }
+      throw e;
+    }
+    finally {
+      for (int i = 0; i < builders.size(); i++) {
+        builders.get(i).command().set(0, programs.get(i));
+      }
+    }
+  }
+
+  /**
+   * @return executor with a daemon thread for waiting on each stage.
+   */
+  private ExecutorService newExecutor(int threads) {
+    final String name = "WaitForPipeline-" + this;
+    return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, name);
+        t.setDaemon(true);
+        return t;
+      }
+    });
+  }
+
+  @SuppressWarnings("unchecked")
+  private static List<Process> invokeStartPipeline(List<ProcessBuilder> builders) throws IOException {
+    try {
+      return (List<Process>) METHOD_START_PIPELINE.invoke(null, builders);
+    }
+    catch (InvocationTargetException e) {
+      Throwable c = e.getCause();
+      if (c instanceof IOException) {
+        throw (IOException) c;
+      }
+      if (c instanceof RuntimeException) {
+        throw (RuntimeException) c;
+      }
+      throw new IllegalStateException("Could not start pipeline:", c);
+    }
+    catch (IllegalAccessException e) {
+      throw new IllegalStateException("Could not start pipeline:", e);
+    }
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    for (ProcessExecutor stage : stages) {
+      if (sb.length() > 0) {
+        sb.append(" | ");
+      }
+      sb.append(stage.getCommand());
+    }
+    return sb.toString();
+  }
+
+}
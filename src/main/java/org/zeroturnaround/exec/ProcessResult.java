@@ -17,6 +17,8 @@
  */
 package org.zeroturnaround.exec;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * Exit value and output of a finished process.
  *
@@ -35,9 +37,39 @@ public class ProcessResult {
    */
   private final ProcessOutput output;
 
+  /**
+   * <code>true</code> if the process' streams were not read to their end.
+   */
+  private final boolean outputTruncated;
+
+  /**
+   * Number of bytes read from the process' output and error streams or <code>-1</code> if they were not pumped.
+   */
+  private final long outputByteCount;
+
+  /**
+   * Output pattern which caused the process to be stopped or <code>null</code> if none was found.
+   */
+  private final String matchedPattern;
+
   public ProcessResult(int exitCode, ProcessOutput output) {
+    this(exitCode, output, false, -1, null);
+  }
+
+  /**
+   * @param exitCode exit value of the finished process.
+   * @param output process output or <code>null</code> if it wasn't read.
+   * @param outputTruncated <code>true</code> if not all of the process' output was retained.
+   * @param outputByteCount number of bytes read from the process' output and error streams or <code>-1</code> if they were not pumped.
+   * @param matchedPattern output pattern which caused the process to be stopped or <code>null</code> if none was found.
+   * @since 1.14
+   */
+  public ProcessResult(int exitCode, ProcessOutput output, boolean outputTruncated, long outputByteCount, String matchedPattern) {
     this.exitValue = exitCode;
     this.output = output;
+    this.outputTruncated = outputTruncated;
+    this.outputByteCount = outputByteCount;
+    this.matchedPattern = matchedPattern;
   }
 
   /**
@@ -55,6 +87,43 @@ public class ProcessResult {
     return getExitValue();
   }
 
+  /**
+   * @return <code>true</code> if not all of the process' output was retained:
+   * either pumping the process' streams was given up before they ended
+   * (e.g. because a background grandchild process kept them open after the process exited)
+   * or the process exceeded its output limit.
+   * Any output read (including the one returned by {@link #getOutput()}) is then incomplete.
+   *
+   * @see ProcessExecutor#drainTimeout(long, long, TimeUnit)
+   * @see ProcessExecutor#closeTimeout(long, TimeUnit)
+   * @see ProcessExecutor#maxOutputBytes(long)
+   * @since 1.14
+   */
+  public boolean isOutputTruncated() {
+    return outputTruncated;
+  }
+
+  /**
+   * @return number of bytes read from the process' output and error streams (including any discarded ones)
+   * or <code>-1</code> if the streams were not pumped by a {@link org.zeroturnaround.exec.stream.PumpStreamHandler}.
+   * Compare with the length of {@link #output()} for the number of bytes retained.
+   * @since 1.14
+   */
+  public long getOutputByteCount() {
+    return outputByteCount;
+  }
+
+  /**
+   * @return the output pattern which caused the process to be stopped or <code>null</code> if none was found.
+   * The exit value is then the one of the stopped process.
+   *
+   * @see ProcessExecutor#stopOnOutput(String...)
+   * @since 1.14
+   */
+  public String getMatchedPattern() {
+    return matchedPattern;
+  }
+
   /**
    * @return <code>true</code> if the process output was read.
    */
@@ -0,0 +1,310 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.zeroturnaround.exec.admission.AdmissionController;
+import org.zeroturnaround.exec.close.DrainPolicy;
+import org.zeroturnaround.exec.listener.ProcessListener;
+import org.zeroturnaround.exec.spawn.ProcessSpawner;
+import org.zeroturnaround.exec.stop.ProcessStopper;
+import org.zeroturnaround.exec.stream.PumpStreamHandler;
+
+/**
+ * Immutable specification of a process compiled from a {@link ProcessExecutor} by {@link ProcessExecutor#spec()}.
+ * <p>
+ * Everything that doesn't change between the executions is prepared once: the command line,
+ * the complete environment of the child process, the accepted exit values (as a sorted primitive array),
+ * the messages used for logging and errors and the stream configuration.
+ * Starting a process only creates the objects that belong to it (its {@link ProcessBuilder}, stream pumps and the waiting task),
+ * so a spec can be shared by any number of threads which start the same command over and over again.
+ * </p>
+ * <pre>
+ * ProcessSpec spec = new ProcessExecutor("git", "rev-parse", "HEAD").directory(repo).readOutput(true).spec();
+ * // From any thread
+ * String head = spec.execute().outputUTF8();
+ * </pre>
+ * <p>
+ * The output and error streams of the executor are shared by all processes started from the spec, so they must be thread-safe
+ * (e.g. {@link org.zeroturnaround.exec.stream.slf4j.Slf4jStream}). The same applies to the stopper, spawner and listeners.
+ * The processes are waited for by the threads of the executor the spec was compiled from
+ * (see {@link ProcessExecutor#newExecutor(String)}), e.g. the shared threads of a {@link ProcessExecutorGroup}.
+ * </p>
+ *
+ * @since 1.14
+ */
+public final class ProcessSpec {
+
+  private static final Logger log = LoggerFactory.getLogger(ProcessSpec.class);
+
+  /**
+   * Executor which this spec was compiled from, passed to {@link ProcessListener#afterStart(Process, ProcessExecutor)}
+   * and waiting for the processes in the background.
+   */
+  private final ProcessExecutor source;
+
+  private final String[] command;
+
+  private final File directory;
+
+  /**
+   * Complete environment of the child process.
+   */
+  private final Map<String, String> environment;
+
+  /**
+   * <code>true</code> if the environment of the current process is inherited as is.
+   */
+  private final boolean inheritEnvironment;
+
+  private final boolean redirectErrorStream;
+
+  /**
+   * Attributes shared by all processes, used for checking the exit value and reporting errors.
+   */
+  private final ProcessAttributes attributes;
+
+  /**
+   * Streams the output and error are copied to or <code>null</code> if the standard streams are not handled.
+   */
+  private final PumpStreamHandler pumps;
+
+  private final boolean readOutput;
+
+  private final Long timeout;
+  private final TimeUnit timeoutUnit;
+
+  private final Long closeTimeout;
+  private final TimeUnit closeTimeoutUnit;
+
+  private final DrainPolicy drainPolicy;
+
+  private final ProcessStopper stopper;
+
+  private final ProcessSpawner spawner;
+
+  private final ExecutableResolver resolver;
+
+  private final AdmissionController admission;
+
+  private final int admissionPriority;
+
+  private final ProcessListener listener;
+
+  private final MessageLogger messageLogger;
+
+  /**
+   * Directory and environment appended to the command in messages.
+   */
+  private final String messageSuffix;
+
+  ProcessSpec(ProcessExecutor source, List<String> command, File directory, EnvironmentSnapshot baseEnvironment, Map<String, String> environment, boolean redirectErrorStream,
+      int[] allowedExitValues, PumpStreamHandler pumps, boolean readOutput,
+      Long timeout, TimeUnit timeoutUnit, Long closeTimeout, TimeUnit closeTimeoutUnit, DrainPolicy drainPolicy,
+      ProcessStopper stopper, ProcessSpawner spawner, ExecutableResolver resolver, AdmissionController admission, int admissionPriority,
+      ProcessListener listener, MessageLogger messageLogger) {
+    this.source = source;
+    this.command = command.toArray(new String[command.size()]);
+    this.directory = directory;
+    Map<String, String> overrides = Collections.unmodifiableMap(new LinkedHashMap<String, String>(environment));
+    EnvironmentSnapshot snapshot = EnvironmentSnapshot.apply(baseEnvironment, overrides);
+    this.environment = snapshot.getVariables();
+    this.inheritEnvironment = snapshot.isInherited();
+    this.redirectErrorStream = redirectErrorStream;
+    this.attributes = new ProcessAttributes(Collections.unmodifiableList(command), directory, overrides, allowedExitValues);
+    this.pumps = pumps;
+    this.readOutput = readOutput;
+    this.timeout = timeout;
+    this.timeoutUnit = timeoutUnit;
+    this.closeTimeout = closeTimeout;
+    this.closeTimeoutUnit = closeTimeoutUnit;
+    this.drainPolicy = drainPolicy;
+    this.stopper = stopper;
+    this.spawner = spawner;
+    this.resolver = resolver;
+    this.admission = admission;
+    this.admissionPriority = admissionPriority;
+    this.listener = listener;
+    this.messageLogger = messageLogger;
+
+    StringBuilder sb = new StringBuilder();
+    if (directory != null) {
+      sb.append(" in ").append(directory);
+    }
+    if (!overrides.isEmpty()) {
+      sb.append(" with environment ").append(overrides);
+    }
+    sb.append(".");
+    this.messageSuffix = sb.toString();
+  }
+
+  /**
+   * @return the program and its arguments.
+   */
+  public List<String> getCommand() {
+    return attributes.getCommand();
+  }
+
+  /**
+   * @return working directory of the process, <code>null</code> in case of the current working directory.
+   */
+  public File getDirectory() {
+    return directory;
+  }
+
+  /**
+   * @return complete environment of the process (unmodifiable).
+   */
+  public Map<String, String> getEnvironment() {
+    return environment;
+  }
+
+  /**
+   * @return <code>true</code> if the error stream of the process is merged into its output stream.
+   */
+  public boolean isRedirectErrorStream() {
+    return redirectErrorStream;
+  }
+
+  /**
+   * @return <code>true</code> if the output of the process is returned by {@link ProcessResult#output()}.
+   */
+  public boolean isReadOutput() {
+    return readOutput;
+  }
+
+  /**
+   * @param exitValue exit code of a process.
+   * @return <code>true</code> if the given exit code is accepted.
+   */
+  public boolean isAllowedExitValue(int exitValue) {
+    return attributes.isAllowedExitValue(exitValue);
+  }
+
+  /**
+   * Executes a new process and waits until it exits or the timeout of the executor is reached.
+   *
+   * @return result of the finished process.
+   * @throws IOException an error occurred when process was started or stopped.
+   * @throws InterruptedException this thread was interrupted.
+   * @throws TimeoutException timeout of the executor was reached (a {@link ProcessTimeoutException}).
+   * @throws InvalidExitValueException if invalid exit value was returned.
+   */
+  public ProcessResult execute() throws IOException, InterruptedException, TimeoutException, InvalidExitValueException {
+    return execute(command, attributes);
+  }
+
+  /**
+   * Executes a new process with the given command line instead of the compiled one.
+   */
+  ProcessResult execute(String[] command, ProcessAttributes attributes) throws IOException, InterruptedException, TimeoutException, InvalidExitValueException {
+    long startTime = System.nanoTime();
+    Long deadline = timeout == null ? null : startTime + timeoutUnit.toNanos(timeout);
+    WaitForProcess task = startInternal(command, attributes, startTime, deadline);
+    return source.waitFor(task, timeout, timeoutUnit, null, null, null, null);
+  }
+
+  /**
+   * Starts a new process without waiting for it to exit. The timeout of the executor is ignored.
+   * Invoke <code>future.cancel(true);</code> to destroy the process.
+   *
+   * @return the started process and the future of its result.
+   * @throws IOException an error occurred when process was started.
+   */
+  public StartedProcess start() throws IOException {
+    return start(command, attributes);
+  }
+
+  /**
+   * Starts a new process with the given command line instead of the compiled one.
+   */
+  StartedProcess start(String[] command, ProcessAttributes attributes) throws IOException {
+    return source.start(startInternal(command, attributes, System.nanoTime(), null));
+  }
+
+  /**
+   * Creates the attributes of a process started with the given command line instead of the compiled one.
+   */
+  ProcessAttributes newAttributes(String[] command) {
+    return new ProcessAttributes(Collections.unmodifiableList(Arrays.asList(command)), directory,
+        attributes.getEnvironment(), attributes.getAllowedExitValues());
+  }
+
+  private WaitForProcess startInternal(String[] command, ProcessAttributes attributes, long startTime, Long deadline) throws IOException {
+    messageLogger.message(log, "Executing {}{}", attributes.getCommand(), messageSuffix);
+    AdmissionController.Permit permit = ProcessExecutor.acquirePermit(admission, admissionPriority, deadline);
+    boolean started = false;
+    try {
+      Process process = ProcessExecutor.invokeStart(newProcessBuilder(command), spawner, resolver,
+          "Could not execute " + attributes.getCommand() + messageSuffix);
+      messageLogger.message(log, "Started {}", process);
+      ByteArrayOutputStream out = null;
+      PumpStreamHandler streams = null;
+      if (pumps != null) {
+        if (readOutput) {
+          out = new ByteArrayOutputStream();
+          streams = ProcessExecutor.redirectOutputAlsoTo(pumps, out);
+        }
+        else {
+          streams = new PumpStreamHandler(pumps.getOut(), pumps.getErr());
+        }
+        ProcessExecutor.startStreams(process, streams, redirectErrorStream);
+      }
+      WaitForProcess result = new WaitForProcess(process, attributes, stopper,
+          ProcessExecutor.newProcessCloser(streams, drainPolicy, closeTimeout, closeTimeoutUnit, deadline), streams,
+          null, null, out, listener, messageLogger, startTime, deadline);
+      result.setPermit(permit);
+      listener.afterStart(process, source);
+      started = true;
+      return result;
+    }
+    finally {
+      if (!started && permit != null) {
+        permit.cancel();
+      }
+    }
+  }
+
+  private ProcessBuilder newProcessBuilder(String[] command) {
+    ProcessBuilder builder = new ProcessBuilder(command).directory(directory).redirectErrorStream(redirectErrorStream);
+    if (!inheritEnvironment) {
+      Map<String, String> env = builder.environment();
+      env.clear();
+      env.putAll(environment);
+    }
+    return builder;
+  }
+
+  @Override
+  public String toString() {
+    return "ProcessSpec" + Arrays.toString(command);
+  }
+
+}
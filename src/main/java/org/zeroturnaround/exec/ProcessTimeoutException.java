@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Timeout reached while executing a process, identifying the phase of the execution that ran out of time.
+ *
+ * @since 1.14
+ */
+public class ProcessTimeoutException extends TimeoutException {
+
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Phase of the process execution.
+   */
+  public enum Phase {
+
+    /**
+     * Starting the process took the whole time of {@link ProcessExecutor#timeout(long, TimeUnit)}.
+     */
+    START,
+
+    /**
+     * The process didn't produce any output within {@link ProcessExecutor#firstOutputTimeout(long, TimeUnit)}.
+     */
+    FIRST_OUTPUT,
+
+    /**
+     * The process didn't produce any output within {@link ProcessExecutor#idleTimeout(long, TimeUnit)}.
+     */
+    IDLE,
+
+    /**
+     * The process didn't write the expected output within the timeout of {@link ProcessExecutor#startAndAwait(String, long, TimeUnit)}.
+     */
+    READY,
+
+    /**
+     * The process was still running when {@link ProcessExecutor#timeout(long, TimeUnit)} was reached.
+     */
+    RUNNING,
+
+    /**
+     * The process had exited but its streams were still being closed when {@link ProcessExecutor#timeout(long, TimeUnit)} was reached.
+     */
+    CLOSE
+
+  }
+
+  /**
+   * Phase of the execution which ran out of time.
+   */
+  private final Phase phase;
+
+  /**
+   * @param message the detail message of the exception
+   * @param phase phase of the execution which ran out of time
+   */
+  public ProcessTimeoutException(String message, Phase phase) {
+    super(message);
+    this.phase = phase;
+  }
+
+  /**
+   * @return phase of the execution which ran out of time.
+   */
+  public Phase getPhase() {
+    return phase;
+  }
+
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.zeroturnaround.exec.stream.LogOutputStream;
+import org.zeroturnaround.exec.stream.MatchingOutputStream;
+import org.zeroturnaround.exec.stream.MultiPatternMatcher;
+import org.zeroturnaround.exec.stream.NullOutputStream;
+import org.zeroturnaround.exec.stream.PumpStreamHandler;
+
+/**
+ * Detects when a started process is ready by searching its output and error streams.
+ * <p>
+ * Once the probe has fired, the streams only pass the data on without searching or decoding it.
+ * </p>
+ */
+class ReadinessProbe {
+
+  private static final Logger log = LoggerFactory.getLogger(ReadinessProbe.class);
+
+  /**
+   * Literal to search for or <code>null</code> if a regular expression is used.
+   */
+  private final MultiPatternMatcher matcher;
+
+  /**
+   * Regular expression to search for in each line or <code>null</code> if a literal is used.
+   */
+  private final Pattern pattern;
+
+  /**
+   * Released once the process is ready or has finished.
+   */
+  private final CountDownLatch latch = new CountDownLatch(1);
+
+  private volatile boolean ready;
+
+  /**
+   * @param literal literal to search for in the output, encoded in UTF-8.
+   */
+  public ReadinessProbe(String literal) {
+    this.matcher = new MultiPatternMatcher(literal);
+    this.pattern = null;
+  }
+
+  /**
+   * @param pattern regular expression to search for in each line of the output.
+   */
+  public ReadinessProbe(Pattern pattern) {
+    this.matcher = null;
+    this.pattern = pattern;
+  }
+
+  /**
+   * @return new stream handler which searches the output and error streams of the given one.
+   */
+  public PumpStreamHandler apply(PumpStreamHandler pumps) {
+    return new PumpStreamHandler(probe(pumps.getOut()), probe(pumps.getErr()), pumps.getInput());
+  }
+
+  private OutputStream probe(OutputStream out) {
+    if (out == null) {
+      // The stream must still be pumped to be searched
+      out = new NullOutputStream();
+    }
+    if (matcher != null) {
+      return new MatchingOutputStream(out, matcher, new MatchingOutputStream.MatchListener() {
+        public void matched(String pattern) {
+          onReady();
+        }
+      });
+    }
+    return new LineProbeOutputStream(out);
+  }
+
+  private void onReady() {
+    if (!ready) {
+      ready = true;
+      log.debug("Process output matched {}", this);
+      latch.countDown();
+    }
+  }
+
+  /**
+   * Invoked once the process has finished (regardless of whether it became ready).
+   */
+  public void finish() {
+    latch.countDown();
+  }
+
+  /**
+   * Waits until the process is ready or has finished.
+   */
+  public void await(long timeout, TimeUnit unit) throws InterruptedException {
+    latch.await(timeout, unit);
+  }
+
+  /**
+   * @return <code>true</code> if the process has written the expected output.
+   */
+  public boolean isReady() {
+    return ready;
+  }
+
+  /**
+   * @return <code>true</code> if either the process is ready or has finished.
+   */
+  public boolean isDone() {
+    return latch.getCount() == 0;
+  }
+
+  @Override
+  public String toString() {
+    return matcher != null ? "'" + matcher.getPattern(0) + "'" : "/" + pattern.pattern() + "/";
+  }
+
+  /**
+   * Passes all data on and matches each line with the regular expression until the probe fires.
+   */
+  private class LineProbeOutputStream extends FilterOutputStream {
+
+    /**
+     * Splits the data into lines or <code>null</code> once the probe has fired.
+     */
+    private LogOutputStream lines = new LogOutputStream() {
+      @Override
+      protected void processLine(String line) {
+        if (pattern.matcher(line).find()) {
+          onReady();
+        }
+      }
+    };
+
+    public LineProbeOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+      if (isProbing()) {
+        lines.write(b);
+      }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      if (isProbing()) {
+        lines.write(b, off, len);
+      }
+    }
+
+    private boolean isProbing() {
+      if (ready) {
+        // Release the line buffer, the rest of the output is just passed on
+        lines = null;
+      }
+      return lines != null;
+    }
+
+  }
+
+}
@@ -0,0 +1,454 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.zeroturnaround.exec.stream.NullOutputStream;
+
+/**
+ * Caches the results of processes which are pure functions of their command line, environment, working directory,
+ * input and a declared set of input files.
+ * <p>
+ * Each execution is identified by a SHA-256 hash of these attributes (the environment includes the variables inherited
+ * from the current process). Input files are identified by their path, size and modification time
+ * (directories by all files in them), so modifying any of them leads to a new key and the next execution is a miss.
+ * On a hit the cached exit value and output are returned right away without starting a process or invoking any listeners.
+ * Only successful executions are cached; the exit value is checked again against the allowed exit values of each executor.
+ * Results with incomplete output (truncated or stopped by {@link ProcessExecutor#stopOnOutput(String...)}) are not cached.
+ * The output limits and stop patterns of the executor are part of the key as well.
+ * </p>
+ * <p>
+ * Results are kept in memory in least recently used order and optionally in a directory, so that they survive restarts
+ * and can be shared by processes. Note that a hit does not write anything to the streams set by e.g.
+ * {@link ProcessExecutor#redirectOutput(OutputStream)}, use {@link ProcessExecutor#readOutput(boolean)} to capture the output instead.
+ * </p>
+ * <pre>
+ * ResultCache cache = new ResultCache(1000).directory(new File("build/exec-cache"));
+ * ProcessResult result = cache.execute(new ProcessExecutor("protoc", "--version").readOutput(true));
+ * </pre>
+ *
+ * @since 1.14
+ */
+public class ResultCache {
+
+  private static final Logger log = LoggerFactory.getLogger(ResultCache.class);
+
+  /**
+   * Version of the format of the cached files.
+   */
+  private static final int FORMAT = 1;
+
+  private static final String SUFFIX = ".result";
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private final int maxEntries;
+
+  /**
+   * Cached results by their hex keys in the least recently used order.
+   */
+  private final Map<String, ProcessResult> entries;
+
+  private File directory;
+
+  private final AtomicLong memoryHits = new AtomicLong();
+
+  private final AtomicLong diskHits = new AtomicLong();
+
+  private final AtomicLong misses = new AtomicLong();
+
+  private final AtomicLong evictions = new AtomicLong();
+
+  /**
+   * Creates a cache with only the in-memory tier.
+   *
+   * @param maxEntries maximum number of results kept in memory.
+   */
+  public ResultCache(int maxEntries) {
+    if (maxEntries <= 0)
+      throw new IllegalArgumentException("Maximum number of entries must be positive.");
+    this.maxEntries = maxEntries;
+    this.entries = new LinkedHashMap<String, ProcessResult>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Entry<String, ProcessResult> eldest) {
+        if (size() > ResultCache.this.maxEntries) {
+          evictions.incrementAndGet();
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  /**
+   * Also stores the results in the given directory, one file per result. The directory is created if needed.
+   * Results are looked up there if they are not found in memory.
+   *
+   * @param directory directory of the on-disk tier or <code>null</code> to disable it.
+   * @return This cache.
+   */
+  public ResultCache directory(File directory) {
+    this.directory = directory;
+    return this;
+  }
+
+  /**
+   * @return directory of the on-disk tier or <code>null</code> if it's not used.
+   */
+  public File getDirectory() {
+    return directory;
+  }
+
+  /**
+   * Returns the cached result of the given executor or executes it and caches the result.
+   * The executor must not have an input stream set, as its content could not be hashed.
+   *
+   * @param executor executor of the process.
+   * @param inputFiles files and directories read by the process.
+   * @return result of the process.
+   * @throws IOException an error occurred when process was started or stopped.
+   * @throws InterruptedException if the current thread was interrupted while waiting.
+   * @throws TimeoutException timeout set by {@link ProcessExecutor#timeout(long, java.util.concurrent.TimeUnit)} was reached.
+   * @throws InvalidExitValueException if the cached or actual exit value was not allowed.
+   */
+  public ProcessResult execute(ProcessExecutor executor, File... inputFiles)
+      throws IOException, InterruptedException, TimeoutException, InvalidExitValueException {
+    if (executor.pumps() != null && executor.pumps().getInput() != null)
+      throw new IllegalArgumentException("Input stream can't be hashed, use execute(ProcessExecutor, byte[], File...) instead.");
+    return execute(executor, null, inputFiles);
+  }
+
+  /**
+   * Returns the cached result of the given executor with the given input or executes it and caches the result.
+   * On a miss the input is written to the process instead of the input stream set on the executor (the executor is not modified).
+   *
+   * @param executor executor of the process.
+   * @param input bytes written to the input of the process or <code>null</code> if nothing is written.
+   * @param inputFiles files and directories read by the process.
+   * @return result of the process.
+   * @throws IOException an error occurred when process was started or stopped.
+   * @throws InterruptedException if the current thread was interrupted while waiting.
+   * @throws TimeoutException timeout set by {@link ProcessExecutor#timeout(long, java.util.concurrent.TimeUnit)} was reached.
+   * @throws InvalidExitValueException if the cached or actual exit value was not allowed.
+   */
+  public ProcessResult execute(ProcessExecutor executor, byte[] input, File... inputFiles)
+      throws IOException, InterruptedException, TimeoutException, InvalidExitValueException {
+    String key = getKey(executor, input, inputFiles);
+    ProcessResult result = get(key);
+    if (result != null) {
+      log.debug("Using cached result of {}", executor.getCommand());
+      InvalidExitUtil.checkExit(executor.getAttributes(), result);
+      return result;
+    }
+    misses.incrementAndGet();
+    result = executor.execute(input);
+    if (result.isOutputTruncated() || result.getMatchedPattern() != null) {
+      // The output is incomplete, the next execution may well finish normally
+      log.debug("Not caching the result of {} as its output is incomplete", executor.getCommand());
+      return result;
+    }
+    put(key, new ProcessResult(result.getExitValue(), result.hasOutput() ? result.getOutput() : null));
+    return result;
+  }
+
+  private ProcessResult get(String key) {
+    synchronized (entries) {
+      ProcessResult result = entries.get(key);
+      if (result != null) {
+        memoryHits.incrementAndGet();
+        return result;
+      }
+    }
+    ProcessResult result = read(key);
+    if (result != null) {
+      diskHits.incrementAndGet();
+      synchronized (entries) {
+        entries.put(key, result);
+      }
+    }
+    return result;
+  }
+
+  private void put(String key, ProcessResult result) {
+    synchronized (entries) {
+      entries.put(key, result);
+    }
+    write(key, result);
+  }
+
+  /**
+   * Removes all results from memory and from the directory.
+   */
+  public void clear() {
+    synchronized (entries) {
+      entries.clear();
+    }
+    File dir = directory;
+    File[] files = dir == null ? null : dir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        if (file.getName().endsWith(SUFFIX)) {
+          file.delete();
+        }
+      }
+    }
+  }
+
+  /**
+   * @return number of results kept in memory.
+   */
+  public int size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  /**
+   * @return number of executions served from memory or from the directory.
+   */
+  public long getHitCount() {
+    return memoryHits.get() + diskHits.get();
+  }
+
+  /**
+   * @return number of executions served from memory.
+   */
+  public long getMemoryHitCount() {
+    return memoryHits.get();
+  }
+
+  /**
+   * @return number of executions served from the directory.
+   */
+  public long getDiskHitCount() {
+    return diskHits.get();
+  }
+
+  /**
+   * @return number of executions which started a process.
+   */
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  /**
+   * @return number of results removed from memory to make room for new ones.
+   */
+  public long getEvictionCount() {
+    return evictions.get();
+  }
+
+  /**
+   * @return ratio of hits to all executions or <code>0</code> if there were none.
+   */
+  public double getHitRate() {
+    long hits = getHitCount();
+    long total = hits + misses.get();
+    return total == 0 ? 0 : (double) hits / total;
+  }
+
+  /**
+   * Computes the key identifying an execution of the given executor.
+   */
+  static String getKey(ProcessExecutor executor, byte[] input, File[] inputFiles) throws IOException {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not supported.", e);
+    }
+    DataOutputStream out = new DataOutputStream(new DigestOutputStream(NullOutputStream.NULL_OUTPUT_STREAM, digest));
+    out.writeInt(FORMAT);
+    out.writeInt(executor.getCommand().size());
+    for (String arg : executor.getCommand()) {
+      writeString(out, arg);
+    }
+    File dir = executor.getDirectory();
+    writeString(out, (dir == null ? new File("") : dir).getCanonicalPath());
+    // The environment of the started process is the base one with the additional variables applied
+    Map<String, String> env = new TreeMap<String, String>(executor.getEffectiveEnvironment().getVariables());
+    out.writeInt(env.size());
+    for (Entry<String, String> e : env.entrySet()) {
+      writeString(out, e.getKey());
+      writeString(out, e.getValue());
+    }
+    out.writeBoolean(executor.getProcessBuilder().redirectErrorStream());
+    out.writeBoolean(executor.isReadOutput());
+    executor.writeOutputSettings(out);
+    out.writeInt(input == null ? -1 : input.length);
+    if (input != null) {
+      out.write(input);
+    }
+    out.writeInt(inputFiles.length);
+    for (File file : inputFiles) {
+      writeFile(out, file.getAbsoluteFile());
+    }
+    out.flush();
+    return toHex(digest.digest());
+  }
+
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    byte[] bytes = value.getBytes(UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static void writeFile(DataOutputStream out, File file) throws IOException {
+    writeString(out, file.getPath());
+    if (file.isDirectory()) {
+      out.writeByte('d');
+      String[] names = file.list();
+      if (names == null) {
+        names = new String[0];
+      }
+      Arrays.sort(names);
+      out.writeInt(names.length);
+      for (String name : names) {
+        writeFile(out, new File(file, name));
+      }
+    }
+    else if (file.exists()) {
+      out.writeByte('f');
+      out.writeLong(file.length());
+      out.writeLong(file.lastModified());
+    }
+    else {
+      out.writeByte('-');
+    }
+  }
+
+  private static String toHex(byte[] bytes) {
+    StringBuilder sb = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return sb.toString();
+  }
+
+  private ProcessResult read(String key) {
+    File dir = directory;
+    if (dir == null) {
+      return null;
+    }
+    File file = new File(dir, key + SUFFIX);
+    if (!file.isFile()) {
+      return null;
+    }
+    try {
+      DataInputStream in = new DataInputStream(new FileInputStream(file));
+      try {
+        if (in.readInt() != FORMAT) {
+          return null;
+        }
+        int exitValue = in.readInt();
+        int length = in.readInt();
+        ProcessOutput output = null;
+        if (length >= 0) {
+          byte[] data = new byte[length];
+          in.readFully(data);
+          output = new ProcessOutput(data);
+        }
+        return new ProcessResult(exitValue, output);
+      }
+      finally {
+        in.close();
+      }
+    }
+    catch (IOException e) {
+      log.warn("Could not read cached result " + file + ":", e);
+      return null;
+    }
+  }
+
+  private void write(String key, ProcessResult result) {
+    File dir = directory;
+    if (dir == null) {
+      return;
+    }
+    File file = new File(dir, key + SUFFIX);
+    try {
+      if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+        throw new IOException("Could not create directory " + dir);
+      }
+      // Write to a temporary file first so that readers never see a partial result
+      File tmp = File.createTempFile(key, ".tmp", dir);
+      try {
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(tmp));
+        try {
+          out.writeInt(FORMAT);
+          out.writeInt(result.getExitValue());
+          if (result.hasOutput()) {
+            byte[] data = result.output();
+            out.writeInt(data.length);
+            out.write(data);
+          }
+          else {
+            out.writeInt(-1);
+          }
+        }
+        finally {
+          out.close();
+        }
+        try {
+          Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (AtomicMoveNotSupportedException e) {
+          Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+      }
+      finally {
+        tmp.delete();
+      }
+    }
+    catch (IOException e) {
+      log.warn("Could not write cached result " + file + ":", e);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "ResultCache[size=" + size() + ", hits=" + getHitCount() + ", misses=" + getMissCount() + "]";
+  }
+
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs a command over a large list of arguments in parallel, like <code>xargs -P</code>.
+ * <p>
+ * The arguments are split into chunks bounded by their number and total length (counting the command prefix),
+ * so that each command line stays below the operating system limit.
+ * Each chunk is appended to the command prefix and executed as a separate process,
+ * at most {@link #parallelism(int)} at a time.
+ * </p>
+ * <pre>
+ * ShardedResult result = new ShardedCommand("gzip", "-9").maxArgs(100).execute(paths);
+ * </pre>
+ * <p>
+ * Override {@link #newExecutor(List)} to configure the processes, e.g. their working directory or exit values.
+ * </p>
+ *
+ * @see ProcessExecutor#startAll(java.util.Collection, int, boolean)
+ * @since 1.14
+ */
+public class ShardedCommand {
+
+  /**
+   * Default limit for the length of a command line in bytes (the same as the default of GNU xargs).
+   */
+  public static final int DEFAULT_MAX_BYTES = 128 * 1024;
+
+  private final List<String> prefix;
+
+  private int maxArgs = Integer.MAX_VALUE;
+
+  private int maxBytes = DEFAULT_MAX_BYTES;
+
+  private int parallelism = Runtime.getRuntime().availableProcessors();
+
+  private boolean failFast;
+
+  /**
+   * @param prefix the program and the arguments preceding each chunk of arguments.
+   */
+  public ShardedCommand(String... prefix) {
+    this(Arrays.asList(prefix));
+  }
+
+  /**
+   * @param prefix the program and the arguments preceding each chunk of arguments.
+   */
+  public ShardedCommand(List<String> prefix) {
+    if (prefix.isEmpty())
+      throw new IllegalArgumentException("Command must not be empty.");
+    this.prefix = Collections.unmodifiableList(new ArrayList<String>(prefix));
+  }
+
+  /**
+   * Sets the maximum number of arguments appended to the command prefix in one process.
+   *
+   * @param maxArgs maximum number of arguments per process.
+   * @return This command.
+   */
+  public ShardedCommand maxArgs(int maxArgs) {
+    if (maxArgs <= 0)
+      throw new IllegalArgumentException("Maximum number of arguments must be positive.");
+    this.maxArgs = maxArgs;
+    return this;
+  }
+
+  /**
+   * Sets the maximum length of a command line (including the command prefix) in bytes,
+   * each argument is counted with a terminating null byte.
+   * The initial value is {@link #DEFAULT_MAX_BYTES}.
+   *
+   * @param maxBytes maximum length of a command line.
+   * @return This command.
+   */
+  public ShardedCommand maxBytes(int maxBytes) {
+    if (maxBytes <= 0)
+      throw new IllegalArgumentException("Maximum length must be positive.");
+    this.maxBytes = maxBytes;
+    return this;
+  }
+
+  /**
+   * Sets the maximum number of processes running at once.
+   * The initial value is the number of available processors.
+   *
+   * @param parallelism maximum number of processes running at once.
+   * @return This command.
+   */
+  public ShardedCommand parallelism(int parallelism) {
+    if (parallelism <= 0)
+      throw new IllegalArgumentException("Parallelism must be positive.");
+    this.parallelism = parallelism;
+    return this;
+  }
+
+  /**
+   * Sets whether the first failed process cancels the rest of the chunks.
+   * The initial value is <code>false</code>, i.e. all chunks are executed like <code>xargs</code> does.
+   *
+   * @param failFast <code>true</code> if the first failure cancels the rest.
+   * @return This command.
+   */
+  public ShardedCommand failFast(boolean failFast) {
+    this.failFast = failFast;
+    return this;
+  }
+
+  /**
+   * Splits the given arguments into chunks according to the limits of this command.
+   *
+   * @param args the arguments.
+   * @return the chunks of arguments in their original order.
+   * @throws IllegalArgumentException if a single argument does not fit into a command line.
+   */
+  public List<List<String>> shard(Iterable<String> args) {
+    Charset charset = Charset.defaultCharset();
+    int prefixBytes = 0;
+    for (String arg : prefix) {
+      prefixBytes += length(arg, charset);
+    }
+    List<List<String>> result = new ArrayList<List<String>>();
+    List<String> chunk = new ArrayList<String>();
+    int bytes = prefixBytes;
+    for (String arg : args) {
+      int length = length(arg, charset);
+      if (prefixBytes + length > maxBytes)
+        throw new IllegalArgumentException("Argument does not fit into " + maxBytes + " bytes: " + arg);
+      if (chunk.size() == maxArgs || bytes + length > maxBytes) {
+        result.add(chunk);
+        chunk = new ArrayList<String>();
+        bytes = prefixBytes;
+      }
+      chunk.add(arg);
+      bytes += length;
+    }
+    if (!chunk.isEmpty()) {
+      result.add(chunk);
+    }
+    return result;
+  }
+
+  private static int length(String arg, Charset charset) {
+    return arg.getBytes(charset).length + 1;
+  }
+
+  /**
+   * Executes the command over the given arguments and waits for all processes to finish.
+   * Failures of individual processes are reported in the result instead of being thrown.
+   *
+   * @param args the arguments.
+   * @return merged result of all processes.
+   * @throws InterruptedException if the current thread was interrupted (the running processes are stopped as well).
+   */
+  public ShardedResult execute(Iterable<String> args) throws InterruptedException {
+    List<List<String>> chunks = shard(args);
+    List<ProcessExecutor> executors = new ArrayList<ProcessExecutor>(chunks.size());
+    for (List<String> chunk : chunks) {
+      List<String> command = new ArrayList<String>(prefix.size() + chunk.size());
+      command.addAll(prefix);
+      command.addAll(chunk);
+      executors.add(newExecutor(command));
+    }
+    BatchResult batch = ProcessExecutor.executeAll(executors, parallelism, failFast);
+    Map<ProcessExecutor, CompletedExecution> byExecutor = new IdentityHashMap<ProcessExecutor, CompletedExecution>();
+    for (CompletedExecution c : batch.getCompletions()) {
+      byExecutor.put(c.getExecutor(), c);
+    }
+    List<CompletedExecution> completions = new ArrayList<CompletedExecution>(executors.size());
+    for (ProcessExecutor executor : executors) {
+      completions.add(byExecutor.get(executor));
+    }
+    return new ShardedResult(chunks, completions, batch);
+  }
+
+  /**
+   * Creates an executor for a single chunk. Override this to configure the processes.
+   * By default the output is read and any exit value is allowed.
+   *
+   * @param command the command prefix followed by a chunk of arguments.
+   * @return new executor for the given command.
+   */
+  protected ProcessExecutor newExecutor(List<String> command) {
+    return new ProcessExecutor(command).readOutput(true).exitValueAny();
+  }
+
+  @Override
+  public String toString() {
+    return "ShardedCommand" + prefix;
+  }
+
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Merged result of running a command over chunks of arguments.
+ * <p>
+ * The exit value is <code>0</code> if all processes exited with <code>0</code>,
+ * otherwise the first non-zero exit value in the order of the chunks
+ * (<code>-1</code> if a process did not finish, e.g. it timed out or was cancelled).
+ * The output is the concatenation of the outputs of the processes in the order of the chunks.
+ * </p>
+ *
+ * @see ShardedCommand
+ * @since 1.14
+ */
+public class ShardedResult extends ProcessResult {
+
+  private final List<List<String>> chunks;
+
+  /**
+   * Outcomes in the order of the chunks.
+   */
+  private final List<CompletedExecution> completions;
+
+  private final BatchResult batch;
+
+  /**
+   * @param chunks the chunks of arguments.
+   * @param completions outcomes of the processes in the order of the chunks.
+   * @param batch outcomes in the order of completion and timing statistics.
+   */
+  public ShardedResult(List<List<String>> chunks, List<CompletedExecution> completions, BatchResult batch) {
+    super(mergeExitValues(completions), mergeOutputs(completions));
+    this.chunks = Collections.unmodifiableList(chunks);
+    this.completions = Collections.unmodifiableList(completions);
+    this.batch = batch;
+  }
+
+  /**
+   * @return the chunks of arguments, each executed by a separate process.
+   */
+  public List<List<String>> getChunks() {
+    return chunks;
+  }
+
+  /**
+   * @return outcomes of the processes in the order of the chunks.
+   */
+  public List<CompletedExecution> getCompletions() {
+    return completions;
+  }
+
+  /**
+   * @return exit values of the processes in the order of the chunks (<code>-1</code> if a process did not finish).
+   */
+  public int[] getExitValues() {
+    int[] result = new int[completions.size()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = getExitValue(completions.get(i));
+    }
+    return result;
+  }
+
+  /**
+   * @return outcomes in the order of completion and timing statistics.
+   */
+  public BatchResult getBatch() {
+    return batch;
+  }
+
+  private static int mergeExitValues(List<CompletedExecution> completions) {
+    for (CompletedExecution c : completions) {
+      int exitValue = getExitValue(c);
+      if (exitValue != 0) {
+        return exitValue;
+      }
+    }
+    return 0;
+  }
+
+  private static ProcessOutput mergeOutputs(List<CompletedExecution> completions) {
+    ByteArrayOutputStream out = null;
+    for (CompletedExecution c : completions) {
+      ProcessResult result = getResult(c);
+      if (result != null && result.hasOutput()) {
+        if (out == null) {
+          out = new ByteArrayOutputStream();
+        }
+        byte[] bytes = result.output();
+        out.write(bytes, 0, bytes.length);
+      }
+    }
+    return out == null ? null : new ProcessOutput(out.toByteArray());
+  }
+
+  private static int getExitValue(CompletedExecution c) {
+    ProcessResult result = getResult(c);
+    return result == null ? -1 : result.getExitValue();
+  }
+
+  /**
+   * @return result of the process, including the one of an unexpected exit value, or <code>null</code> if it did not finish.
+   */
+  private static ProcessResult getResult(CompletedExecution c) {
+    if (c.getResult() != null) {
+      return c.getResult();
+    }
+    if (c.getFailure() instanceof InvalidResultException) {
+      return ((InvalidResultException) c.getFailure()).getResult();
+    }
+    return null;
+  }
+
+}
@@ -0,0 +1,338 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Deduplicates identical executions running at the same time, so that they share a single process.
+ * <p>
+ * Executions are identical if they have the same command line, environment, working directory and input
+ * (see {@link ResultCache} for the details). The first execution starts the process, the ones started
+ * while it's running attach to it and all of them get the same {@link ProcessResult} including the captured output.
+ * The exit value is checked against the allowed exit values of each executor separately.
+ * Cancelling an execution only detaches it, the process is stopped once all executions attached to it are cancelled.
+ * Executions started after the process has finished start a new one.
+ * </p>
+ * <pre>
+ * SingleFlight flights = new SingleFlight();
+ * // called concurrently by many threads
+ * ProcessResult result = flights.execute(new ProcessExecutor("expensive-report", "--today").readOutput(true));
+ * </pre>
+ * <p>
+ * Only the listeners, stream handlers and timeouts of the executor that started the process are used.
+ * </p>
+ *
+ * @since 1.14
+ */
+public class SingleFlight {
+
+  private static final Logger log = LoggerFactory.getLogger(SingleFlight.class);
+
+  private static final AtomicInteger threadCount = new AtomicInteger();
+
+  /**
+   * Running processes by the keys of their executions.
+   */
+  private final Map<String, Flight> flights = new HashMap<String, Flight>();
+
+  private final ExecutorService service = Executors.newCachedThreadPool(new ThreadFactory() {
+    public Thread newThread(Runnable r) {
+      // Use daemon threads as we don't want to postpone the shutdown
+      Thread t = new Thread(r, "SingleFlight-" + threadCount.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    }
+  });
+
+  private final AtomicLong started = new AtomicLong();
+
+  private final AtomicLong joined = new AtomicLong();
+
+  /**
+   * Executes the given executor or waits for an identical execution that is already running.
+   * The executor must not have an input stream set, as its content could not be compared.
+   *
+   * @param executor executor of the process.
+   * @return result of the process.
+   * @throws IOException an error occurred when process was started or stopped.
+   * @throws InterruptedException if the current thread was interrupted (the process is stopped unless other executions are attached to it).
+   * @throws TimeoutException timeout set by {@link ProcessExecutor#timeout(long, java.util.concurrent.TimeUnit)} was reached.
+   * @throws InvalidExitValueException if the exit value was not allowed by the given executor.
+   */
+  public ProcessResult execute(ProcessExecutor executor) throws IOException, InterruptedException, TimeoutException, InvalidExitValueException {
+    if (executor.pumps() != null && executor.pumps().getInput() != null)
+      throw new IllegalArgumentException("Input stream can't be compared, use execute(ProcessExecutor, byte[]) instead.");
+    return get(join(executor, null));
+  }
+
+  /**
+   * Executes the given executor with the given input or waits for an identical execution that is already running.
+   *
+   * @param executor executor of the process.
+   * @param input bytes written to the input of the process or <code>null</code> if nothing is written.
+   * @return result of the process.
+   * @throws IOException an error occurred when process was started or stopped.
+   * @throws InterruptedException if the current thread was interrupted (the process is stopped unless other executions are attached to it).
+   * @throws TimeoutException timeout set by {@link ProcessExecutor#timeout(long, java.util.concurrent.TimeUnit)} was reached.
+   * @throws InvalidExitValueException if the exit value was not allowed by the given executor.
+   */
+  public ProcessResult execute(ProcessExecutor executor, byte[] input) throws IOException, InterruptedException, TimeoutException, InvalidExitValueException {
+    return get(join(executor, input));
+  }
+
+  /**
+   * Starts the given executor or attaches to an identical execution that is already running.
+   * The executor must not have an input stream set, as its content could not be compared.
+   *
+   * @param executor executor of the process.
+   * @return future result of the process; cancelling it detaches from the process and stops it if no other executions are attached.
+   * @throws IOException if the key of the execution could not be computed.
+   */
+  public Future<ProcessResult> submit(ProcessExecutor executor) throws IOException {
+    if (executor.pumps() != null && executor.pumps().getInput() != null)
+      throw new IllegalArgumentException("Input stream can't be compared, use submit(ProcessExecutor, byte[]) instead.");
+    return submit(executor, null);
+  }
+
+  /**
+   * Starts the given executor with the given input or attaches to an identical execution that is already running.
+   *
+   * @param executor executor of the process.
+   * @param input bytes written to the input of the process or <code>null</code> if nothing is written.
+   * @return future result of the process; cancelling it detaches from the process and stops it if no other executions are attached.
+   * @throws IOException if the key of the execution could not be computed.
+   */
+  public Future<ProcessResult> submit(ProcessExecutor executor, byte[] input) throws IOException {
+    return join(executor, input);
+  }
+
+  private Waiter join(ProcessExecutor executor, byte[] input) throws IOException {
+    String key = ResultCache.getKey(executor, input, new File[0]);
+    Flight flight;
+    Waiter waiter;
+    boolean leader = false;
+    synchronized (flights) {
+      flight = flights.get(key);
+      if (flight == null) {
+        leader = true;
+        flight = new Flight(key, executor, input);
+        flights.put(key, flight);
+        started.incrementAndGet();
+      }
+      else {
+        log.debug("Attaching to running {}", flight);
+        joined.incrementAndGet();
+      }
+      waiter = new Waiter(flight, executor);
+      flight.waiters.add(waiter);
+    }
+    if (leader) {
+      service.execute(flight);
+    }
+    return waiter;
+  }
+
+  /**
+   * @return number of processes started.
+   */
+  public long getStartedCount() {
+    return started.get();
+  }
+
+  /**
+   * @return number of executions which attached to an already running process.
+   */
+  public long getJoinedCount() {
+    return joined.get();
+  }
+
+  /**
+   * @return number of processes running at the moment.
+   */
+  public int getInFlightCount() {
+    synchronized (flights) {
+      return flights.size();
+    }
+  }
+
+  private static ProcessResult get(Waiter waiter) throws IOException, InterruptedException, TimeoutException {
+    try {
+      return waiter.get();
+    }
+    catch (InterruptedException e) {
+      waiter.cancel(true);
+      throw e;
+    }
+    catch (ExecutionException e) {
+      Throwable c = e.getCause();
+      if (c instanceof TimeoutException) {
+        throw (TimeoutException) c;
+      }
+      if (c instanceof CancellationException) {
+        throw (CancellationException) c;
+      }
+      if (c instanceof Error) {
+        throw (Error) c;
+      }
+      throw ProcessExecutor.unwrap(e);
+    }
+  }
+
+  /**
+   * A running process with the executions attached to it.
+   */
+  private class Flight extends FutureTask<ProcessResult> {
+
+    private final String key;
+
+    private final ProcessExecutor leader;
+
+    /**
+     * Executions attached to this process which have not been cancelled, guarded by {@link SingleFlight#flights}.
+     */
+    private final List<Waiter> waiters = new ArrayList<Waiter>();
+
+    Flight(String key, final ProcessExecutor leader, final byte[] input) {
+      super(leader.wrapTask(new Callable<ProcessResult>() {
+        public ProcessResult call() throws Exception {
+          return leader.execute(input);
+        }
+      }));
+      this.key = key;
+      this.leader = leader;
+    }
+
+    /**
+     * Detaches the given execution and stops the process if it was the last one.
+     */
+    void leave(Waiter waiter) {
+      boolean last;
+      synchronized (flights) {
+        last = waiters.remove(waiter) && waiters.isEmpty();
+        if (last && flights.get(key) == this) {
+          flights.remove(key);
+        }
+      }
+      if (last) {
+        log.debug("All executions of {} were cancelled, stopping it", this);
+        cancel(true);
+      }
+    }
+
+    @Override
+    protected void done() {
+      List<Waiter> list;
+      synchronized (flights) {
+        if (flights.get(key) == this) {
+          flights.remove(key);
+        }
+        list = new ArrayList<Waiter>(waiters);
+      }
+      ProcessResult result = null;
+      Throwable failure = null;
+      try {
+        result = get();
+      }
+      catch (CancellationException e) {
+        failure = e;
+      }
+      catch (ExecutionException e) {
+        failure = e.getCause();
+      }
+      catch (InterruptedException e) {
+        // not possible as the task is done
+        failure = e;
+      }
+      for (Waiter waiter : list) {
+        waiter.finish(result, failure);
+      }
+    }
+
+    @Override
+    public String toString() {
+      return leader.getCommand().toString();
+    }
+
+  }
+
+  /**
+   * A single execution attached to a running process.
+   */
+  private static class Waiter extends CompletableFuture<ProcessResult> {
+
+    private final Flight flight;
+
+    private final ProcessExecutor executor;
+
+    Waiter(Flight flight, ProcessExecutor executor) {
+      this.flight = flight;
+      this.executor = executor;
+    }
+
+    void finish(ProcessResult result, Throwable failure) {
+      if (failure instanceof InvalidExitValueException) {
+        // Another executor may allow this exit value
+        result = ((InvalidExitValueException) failure).getResult();
+        failure = null;
+      }
+      if (failure != null) {
+        completeExceptionally(failure);
+        return;
+      }
+      try {
+        InvalidExitUtil.checkExit(executor.getAttributes(), result);
+        complete(result);
+      }
+      catch (InvalidExitValueException e) {
+        completeExceptionally(e);
+      }
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      boolean result = super.cancel(mayInterruptIfRunning);
+      if (result) {
+        flight.leave(this);
+      }
+      return result;
+    }
+
+  }
+
+}
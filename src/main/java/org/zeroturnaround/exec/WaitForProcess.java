@@ -23,9 +23,13 @@ import java.util.concurrent.Callable;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.zeroturnaround.exec.admission.AdmissionController;
 import org.zeroturnaround.exec.close.ProcessCloser;
+import org.zeroturnaround.exec.close.StandardProcessCloser;
 import org.zeroturnaround.exec.listener.ProcessListener;
 import org.zeroturnaround.exec.stop.ProcessStopper;
+import org.zeroturnaround.exec.stream.ExecuteStreamHandler;
+import org.zeroturnaround.exec.stream.PumpStreamHandler;
 
 
 /**
@@ -54,6 +58,36 @@ class WaitForProcess implements Callable<ProcessResult> {
    */
   private final ProcessCloser closer;
 
+  /**
+   * Helper for pumping the process' standard streams or <code>null</code> if they are not handled.
+   */
+  private final ExecuteStreamHandler streams;
+
+  /**
+   * Helper for limiting the process output or <code>null</code> if there's no limit.
+   */
+  private final OutputLimiter outputLimiter;
+
+  /**
+   * Helper for stopping the process on matching output or <code>null</code> if the output is not searched.
+   */
+  private final OutputMatcher outputMatcher;
+
+  /**
+   * Value of {@link System#nanoTime()} when the process had been started (this operation was created).
+   */
+  private final long startedTime = System.nanoTime();
+
+  /**
+   * Value of {@link System#nanoTime()} when starting the process began.
+   */
+  private final long startTime;
+
+  /**
+   * Value of {@link System#nanoTime()} by which the whole execution must finish or <code>null</code> if there's no deadline.
+   */
+  private final Long deadline;
+
   /**
    * Buffer where the process output is redirected to or <code>null</code> if it's not used.
    */
@@ -69,21 +103,35 @@ class WaitForProcess implements Callable<ProcessResult> {
    */
   private final MessageLogger messageLogger;
 
+  /**
+   * Permit to run the process, released once it has finished, or <code>null</code> if starting was not limited.
+   */
+  private volatile AdmissionController.Permit permit;
+
   /**
    * Thread which executes this operation.
    */
   private volatile Thread workerThread;
 
-  public WaitForProcess(Process process, ProcessAttributes attributes, ProcessStopper stopper, ProcessCloser closer, ByteArrayOutputStream out, ProcessListener listener, MessageLogger messageLogger) {
+  public WaitForProcess(Process process, ProcessAttributes attributes, ProcessStopper stopper, ProcessCloser closer, ExecuteStreamHandler streams, OutputLimiter outputLimiter, OutputMatcher outputMatcher, ByteArrayOutputStream out, ProcessListener listener, MessageLogger messageLogger, long startTime, Long deadline) {
+    this.outputLimiter = outputLimiter;
+    this.outputMatcher = outputMatcher;
+    this.startTime = startTime;
+    this.deadline = deadline;
     this.process = process;
     this.attributes = attributes;
     this.stopper = stopper;
     this.closer = closer;
+    this.streams = streams;
     this.out = out;
     this.listener = listener;
     this.messageLogger = messageLogger;
   }
 
+  void setPermit(AdmissionController.Permit permit) {
+    this.permit = permit;
+  }
+
   /**
    * @return the sub process.
    */
@@ -110,7 +158,10 @@ class WaitForProcess implements Callable<ProcessResult> {
         closer.close(process);
       }
       ProcessOutput output = getCurrentOutput();
-      ProcessResult result = new ProcessResult(exit, output);
+      ProcessResult result = new ProcessResult(exit, output, isOutputTruncated(), getOutputByteCount(), getMatchedPattern());
+      if (outputLimiter != null) {
+        outputLimiter.check(attributes, result);
+      }
       InvalidExitUtil.checkExit(attributes, result);
       listener.afterFinish(process, result);
       return result;
@@ -118,14 +169,72 @@ class WaitForProcess implements Callable<ProcessResult> {
     finally {
       // Invoke listeners - regardless process finished or got cancelled
       listener.afterStop(process);
+      AdmissionController.Permit p = permit;
+      if (p != null) {
+        p.release();
+      }
       workerThread = null;
     }
   }
 
+  private boolean isOutputTruncated() {
+    if (outputLimiter != null && outputLimiter.isExceeded()) {
+      return true;
+    }
+    return closer instanceof StandardProcessCloser && ((StandardProcessCloser) closer).isOutputTruncated();
+  }
+
+  private String getMatchedPattern() {
+    return outputMatcher == null ? null : outputMatcher.getMatchedPattern();
+  }
+
+  private long getOutputByteCount() {
+    return streams instanceof PumpStreamHandler ? ((PumpStreamHandler) streams).getByteCount() : -1;
+  }
+
   private ProcessOutput getCurrentOutput() {
     return out == null ? null : new ProcessOutput(out.toByteArray());
   }
 
+  /**
+   * @return value of {@link System#nanoTime()} when starting the process began.
+   */
+  public long getStartTime() {
+    return startTime;
+  }
+
+  /**
+   * @return value of {@link System#nanoTime()} when the process had been started.
+   */
+  public long getStartedTime() {
+    return startedTime;
+  }
+
+  /**
+   * @return value of {@link System#nanoTime()} by which the whole execution must finish or <code>null</code> if there's no deadline.
+   */
+  public Long getDeadline() {
+    return deadline;
+  }
+
+  /**
+   * @return <code>true</code> if any output has been read from the process.
+   */
+  public boolean hasReadOutput() {
+    return getOutputByteCount() > 0;
+  }
+
+  /**
+   * @return value of {@link System#nanoTime()} when any output was last read from the process
+   * (or when the process was started if nothing has been read yet).
+   */
+  public long getLastActivity() {
+    if (streams instanceof PumpStreamHandler) {
+      return ((PumpStreamHandler) streams).getLastActivity();
+    }
+    return startedTime;
+  }
+
   /**
    * Adds a suffix for an error message including:
    * <ul>
@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec.admission;
+
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link AdmissionController} which adjusts its limit from the observed run times of the processes and the load of the system.
+ * <p>
+ * The run time of each finished process is compared to the shortest recent one (a gradient, like TCP Vegas):
+ * while it stays close, the limit grows by about its square root; as run times grow because the processes compete
+ * for resources, the limit shrinks proportionally. Independently, if the system is overloaded (the CPU pressure
+ * is over {@link #maxCpuPressure(double)} or the load average per CPU is over {@link #maxLoadPerCpu(double)})
+ * the limit is decreased multiplicatively, at most once per {@link #statsInterval(long, TimeUnit)}.
+ * Inside a container with a CPU quota only its own CPU pressure is used, as the load average covers the whole host.
+ * </p>
+ * <p>
+ * The run times are only comparable if the processes do similar work, so use a separate controller for each kind of process.
+ * The current limit is available from {@link #getLimit()}.
+ * </p>
+ *
+ * @since 1.14
+ */
+public class AdaptiveAdmissionController extends AdmissionController {
+
+  private static final Logger log = LoggerFactory.getLogger(AdaptiveAdmissionController.class);
+
+  /**
+   * Weight of a new run time in the smoothed run time.
+   */
+  private static final double SMOOTHING = 0.2;
+
+  /**
+   * Weight of a new limit estimate in the limit.
+   */
+  private static final double LIMIT_SMOOTHING = 0.2;
+
+  /**
+   * Factor of the multiplicative decrease if the system is overloaded.
+   */
+  private static final double BACKOFF = 0.9;
+
+  /**
+   * Number of samples after which the shortest run time is forgotten so that it can follow changes in the workload.
+   */
+  private static final int BASELINE_WINDOW = 100;
+
+  private final int minLimit;
+
+  private final int maxLimit;
+
+  private SystemStats stats = new SystemStats();
+
+  private double maxCpuPressure = 25;
+
+  private double maxLoadPerCpu = 1.5;
+
+  private long statsIntervalNanos = TimeUnit.SECONDS.toNanos(1);
+
+  /**
+   * Limit before rounding.
+   */
+  private double estimatedLimit;
+
+  private long smoothedNanos;
+
+  private long baselineNanos = Long.MAX_VALUE;
+
+  /**
+   * Shortest run time within the current window.
+   */
+  private long windowMinNanos = Long.MAX_VALUE;
+
+  private int windowSamples;
+
+  private long lastStatsTime;
+
+  private boolean overloaded;
+
+  /**
+   * @param minLimit minimum number of processes running at the same time.
+   * @param maxLimit maximum number of processes running at the same time.
+   */
+  public AdaptiveAdmissionController(int minLimit, int maxLimit) {
+    super(Math.max(1, minLimit));
+    if (minLimit <= 0 || maxLimit < minLimit)
+      throw new IllegalArgumentException("Limits must be positive and the minimum must not exceed the maximum.");
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    int initial = (int) Math.ceil(stats.getCpuLimit());
+    this.estimatedLimit = Math.max(minLimit, Math.min(maxLimit, initial));
+    setLimit((int) estimatedLimit);
+    this.lastStatsTime = System.nanoTime() - statsIntervalNanos;
+  }
+
+  /**
+   * Sets the source of the system load, e.g. for reading it from another location.
+   *
+   * @param stats source of the system load (<code>null</code> means the system load is not used).
+   * @return This controller.
+   */
+  public synchronized AdaptiveAdmissionController stats(SystemStats stats) {
+    this.stats = stats;
+    return this;
+  }
+
+  /**
+   * Sets the percentage of time tasks may be stalled waiting for CPU before the limit is decreased. The default is 25.
+   *
+   * @param maxCpuPressure maximum CPU pressure in percents.
+   * @return This controller.
+   */
+  public synchronized AdaptiveAdmissionController maxCpuPressure(double maxCpuPressure) {
+    this.maxCpuPressure = maxCpuPressure;
+    return this;
+  }
+
+  /**
+   * Sets the load average per CPU above which the limit is decreased. The default is 1.5.
+   *
+   * @param maxLoadPerCpu maximum load average divided by the number of CPUs.
+   * @return This controller.
+   */
+  public synchronized AdaptiveAdmissionController maxLoadPerCpu(double maxLoadPerCpu) {
+    this.maxLoadPerCpu = maxLoadPerCpu;
+    return this;
+  }
+
+  /**
+   * Sets how often the system load is read. The default is one second.
+   *
+   * @param interval minimum time between reading the system load.
+   * @param unit unit of the interval.
+   * @return This controller.
+   */
+  public synchronized AdaptiveAdmissionController statsInterval(long interval, TimeUnit unit) {
+    this.statsIntervalNanos = unit.toNanos(interval);
+    return this;
+  }
+
+  /**
+   * @return smoothed run time of the processes in nanoseconds or <code>0</code> if none has finished yet.
+   */
+  public synchronized long getSmoothedRunNanos() {
+    return smoothedNanos;
+  }
+
+  /**
+   * @return shortest recent run time of the processes in nanoseconds or <code>-1</code> if none has finished yet.
+   */
+  public synchronized long getBaselineRunNanos() {
+    return baselineNanos == Long.MAX_VALUE ? -1 : baselineNanos;
+  }
+
+  /**
+   * @return <code>true</code> if the system was overloaded when its load was read last time.
+   */
+  public synchronized boolean isOverloaded() {
+    return overloaded;
+  }
+
+  @Override
+  protected void released(Permit permit, long runNanos) {
+    int newLimit;
+    synchronized (this) {
+      runNanos = Math.max(1, runNanos);
+      smoothedNanos = smoothedNanos == 0 ? runNanos : (long) (SMOOTHING * runNanos + (1 - SMOOTHING) * smoothedNanos);
+      windowMinNanos = Math.min(windowMinNanos, runNanos);
+      baselineNanos = Math.min(baselineNanos, runNanos);
+      if (++windowSamples >= BASELINE_WINDOW) {
+        // Forget older samples so that the baseline can grow with the workload
+        baselineNanos = windowMinNanos;
+        windowMinNanos = Long.MAX_VALUE;
+        windowSamples = 0;
+      }
+
+      long now = System.nanoTime();
+      boolean backoff = false;
+      if (stats != null && now - lastStatsTime >= statsIntervalNanos) {
+        lastStatsTime = now;
+        overloaded = isSystemOverloaded();
+        backoff = overloaded;
+      }
+
+      int limit = getLimit();
+      if (backoff) {
+        estimatedLimit = Math.max(minLimit, estimatedLimit * BACKOFF);
+      }
+      else if (!overloaded) {
+        double gradient = Math.max(0.5, Math.min(1.0, (double) baselineNanos / smoothedNanos));
+        double target = limit * gradient + Math.sqrt(limit);
+        if (target > limit && getRunningCount() + getQueueDepth() < limit / 2) {
+          // Not enough demand to tell whether a higher limit would be fine
+          target = limit;
+        }
+        estimatedLimit = (1 - LIMIT_SMOOTHING) * estimatedLimit + LIMIT_SMOOTHING * target;
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, estimatedLimit));
+      }
+      newLimit = (int) Math.max(minLimit, Math.min(maxLimit, Math.round(estimatedLimit)));
+      if (newLimit == limit) {
+        return;
+      }
+    }
+    log.debug("Changing the limit of {} to {}", this, newLimit);
+    setLimit(newLimit);
+  }
+
+  /**
+   * Must be called while holding the lock.
+   */
+  private boolean isSystemOverloaded() {
+    double pressure = stats.getCpuPressure();
+    if (pressure >= 0 && pressure > maxCpuPressure) {
+      return true;
+    }
+    // The load average is system-wide, which is meaningless for a container with a CPU quota
+    if (stats.getCpuQuota() < 0) {
+      double load = stats.getLoadAverage();
+      if (load >= 0 && load / stats.getCpuLimit() > maxLoadPerCpu) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec.admission;
+
+/**
+ * Additional condition for starting a process checked by an {@link AdmissionController}, e.g. whether there's enough memory.
+ * <p>
+ * Checks are invoked while holding the lock of the controller, right before a permit would be granted.
+ * While a check fails the processes wait in the queue (the check is repeated periodically) or are refused,
+ * see {@link AdmissionController#waitForResources(boolean)}.
+ * </p>
+ *
+ * @see ResourceBudget
+ * @since 1.14
+ */
+public interface AdmissionCheck {
+
+  /**
+   * Checks whether a process may be started now. If it returns <code>null</code> a permit is granted right away.
+   *
+   * @return <code>null</code> if a process may be started, otherwise why it may not.
+   */
+  String check();
+
+}
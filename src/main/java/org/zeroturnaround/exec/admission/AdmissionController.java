@@ -0,0 +1,512 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec.admission;
+
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.zeroturnaround.exec.admission.AdmissionRejectedException.Reason;
+
+/**
+ * Limits the number of processes running at the same time, shared by any number of executors.
+ * <p>
+ * Each process needs a permit before it's started and returns it once it has finished and its streams have been closed.
+ * If no permit is available the process waits in a bounded queue ordered by priority (then by arrival).
+ * Starting the process is refused with an {@link AdmissionRejectedException} if the queue is full,
+ * if it waits longer than the queue timeout (or the timeout of the execution) or if it's shed from a full queue
+ * in favor of a process with a higher priority.
+ * Additional conditions such as available memory can be added with {@link #check(AdmissionCheck)}.
+ * </p>
+ * <pre>
+ * AdmissionController admission = new AdmissionController(16).maxQueue(100).queueTimeout(5, TimeUnit.SECONDS);
+ * new ProcessExecutor("convert", in, out).admission(admission).execute();
+ * </pre>
+ *
+ * @see org.zeroturnaround.exec.ProcessExecutor#admission(AdmissionController, int)
+ * @since 1.14
+ */
+public class AdmissionController {
+
+  private static final Logger log = LoggerFactory.getLogger(AdmissionController.class);
+
+  /**
+   * How often waiting processes check the resources again while an {@link AdmissionCheck} fails.
+   */
+  private static final long RESOURCE_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+  /**
+   * Maximum number of permits granted at the same time.
+   */
+  private int limit;
+
+  private int maxQueue = Integer.MAX_VALUE;
+
+  private long queueTimeoutNanos = Long.MAX_VALUE;
+
+  /**
+   * Number of permits granted and not released yet.
+   */
+  private int running;
+
+  /**
+   * Waiting requests, the one to admit next first.
+   */
+  private final PriorityQueue<Waiter> queue = new PriorityQueue<Waiter>();
+
+  private long sequence;
+
+  private long admitted;
+
+  private long queued;
+
+  private final long[] rejected = new long[Reason.values().length];
+
+  /**
+   * Additional conditions for granting a permit.
+   */
+  private final List<AdmissionCheck> checks = new CopyOnWriteArrayList<AdmissionCheck>();
+
+  private boolean waitForResources = true;
+
+  private long totalWaitNanos;
+
+  private long maxWaitNanos;
+
+  /**
+   * @param maxConcurrent maximum number of processes running at the same time.
+   */
+  public AdmissionController(int maxConcurrent) {
+    setLimit(maxConcurrent);
+  }
+
+  /**
+   * Sets the maximum number of processes waiting for a permit. By default the queue is unbounded.
+   * Use <code>0</code> to refuse processes right away when the limit has been reached.
+   *
+   * @param maxQueue maximum number of waiting processes.
+   * @return This controller.
+   */
+  public synchronized AdmissionController maxQueue(int maxQueue) {
+    if (maxQueue < 0)
+      throw new IllegalArgumentException("Maximum queue size must not be negative.");
+    this.maxQueue = maxQueue;
+    return this;
+  }
+
+  /**
+   * Sets the maximum time a process waits for a permit. By default it waits until the timeout of the execution, if any.
+   *
+   * @param timeout maximum time to wait.
+   * @param unit unit of the timeout.
+   * @return This controller.
+   */
+  public synchronized AdmissionController queueTimeout(long timeout, TimeUnit unit) {
+    if (timeout < 0)
+      throw new IllegalArgumentException("Queue timeout must not be negative.");
+    this.queueTimeoutNanos = unit.toNanos(timeout);
+    return this;
+  }
+
+  /**
+   * Adds a condition which must hold before a permit is granted, e.g. a {@link ResourceBudget}.
+   *
+   * @param check additional condition for granting a permit.
+   * @return This controller.
+   */
+  public AdmissionController check(AdmissionCheck check) {
+    checks.add(check);
+    return this;
+  }
+
+  /**
+   * Sets whether processes wait in the queue while an {@link AdmissionCheck} fails (the default)
+   * or are refused right away with {@link Reason#RESOURCES}.
+   *
+   * @param waitForResources <code>true</code> to wait, <code>false</code> to fail fast.
+   * @return This controller.
+   */
+  public synchronized AdmissionController waitForResources(boolean waitForResources) {
+    this.waitForResources = waitForResources;
+    return this;
+  }
+
+  /**
+   * Changes the maximum number of processes running at the same time.
+   * If the limit is raised waiting processes are admitted right away,
+   * if it's lowered running processes keep their permits.
+   *
+   * @param limit maximum number of processes running at the same time.
+   */
+  public synchronized void setLimit(int limit) {
+    if (limit <= 0)
+      throw new IllegalArgumentException("Limit must be positive.");
+    this.limit = limit;
+    grant();
+  }
+
+  /**
+   * @return maximum number of processes running at the same time.
+   */
+  public synchronized int getLimit() {
+    return limit;
+  }
+
+  /**
+   * Waits for a permit to start a process.
+   *
+   * @param priority priority of the process, higher goes first.
+   * @param deadline value of {@link System#nanoTime()} by which the permit must be granted or <code>null</code> to use only the queue timeout.
+   * @return permit which must be released once the process has finished.
+   * @throws AdmissionRejectedException if the permit was refused.
+   * @throws InterruptedIOException if the current thread was interrupted while waiting (the interrupted status is kept).
+   */
+  public Permit acquire(int priority, Long deadline) throws AdmissionRejectedException, InterruptedIOException {
+    long start = System.nanoTime();
+    long end = queueTimeoutNanos == Long.MAX_VALUE ? Long.MAX_VALUE : start + queueTimeoutNanos;
+    if (deadline != null && (end == Long.MAX_VALUE || deadline - end < 0)) {
+      end = deadline;
+    }
+    synchronized (this) {
+      if (queue.isEmpty() && running < limit) {
+        String denied = checkResources();
+        if (denied == null) {
+          running++;
+          return newPermit(priority, start);
+        }
+        if (!waitForResources) {
+          reject(Reason.RESOURCES);
+          throw new AdmissionRejectedException(denied, Reason.RESOURCES);
+        }
+      }
+      if (queue.size() >= maxQueue && !shed(priority)) {
+        reject(Reason.QUEUE_FULL);
+        throw new AdmissionRejectedException("Admission queue is full (" + queue.size() + " waiting, " + running + " running).", Reason.QUEUE_FULL);
+      }
+      Waiter waiter = new Waiter(priority, sequence++);
+      queue.add(waiter);
+      queued++;
+      try {
+        while (!waiter.granted && waiter.rejection == null) {
+          long remaining = end == Long.MAX_VALUE ? Long.MAX_VALUE : end - System.nanoTime();
+          if (remaining <= 0) {
+            queue.remove(waiter);
+            reject(Reason.TIMEOUT);
+            throw new AdmissionRejectedException("Timed out waiting for admission after "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms.", Reason.TIMEOUT);
+          }
+          if (!checks.isEmpty()) {
+            // Resources are not signalled, check them again after a while
+            remaining = Math.min(remaining, RESOURCE_POLL_NANOS);
+          }
+          if (remaining == Long.MAX_VALUE) {
+            wait();
+          }
+          else {
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+          }
+          if (!checks.isEmpty()) {
+            grant();
+          }
+        }
+      }
+      catch (InterruptedException e) {
+        if (waiter.granted) {
+          // Pass the permit on
+          running--;
+          grant();
+        }
+        else {
+          queue.remove(waiter);
+        }
+        Thread.currentThread().interrupt();
+        InterruptedIOException ex = new InterruptedIOException("Interrupted while waiting for admission.");
+        ex.initCause(e);
+        throw ex;
+      }
+      if (waiter.rejection != null) {
+        throw waiter.rejection;
+      }
+      return newPermit(priority, start);
+    }
+  }
+
+  /**
+   * Removes the waiter with the lowest priority if it's lower than the given one.
+   * Must be called while holding the lock.
+   */
+  private boolean shed(int priority) {
+    Waiter lowest = null;
+    for (Waiter waiter : queue) {
+      if (lowest == null || waiter.compareTo(lowest) > 0) {
+        lowest = waiter;
+      }
+    }
+    if (lowest == null || lowest.priority >= priority) {
+      return false;
+    }
+    log.debug("Shedding a process with priority {} in favor of priority {}", lowest.priority, priority);
+    queue.remove(lowest);
+    lowest.rejection = new AdmissionRejectedException("Removed from the admission queue in favor of a higher priority.", Reason.SHED);
+    reject(Reason.SHED);
+    notifyAll();
+    return true;
+  }
+
+  /**
+   * Grants permits to the waiters while there's room. Must be called while holding the lock.
+   */
+  private void grant() {
+    boolean changed = false;
+    while (running < limit && !queue.isEmpty()) {
+      String denied = checkResources();
+      if (denied != null) {
+        if (waitForResources) {
+          break;
+        }
+        queue.poll().rejection = new AdmissionRejectedException(denied, Reason.RESOURCES);
+        reject(Reason.RESOURCES);
+      }
+      else {
+        queue.poll().granted = true;
+        running++;
+      }
+      changed = true;
+    }
+    if (changed) {
+      notifyAll();
+    }
+  }
+
+  /**
+   * Must be called while holding the lock.
+   *
+   * @return <code>null</code> if all checks pass, otherwise why not.
+   */
+  private String checkResources() {
+    for (AdmissionCheck check : checks) {
+      String denied = check.check();
+      if (denied != null) {
+        log.debug("Not admitting a process: {}", denied);
+        return denied;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Must be called while holding the lock.
+   */
+  private Permit newPermit(int priority, long start) {
+    long now = System.nanoTime();
+    long wait = now - start;
+    admitted++;
+    totalWaitNanos += wait;
+    maxWaitNanos = Math.max(maxWaitNanos, wait);
+    return new Permit(priority, wait, now);
+  }
+
+  /**
+   * Must be called while holding the lock.
+   */
+  private void reject(Reason reason) {
+    rejected[reason.ordinal()]++;
+  }
+
+  private synchronized void release() {
+    running--;
+    grant();
+  }
+
+  /**
+   * Invoked after a permit of a process that has run was released, e.g. for adjusting the limit based on how long it ran.
+   * The default implementation does nothing.
+   *
+   * @param permit the released permit.
+   * @param runNanos time from granting the permit until releasing it in nanoseconds.
+   */
+  protected void released(Permit permit, long runNanos) {
+    // nothing by default
+  }
+
+  /**
+   * @return number of processes holding a permit.
+   */
+  public synchronized int getRunningCount() {
+    return running;
+  }
+
+  /**
+   * @return number of processes waiting for a permit.
+   */
+  public synchronized int getQueueDepth() {
+    return queue.size();
+  }
+
+  /**
+   * @return number of permits granted.
+   */
+  public synchronized long getAdmittedCount() {
+    return admitted;
+  }
+
+  /**
+   * @return number of processes that had to wait for a permit.
+   */
+  public synchronized long getQueuedCount() {
+    return queued;
+  }
+
+  /**
+   * @return number of processes refused for any reason.
+   */
+  public synchronized long getRejectedCount() {
+    long result = 0;
+    for (long r : rejected) {
+      result += r;
+    }
+    return result;
+  }
+
+  /**
+   * @param reason reason of refusing.
+   * @return number of processes refused for the given reason.
+   */
+  public synchronized long getRejectedCount(Reason reason) {
+    return rejected[reason.ordinal()];
+  }
+
+  /**
+   * @return mean time the admitted processes waited for a permit in nanoseconds.
+   */
+  public synchronized long getMeanWaitNanos() {
+    return admitted == 0 ? 0 : totalWaitNanos / admitted;
+  }
+
+  /**
+   * @return longest time an admitted process waited for a permit in nanoseconds.
+   */
+  public synchronized long getMaxWaitNanos() {
+    return maxWaitNanos;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "AdmissionController[limit=" + limit + ", running=" + running + ", queued=" + queue.size() + "]";
+  }
+
+  private static final class Waiter implements Comparable<Waiter> {
+
+    private final int priority;
+
+    private final long sequence;
+
+    private boolean granted;
+
+    private AdmissionRejectedException rejection;
+
+    Waiter(int priority, long sequence) {
+      this.priority = priority;
+      this.sequence = sequence;
+    }
+
+    public int compareTo(Waiter o) {
+      if (priority != o.priority) {
+        return priority > o.priority ? -1 : 1;
+      }
+      return sequence < o.sequence ? -1 : sequence == o.sequence ? 0 : 1;
+    }
+
+  }
+
+  /**
+   * Permission to run a single process, released once the process has finished.
+   */
+  public final class Permit {
+
+    private final int priority;
+
+    private final long waitNanos;
+
+    private final long grantedTime;
+
+    private boolean released;
+
+    Permit(int priority, long waitNanos, long grantedTime) {
+      this.priority = priority;
+      this.waitNanos = waitNanos;
+      this.grantedTime = grantedTime;
+    }
+
+    /**
+     * @return priority the permit was requested with.
+     */
+    public int getPriority() {
+      return priority;
+    }
+
+    /**
+     * @return how long it took to get the permit in nanoseconds.
+     */
+    public long getWaitNanos() {
+      return waitNanos;
+    }
+
+    /**
+     * @return value of {@link System#nanoTime()} when the permit was granted.
+     */
+    public long getGrantedTime() {
+      return grantedTime;
+    }
+
+    /**
+     * Returns the permit to the controller once the process has finished.
+     * Only the first invocation of this method or {@link #cancel()} has any effect.
+     */
+    public void release() {
+      if (doRelease()) {
+        released(this, System.nanoTime() - grantedTime);
+      }
+    }
+
+    /**
+     * Returns the permit to the controller without the process having run, e.g. because it failed to start.
+     * Only the first invocation of this method or {@link #release()} has any effect.
+     */
+    public void cancel() {
+      doRelease();
+    }
+
+    private boolean doRelease() {
+      synchronized (AdmissionController.this) {
+        if (released) {
+          return false;
+        }
+        released = true;
+      }
+      AdmissionController.this.release();
+      return true;
+    }
+
+  }
+
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec.admission;
+
+import java.io.IOException;
+
+/**
+ * Starting a process was refused by an {@link AdmissionController}, e.g. because too many processes were already waiting.
+ * <p>
+ * The process was not started, so retrying later or failing the request that needed the process is safe.
+ * </p>
+ *
+ * @since 1.14
+ */
+public class AdmissionRejectedException extends IOException {
+
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Why starting the process was refused.
+   */
+  public enum Reason {
+
+    /**
+     * The wait queue was full.
+     */
+    QUEUE_FULL,
+
+    /**
+     * The process was removed from the wait queue in favor of a process with a higher priority.
+     */
+    SHED,
+
+    /**
+     * The process waited in the queue for too long.
+     */
+    TIMEOUT,
+
+    /**
+     * An {@link AdmissionCheck} failed, e.g. there was not enough memory, and the controller was set to fail fast.
+     */
+    RESOURCES
+
+  }
+
+  private final Reason reason;
+
+  /**
+   * @param message the detail message of the exception
+   * @param reason why starting the process was refused
+   */
+  public AdmissionRejectedException(String message, Reason reason) {
+    super(message);
+    this.reason = reason;
+  }
+
+  /**
+   * @return why starting the process was refused.
+   */
+  public Reason getReason() {
+    return reason;
+  }
+
+}
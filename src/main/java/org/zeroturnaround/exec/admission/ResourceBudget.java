@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec.admission;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admits new processes only while there's enough memory and there are enough free file descriptors.
+ * <p>
+ * Starting a process fails with errors like <code>error=12, Not enough space</code> or <code>error=24, Too many open files</code>
+ * (see {@link org.zeroturnaround.exec.ProcessInitException}) if the system or the control group runs out of memory
+ * or the current process runs out of file descriptors. This check keeps a safety margin instead, so that processes wait
+ * in the queue of the {@link AdmissionController} or are refused with an {@link AdmissionRejectedException}.
+ * </p>
+ * <p>
+ * Available memory is read from <code>/proc/meminfo</code> and the memory limit and usage of the control group,
+ * open file descriptors from <code>/proc/self/fd</code> and their limit from <code>/proc/self/limits</code>
+ * (see {@link SystemStats}). Each process needs a pipe for each standard stream, i.e. up to six descriptors while
+ * it's being started and three for as long as it runs. The values are read at most once per {@link #interval(long, TimeUnit)};
+ * processes admitted in the meantime are accounted for by their estimated needs.
+ * </p>
+ * <pre>
+ * AdmissionController admission = new AdmissionController(64)
+ *     .check(new ResourceBudget().minAvailableMemory(512 * 1024 * 1024).memoryPerProcess(50 * 1024 * 1024));
+ * </pre>
+ *
+ * @since 1.14
+ */
+public class ResourceBudget implements AdmissionCheck {
+
+  /**
+   * File descriptors used while a process is being started: both ends of the pipes of its three standard streams.
+   */
+  public static final int FDS_PER_PROCESS = 6;
+
+  private final SystemStats stats;
+
+  private long minAvailableMemory = 64L * 1024 * 1024;
+
+  private long memoryPerProcess;
+
+  private int minFreeFiles = 64;
+
+  private long intervalNanos = TimeUnit.MILLISECONDS.toNanos(100);
+
+  private long lastRead;
+
+  private boolean read;
+
+  private long availableMemory;
+
+  private long openFiles;
+
+  private long maxOpenFiles;
+
+  /**
+   * Memory and file descriptors needed by the processes admitted since the values were read.
+   */
+  private long reservedMemory;
+
+  private long reservedFiles;
+
+  /**
+   * Checks the resources of the current system.
+   */
+  public ResourceBudget() {
+    this(new SystemStats());
+  }
+
+  /**
+   * @param stats source of the available resources.
+   */
+  public ResourceBudget(SystemStats stats) {
+    this.stats = stats;
+  }
+
+  /**
+   * Sets the memory that must remain available after starting a process. The default is 64 MiB.
+   *
+   * @param bytes minimum available memory in bytes.
+   * @return This check.
+   */
+  public synchronized ResourceBudget minAvailableMemory(long bytes) {
+    this.minAvailableMemory = bytes;
+    return this;
+  }
+
+  /**
+   * Sets the estimated memory needed by each process. The default is <code>0</code>.
+   *
+   * @param bytes estimated memory per process in bytes.
+   * @return This check.
+   */
+  public synchronized ResourceBudget memoryPerProcess(long bytes) {
+    this.memoryPerProcess = bytes;
+    return this;
+  }
+
+  /**
+   * Sets the number of file descriptors that must remain free after starting a process. The default is 64.
+   *
+   * @param count minimum number of free file descriptors.
+   * @return This check.
+   */
+  public synchronized ResourceBudget minFreeFiles(int count) {
+    this.minFreeFiles = count;
+    return this;
+  }
+
+  /**
+   * Sets how often the available resources are read. The default is 100 milliseconds.
+   *
+   * @param interval minimum time between reading the resources.
+   * @param unit unit of the interval.
+   * @return This check.
+   */
+  public synchronized ResourceBudget interval(long interval, TimeUnit unit) {
+    this.intervalNanos = unit.toNanos(interval);
+    return this;
+  }
+
+  public synchronized String check() {
+    long now = System.nanoTime();
+    if (!read || now - lastRead >= intervalNanos) {
+      read = true;
+      lastRead = now;
+      availableMemory = stats.getAvailableMemory();
+      openFiles = stats.getOpenFileCount();
+      maxOpenFiles = stats.getMaxOpenFiles();
+      reservedMemory = 0;
+      reservedFiles = 0;
+    }
+    if (availableMemory >= 0) {
+      long left = availableMemory - reservedMemory - memoryPerProcess;
+      if (left < minAvailableMemory) {
+        return "Not enough memory available (" + (availableMemory - reservedMemory) / (1024 * 1024) + " MiB).";
+      }
+    }
+    if (openFiles >= 0 && maxOpenFiles > 0) {
+      long left = maxOpenFiles - openFiles - reservedFiles - FDS_PER_PROCESS;
+      if (left < minFreeFiles) {
+        return "Not enough file descriptors available (" + (openFiles + reservedFiles) + " of " + maxOpenFiles + " open).";
+      }
+    }
+    reservedMemory += memoryPerProcess;
+    reservedFiles += FDS_PER_PROCESS;
+    return null;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "ResourceBudget[min memory=" + minAvailableMemory + ", per process=" + memoryPerProcess + ", min free files=" + minFreeFiles + "]";
+  }
+
+}
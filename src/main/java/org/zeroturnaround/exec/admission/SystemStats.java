@@ -0,0 +1,318 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec.admission;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the load and resources of the local system from <code>/proc</code> and the control groups of the current process (v1 or v2).
+ * <p>
+ * Signals that are not available (e.g. on other operating systems or older kernels) are reported as <code>-1</code>.
+ * Inside a container with a CPU quota the pressure of the container's control group is preferred over the system-wide one
+ * and the quota is reported as the CPU limit, as the load average covers the whole host.
+ * </p>
+ *
+ * @since 1.14
+ */
+public class SystemStats {
+
+  /**
+   * cgroup v1 reports no memory limit as a huge number close to <code>Long.MAX_VALUE</code>.
+   */
+  private static final long UNLIMITED_V1 = Long.MAX_VALUE / 2;
+
+  private final File proc;
+
+  private final File cgroup;
+
+  /**
+   * Reads the stats of the current system.
+   */
+  public SystemStats() {
+    this(new File("/proc"), new File("/sys/fs/cgroup"));
+  }
+
+  /**
+   * Reads the stats from the given directories, e.g. mounted from another system or prepared for testing.
+   *
+   * @param proc directory mounted as <code>/proc</code>.
+   * @param cgroup directory mounted as <code>/sys/fs/cgroup</code>.
+   */
+  public SystemStats(File proc, File cgroup) {
+    this.proc = proc;
+    this.cgroup = cgroup;
+  }
+
+  /**
+   * @return system load average over the last minute or <code>-1</code> if it's not available.
+   */
+  public double getLoadAverage() {
+    String line = readLine(new File(proc, "loadavg"));
+    if (line == null) {
+      return -1;
+    }
+    try {
+      return Double.parseDouble(line.split("\\s+")[0]);
+    }
+    catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * @return percentage of time in the last 10 seconds some tasks were stalled waiting for CPU
+   * or <code>-1</code> if pressure stall information is not available.
+   */
+  public double getCpuPressure() {
+    File file = findCgroupFile("cpu", null, "cpu.pressure");
+    double result = file == null ? -1 : parsePressure(file);
+    if (result < 0) {
+      result = parsePressure(new File(proc, "pressure/cpu"));
+    }
+    return result;
+  }
+
+  /**
+   * @return number of CPUs the current process may use, either its control group quota or the number of available processors.
+   */
+  public double getCpuLimit() {
+    double quota = getCpuQuota();
+    int processors = Runtime.getRuntime().availableProcessors();
+    return quota > 0 ? Math.min(quota, processors) : processors;
+  }
+
+  /**
+   * @return CPU quota of the control group of the current process in CPUs or <code>-1</code> if there's no quota.
+   */
+  public double getCpuQuota() {
+    // cgroup v2: "<quota> <period>" or "max <period>"
+    File file = findCgroupFile("cpu", null, "cpu.max");
+    String line = file == null ? null : readLine(file);
+    if (line != null) {
+      String[] parts = line.trim().split("\\s+");
+      if (parts.length == 2 && !"max".equals(parts[0])) {
+        return ratio(parts[0], parts[1]);
+      }
+      return -1;
+    }
+    // cgroup v1
+    File quota = findCgroupFile("cpu", "cpu.cfs_quota_us", null);
+    File period = findCgroupFile("cpu", "cpu.cfs_period_us", null);
+    if (quota != null && period != null) {
+      String q = readLine(quota);
+      String p = readLine(period);
+      if (q != null && p != null && !q.trim().startsWith("-")) {
+        return ratio(q.trim(), p.trim());
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return memory available for new processes in bytes, limited by the control group of the current process,
+   * or <code>-1</code> if it's not known.
+   */
+  public long getAvailableMemory() {
+    long result = -1;
+    for (String line : readLines(new File(proc, "meminfo"))) {
+      if (line.startsWith("MemAvailable:")) {
+        String[] parts = line.split("\\s+");
+        result = parseLong(parts[1]) * 1024;
+        break;
+      }
+    }
+    long limit = -1;
+    long usage = -1;
+    File max = findCgroupFile("memory", null, "memory.max");
+    if (max != null) {
+      // cgroup v2
+      limit = parseLong(readLine(max));
+      usage = parseLong(readLine(new File(max.getParentFile(), "memory.current")));
+    }
+    else {
+      File v1 = findCgroupFile("memory", "memory.limit_in_bytes", null);
+      if (v1 != null) {
+        limit = parseLong(readLine(v1));
+        usage = parseLong(readLine(new File(v1.getParentFile(), "memory.usage_in_bytes")));
+        if (limit >= UNLIMITED_V1) {
+          limit = -1;
+        }
+      }
+    }
+    if (limit >= 0 && usage >= 0) {
+      long cgroupAvailable = Math.max(0, limit - usage);
+      result = result < 0 ? cgroupAvailable : Math.min(result, cgroupAvailable);
+    }
+    return result;
+  }
+
+  /**
+   * @return number of file descriptors open by the current process or <code>-1</code> if it's not known.
+   */
+  public int getOpenFileCount() {
+    String[] names = new File(proc, "self/fd").list();
+    return names == null ? -1 : names.length;
+  }
+
+  /**
+   * @return maximum number of file descriptors the current process may open (the soft limit) or <code>-1</code> if it's not known or unlimited.
+   */
+  public long getMaxOpenFiles() {
+    for (String line : readLines(new File(proc, "self/limits"))) {
+      if (line.startsWith("Max open files")) {
+        String[] parts = line.substring("Max open files".length()).trim().split("\\s+");
+        return parseLong(parts[0]);
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return the parsed number or <code>-1</code> if it's missing or not a number (e.g. <code>max</code> or <code>unlimited</code>).
+   */
+  private static long parseLong(String value) {
+    if (value == null) {
+      return -1;
+    }
+    try {
+      return Long.parseLong(value.trim());
+    }
+    catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private static double ratio(String quota, String period) {
+    try {
+      double p = Double.parseDouble(period);
+      return p <= 0 ? -1 : Double.parseDouble(quota) / p;
+    }
+    catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Parses the <code>some avg10</code> value of a pressure stall information file.
+   */
+  private static double parsePressure(File file) {
+    for (String line : readLines(file)) {
+      if (line.startsWith("some ")) {
+        for (String field : line.split("\\s+")) {
+          if (field.startsWith("avg10=")) {
+            try {
+              return Double.parseDouble(field.substring("avg10=".length()));
+            }
+            catch (NumberFormatException e) {
+              return -1;
+            }
+          }
+        }
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Finds a file of the control group of the current process.
+   *
+   * @param controller name of the cgroup v1 controller.
+   * @param v1Name name of the file in cgroup v1 or <code>null</code> if not available there.
+   * @param v2Name name of the file in cgroup v2 or <code>null</code> if not available there.
+   * @return the existing file or <code>null</code> if not found.
+   */
+  File findCgroupFile(String controller, String v1Name, String v2Name) {
+    List<String> candidates = new ArrayList<String>();
+    for (String line : readLines(new File(proc, "self/cgroup"))) {
+      // hierarchy-ID:controller-list:cgroup-path
+      String[] parts = line.split(":", 3);
+      if (parts.length < 3) {
+        continue;
+      }
+      if (v2Name != null && "0".equals(parts[0]) && parts[1].isEmpty()) {
+        candidates.add(parts[2] + "/" + v2Name);
+        candidates.add("unified" + parts[2] + "/" + v2Name);
+      }
+      if (v1Name != null && contains(parts[1].split(","), controller)) {
+        candidates.add(parts[1] + parts[2] + "/" + v1Name);
+        candidates.add(controller + parts[2] + "/" + v1Name);
+      }
+    }
+    // The control group is often mounted as the root inside containers
+    if (v2Name != null) {
+      candidates.add(v2Name);
+    }
+    if (v1Name != null) {
+      candidates.add(controller + "/" + v1Name);
+    }
+    for (String candidate : candidates) {
+      File file = new File(cgroup, candidate);
+      if (file.isFile()) {
+        return file;
+      }
+    }
+    return null;
+  }
+
+  private static boolean contains(String[] values, String value) {
+    for (String v : values) {
+      if (v.equals(value)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  static String readLine(File file) {
+    List<String> lines = readLines(file);
+    return lines.isEmpty() ? null : lines.get(0);
+  }
+
+  static List<String> readLines(File file) {
+    List<String> result = new ArrayList<String>();
+    try {
+      BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+      try {
+        String line;
+        while ((line = in.readLine()) != null) {
+          result.add(line);
+        }
+      }
+      finally {
+        in.close();
+      }
+    }
+    catch (IOException e) {
+      // not available
+    }
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return "SystemStats[load=" + getLoadAverage() + ", cpu pressure=" + getCpuPressure() + ", cpus=" + getCpuLimit()
+        + ", available memory=" + getAvailableMemory() + ", open files=" + getOpenFileCount() + "/" + getMaxOpenFiles() + "]";
+  }
+
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec.close;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits how long the output and error streams are pumped after the process has exited.
+ * <p>
+ * A background grandchild process may inherit the standard streams and keep the pipes open after the process itself has exited.
+ * Without a limit the pumps would wait until the grandchild exits as well.
+ * With this policy a pump is abandoned once it has been idle for the given time or draining has taken the given total time.
+ * Abandoned pumps discard any further data, their pipes are closed and the output is reported as truncated.
+ * </p>
+ * <p>
+ * The policy may also carry an absolute deadline (e.g. derived from {@link org.zeroturnaround.exec.ProcessExecutor#timeout(long, TimeUnit)})
+ * which limits draining regardless of the timeouts above.
+ * </p>
+ *
+ * @see org.zeroturnaround.exec.ProcessResult#isOutputTruncated()
+ * @since 1.14
+ */
+public class DrainPolicy {
+
+  /**
+   * Maximum time without any data read from a stream before its pump is abandoned.
+   */
+  private final long idleTimeout;
+
+  /**
+   * Maximum total time for draining the streams after the process has exited.
+   */
+  private final long totalTimeout;
+
+  private final TimeUnit unit;
+
+  /**
+   * Value of {@link System#nanoTime()} by which draining must have finished or <code>null</code> if there's no deadline.
+   */
+  private final Long deadline;
+
+  /**
+   * Creates new instance of {@link DrainPolicy}.
+   *
+   * @param idleTimeout maximum time without any data read from a stream before its pump is abandoned.
+   * @param totalTimeout maximum total time for draining the streams after the process has exited.
+   * @param unit unit of the timeout values.
+   */
+  public DrainPolicy(long idleTimeout, long totalTimeout, TimeUnit unit) {
+    this(idleTimeout, totalTimeout, unit, null);
+    if (idleTimeout <= 0 || totalTimeout <= 0)
+      throw new IllegalArgumentException("Drain timeouts must be positive.");
+    if (unit == null)
+      throw new IllegalArgumentException("Time unit must be provided.");
+  }
+
+  private DrainPolicy(long idleTimeout, long totalTimeout, TimeUnit unit, Long deadline) {
+    this.idleTimeout = idleTimeout;
+    this.totalTimeout = totalTimeout;
+    this.unit = unit;
+    this.deadline = deadline;
+  }
+
+  /**
+   * Creates a policy which only limits draining the streams by an absolute deadline.
+   *
+   * @param deadline value of {@link System#nanoTime()} by which draining must have finished.
+   * @return new drain policy.
+   */
+  public static DrainPolicy until(long deadline) {
+    return new DrainPolicy(Long.MAX_VALUE, Long.MAX_VALUE, TimeUnit.NANOSECONDS, deadline);
+  }
+
+  /**
+   * Returns a copy of this policy which also makes sure draining finishes by the given deadline.
+   *
+   * @param deadline value of {@link System#nanoTime()} by which draining must have finished.
+   * @return new drain policy.
+   */
+  public DrainPolicy withDeadline(long deadline) {
+    if (this.deadline != null && this.deadline - deadline < 0) {
+      deadline = this.deadline;
+    }
+    return new DrainPolicy(idleTimeout, totalTimeout, unit, deadline);
+  }
+
+  public long getIdleTimeout() {
+    return idleTimeout;
+  }
+
+  public long getTotalTimeout() {
+    return totalTimeout;
+  }
+
+  public TimeUnit getUnit() {
+    return unit;
+  }
+
+  /**
+   * @return value of {@link System#nanoTime()} by which draining must have finished or <code>null</code> if there's no deadline.
+   */
+  public Long getDeadline() {
+    return deadline;
+  }
+
+  /**
+   * @param now current value of {@link System#nanoTime()}.
+   * @return idle timeout in nanoseconds, limited by the time left until the deadline.
+   */
+  public long getIdleTimeoutNanos(long now) {
+    return limitByDeadline(unit.toNanos(idleTimeout), now);
+  }
+
+  /**
+   * @param now current value of {@link System#nanoTime()}.
+   * @return total timeout in nanoseconds, limited by the time left until the deadline.
+   */
+  public long getTotalTimeoutNanos(long now) {
+    return limitByDeadline(unit.toNanos(totalTimeout), now);
+  }
+
+  private long limitByDeadline(long nanos, long now) {
+    if (deadline == null) {
+      return nanos;
+    }
+    return Math.max(0, Math.min(nanos, deadline - now));
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("DrainPolicy[");
+    if (idleTimeout != Long.MAX_VALUE) {
+      sb.append("idle=").append(idleTimeout).append(", total=").append(totalTimeout).append(" ").append(unit.toString().toLowerCase());
+      if (deadline != null) {
+        sb.append(", ");
+      }
+    }
+    if (deadline != null) {
+      sb.append("deadline in ").append(TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())).append(" ms");
+    }
+    return sb.append("]").toString();
+  }
+
+}
@@ -18,10 +18,12 @@
 package org.zeroturnaround.exec.close;
 
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.zeroturnaround.exec.stream.ExecuteStreamHandler;
+import org.zeroturnaround.exec.stream.PumpStreamHandler;
 
 /**
  * Stops {@link ExecuteStreamHandler} from pumping the streams and closes them.
@@ -32,17 +34,64 @@ public class StandardProcessCloser implements ProcessCloser {
 
   protected final ExecuteStreamHandler streams;
 
+  /**
+   * Limits for pumping the streams after the process has exited or <code>null</code> if the pumps are waited for until the streams end.
+   */
+  protected final DrainPolicy drainPolicy;
+
+  /**
+   * <code>true</code> if the streams were not pumped to their end.
+   */
+  private volatile boolean outputTruncated;
+
   public StandardProcessCloser(ExecuteStreamHandler streams) {
+    this(streams, null);
+  }
+
+  /**
+   * Creates new instance of {@link StandardProcessCloser}.
+   *
+   * @param streams helper for pumping the streams.
+   * @param drainPolicy limits for pumping the streams after the process has exited (<code>null</code> means no limits).
+   * Only applies if <code>streams</code> is a {@link PumpStreamHandler}.
+   * @since 1.14
+   */
+  public StandardProcessCloser(ExecuteStreamHandler streams, DrainPolicy drainPolicy) {
     this.streams = streams;
+    this.drainPolicy = drainPolicy;
   }
 
   public void close(Process process) throws IOException, InterruptedException {
     if (streams != null) {
-      streams.stop();
+      if (drainPolicy != null && streams instanceof PumpStreamHandler) {
+        long now = System.nanoTime();
+        boolean drained = ((PumpStreamHandler) streams).stop(drainPolicy.getIdleTimeoutNanos(now), drainPolicy.getTotalTimeoutNanos(now), TimeUnit.NANOSECONDS);
+        if (!drained) {
+          markOutputTruncated();
+        }
+      }
+      else {
+        streams.stop();
+      }
     }
     closeStreams(process);
   }
 
+  /**
+   * @return <code>true</code> if closing gave up on pumping the streams before they ended, so the output read is not complete.
+   * @since 1.14
+   */
+  public boolean isOutputTruncated() {
+    return outputTruncated;
+  }
+
+  /**
+   * Records that the streams were not pumped to their end.
+   */
+  protected void markOutputTruncated() {
+    outputTruncated = true;
+  }
+
   /**
    * Close the streams belonging to the given Process.
    */
@@ -53,7 +53,20 @@ public class TimeoutProcessCloser extends StandardProcessCloser {
    * @param unit unit of the timeout value.
    */
   public TimeoutProcessCloser(ExecuteStreamHandler streams, long timeout, TimeUnit unit) {
-    super(streams);
+    this(streams, timeout, unit, null);
+  }
+
+  /**
+   * Creates new instance of {@link TimeoutProcessCloser}.
+   *
+   * @param streams helper for pumping the streams.
+   * @param timeout how long should we wait for the closing.
+   * @param unit unit of the timeout value.
+   * @param drainPolicy limits for pumping the streams after the process has exited (<code>null</code> means no limits).
+   * @since 1.14
+   */
+  public TimeoutProcessCloser(ExecuteStreamHandler streams, long timeout, TimeUnit unit, DrainPolicy drainPolicy) {
+    super(streams, drainPolicy);
     this.timeout = timeout;
     this.unit = unit;
   }
@@ -77,6 +90,7 @@ public class TimeoutProcessCloser extends StandardProcessCloser {
     }
     catch (TimeoutException e) {
       log.warn("Could not close streams of {} in {} {}", process, timeout, getUnitsAsString(timeout, unit));
+      markOutputTruncated();
     }
     finally {
       // Ensure that any data received so far is flushed from buffers
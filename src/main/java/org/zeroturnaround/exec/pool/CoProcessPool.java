@@ -0,0 +1,466 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec.pool;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.zeroturnaround.exec.ProcessExecutor;
+import org.zeroturnaround.exec.ProcessResult;
+import org.zeroturnaround.exec.StartedProcess;
+import org.zeroturnaround.exec.stream.ExecuteStreamHandler;
+import org.zeroturnaround.exec.stream.NullOutputStream;
+import org.zeroturnaround.exec.stream.PumpStreamHandler;
+
+/**
+ * Pool of long-lived co-processes which serve many requests each instead of starting a new process for every request.
+ * <p>
+ * Each request is written to the standard input of an idle process and its response is read from the standard output
+ * using the given {@link Framing}. The pool keeps up to the given number of processes running,
+ * callers wait while all of them are busy.
+ * A process is replaced if it has died, failed to handle a request, didn't respond within the request timeout
+ * or has served the maximum number of requests.
+ * </p>
+ * <pre>
+ * CoProcessPool pool = new CoProcessPool(new ProcessExecutor("formatter", "--server"), Framing.lines(), 4);
+ * try {
+ *   String formatted = pool.call("...");
+ * }
+ * finally {
+ *   pool.close();
+ * }
+ * </pre>
+ * <p>
+ * The pool takes over the given executor: it disables {@link ProcessExecutor#redirectErrorStream(boolean)}
+ * and replaces the stream handler when starting a process. The error stream is still pumped to the stream
+ * previously configured by {@link ProcessExecutor#redirectError(OutputStream)}.
+ * Processes are stopped using {@link ProcessExecutor#stopper(org.zeroturnaround.exec.stop.ProcessStopper)}.
+ * </p>
+ *
+ * @since 1.14
+ */
+public class CoProcessPool implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(CoProcessPool.class);
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private final ProcessExecutor executor;
+
+  private final Framing framing;
+
+  private final int size;
+
+  /**
+   * Where the error streams of the processes are pumped to.
+   */
+  private final OutputStream errorOutput;
+
+  /**
+   * Permits for using the processes, one per process.
+   */
+  private final Semaphore permits;
+
+  /**
+   * Running processes which are not currently serving a request (most recently used first).
+   */
+  private final Deque<CoProcess> idle = new ArrayDeque<CoProcess>();
+
+  /**
+   * Maximum number of requests served by each process or <code>0</code> if there's no limit.
+   */
+  private volatile int maxRequests;
+
+  /**
+   * Maximum time in nanoseconds for serving a request or <code>0</code> if there's no limit.
+   */
+  private volatile long requestTimeout;
+
+  /**
+   * Destroys the processes which didn't respond in time (created with the first request timeout).
+   */
+  private ScheduledExecutorService watchdog;
+
+  private volatile boolean closed;
+
+  /**
+   * Creates a new pool. No processes are started until they are needed or {@link #prestart()} is invoked.
+   *
+   * @param executor executor for starting the processes (used by this pool exclusively).
+   * @param framing how the requests and responses are separated.
+   * @param size maximum number of processes running at once.
+   */
+  public CoProcessPool(ProcessExecutor executor, Framing framing, int size) {
+    if (size <= 0)
+      throw new IllegalArgumentException("Pool size must be positive.");
+    ExecuteStreamHandler streams = executor.streams();
+    OutputStream err = streams instanceof PumpStreamHandler ? ((PumpStreamHandler) streams).getErr() : null;
+    this.errorOutput = err == null ? NullOutputStream.NULL_OUTPUT_STREAM : err;
+    this.executor = executor.redirectErrorStream(false);
+    this.framing = framing;
+    this.size = size;
+    this.permits = new Semaphore(size, true);
+  }
+
+  /**
+   * Sets the maximum number of requests served by each process before it's replaced.
+   *
+   * @param maxRequests maximum number of requests or <code>0</code> if there's no limit (the default).
+   * @return This pool.
+   */
+  public CoProcessPool maxRequests(int maxRequests) {
+    if (maxRequests < 0)
+      throw new IllegalArgumentException("Maximum number of requests must not be negative.");
+    this.maxRequests = maxRequests;
+    return this;
+  }
+
+  /**
+   * Sets the maximum time for serving a single request.
+   * A process which hasn't responded in time is destroyed forcibly and replaced, the request fails with a {@link TimeoutException}.
+   *
+   * @param timeout maximum time for writing a request and reading its response or <code>0</code> if there's no limit (the default).
+   * @param unit unit of the timeout.
+   * @return This pool.
+   */
+  public CoProcessPool requestTimeout(long timeout, TimeUnit unit) {
+    if (timeout < 0)
+      throw new IllegalArgumentException("Request timeout must not be negative.");
+    if (timeout > 0) {
+      synchronized (this) {
+        if (watchdog == null) {
+          watchdog = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+              Thread t = new Thread(r, "CoProcessPool-" + executor.getCommand() + "-watchdog");
+              t.setDaemon(true);
+              return t;
+            }
+          });
+        }
+      }
+    }
+    this.requestTimeout = unit.toNanos(timeout);
+    return this;
+  }
+
+  /**
+   * Starts all processes of this pool in advance, so that the first requests don't wait for them.
+   *
+   * @return This pool.
+   * @throws IOException if a process could not be started.
+   * @throws InterruptedException if the current thread was interrupted while waiting for busy processes.
+   */
+  public CoProcessPool prestart() throws IOException, InterruptedException {
+    // Wait until no requests are being served
+    permits.acquire(size);
+    try {
+      while (getIdleCount() < size) {
+        releaseIdle(startProcess());
+      }
+    }
+    finally {
+      permits.release(size);
+    }
+    return this;
+  }
+
+  /**
+   * Sends a request to an idle process and reads its response, waiting while all processes are busy.
+   *
+   * @param request the request.
+   * @return the response.
+   * @throws IOException if the request could not be sent or the response could not be read (the process is then replaced).
+   * @throws InterruptedException if the current thread was interrupted while waiting for an idle process.
+   * @throws TimeoutException if the process didn't respond within the request timeout (the process is then replaced).
+   * @throws IllegalArgumentException if the request is rejected by the framing (no process is used).
+   * @see #requestTimeout(long, TimeUnit)
+   * @see Framing#validateRequest(byte[])
+   */
+  public byte[] call(byte[] request) throws IOException, InterruptedException, TimeoutException {
+    // Reject invalid requests before a process is taken, it would be replaced otherwise
+    framing.validateRequest(request);
+    permits.acquire();
+    try {
+      final CoProcess process = acquireProcess();
+      boolean success = false;
+      long timeout = requestTimeout;
+      final AtomicBoolean timedOut = new AtomicBoolean();
+      ScheduledFuture<?> timer = null;
+      if (timeout > 0) {
+        // Destroying the process ends its output, which unblocks reading the response
+        timer = watchdog.schedule(new Runnable() {
+          public void run() {
+            timedOut.set(true);
+            process.kill();
+          }
+        }, timeout, TimeUnit.NANOSECONDS);
+      }
+      try {
+        framing.writeRequest(process.input, request);
+        process.input.flush();
+        byte[] response = framing.readResponse(process.output);
+        success = true;
+        return response;
+      }
+      catch (IOException e) {
+        if (timedOut.get())
+          throw new TimeoutException("No response from " + process + " within " + TimeUnit.NANOSECONDS.toMillis(timeout) + " milliseconds.");
+        throw e;
+      }
+      finally {
+        if (timer != null && !timer.cancel(false)) {
+          // The process is being destroyed
+          success = false;
+        }
+        releaseProcess(process, success);
+      }
+    }
+    finally {
+      permits.release();
+    }
+  }
+
+  /**
+   * Sends a request encoded in UTF-8 to an idle process and reads its response.
+   *
+   * @param request the request.
+   * @return the response decoded as UTF-8.
+   * @throws IOException if the request could not be sent or the response could not be read (the process is then replaced).
+   * @throws InterruptedException if the current thread was interrupted while waiting for an idle process.
+   * @throws TimeoutException if the process didn't respond within the request timeout (the process is then replaced).
+   * @see #call(byte[])
+   */
+  public String call(String request) throws IOException, InterruptedException, TimeoutException {
+    return new String(call(request.getBytes(UTF_8)), UTF_8);
+  }
+
+  /**
+   * @return maximum number of processes running at once.
+   */
+  public int getSize() {
+    return size;
+  }
+
+  /**
+   * @return number of running processes which are not currently serving a request.
+   */
+  public int getIdleCount() {
+    synchronized (idle) {
+      return idle.size();
+    }
+  }
+
+  /**
+   * Stops all idle processes. Processes serving a request are stopped once they have finished.
+   * Further requests are rejected.
+   */
+  public void close() {
+    closed = true;
+    List<CoProcess> stopped;
+    synchronized (idle) {
+      stopped = new ArrayList<CoProcess>(idle);
+      idle.clear();
+    }
+    for (CoProcess process : stopped) {
+      process.stop();
+    }
+    synchronized (this) {
+      if (watchdog != null) {
+        watchdog.shutdown();
+      }
+    }
+  }
+
+  private CoProcess acquireProcess() throws IOException {
+    while (true) {
+      if (closed)
+        throw new IllegalStateException("Pool has been closed.");
+      CoProcess process;
+      synchronized (idle) {
+        process = idle.poll();
+      }
+      if (process == null) {
+        return startProcess();
+      }
+      if (process.isAlive()) {
+        return process;
+      }
+      // Health check failed
+      log.debug("{} has died, replacing it", process);
+      process.stop();
+    }
+  }
+
+  private void releaseProcess(CoProcess process, boolean success) {
+    if (!success) {
+      log.debug("{} failed to handle a request, replacing it", process);
+      process.stop();
+      return;
+    }
+    process.requests++;
+    int max = maxRequests;
+    if (max > 0 && process.requests >= max) {
+      log.debug("{} has served {} requests, replacing it", process, process.requests);
+      process.stop();
+      return;
+    }
+    releaseIdle(process);
+  }
+
+  private void releaseIdle(CoProcess process) {
+    synchronized (idle) {
+      if (!closed) {
+        idle.push(process);
+        return;
+      }
+    }
+    process.stop();
+  }
+
+  private CoProcess startProcess() throws IOException {
+    if (closed)
+      throw new IllegalStateException("Pool has been closed.");
+    CoProcessStreams streams = new CoProcessStreams(errorOutput);
+    StartedProcess started;
+    synchronized (executor) {
+      ExecuteStreamHandler original = executor.streams();
+      executor.streams(streams);
+      try {
+        started = executor.start();
+      }
+      finally {
+        executor.streams(original);
+      }
+    }
+    return new CoProcess(started, streams.input, streams.output);
+  }
+
+  /**
+   * A running process of this pool.
+   */
+  private static class CoProcess {
+
+    private final StartedProcess started;
+
+    private final OutputStream input;
+
+    private final InputStream output;
+
+    /**
+     * Number of requests served (accessed by one thread at a time).
+     */
+    private int requests;
+
+    CoProcess(StartedProcess started, OutputStream input, InputStream output) {
+      this.started = started;
+      this.input = new BufferedOutputStream(input);
+      this.output = new BufferedInputStream(output);
+    }
+
+    boolean isAlive() {
+      return started.getProcess().isAlive();
+    }
+
+    /**
+     * Destroys the process forcibly, e.g. if it doesn't respond.
+     */
+    void kill() {
+      log.debug("{} didn't respond in time, destroying it", this);
+      started.getProcess().destroyForcibly();
+    }
+
+    /**
+     * Closes the standard input and stops the process using the executor's stopper.
+     */
+    void stop() {
+      try {
+        input.close();
+      }
+      catch (IOException e) {
+        log.trace("Failed to close the input of {}:", this, e);
+      }
+      Future<ProcessResult> future = started.getFuture();
+      // Interrupting the waiting task stops the process
+      future.cancel(true);
+    }
+
+    @Override
+    public String toString() {
+      return "CoProcess[" + started.getProcess() + ", requests=" + requests + "]";
+    }
+
+  }
+
+  /**
+   * Hands the standard input and output of the process to the pool and pumps its error stream.
+   */
+  private static class CoProcessStreams implements ExecuteStreamHandler {
+
+    private final PumpStreamHandler errors;
+
+    private OutputStream input;
+
+    private InputStream output;
+
+    CoProcessStreams(OutputStream errorOutput) {
+      this.errors = new PumpStreamHandler(null, errorOutput);
+    }
+
+    public void setProcessInputStream(OutputStream os) {
+      this.input = os;
+    }
+
+    public void setProcessOutputStream(InputStream is) {
+      this.output = is;
+    }
+
+    public void setProcessErrorStream(InputStream is) {
+      errors.setProcessErrorStream(is);
+    }
+
+    public void start() {
+      errors.start();
+    }
+
+    public void stop() {
+      errors.stop();
+    }
+
+  }
+
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec.pool;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import org.zeroturnaround.exec.stream.MultiPatternMatcher;
+
+/**
+ * Separates the requests written to a co-process and the responses read from it.
+ *
+ * @see CoProcessPool
+ * @since 1.14
+ */
+public abstract class Framing {
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  /**
+   * Default maximum length of a response of {@link #lengthPrefixed()}.
+   */
+  public static final int DEFAULT_MAX_RESPONSE_LENGTH = 16 * 1024 * 1024;
+
+  /**
+   * Checks that the given request can be written with this framing.
+   * It's invoked before a process is taken for the request, so a rejected request doesn't affect the processes.
+   *
+   * @param request the request.
+   * @throws IllegalArgumentException if the request can't be written with this framing.
+   */
+  public void validateRequest(byte[] request) {
+    // any request is accepted by default
+  }
+
+  /**
+   * Writes a single request (without flushing the stream).
+   *
+   * @param out standard input of the process.
+   * @param request the request.
+   * @throws IOException if the request could not be written.
+   */
+  public abstract void writeRequest(OutputStream out, byte[] request) throws IOException;
+
+  /**
+   * Reads a single response.
+   *
+   * @param in standard output of the process.
+   * @return the response.
+   * @throws EOFException if the stream ended before a complete response was read.
+   * @throws IOException if the response could not be read.
+   */
+  public abstract byte[] readResponse(InputStream in) throws IOException;
+
+  /**
+   * @return framing where each request and response is a single line terminated by <code>\n</code>
+   * (a preceding <code>\r</code> is removed from the responses).
+   */
+  public static Framing lines() {
+    return new Framing() {
+      @Override
+      public void validateRequest(byte[] request) {
+        for (byte b : request) {
+          if (b == '\n')
+            throw new IllegalArgumentException("Request must not contain line breaks.");
+        }
+      }
+
+      @Override
+      public void writeRequest(OutputStream out, byte[] request) throws IOException {
+        validateRequest(request);
+        out.write(request);
+        out.write('\n');
+      }
+
+      @Override
+      public byte[] readResponse(InputStream in) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != '\n') {
+          if (b < 0)
+            throw new EOFException("Stream ended before the end of line.");
+          buffer.write(b);
+        }
+        byte[] result = buffer.toByteArray();
+        if (result.length > 0 && result[result.length - 1] == '\r') {
+          result = Arrays.copyOf(result, result.length - 1);
+        }
+        return result;
+      }
+
+      @Override
+      public String toString() {
+        return "Framing.lines()";
+      }
+    };
+  }
+
+  /**
+   * @return framing where each request and response is preceded by its length as a 4-byte big-endian integer
+   * (responses longer than {@link #DEFAULT_MAX_RESPONSE_LENGTH} are rejected).
+   */
+  public static Framing lengthPrefixed() {
+    return lengthPrefixed(DEFAULT_MAX_RESPONSE_LENGTH);
+  }
+
+  /**
+   * @param maxResponseLength maximum length of a response in bytes, a longer one fails with an {@link IOException}
+   * (so a garbled length doesn't allocate a huge buffer).
+   * @return framing where each request and response is preceded by its length as a 4-byte big-endian integer.
+   */
+  public static Framing lengthPrefixed(final int maxResponseLength) {
+    if (maxResponseLength < 0)
+      throw new IllegalArgumentException("Maximum response length must not be negative.");
+    return new Framing() {
+      @Override
+      public void writeRequest(OutputStream out, byte[] request) throws IOException {
+        int length = request.length;
+        out.write(new byte[] { (byte) (length >>> 24), (byte) (length >>> 16), (byte) (length >>> 8), (byte) length });
+        out.write(request);
+      }
+
+      @Override
+      public byte[] readResponse(InputStream in) throws IOException {
+        byte[] prefix = readFully(in, new byte[4]);
+        int length = ((prefix[0] & 0xff) << 24) | ((prefix[1] & 0xff) << 16) | ((prefix[2] & 0xff) << 8) | (prefix[3] & 0xff);
+        if (length < 0)
+          throw new IOException("Invalid response length: " + length);
+        if (length > maxResponseLength)
+          throw new IOException("Response length " + length + " exceeds the maximum of " + maxResponseLength + " bytes.");
+        return readFully(in, new byte[length]);
+      }
+
+      @Override
+      public String toString() {
+        return "Framing.lengthPrefixed(" + maxResponseLength + ")";
+      }
+    };
+  }
+
+  /**
+   * @param sentinel text (encoded in UTF-8) which terminates each request and response.
+   * @return framing where each request and response is terminated by the given sentinel
+   * (requests containing the sentinel are rejected).
+   */
+  public static Framing sentinel(final String sentinel) {
+    final byte[] bytes = sentinel.getBytes(UTF_8);
+    final MultiPatternMatcher matcher = new MultiPatternMatcher(sentinel);
+    return new Framing() {
+      @Override
+      public void validateRequest(byte[] request) {
+        // The process must not find the sentinel before the one terminating the request
+        int state = MultiPatternMatcher.INITIAL_STATE;
+        for (byte b : request) {
+          state = matcher.next(state, b);
+          if (matcher.getMatch(state) >= 0)
+            throw new IllegalArgumentException("Request must not contain the sentinel.");
+        }
+        for (int i = 0; i < bytes.length - 1; i++) {
+          state = matcher.next(state, bytes[i]);
+          if (matcher.getMatch(state) >= 0)
+            throw new IllegalArgumentException("Request must not end with a prefix of the sentinel.");
+        }
+      }
+
+      @Override
+      public void writeRequest(OutputStream out, byte[] request) throws IOException {
+        validateRequest(request);
+        out.write(request);
+        out.write(bytes);
+      }
+
+      @Override
+      public byte[] readResponse(InputStream in) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        int state = MultiPatternMatcher.INITIAL_STATE;
+        while (true) {
+          int b = in.read();
+          if (b < 0)
+            throw new EOFException("Stream ended before the sentinel.");
+          buffer.write(b);
+          state = matcher.next(state, (byte) b);
+          if (matcher.getMatch(state) >= 0) {
+            byte[] result = buffer.toByteArray();
+            return Arrays.copyOf(result, result.length - bytes.length);
+          }
+        }
+      }
+
+      @Override
+      public String toString() {
+        return "Framing.sentinel(" + sentinel + ")";
+      }
+    };
+  }
+
+  private static byte[] readFully(InputStream in, byte[] b) throws IOException {
+    int off = 0;
+    while (off < b.length) {
+      int n = in.read(b, off, b.length - off);
+      if (n < 0)
+        throw new EOFException("Stream ended after " + off + " of " + b.length + " bytes.");
+      off += n;
+    }
+    return b;
+  }
+
+}
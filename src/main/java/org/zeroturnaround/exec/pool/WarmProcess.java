@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec.pool;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Future;
+
+import org.zeroturnaround.exec.ProcessResult;
+import org.zeroturnaround.exec.StartedProcess;
+
+/**
+ * Process handed out by a {@link WarmProcessPool}, started in advance and waiting for its input.
+ *
+ * @since 1.14
+ */
+public class WarmProcess extends StartedProcess {
+
+  /**
+   * Where the standard input of the process is read from.
+   */
+  private final OutputStream input;
+
+  /**
+   * Value of {@link System#nanoTime()} when the process was started.
+   */
+  private final long startedTime;
+
+  WarmProcess(StartedProcess started, OutputStream input, long startedTime) {
+    super(started.getProcess(), started.getFuture());
+    this.input = input;
+    this.startedTime = startedTime;
+  }
+
+  /**
+   * @return stream for writing to the standard input of the process, closing it closes the standard input.
+   */
+  public OutputStream getInput() {
+    return input;
+  }
+
+  /**
+   * @return value of {@link System#nanoTime()} when the process was started.
+   */
+  public long getStartedTime() {
+    return startedTime;
+  }
+
+  /**
+   * Closes the standard input and stops the process using the executor's stopper.
+   */
+  void stop() {
+    try {
+      input.close();
+    }
+    catch (IOException e) {
+      // ignore, the process is stopped anyway
+    }
+    Future<ProcessResult> future = getFuture();
+    // Interrupting the waiting task stops the process
+    future.cancel(true);
+  }
+
+}
@@ -0,0 +1,307 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec.pool;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.zeroturnaround.exec.ProcessExecutor;
+import org.zeroturnaround.exec.StartedProcess;
+import org.zeroturnaround.exec.stream.ExecuteStreamHandler;
+import org.zeroturnaround.exec.stream.PumpStreamHandler;
+
+/**
+ * Keeps a number of processes started in advance, so that a process can be handed out without waiting for it to start.
+ * <p>
+ * Each process is started from the given executor and waits for its standard input which is only written
+ * once the process has been acquired (see {@link WarmProcess#getInput()}).
+ * After a process has been acquired the pool starts a replacement in the background.
+ * Processes which have been waiting longer than the idle timeout are replaced as well.
+ * The output, listeners, exit values and stopper of the executor apply to each process as usual,
+ * {@link StartedProcess#getFuture()} returns its result.
+ * </p>
+ * <pre>
+ * WarmProcessPool pool = new WarmProcessPool(new ProcessExecutor("convert", "-", "png:-").readOutput(true), 2);
+ * WarmProcess process = pool.acquire();
+ * process.getInput().write(image);
+ * process.getInput().close();
+ * byte[] png = process.getFuture().get().output();
+ * </pre>
+ * <p>
+ * The executor is used by this pool exclusively, its output must be pumped by a
+ * {@link PumpStreamHandler} (which is the default).
+ * </p>
+ *
+ * @since 1.14
+ */
+public class WarmProcessPool implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(WarmProcessPool.class);
+
+  private final ProcessExecutor executor;
+
+  private final int size;
+
+  /**
+   * Starts the processes in the background and removes the expired ones.
+   */
+  private final ScheduledExecutorService service;
+
+  /**
+   * Started processes which have not been handed out yet (oldest first).
+   */
+  private final Deque<WarmProcess> warm = new ArrayDeque<WarmProcess>();
+
+  /**
+   * Number of processes being started in the background.
+   */
+  private int starting;
+
+  /**
+   * Maximum time for a process to wait in this pool in nanoseconds or <code>0</code> if there's no limit.
+   */
+  private volatile long idleTimeoutNanos;
+
+  /**
+   * Periodic task removing the expired processes or <code>null</code> if there's no idle timeout.
+   */
+  private ScheduledFuture<?> expiry;
+
+  private volatile boolean closed;
+
+  /**
+   * Creates a new pool and starts filling it in the background.
+   *
+   * @param executor executor for starting the processes (used by this pool exclusively).
+   * @param size number of processes kept started in advance.
+   * @throws IllegalArgumentException if the output of the executor is not pumped by a {@link PumpStreamHandler}.
+   */
+  public WarmProcessPool(ProcessExecutor executor, int size) {
+    if (size <= 0)
+      throw new IllegalArgumentException("Pool size must be positive.");
+    ExecuteStreamHandler streams = executor.streams();
+    if (streams != null && !(streams instanceof PumpStreamHandler))
+      throw new IllegalArgumentException("Only PumpStreamHandler is supported by WarmProcessPool.");
+    this.executor = executor;
+    this.size = size;
+    final String name = "WarmProcessPool-" + executor.getCommand();
+    this.service = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, name);
+        t.setDaemon(true);
+        return t;
+      }
+    });
+    refill();
+  }
+
+  /**
+   * Sets how long a process may wait in this pool before it's replaced with a new one.
+   *
+   * @param timeout maximum time to wait or <code>0</code> if there's no limit (the default).
+   * @param unit unit of the <code>timeout</code>.
+   * @return This pool.
+   */
+  public synchronized WarmProcessPool idleTimeout(long timeout, TimeUnit unit) {
+    if (timeout < 0)
+      throw new IllegalArgumentException("Idle timeout must not be negative.");
+    this.idleTimeoutNanos = unit.toNanos(timeout);
+    if (expiry != null) {
+      expiry.cancel(false);
+      expiry = null;
+    }
+    if (timeout > 0) {
+      long period = Math.max(1, idleTimeoutNanos / 2);
+      expiry = service.scheduleWithFixedDelay(new Runnable() {
+        public void run() {
+          expire();
+        }
+      }, period, period, TimeUnit.NANOSECONDS);
+    }
+    return this;
+  }
+
+  /**
+   * Hands out a started process. If no started process is available a new one is started in the current thread.
+   *
+   * @return a running process waiting for its input.
+   * @throws IOException if a new process had to be started and it failed.
+   */
+  public WarmProcess acquire() throws IOException {
+    if (closed)
+      throw new IllegalStateException("Pool has been closed.");
+    WarmProcess result = null;
+    List<WarmProcess> stale = new ArrayList<WarmProcess>();
+    synchronized (warm) {
+      while (result == null && !warm.isEmpty()) {
+        WarmProcess process = warm.poll();
+        if (isUsable(process, System.nanoTime())) {
+          result = process;
+        }
+        else {
+          stale.add(process);
+        }
+      }
+    }
+    stop(stale);
+    refill();
+    if (result == null) {
+      log.debug("No warm process available for {}", executor.getCommand());
+      result = startProcess();
+    }
+    return result;
+  }
+
+  /**
+   * @return number of started processes which have not been handed out yet.
+   */
+  public int getWarmCount() {
+    synchronized (warm) {
+      return warm.size();
+    }
+  }
+
+  /**
+   * Stops all processes which have not been handed out and the background thread.
+   * Processes already handed out are not affected.
+   */
+  public void close() {
+    List<WarmProcess> stopped;
+    synchronized (warm) {
+      closed = true;
+      stopped = new ArrayList<WarmProcess>(warm);
+      warm.clear();
+    }
+    service.shutdownNow();
+    stop(stopped);
+  }
+
+  private boolean isUsable(WarmProcess process, long now) {
+    if (!process.getProcess().isAlive()) {
+      log.debug("{} has died", process.getProcess());
+      return false;
+    }
+    long timeout = idleTimeoutNanos;
+    return timeout == 0 || now - process.getStartedTime() < timeout;
+  }
+
+  /**
+   * Replaces the processes which have died or been waiting for too long.
+   */
+  private void expire() {
+    List<WarmProcess> stale = new ArrayList<WarmProcess>();
+    long now = System.nanoTime();
+    synchronized (warm) {
+      for (Iterator<WarmProcess> it = warm.iterator(); it.hasNext();) {
+        WarmProcess process = it.next();
+        if (!isUsable(process, now)) {
+          it.remove();
+          stale.add(process);
+        }
+      }
+    }
+    stop(stale);
+    refill();
+  }
+
+  /**
+   * Schedules starting new processes until the pool is full.
+   */
+  private void refill() {
+    synchronized (warm) {
+      while (!closed && warm.size() + starting < size) {
+        starting++;
+        service.execute(new Runnable() {
+          public void run() {
+            startInBackground();
+          }
+        });
+      }
+    }
+  }
+
+  private void startInBackground() {
+    WarmProcess process = null;
+    try {
+      process = startProcess();
+    }
+    catch (IOException e) {
+      log.warn("Failed to start a warm process for {}", executor.getCommand(), e);
+    }
+    catch (RuntimeException e) {
+      log.warn("Failed to start a warm process for {}", executor.getCommand(), e);
+    }
+    finally {
+      synchronized (warm) {
+        starting--;
+        if (process != null && !closed) {
+          warm.add(process);
+          process = null;
+        }
+      }
+      if (process != null) {
+        process.stop();
+      }
+    }
+  }
+
+  private WarmProcess startProcess() throws IOException {
+    Pipe pipe = Pipe.open();
+    StartedProcess started = null;
+    try {
+      synchronized (executor) {
+        ExecuteStreamHandler original = executor.streams();
+        executor.redirectInput(Channels.newInputStream(pipe.source()));
+        try {
+          started = executor.start();
+        }
+        finally {
+          executor.streams(original);
+        }
+      }
+    }
+    finally {
+      if (started == null) {
+        pipe.sink().close();
+        pipe.source().close();
+      }
+    }
+    return new WarmProcess(started, Channels.newOutputStream(pipe.sink()), System.nanoTime());
+  }
+
+  private static void stop(List<WarmProcess> processes) {
+    for (WarmProcess process : processes) {
+      process.stop();
+    }
+  }
+
+}
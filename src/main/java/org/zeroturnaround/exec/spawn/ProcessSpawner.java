@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec.spawn;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Starts processes instead of {@link ProcessBuilder#start()}.
+ *
+ * @see org.zeroturnaround.exec.ProcessExecutor#spawner(ProcessSpawner)
+ * @since 1.14
+ */
+public interface ProcessSpawner {
+
+  /**
+   * Starts a new process.
+   *
+   * @param command the program and its arguments.
+   * @param directory working directory or <code>null</code> to use the current one.
+   * @param environment complete environment of the process.
+   * @param redirectErrorStream <code>true</code> if the error stream is merged with the output stream.
+   * @return the started process.
+   * @throws IOException if the process could not be started.
+   */
+  Process spawn(List<String> command, File directory, Map<String, String> environment, boolean redirectErrorStream) throws IOException;
+
+}
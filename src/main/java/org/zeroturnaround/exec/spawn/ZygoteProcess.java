@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec.spawn;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process started by a {@link ZygoteSpawner}, its standard streams are connected through named pipes.
+ */
+class ZygoteProcess extends Process {
+
+  private final ZygoteSpawner zygote;
+
+  private final long id;
+
+  private final CountDownLatch started = new CountDownLatch(1);
+
+  private final CountDownLatch exited = new CountDownLatch(1);
+
+  private volatile long pid = -1;
+
+  private volatile String failure;
+
+  /**
+   * <code>true</code> if the zygote didn't start the process in time - it's killed once started.
+   */
+  private volatile boolean abandoned;
+
+  private volatile int exitValue;
+
+  private OutputStream input;
+
+  private InputStream output;
+
+  private InputStream error;
+
+  ZygoteProcess(ZygoteSpawner zygote, long id) {
+    this.zygote = zygote;
+    this.id = id;
+  }
+
+  long getId() {
+    return id;
+  }
+
+  void onStarted(long pid) {
+    this.pid = pid;
+    started.countDown();
+    if (abandoned) {
+      destroyForcibly();
+    }
+  }
+
+  void onFailed(String failure) {
+    this.failure = failure;
+    started.countDown();
+  }
+
+  void onExited(int exitValue) {
+    this.exitValue = exitValue;
+    exited.countDown();
+  }
+
+  /**
+   * Waits until the zygote has started the process and opens its standard streams.
+   * The pipes are opened in the same order as the process opens them.
+   * If the zygote doesn't start the process in time, the process is killed once it's started.
+   */
+  void open(File in, File out, File err, long timeout, TimeUnit unit) throws IOException {
+    try {
+      if (!started.await(timeout, unit)) {
+        abandoned = true;
+        if (started.getCount() == 0) {
+          destroyForcibly();
+        }
+        throw new IOException("Zygote did not start the process within " + timeout + " " + unit.toString().toLowerCase() + ".");
+      }
+    }
+    catch (InterruptedException e) {
+      throw new InterruptedIOException("Interrupted while waiting for the zygote to start the process.");
+    }
+    if (failure != null) {
+      throw new IOException(failure);
+    }
+    input = new FileOutputStream(in);
+    output = new FileInputStream(out);
+    error = err == null ? new ByteArrayInputStream(new byte[0]) : new FileInputStream(err);
+  }
+
+  @Override
+  public OutputStream getOutputStream() {
+    return input;
+  }
+
+  @Override
+  public InputStream getInputStream() {
+    return output;
+  }
+
+  @Override
+  public InputStream getErrorStream() {
+    return error;
+  }
+
+  @Override
+  public int waitFor() throws InterruptedException {
+    exited.await();
+    return exitValue;
+  }
+
+  @Override
+  public boolean waitFor(long timeout, TimeUnit unit) throws InterruptedException {
+    return exited.await(timeout, unit);
+  }
+
+  @Override
+  public int exitValue() {
+    if (isAlive())
+      throw new IllegalThreadStateException("Process has not exited");
+    return exitValue;
+  }
+
+  @Override
+  public boolean isAlive() {
+    return exited.getCount() > 0;
+  }
+
+  @Override
+  public void destroy() {
+    if (isAlive()) {
+      zygote.kill(pid, "TERM");
+    }
+  }
+
+  @Override
+  public Process destroyForcibly() {
+    if (isAlive()) {
+      zygote.kill(pid, "KILL");
+    }
+    return this;
+  }
+
+  /**
+   * @return native process ID (overrides <code>Process.pid()</code> on Java 9 and later).
+   */
+  public long pid() {
+    return pid;
+  }
+
+  @Override
+  public String toString() {
+    return "ZygoteProcess[pid=" + pid + "]";
+  }
+
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec.spawn;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Starts processes through a small long-lived helper process (a zygote) instead of forking the current JVM.
+ * <p>
+ * Forking a JVM with a large heap gets slower as the heap grows.
+ * This spawner forks a POSIX shell once and sends it a request for each process to start.
+ * The command, working directory and environment are passed over the shell's standard input,
+ * the standard streams of the new process are connected back through named pipes created by the zygote.
+ * The zygote reports the exit value of each process once it has finished.
+ * Processes are stopped by sending signals through the zygote as well.
+ * </p>
+ * <p>
+ * Only POSIX systems with <code>mkfifo</code>, <code>env</code> and <code>kill</code> are supported.
+ * Unlike {@link ProcessBuilder#start()}, failing to execute the program is not reported when the process is started
+ * but by the exit value <code>127</code> instead.
+ * </p>
+ * <pre>
+ * ZygoteSpawner zygote = new ZygoteSpawner();
+ * new ProcessExecutor("git", "status").spawner(zygote).execute();
+ * ...
+ * zygote.close();
+ * </pre>
+ *
+ * @see org.zeroturnaround.exec.ProcessExecutor#spawner(ProcessSpawner)
+ * @since 1.14
+ */
+public class ZygoteSpawner implements ProcessSpawner, Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(ZygoteSpawner.class);
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  /**
+   * The helper process.
+   */
+  private final Process zygote;
+
+  /**
+   * Standard input of the helper process where the requests are written to.
+   */
+  private final OutputStream requests;
+
+  /**
+   * Directory where the named pipes are created.
+   */
+  private final File fifoDirectory;
+
+  private final AtomicLong ids = new AtomicLong();
+
+  /**
+   * Processes which have not yet exited by their IDs.
+   */
+  private final Map<Long, ZygoteProcess> processes = new ConcurrentHashMap<Long, ZygoteProcess>();
+
+  private volatile boolean closed;
+
+  /**
+   * Maximum time for the zygote to start a process.
+   */
+  private volatile long startTimeout = 30;
+
+  private volatile TimeUnit startTimeoutUnit = TimeUnit.SECONDS;
+
+  /**
+   * Starts a new zygote using <code>/bin/sh</code>.
+   *
+   * @throws IOException if the zygote could not be started.
+   */
+  public ZygoteSpawner() throws IOException {
+    this("/bin/sh");
+  }
+
+  /**
+   * Starts a new zygote.
+   *
+   * @param shell path to a POSIX shell.
+   * @throws IOException if the zygote could not be started.
+   */
+  public ZygoteSpawner(String shell) throws IOException {
+    this.fifoDirectory = Files.createTempDirectory("zt-exec-zygote").toFile();
+    this.zygote = new ProcessBuilder(shell).redirectErrorStream(true).start();
+    this.requests = zygote.getOutputStream();
+    Thread reader = new Thread(new Runnable() {
+      public void run() {
+        readReplies();
+      }
+    }, "ZygoteSpawner-" + zygote);
+    reader.setDaemon(true);
+    reader.start();
+  }
+
+  /**
+   * Sets the maximum time for the zygote to start a process (30 seconds by default).
+   * Spawning fails with an {@link IOException} if the zygote doesn't start the process in time.
+   *
+   * @param timeout maximum time for starting a process.
+   * @param unit unit of the timeout.
+   * @return This spawner.
+   */
+  public ZygoteSpawner startTimeout(long timeout, TimeUnit unit) {
+    if (timeout <= 0)
+      throw new IllegalArgumentException("Start timeout must be positive.");
+    this.startTimeoutUnit = unit;
+    this.startTimeout = timeout;
+    return this;
+  }
+
+  public Process spawn(List<String> command, File directory, Map<String, String> environment, boolean redirectErrorStream) throws IOException {
+    if (command.isEmpty())
+      throw new IllegalArgumentException("Command must not be empty.");
+    // env would take it as another variable assignment
+    if (command.get(0).indexOf('=') >= 0)
+      throw new IllegalArgumentException("Program name must not contain '=': " + command.get(0));
+    long id = ids.incrementAndGet();
+    File in = new File(fifoDirectory, id + ".in");
+    File out = new File(fifoDirectory, id + ".out");
+    File err = redirectErrorStream ? null : new File(fifoDirectory, id + ".err");
+
+    StringBuilder sb = new StringBuilder();
+    sb.append("if mkfifo ").append(quote(in)).append(' ').append(quote(out));
+    if (err != null) {
+      sb.append(' ').append(quote(err));
+    }
+    sb.append("; then { ( ");
+    if (directory != null) {
+      sb.append("cd ").append(quote(directory)).append(" && ");
+    }
+    // "--" ends the options of env, so that a program name starting with "-" is not taken for one
+    sb.append("exec env -i --");
+    for (Entry<String, String> e : environment.entrySet()) {
+      sb.append(' ').append(quote(e.getKey() + "=" + e.getValue()));
+    }
+    for (String arg : command) {
+      sb.append(' ').append(quote(arg));
+    }
+    sb.append(" ) <").append(quote(in)).append(" >").append(quote(out));
+    sb.append(err == null ? " 2>&1" : " 2>" + quote(err));
+    sb.append(" & p=$!; echo \"started ").append(id).append(" $p\"; wait $p; echo \"exited ").append(id).append(" $?\"; } &");
+    sb.append(" else echo \"failed ").append(id).append("\"; fi\n");
+
+    ZygoteProcess process = new ZygoteProcess(this, id);
+    processes.put(id, process);
+    try {
+      send(sb.toString());
+    }
+    catch (IOException e) {
+      processes.remove(id);
+      throw e;
+    }
+    try {
+      // On timeout the process stays registered, so that it can be killed once the zygote reports it as started
+      process.open(in, out, err, startTimeout, startTimeoutUnit);
+    }
+    finally {
+      // The pipes stay connected after their names are removed
+      in.delete();
+      out.delete();
+      if (err != null) {
+        err.delete();
+      }
+    }
+    log.debug("Spawned {}", process);
+    return process;
+  }
+
+  /**
+   * Sends a signal to a process started by this zygote.
+   */
+  void kill(long pid, String signal) {
+    if (pid <= 0) {
+      return;
+    }
+    try {
+      send("kill -" + signal + " " + pid + " 2>/dev/null\n");
+    }
+    catch (IOException e) {
+      log.warn("Could not send {} to process {}", signal, pid, e);
+    }
+  }
+
+  private void send(String request) throws IOException {
+    synchronized (requests) {
+      if (closed)
+        throw new IOException("Zygote has been closed.");
+      requests.write(request.getBytes(UTF_8));
+      requests.flush();
+    }
+  }
+
+  /**
+   * Reads the replies of the zygote until it has exited and all of its processes have finished.
+   */
+  private void readReplies() {
+    try {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(zygote.getInputStream(), UTF_8));
+      String line;
+      while ((line = reader.readLine()) != null) {
+        String[] parts = line.split(" ");
+        ZygoteProcess process = parts.length >= 2 ? processes.get(parseId(parts[1])) : null;
+        if (process == null) {
+          log.debug("Zygote: {}", line);
+        }
+        else if (parts[0].equals("started") && parts.length == 3) {
+          process.onStarted(Long.parseLong(parts[2]));
+        }
+        else if (parts[0].equals("exited") && parts.length == 3) {
+          processes.remove(process.getId());
+          process.onExited(Integer.parseInt(parts[2]));
+        }
+        else if (parts[0].equals("failed")) {
+          processes.remove(process.getId());
+          process.onFailed("Zygote could not create pipes in " + fifoDirectory);
+        }
+        else {
+          log.debug("Zygote: {}", line);
+        }
+      }
+    }
+    catch (IOException e) {
+      log.debug("Failed to read from zygote:", e);
+    }
+    finally {
+      closed = true;
+      List<ZygoteProcess> remaining = new ArrayList<ZygoteProcess>(processes.values());
+      processes.clear();
+      if (!remaining.isEmpty()) {
+        log.warn("Zygote exited, exit values of {} are unknown", remaining);
+      }
+      for (ZygoteProcess process : remaining) {
+        process.onFailed("Zygote exited.");
+        process.onExited(-1);
+      }
+      fifoDirectory.delete();
+    }
+  }
+
+  private static long parseId(String value) {
+    try {
+      return Long.parseLong(value);
+    }
+    catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private static String quote(File file) {
+    return quote(file.getPath());
+  }
+
+  /**
+   * @return the given value as a single-quoted shell word.
+   */
+  private static String quote(String value) {
+    return "'" + value.replace("'", "'\\''") + "'";
+  }
+
+  /**
+   * Stops accepting new processes and lets the zygote exit.
+   * Running processes are not stopped, their exit values are still reported.
+   */
+  public void close() {
+    synchronized (requests) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      try {
+        requests.close();
+      }
+      catch (IOException e) {
+        log.debug("Failed to close the zygote input:", e);
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "ZygoteSpawner[" + zygote + "]";
+  }
+
+}
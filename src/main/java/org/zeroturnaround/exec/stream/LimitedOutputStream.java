@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec.stream;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Passes data to the underlying output stream until a byte limit is reached, any further data is discarded.
+ * <p>
+ * Several instances may share the same counter to limit e.g. the output and error stream of a process together.
+ * </p>
+ *
+ * @since 1.14
+ */
+public class LimitedOutputStream extends FilterOutputStream {
+
+  /**
+   * Number of bytes written to this stream (and any other stream sharing the counter), including the discarded ones.
+   */
+  private final AtomicLong count;
+
+  /**
+   * Maximum number of bytes passed to the underlying stream.
+   */
+  private final long limit;
+
+  /**
+   * Invoked once when the limit is exceeded or <code>null</code>.
+   */
+  private final Runnable onLimitExceeded;
+
+  /**
+   * @param out the underlying output stream.
+   * @param limit maximum number of bytes passed to the underlying stream.
+   */
+  public LimitedOutputStream(OutputStream out, long limit) {
+    this(out, new AtomicLong(), limit, null);
+  }
+
+  /**
+   * @param out the underlying output stream.
+   * @param count counter of bytes written, possibly shared with other streams.
+   * @param limit maximum number of bytes passed to the underlying stream (by all streams sharing the counter).
+   * @param onLimitExceeded invoked once when the limit is exceeded (maybe <code>null</code>).
+   */
+  public LimitedOutputStream(OutputStream out, AtomicLong count, long limit, Runnable onLimitExceeded) {
+    super(out);
+    if (limit < 0)
+      throw new IllegalArgumentException("Limit must not be negative.");
+    this.count = count;
+    this.limit = limit;
+    this.onLimitExceeded = onLimitExceeded;
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    write(new byte[] { (byte) b }, 0, 1);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    long before = count.getAndAdd(len);
+    long allowed = Math.min(len, limit - before);
+    if (allowed > 0) {
+      out.write(b, off, (int) allowed);
+    }
+    // Only the write crossing the limit invokes the callback
+    if (before <= limit && before + len > limit && onLimitExceeded != null) {
+      onLimitExceeded.run();
+    }
+  }
+
+  /**
+   * @return number of bytes written so far (by all streams sharing the counter), including the discarded ones.
+   */
+  public long getCount() {
+    return count.get();
+  }
+
+  /**
+   * @return <code>true</code> if more bytes have been written than the limit allows.
+   */
+  public boolean isLimitExceeded() {
+    return count.get() > limit;
+  }
+
+}
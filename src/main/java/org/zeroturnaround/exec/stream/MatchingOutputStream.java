@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec.stream;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Passes all data to the underlying output stream while searching it for a set of literal patterns.
+ * <p>
+ * The bytes are searched as they are written, so a pattern is found even if it's split between separate writes.
+ * Once a pattern has been found the listener is notified and the rest of the data is just passed on.
+ * </p>
+ *
+ * @see MultiPatternMatcher
+ * @since 1.14
+ */
+public class MatchingOutputStream extends FilterOutputStream {
+
+  /**
+   * Listener notified when a pattern has been found.
+   */
+  public interface MatchListener {
+
+    /**
+     * Invoked once when a pattern has been found.
+     *
+     * @param pattern the pattern found.
+     */
+    void matched(String pattern);
+
+  }
+
+  private final MultiPatternMatcher matcher;
+
+  private final MatchListener listener;
+
+  /**
+   * Current state of the search.
+   */
+  private int state = MultiPatternMatcher.INITIAL_STATE;
+
+  /**
+   * The pattern found or <code>null</code> if none has been found yet.
+   */
+  private volatile String match;
+
+  /**
+   * @param out the underlying output stream.
+   * @param matcher patterns to search for.
+   * @param listener notified when a pattern has been found (maybe <code>null</code>).
+   */
+  public MatchingOutputStream(OutputStream out, MultiPatternMatcher matcher, MatchListener listener) {
+    super(out);
+    this.matcher = matcher;
+    this.listener = listener;
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    out.write(b);
+    if (match == null) {
+      state = matcher.next(state, (byte) b);
+      checkMatch();
+    }
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    out.write(b, off, len);
+    if (match == null) {
+      state = matcher.next(state, b, off, len);
+      checkMatch();
+    }
+  }
+
+  private void checkMatch() {
+    int index = matcher.getMatch(state);
+    if (index >= 0) {
+      match = matcher.getPattern(index);
+      if (listener != null) {
+        listener.matched(match);
+      }
+    }
+  }
+
+  /**
+   * @return the pattern found or <code>null</code> if none has been found yet.
+   */
+  public String getMatch() {
+    return match;
+  }
+
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec.stream;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Finds any of a set of literal patterns in a stream of bytes.
+ * <p>
+ * The patterns are compiled once into an Aho-Corasick automaton (a table of 256 transitions per state),
+ * so all of them are searched in a single pass costing one table lookup per byte regardless of the number of patterns.
+ * The matcher itself is immutable and thread-safe; the only state of a search is the current state number
+ * which allows a search to continue across chunk boundaries without decoding the bytes into lines.
+ * </p>
+ * <pre>
+ * int state = MultiPatternMatcher.INITIAL_STATE;
+ * for (byte b : chunk) {
+ *   state = matcher.next(state, b);
+ *   if (matcher.getMatch(state) &gt;= 0) {
+ *     ...
+ *   }
+ * }
+ * </pre>
+ *
+ * @since 1.14
+ */
+public final class MultiPatternMatcher {
+
+  /**
+   * State before any bytes have been searched.
+   */
+  public static final int INITIAL_STATE = 0;
+
+  /**
+   * Patterns being searched for.
+   */
+  private final List<String> patterns;
+
+  /**
+   * Transitions of the automaton, indexed by <code>state * 256 + unsigned byte</code>.
+   */
+  private final int[] transitions;
+
+  /**
+   * Index of the pattern matched when reaching each state or <code>-1</code> if the state doesn't complete a pattern.
+   */
+  private final int[] matches;
+
+  /**
+   * Creates a matcher for the given patterns encoded in UTF-8.
+   *
+   * @param patterns literal patterns to search for (not empty).
+   */
+  public MultiPatternMatcher(String... patterns) {
+    this(Charset.forName("UTF-8"), Arrays.asList(patterns));
+  }
+
+  /**
+   * Creates a matcher for the given patterns.
+   *
+   * @param charset charset used to encode the patterns into bytes.
+   * @param patterns literal patterns to search for (not empty).
+   */
+  public MultiPatternMatcher(Charset charset, List<String> patterns) {
+    if (patterns.isEmpty())
+      throw new IllegalArgumentException("At least one pattern must be provided.");
+    byte[][] bytes = new byte[patterns.size()][];
+    int maxStates = 1;
+    for (int i = 0; i < bytes.length; i++) {
+      String pattern = patterns.get(i);
+      if (pattern == null || pattern.isEmpty())
+        throw new IllegalArgumentException("Patterns must not be empty.");
+      bytes[i] = pattern.getBytes(charset);
+      maxStates += bytes[i].length;
+    }
+    this.patterns = Collections.unmodifiableList(new ArrayList<String>(patterns));
+
+    // Build the trie
+    int[] delta = new int[maxStates * 256];
+    Arrays.fill(delta, -1);
+    int[] match = new int[maxStates];
+    Arrays.fill(match, -1);
+    int states = 1;
+    for (int i = 0; i < bytes.length; i++) {
+      int state = INITIAL_STATE;
+      for (byte b : bytes[i]) {
+        int index = (state << 8) | (b & 0xff);
+        if (delta[index] < 0) {
+          delta[index] = states++;
+        }
+        state = delta[index];
+      }
+      if (match[state] < 0) {
+        match[state] = i;
+      }
+    }
+
+    // Turn it into a complete automaton following failure links in breadth-first order
+    int[] fail = new int[states];
+    int[] queue = new int[states];
+    int head = 0;
+    int tail = 0;
+    for (int c = 0; c < 256; c++) {
+      int next = delta[c];
+      if (next < 0) {
+        delta[c] = INITIAL_STATE;
+      }
+      else {
+        fail[next] = INITIAL_STATE;
+        queue[tail++] = next;
+      }
+    }
+    while (head < tail) {
+      int state = queue[head++];
+      if (match[state] < 0) {
+        // A longer pattern ending here may contain a shorter one as its suffix
+        match[state] = match[fail[state]];
+      }
+      for (int c = 0; c < 256; c++) {
+        int index = (state << 8) | c;
+        int next = delta[index];
+        int fallback = delta[(fail[state] << 8) | c];
+        if (next < 0) {
+          delta[index] = fallback;
+        }
+        else {
+          fail[next] = fallback;
+          queue[tail++] = next;
+        }
+      }
+    }
+
+    this.transitions = Arrays.copyOf(delta, states * 256);
+    this.matches = Arrays.copyOf(match, states);
+  }
+
+  /**
+   * @param state current state of the search.
+   * @param b next byte of the input.
+   * @return state of the search after the given byte.
+   */
+  public int next(int state, byte b) {
+    return transitions[(state << 8) | (b & 0xff)];
+  }
+
+  /**
+   * Continues a search over the given bytes and stops at the first match.
+   *
+   * @param state current state of the search.
+   * @param b the input bytes.
+   * @param off the start offset in the input.
+   * @param len the number of bytes to search.
+   * @return state of the search after the given bytes or at the first match (check it with {@link #getMatch(int)}).
+   */
+  public int next(int state, byte[] b, int off, int len) {
+    int[] transitions = this.transitions;
+    int[] matches = this.matches;
+    int end = off + len;
+    for (int i = off; i < end; i++) {
+      state = transitions[(state << 8) | (b[i] & 0xff)];
+      if (matches[state] >= 0) {
+        break;
+      }
+    }
+    return state;
+  }
+
+  /**
+   * @param state state of the search.
+   * @return index of the pattern which was found by reaching the given state or <code>-1</code> if none was.
+   */
+  public int getMatch(int state) {
+    return matches[state];
+  }
+
+  /**
+   * @param index index of the pattern.
+   * @return pattern with the given index.
+   */
+  public String getPattern(int index) {
+    return patterns.get(index);
+  }
+
+  /**
+   * @return patterns being searched for.
+   */
+  public List<String> getPatterns() {
+    return patterns;
+  }
+
+  @Override
+  public String toString() {
+    return "MultiPatternMatcher" + patterns;
+  }
+
+}
@@ -40,7 +40,9 @@ package org.zeroturnaround.exec.stream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -70,6 +72,26 @@ public class PumpStreamHandler implements ExecuteStreamHandler {
 
   protected InputStreamPumper inputStreamPumper;
 
+  /**
+   * Stream pumpers created by this handler by their threads.
+   */
+  private final Map<Thread, StreamPumper> pumpers = new IdentityHashMap<Thread, StreamPumper>();
+
+  /**
+   * <code>true</code> if any of the output pumps was abandoned before reaching the end of its stream.
+   */
+  private volatile boolean truncated;
+
+  /**
+   * Value of {@link System#nanoTime()} when the pumps were started or any data was read by a pump that has already finished.
+   */
+  private volatile long retiredActivity = System.nanoTime();
+
+  /**
+   * Number of bytes read by output and error pumps that have already finished.
+   */
+  private volatile long retiredByteCount;
+
   /**
    * Construct a new <CODE>PumpStreamHandler</CODE>.
    */
@@ -171,6 +193,9 @@ public class PumpStreamHandler implements ExecuteStreamHandler {
    * Start the <CODE>Thread</CODE>s.
    */
   public void start() {
+    truncated = false;
+    retiredActivity = System.nanoTime();
+    retiredByteCount = 0;
     if (outputThread != null) {
       outputThread.start();
     }
@@ -186,26 +211,13 @@ public class PumpStreamHandler implements ExecuteStreamHandler {
    * Stop pumping the streams.
    */
   public void stop() {
-    if (inputThread != null) {
-      if (inputStreamPumper != null) {
-        inputStreamPumper.stopProcessing();
-      }
-      // #33 Interrupt reading from a PipedInputStream to unblock the pumping thread
-      inputThread.interrupt();
-      log.trace("Joining input thread {}...", inputThread);
-      try {
-        inputThread.join();
-        inputThread = null;
-      }
-      catch (InterruptedException e) {
-        // ignore
-      }
-    }
+    stopInput();
 
     if (outputThread != null) {
       log.trace("Joining output thread {}...", outputThread);
       try {
         outputThread.join();
+        removePumper(outputThread);
         outputThread = null;
       }
       catch (InterruptedException e) {
@@ -217,6 +229,7 @@ public class PumpStreamHandler implements ExecuteStreamHandler {
       log.trace("Joining error thread {}...", errorThread);
       try {
         errorThread.join();
+        removePumper(errorThread);
         errorThread = null;
       }
       catch (InterruptedException e) {
@@ -227,6 +240,111 @@ public class PumpStreamHandler implements ExecuteStreamHandler {
     flush();
   }
 
+  /**
+   * Stop pumping the streams but wait for the output and error pumps for a limited time only.
+   * <p>
+   * A pump is abandoned if it hasn't read any data within <code>idleTimeout</code>
+   * or if draining the streams has taken <code>totalTimeout</code> altogether.
+   * This happens e.g. if a background grandchild process inherited the process' output stream and keeps it open.
+   * Abandoned pumps discard any further data and their input streams are closed.
+   * The thread of an abandoned pump may still stay blocked in reading until the other end of the pipe is closed.
+   * </p>
+   *
+   * @param idleTimeout maximum time without any data read from a stream.
+   * @param totalTimeout maximum total time for draining the streams.
+   * @param unit unit of the timeout values.
+   * @return <code>true</code> if all pumps finished, <code>false</code> if any of them was abandoned (the output is truncated).
+   * @since 1.14
+   */
+  public boolean stop(long idleTimeout, long totalTimeout, TimeUnit unit) {
+    stopInput();
+
+    long idleNanos = unit.toNanos(idleTimeout);
+    long started = System.nanoTime();
+    long deadline = started + unit.toNanos(totalTimeout);
+
+    boolean drained = true;
+    if (outputThread != null) {
+      drained &= drain(outputThread, started, idleNanos, deadline);
+      outputThread = null;
+    }
+    if (errorThread != null) {
+      drained &= drain(errorThread, started, idleNanos, deadline);
+      errorThread = null;
+    }
+    if (!drained) {
+      truncated = true;
+    }
+
+    flush();
+    return drained;
+  }
+
+  private void stopInput() {
+    if (inputThread != null) {
+      if (inputStreamPumper != null) {
+        inputStreamPumper.stopProcessing();
+      }
+      // #33 Interrupt reading from a PipedInputStream to unblock the pumping thread
+      inputThread.interrupt();
+      log.trace("Joining input thread {}...", inputThread);
+      try {
+        inputThread.join();
+        removePumper(inputThread);
+        inputThread = null;
+      }
+      catch (InterruptedException e) {
+        // ignore
+      }
+    }
+  }
+
+  /**
+   * Waits for the given pump thread to finish, abandoning it once it is idle or the deadline is reached.
+   *
+   * @return <code>true</code> if the pump finished, <code>false</code> if it was abandoned.
+   */
+  private boolean drain(Thread thread, long started, long idleNanos, long deadline) {
+    StreamPumper pumper = removePumper(thread);
+    log.trace("Draining thread {}...", thread);
+    try {
+      while (thread.isAlive()) {
+        long now = System.nanoTime();
+        long wait = deadline - now;
+        if (pumper != null) {
+          // Idle time before the draining started doesn't count
+          long lastActivity = Math.max(started, pumper.getLastActivity());
+          wait = Math.min(wait, lastActivity + idleNanos - now);
+        }
+        if (wait <= 0) {
+          break;
+        }
+        // Thread.join(0) would wait forever
+        thread.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait)));
+      }
+    }
+    catch (InterruptedException e) {
+      // ignore - abandon the pump
+    }
+    if (!thread.isAlive()) {
+      return true;
+    }
+    log.warn("Abandoned pumping thread {} as the stream was not closed in time, output is truncated", thread);
+    if (pumper != null) {
+      pumper.abandon();
+    }
+    return false;
+  }
+
+  /**
+   * @return <code>true</code> if any of the output pumps was abandoned by {@link #stop(long, long, TimeUnit)}
+   * before reaching the end of its stream.
+   * @since 1.14
+   */
+  public boolean isTruncated() {
+    return truncated;
+  }
+
   public void flush() {
     if (out != null) {
       log.trace("Flushing output stream {}...", out);
@@ -336,7 +454,61 @@ public class PumpStreamHandler implements ExecuteStreamHandler {
    * @return the stream pumper thread
    */
   protected Thread createPump(InputStream is, OutputStream os, boolean closeWhenExhausted, boolean flushImmediately) {
-    return newThread(new StreamPumper(is, os, closeWhenExhausted, flushImmediately));
+    StreamPumper pumper = new StreamPumper(is, os, closeWhenExhausted, flushImmediately);
+    Thread result = newThread(pumper);
+    synchronized (pumpers) {
+      pumpers.put(result, pumper);
+    }
+    return result;
+  }
+
+  /**
+   * Removes the stream pumper run by the given thread.
+   *
+   * @return the stream pumper or <code>null</code> if the thread was not created by {@link #createPump(InputStream, OutputStream, boolean, boolean)}.
+   */
+  private StreamPumper removePumper(Thread thread) {
+    synchronized (pumpers) {
+      StreamPumper result = pumpers.remove(thread);
+      if (result != null && thread != inputThread) {
+        retiredActivity = Math.max(retiredActivity, result.getLastActivity());
+        retiredByteCount += result.getByteCount();
+      }
+      return result;
+    }
+  }
+
+  /**
+   * @return number of bytes the output and error pumps have read from the process so far.
+   * @since 1.14
+   */
+  public long getByteCount() {
+    synchronized (pumpers) {
+      long result = retiredByteCount;
+      for (Map.Entry<Thread, StreamPumper> e : pumpers.entrySet()) {
+        if (e.getKey() != inputThread) {
+          result += e.getValue().getByteCount();
+        }
+      }
+      return result;
+    }
+  }
+
+  /**
+   * @return value of {@link System#nanoTime()} when the output or error pump last read any data from the process
+   * (or when the pumps were started if nothing has been read yet).
+   * @since 1.14
+   */
+  public long getLastActivity() {
+    synchronized (pumpers) {
+      long result = retiredActivity;
+      for (Map.Entry<Thread, StreamPumper> e : pumpers.entrySet()) {
+        if (e.getKey() != inputThread) {
+          result = Math.max(result, e.getValue().getLastActivity());
+        }
+      }
+      return result;
+    }
   }
 
   /**
@@ -72,6 +72,18 @@ public class StreamPumper implements Runnable {
   /** flush the output stream after each write */
   private final boolean flushImmediately;
 
+  /** value of {@link System#nanoTime()} when data was last read from the input stream */
+  private volatile long lastActivity = System.nanoTime();
+
+  /** number of bytes read from the input stream */
+  private volatile long byteCount;
+
+  /** was this pumper abandoned - any further data is discarded */
+  private volatile boolean abandoned;
+
+  /** held while writing to the output stream, so that nothing is written once {@link #abandon()} has returned */
+  private final Object writeLock = new Object();
+
   /**
    * Create a new stream pumper.
    *
@@ -166,9 +178,16 @@ public class StreamPumper implements Runnable {
     int length;
     try {
       while ((length = is.read(buf)) > 0) {
-        os.write(buf, 0, length);
-        if(flushImmediately) {
-        	os.flush();
+        lastActivity = System.nanoTime();
+        byteCount += length;
+        synchronized (writeLock) {
+          if (abandoned) {
+            break;
+          }
+          os.write(buf, 0, length);
+          if(flushImmediately) {
+          	os.flush();
+          }
         }
       }
     } catch (Exception e) {
@@ -189,6 +208,53 @@ public class StreamPumper implements Runnable {
     }
   }
 
+  /**
+   * @return value of {@link System#nanoTime()} when data was last read from the input stream
+   * (or when this pumper was created if nothing has been read yet).
+   * @since 1.14
+   */
+  public long getLastActivity() {
+    return lastActivity;
+  }
+
+  /**
+   * @return number of bytes read from the input stream so far.
+   * @since 1.14
+   */
+  public long getByteCount() {
+    return byteCount;
+  }
+
+  /**
+   * Abandons this pumper. Any further data is discarded instead of being written to the output stream.
+   * A write in progress is waited for, so nothing is written to the output stream after this method returns.
+   * <p>
+   * This is used if the input stream is kept open by someone else after the process has exited.
+   * The input stream is closed as well, but this doesn't unblock a pending read on every platform
+   * (e.g. not for a pipe on Linux). The pumping thread then stays blocked until the other end of the pipe is closed.
+   * </p>
+   * @since 1.14
+   */
+  public void abandon() {
+    synchronized (writeLock) {
+      abandoned = true;
+    }
+    try {
+      is.close();
+    }
+    catch (IOException e) {
+      log.trace("Failed to close abandoned input stream:", e);
+    }
+  }
+
+  /**
+   * @return <code>true</code> if this pumper was abandoned.
+   * @since 1.14
+   */
+  public boolean isAbandoned() {
+    return abandoned;
+  }
+
   /**
    * Tells whether the end of the stream has been reached.
    *
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec.flow;
+
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.Flow;
+
+/**
+ * Output stream which publishes the chunks written to it as {@link ByteBuffer}s.
+ * <p>
+ * Writing blocks until the subscriber has requested more items, so a stream pump writing into it
+ * stops reading from the process until the subscriber catches up.
+ * The subscription is completed when the stream is closed.
+ * Chunks written after the subscription was cancelled are discarded.
+ * </p>
+ *
+ * @see PublishingProcess
+ * @since 1.14
+ */
+public class ByteBufferPublisher extends OutputStream implements Flow.Publisher<ByteBuffer> {
+
+  private final FlowEmitter<ByteBuffer> emitter = new FlowEmitter<ByteBuffer>();
+
+  public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+    emitter.subscribe(subscriber);
+  }
+
+  @Override
+  public void write(int b) throws InterruptedIOException {
+    write(new byte[] { (byte) b }, 0, 1);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws InterruptedIOException {
+    if (len == 0) {
+      return;
+    }
+    try {
+      emitter.emit(ByteBuffer.wrap(Arrays.copyOfRange(b, off, off + len)));
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for the subscriber to request more data.");
+    }
+  }
+
+  /**
+   * Completes the subscription.
+   */
+  @Override
+  public void close() {
+    emitter.complete();
+  }
+
+}
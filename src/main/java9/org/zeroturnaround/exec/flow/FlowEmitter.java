@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec.flow;
+
+import java.util.concurrent.Flow;
+
+/**
+ * Delivers items written by a single producer thread to at most one {@link Flow.Subscriber}.
+ * <p>
+ * The producer is blocked in {@link #emit(Object)} until the subscriber has requested more items.
+ * Signals are never delivered concurrently: a terminal signal arriving while an item is being delivered
+ * is passed on by the thread which delivered the item.
+ * </p>
+ *
+ * @since 1.14
+ */
+final class FlowEmitter<T> implements Flow.Subscription {
+
+  /**
+   * Subscription given to the subscribers that were rejected.
+   */
+  private static final Flow.Subscription REJECTED = new Flow.Subscription() {
+    public void request(long n) {
+      // nothing will be delivered
+    }
+    public void cancel() {
+      // nothing to cancel
+    }
+  };
+
+  private Flow.Subscriber<? super T> subscriber;
+
+  /**
+   * Number of items requested but not yet delivered.
+   */
+  private long demand;
+
+  /**
+   * <code>true</code> while a signal is being delivered to the subscriber.
+   */
+  private boolean signalling;
+
+  /**
+   * <code>true</code> if no more items will be delivered.
+   */
+  private boolean done;
+
+  /**
+   * Error to terminate the subscription with or <code>null</code> if it completes normally.
+   */
+  private Throwable error;
+
+  /**
+   * <code>true</code> if the subscriber must not receive a terminal signal any more.
+   */
+  private boolean terminated;
+
+  /**
+   * Subscribes the given subscriber. Only one subscriber is accepted, others receive an error.
+   *
+   * @param subscriber the subscriber.
+   */
+  void subscribe(Flow.Subscriber<? super T> subscriber) {
+    if (subscriber == null)
+      throw new NullPointerException("Subscriber must be provided.");
+    boolean rejected;
+    synchronized (this) {
+      rejected = this.subscriber != null;
+      if (!rejected) {
+        this.subscriber = subscriber;
+        signalling = true;
+      }
+    }
+    if (rejected) {
+      subscriber.onSubscribe(REJECTED);
+      subscriber.onError(new IllegalStateException("Only one subscriber is supported."));
+      return;
+    }
+    try {
+      subscriber.onSubscribe(this);
+    }
+    catch (RuntimeException e) {
+      cancel();
+    }
+    finally {
+      afterSignal();
+    }
+  }
+
+  /**
+   * Delivers the given item to the subscriber, waiting until it has been requested.
+   * The item is discarded if the subscription has been cancelled or completed.
+   *
+   * @param item the item to deliver.
+   * @throws InterruptedException if the current thread was interrupted while waiting for the demand.
+   */
+  void emit(T item) throws InterruptedException {
+    Flow.Subscriber<? super T> s;
+    synchronized (this) {
+      while (!done && (subscriber == null || signalling || demand == 0)) {
+        wait();
+      }
+      if (done) {
+        return;
+      }
+      demand--;
+      signalling = true;
+      s = subscriber;
+    }
+    try {
+      s.onNext(item);
+    }
+    catch (RuntimeException e) {
+      cancel();
+    }
+    finally {
+      afterSignal();
+    }
+  }
+
+  /**
+   * Completes the subscription once the items delivered so far have been processed.
+   * Any items emitted afterwards are discarded.
+   */
+  void complete() {
+    synchronized (this) {
+      done = true;
+      notifyAll();
+    }
+    signalTerminal();
+  }
+
+  public void request(long n) {
+    synchronized (this) {
+      if (done) {
+        return;
+      }
+      if (n <= 0) {
+        done = true;
+        error = new IllegalArgumentException("Requested " + n + " items, the number must be positive.");
+      }
+      else {
+        demand += n;
+        if (demand < 0) {
+          demand = Long.MAX_VALUE;
+        }
+      }
+      notifyAll();
+    }
+    signalTerminal();
+  }
+
+  public synchronized void cancel() {
+    done = true;
+    terminated = true;
+    notifyAll();
+  }
+
+  private void afterSignal() {
+    synchronized (this) {
+      signalling = false;
+      notifyAll();
+    }
+    signalTerminal();
+  }
+
+  private void signalTerminal() {
+    Flow.Subscriber<? super T> s;
+    Throwable e;
+    synchronized (this) {
+      if (!done || terminated || signalling || subscriber == null) {
+        return;
+      }
+      terminated = true;
+      s = subscriber;
+      e = error;
+    }
+    if (e == null) {
+      s.onComplete();
+    }
+    else {
+      s.onError(e);
+    }
+  }
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec.flow;
+
+import java.io.IOException;
+import java.util.concurrent.Flow;
+
+import org.zeroturnaround.exec.stream.LogOutputStream;
+
+/**
+ * Output stream which publishes the lines written to it.
+ * <p>
+ * Writing blocks until the subscriber has requested more lines, so a stream pump writing into it
+ * stops reading from the process until the subscriber catches up.
+ * The last incomplete line is published and the subscription completed when the stream is closed.
+ * Lines written after the subscription was cancelled are discarded.
+ * </p>
+ *
+ * @see PublishingProcess
+ * @since 1.14
+ */
+public class LinePublisher extends LogOutputStream implements Flow.Publisher<String> {
+
+  private final FlowEmitter<String> emitter = new FlowEmitter<String>();
+
+  public void subscribe(Flow.Subscriber<? super String> subscriber) {
+    emitter.subscribe(subscriber);
+  }
+
+  @Override
+  protected void processLine(String line) {
+    try {
+      emitter.emit(line);
+    }
+    catch (InterruptedException e) {
+      // Keep the flag so the pump notices it, the line is discarded
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Publishes the last incomplete line and completes the subscription.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      super.close();
+    }
+    finally {
+      emitter.complete();
+    }
+  }
+
+}
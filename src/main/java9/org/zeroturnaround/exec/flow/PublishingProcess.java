@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec.flow;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Flow;
+
+import org.zeroturnaround.exec.ProcessExecutor;
+import org.zeroturnaround.exec.StartedProcess;
+import org.zeroturnaround.exec.listener.ProcessListener;
+import org.zeroturnaround.exec.stream.ExecuteStreamHandler;
+import org.zeroturnaround.exec.stream.PumpStreamHandler;
+
+/**
+ * Started process which publishes its output and error streams as {@link Flow.Publisher}s.
+ * <p>
+ * The streams are pumped as usual, but each pump waits until the subscriber has requested more data before it reads on.
+ * Once the pipe buffer of the operating system is full, a process writing faster than its subscriber can consume
+ * is blocked until the subscriber catches up.
+ * Both publishers are completed after the process has stopped and its streams have been closed.
+ * </p>
+ * <p>
+ * Subscribe to both publishers if the error stream is not redirected to the output stream.
+ * When it is redirected (the default) the error publisher just completes.
+ * A publisher without a subscriber never reads its stream, so the process may block and never finish.
+ * Cancelling a subscription discards the rest of the stream without blocking the process.
+ * </p>
+ * <pre>
+ * PublishingProcess&lt;String&gt; process = PublishingProcess.startLines(new ProcessExecutor("java", "-version"));
+ * process.getOutput().subscribe(subscriber);
+ * process.getError().subscribe(errorSubscriber);
+ * process.getFuture().get();
+ * </pre>
+ *
+ * @param <T> type of the published items.
+ * @since 1.14
+ */
+public class PublishingProcess<T> extends StartedProcess {
+
+  /**
+   * Publisher of the process' output stream.
+   */
+  private final Flow.Publisher<T> output;
+
+  /**
+   * Publisher of the process' error stream.
+   */
+  private final Flow.Publisher<T> error;
+
+  private PublishingProcess(StartedProcess started, Flow.Publisher<T> output, Flow.Publisher<T> error) {
+    super(started.getProcess(), started.getFuture());
+    this.output = output;
+    this.error = error;
+  }
+
+  /**
+   * Starts the process publishing its output and error streams as chunks of bytes.
+   * <p>
+   * The output and error streams set on the executor are replaced for this process only, its input stream is kept.
+   * </p>
+   *
+   * @param executor the executor configured for the process.
+   * @return the started process.
+   * @throws IOException an error occurred when process was started.
+   */
+  public static PublishingProcess<ByteBuffer> start(ProcessExecutor executor) throws IOException {
+    return start(executor, new ByteBufferPublisher(), new ByteBufferPublisher());
+  }
+
+  /**
+   * Starts the process publishing its output and error streams line by line.
+   * <p>
+   * The output and error streams set on the executor are replaced for this process only, its input stream is kept.
+   * </p>
+   *
+   * @param executor the executor configured for the process.
+   * @return the started process.
+   * @throws IOException an error occurred when process was started.
+   */
+  public static PublishingProcess<String> startLines(ProcessExecutor executor) throws IOException {
+    return start(executor, new LinePublisher(), new LinePublisher());
+  }
+
+  private static <T, P extends OutputStream & Flow.Publisher<T>> PublishingProcess<T> start(ProcessExecutor executor,
+      final P output, final P error) throws IOException {
+    ExecuteStreamHandler streams = executor.streams();
+    PumpStreamHandler pumps = executor.pumps();
+    InputStream input = pumps == null ? null : pumps.getInput();
+    ProcessListener listener = new ProcessListener() {
+      @Override
+      public void afterStop(Process process) {
+        // The pumps have finished (or were abandoned) by now
+        closeQuietly(output);
+        closeQuietly(error);
+      }
+    };
+    executor.streams(new PumpStreamHandler(output, error, input));
+    executor.addListener(listener);
+    try {
+      return new PublishingProcess<T>(executor.start(), output, error);
+    }
+    finally {
+      executor.removeListener(listener);
+      executor.streams(streams);
+    }
+  }
+
+  private static void closeQuietly(OutputStream out) {
+    try {
+      out.close();
+    }
+    catch (IOException e) {
+      // nothing to report, the subscription is completed regardless
+    }
+  }
+
+  /**
+   * @return publisher of the process' output stream.
+   */
+  public Flow.Publisher<T> getOutput() {
+    return output;
+  }
+
+  /**
+   * @return publisher of the process' error stream.
+   */
+  public Flow.Publisher<T> getError() {
+    return error;
+  }
+
+}
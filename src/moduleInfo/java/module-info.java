@@ -27,8 +27,12 @@ module org.zeroturnaround.exec {
   requires transitive org.slf4j;
 
   exports org.zeroturnaround.exec;
+  exports org.zeroturnaround.exec.admission;
   exports org.zeroturnaround.exec.close;
+  exports org.zeroturnaround.exec.flow;
   exports org.zeroturnaround.exec.listener;
+  exports org.zeroturnaround.exec.pool;
+  exports org.zeroturnaround.exec.spawn;
   exports org.zeroturnaround.exec.stop;
   exports org.zeroturnaround.exec.stream;
   exports org.zeroturnaround.exec.stream.slf4j;
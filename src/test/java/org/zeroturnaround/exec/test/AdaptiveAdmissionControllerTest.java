@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.zeroturnaround.exec.admission.AdaptiveAdmissionController;
+import org.zeroturnaround.exec.admission.SystemStats;
+
+/**
+ * Tests adjusting the concurrency limit from run times and system load.
+ *
+ * @see AdaptiveAdmissionController
+ * @see SystemStats
+ */
+public class AdaptiveAdmissionControllerTest {
+
+  private File dir;
+
+  @Before
+  public void setUp() {
+    dir = new File("target/AdaptiveAdmissionControllerTest-" + System.nanoTime()).getAbsoluteFile();
+    Assert.assertTrue(dir.mkdirs());
+  }
+
+  @After
+  public void tearDown() {
+    delete(dir);
+  }
+
+  private static void delete(File file) {
+    File[] files = file.listFiles();
+    if (files != null) {
+      for (File f : files) {
+        delete(f);
+      }
+    }
+    file.delete();
+  }
+
+  /**
+   * Reports run times directly instead of running processes.
+   */
+  private static class TestController extends AdaptiveAdmissionController {
+
+    private final List<Permit> held = new ArrayList<Permit>();
+
+    TestController(int minLimit, int maxLimit) {
+      super(minLimit, maxLimit);
+    }
+
+    /**
+     * Keeps all permits in use and reports a finished process.
+     */
+    void sample(long runMillis) throws IOException {
+      while (getRunningCount() < getLimit()) {
+        held.add(acquire(0, null));
+      }
+      released(null, TimeUnit.MILLISECONDS.toNanos(runMillis));
+    }
+
+  }
+
+  @Test
+  public void testLimitGrowsWhileRunTimesAreStable() throws Exception {
+    TestController admission = new TestController(1, 16);
+    admission.stats(null);
+    for (int i = 0; i < 200; i++) {
+      admission.sample(100);
+    }
+    Assert.assertEquals(16, admission.getLimit());
+    Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(100), admission.getBaselineRunNanos());
+  }
+
+  @Test
+  public void testLimitShrinksWhenRunTimesGrow() throws Exception {
+    TestController admission = new TestController(1, 16);
+    admission.stats(null);
+    for (int i = 0; i < 200; i++) {
+      admission.sample(100);
+    }
+    for (int i = 0; i < 30; i++) {
+      admission.sample(400);
+    }
+    Assert.assertTrue("Limit " + admission.getLimit(), admission.getLimit() < 12);
+  }
+
+  @Test
+  public void testLimitShrinksWhenSystemIsOverloaded() throws Exception {
+    write("proc/pressure/cpu", "some avg10=80.00 avg60=50.00 avg300=20.00 total=1\nfull avg10=0.00 avg60=0.00 avg300=0.00 total=0\n");
+    TestController admission = new TestController(2, 16);
+    admission.stats(null);
+    for (int i = 0; i < 200; i++) {
+      admission.sample(100);
+    }
+    admission.stats(new SystemStats(new File(dir, "proc"), new File(dir, "cgroup"))).statsInterval(0, TimeUnit.MILLISECONDS);
+    admission.sample(100);
+    Assert.assertTrue(admission.isOverloaded());
+    Assert.assertTrue(admission.getLimit() < 16);
+    for (int i = 0; i < 100; i++) {
+      admission.sample(100);
+    }
+    Assert.assertEquals(2, admission.getLimit());
+  }
+
+  @Test
+  public void testLoadAverageIgnoredWithCpuQuota() throws Exception {
+    write("proc/loadavg", "64.00 60.00 50.00 3/500 12345\n");
+    write("proc/self/cgroup", "0::/\n");
+    write("cgroup/cpu.max", "50000 100000\n");
+    write("cgroup/cpu.pressure", "some avg10=1.50 avg60=1.00 avg300=1.00 total=1\n");
+    SystemStats stats = new SystemStats(new File(dir, "proc"), new File(dir, "cgroup"));
+    Assert.assertEquals(64.0, stats.getLoadAverage(), 0.001);
+    Assert.assertEquals(0.5, stats.getCpuQuota(), 0.001);
+    Assert.assertEquals(0.5, stats.getCpuLimit(), 0.001);
+    Assert.assertEquals(1.5, stats.getCpuPressure(), 0.001);
+
+    TestController admission = new TestController(1, 16);
+    admission.stats(stats).statsInterval(0, TimeUnit.MILLISECONDS);
+    admission.sample(100);
+    Assert.assertFalse(admission.isOverloaded());
+
+    // Without a quota the load average counts
+    write("cgroup/cpu.max", "max 100000\n");
+    Assert.assertEquals(-1, stats.getCpuQuota(), 0.001);
+    admission.sample(100);
+    Assert.assertTrue(admission.isOverloaded());
+  }
+
+  @Test
+  public void testMissingStats() {
+    SystemStats stats = new SystemStats(new File(dir, "proc"), new File(dir, "cgroup"));
+    Assert.assertEquals(-1, stats.getLoadAverage(), 0.001);
+    Assert.assertEquals(-1, stats.getCpuPressure(), 0.001);
+    Assert.assertEquals(-1, stats.getCpuQuota(), 0.001);
+    Assert.assertEquals(Runtime.getRuntime().availableProcessors(), stats.getCpuLimit(), 0.001);
+  }
+
+  private void write(String path, String content) throws IOException {
+    File file = new File(dir, path);
+    file.getParentFile().mkdirs();
+    FileOutputStream out = new FileOutputStream(file);
+    try {
+      out.write(content.getBytes("UTF-8"));
+    }
+    finally {
+      out.close();
+    }
+  }
+
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.zeroturnaround.exec.BatchResult;
+import org.zeroturnaround.exec.ProcessExecutor;
+import org.zeroturnaround.exec.StartedProcess;
+import org.zeroturnaround.exec.admission.AdmissionController;
+import org.zeroturnaround.exec.admission.AdmissionRejectedException;
+import org.zeroturnaround.exec.admission.AdmissionRejectedException.Reason;
+
+/**
+ * Tests limiting the number of concurrent processes.
+ *
+ * @see AdmissionController
+ */
+public class AdmissionControllerTest {
+
+  private ExecutorService threads;
+
+  @Before
+  public void setUp() {
+    threads = Executors.newCachedThreadPool();
+  }
+
+  @After
+  public void tearDown() {
+    threads.shutdownNow();
+  }
+
+  private static ProcessExecutor loop(AdmissionController admission) {
+    return new ProcessExecutor("java", "-cp", "target/test-classes", Loop.class.getName()).admission(admission);
+  }
+
+  private static ProcessExecutor hello(AdmissionController admission) {
+    return new ProcessExecutor("java", "-cp", "target/test-classes", HelloWorld.class.getName()).admission(admission);
+  }
+
+  @Test(timeout = 20000)
+  public void testConcurrencyIsLimited() throws Exception {
+    AdmissionController admission = new AdmissionController(2);
+    List<ProcessExecutor> executors = new ArrayList<ProcessExecutor>();
+    for (int i = 0; i < 5; i++) {
+      executors.add(hello(admission));
+    }
+    BatchResult result = ProcessExecutor.executeAll(executors, 5);
+    Assert.assertTrue(result.isSuccess());
+    Assert.assertEquals(5, admission.getAdmittedCount());
+    Assert.assertTrue(admission.getQueuedCount() >= 3);
+    Assert.assertEquals(0, admission.getRunningCount());
+    Assert.assertEquals(0, admission.getQueueDepth());
+    Assert.assertTrue(admission.getMaxWaitNanos() > 0);
+  }
+
+  @Test(timeout = 10000)
+  public void testQueueFull() throws Exception {
+    AdmissionController admission = new AdmissionController(1).maxQueue(0);
+    StartedProcess running = loop(admission).start();
+    try {
+      hello(admission).execute();
+      Assert.fail("Exception expected");
+    }
+    catch (AdmissionRejectedException e) {
+      Assert.assertEquals(Reason.QUEUE_FULL, e.getReason());
+    }
+    finally {
+      running.getProcess().destroy();
+    }
+    running.getFuture().get();
+    Assert.assertEquals(0, admission.getRunningCount());
+    Assert.assertEquals(1, admission.getRejectedCount(Reason.QUEUE_FULL));
+    hello(admission).execute();
+  }
+
+  @Test(timeout = 10000)
+  public void testQueueTimeout() throws Exception {
+    AdmissionController admission = new AdmissionController(1).queueTimeout(100, TimeUnit.MILLISECONDS);
+    StartedProcess running = loop(admission).start();
+    try {
+      hello(admission).execute();
+      Assert.fail("Exception expected");
+    }
+    catch (AdmissionRejectedException e) {
+      Assert.assertEquals(Reason.TIMEOUT, e.getReason());
+    }
+    finally {
+      running.getProcess().destroy();
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void testExecutionTimeoutLimitsWait() throws Exception {
+    AdmissionController admission = new AdmissionController(1);
+    StartedProcess running = loop(admission).start();
+    try {
+      hello(admission).timeout(100, TimeUnit.MILLISECONDS).execute();
+      Assert.fail("Exception expected");
+    }
+    catch (AdmissionRejectedException e) {
+      Assert.assertEquals(Reason.TIMEOUT, e.getReason());
+    }
+    finally {
+      running.getProcess().destroy();
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void testPriorityOrder() throws Exception {
+    final AdmissionController admission = new AdmissionController(1);
+    AdmissionController.Permit held = admission.acquire(0, null);
+    final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+    List<Future<?>> futures = new ArrayList<Future<?>>();
+    int[] priorities = { 1, 5, 3 };
+    for (int i = 0; i < priorities.length; i++) {
+      final int priority = priorities[i];
+      futures.add(threads.submit(new Callable<Void>() {
+        public Void call() throws Exception {
+          AdmissionController.Permit permit = admission.acquire(priority, null);
+          order.add(priority);
+          permit.release();
+          return null;
+        }
+      }));
+      awaitQueueDepth(admission, i + 1);
+    }
+    held.release();
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    Assert.assertEquals(Arrays.asList(5, 3, 1), order);
+  }
+
+  @Test(timeout = 10000)
+  public void testLowerPriorityIsShed() throws Exception {
+    final AdmissionController admission = new AdmissionController(1).maxQueue(1);
+    AdmissionController.Permit held = admission.acquire(0, null);
+    Future<AdmissionController.Permit> low = threads.submit(new Callable<AdmissionController.Permit>() {
+      public AdmissionController.Permit call() throws Exception {
+        return admission.acquire(0, null);
+      }
+    });
+    awaitQueueDepth(admission, 1);
+    Future<AdmissionController.Permit> high = threads.submit(new Callable<AdmissionController.Permit>() {
+      public AdmissionController.Permit call() throws Exception {
+        return admission.acquire(10, null);
+      }
+    });
+    try {
+      low.get();
+      Assert.fail("Exception expected");
+    }
+    catch (ExecutionException e) {
+      Assert.assertEquals(Reason.SHED, ((AdmissionRejectedException) e.getCause()).getReason());
+    }
+    held.release();
+    high.get().release();
+    Assert.assertEquals(0, admission.getRunningCount());
+  }
+
+  @Test(timeout = 10000)
+  public void testPermitReleasedIfStartFails() throws Exception {
+    AdmissionController admission = new AdmissionController(1);
+    try {
+      new ProcessExecutor("no-such-command-" + System.nanoTime()).admission(admission).execute();
+      Assert.fail("Exception expected");
+    }
+    catch (IOException e) {
+      // expected
+    }
+    Assert.assertEquals(0, admission.getRunningCount());
+  }
+
+  private static void awaitQueueDepth(AdmissionController admission, int depth) throws InterruptedException {
+    while (admission.getQueueDepth() < depth) {
+      Thread.sleep(5);
+    }
+  }
+
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.zeroturnaround.exec.ProcessExecutor;
+import org.zeroturnaround.exec.pool.CoProcessPool;
+import org.zeroturnaround.exec.pool.Framing;
+
+/**
+ * Tests reusing long-lived processes for many requests.
+ *
+ * @see CoProcessPool
+ * @see CoProcessServer
+ */
+public class CoProcessPoolTest {
+
+  @Test(timeout = 10000)
+  public void testReuseProcess() throws Exception {
+    CoProcessPool pool = newPool(2);
+    try {
+      Assert.assertEquals("1:foo", pool.call("foo"));
+      Assert.assertEquals("2:bar", pool.call("bar"));
+      Assert.assertEquals(1, pool.getIdleCount());
+    }
+    finally {
+      pool.close();
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void testMaxRequests() throws Exception {
+    CoProcessPool pool = newPool(1).maxRequests(2);
+    try {
+      Assert.assertEquals("1:a", pool.call("a"));
+      Assert.assertEquals("2:b", pool.call("b"));
+      Assert.assertEquals("1:c", pool.call("c"));
+    }
+    finally {
+      pool.close();
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void testReplaceFailedProcess() throws Exception {
+    CoProcessPool pool = newPool(1);
+    try {
+      Assert.assertEquals("1:a", pool.call("a"));
+      try {
+        pool.call("exit");
+        Assert.fail("IOException expected.");
+      }
+      catch (IOException e) {
+        // expected
+      }
+      Assert.assertEquals("1:b", pool.call("b"));
+    }
+    finally {
+      pool.close();
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void testRequestTimeout() throws Exception {
+    CoProcessPool pool = newPool(1).requestTimeout(1, TimeUnit.SECONDS);
+    try {
+      Assert.assertEquals("1:a", pool.call("a"));
+      try {
+        pool.call("hang");
+        Assert.fail("TimeoutException expected.");
+      }
+      catch (TimeoutException e) {
+        // expected
+      }
+      Assert.assertEquals("1:b", pool.call("b"));
+    }
+    finally {
+      pool.close();
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void testInvalidRequestKeepsProcess() throws Exception {
+    CoProcessPool pool = newPool(1);
+    try {
+      Assert.assertEquals("1:a", pool.call("a"));
+      try {
+        pool.call("b\nc");
+        Assert.fail("IllegalArgumentException expected.");
+      }
+      catch (IllegalArgumentException e) {
+        // expected
+      }
+      Assert.assertEquals("2:d", pool.call("d"));
+    }
+    finally {
+      pool.close();
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void testPrestart() throws Exception {
+    CoProcessPool pool = newPool(3).prestart();
+    try {
+      Assert.assertEquals(3, pool.getIdleCount());
+    }
+    finally {
+      pool.close();
+    }
+    Assert.assertEquals(0, pool.getIdleCount());
+  }
+
+  @Test
+  public void testLengthPrefixed() throws Exception {
+    assertRoundTrip(Framing.lengthPrefixed(), "foo\nbar");
+  }
+
+  @Test(expected = IOException.class)
+  public void testLengthPrefixedResponseTooLong() throws Exception {
+    Framing.lengthPrefixed(4).readResponse(new ByteArrayInputStream(new byte[] { 0, 0, 0, 5, 'h', 'e', 'l', 'l', 'o' }));
+  }
+
+  @Test(expected = IOException.class)
+  public void testLengthPrefixedGarbledLength() throws Exception {
+    Framing.lengthPrefixed().readResponse(new ByteArrayInputStream(new byte[] { 0x7f, (byte) 0xff, (byte) 0xff, (byte) 0xff }));
+  }
+
+  @Test
+  public void testSentinel() throws Exception {
+    assertRoundTrip(Framing.sentinel("\n.\n"), "foo\n.bar\n");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testSentinelInRequest() throws Exception {
+    Framing.sentinel("END").writeRequest(new ByteArrayOutputStream(), "foo END bar".getBytes("UTF-8"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testSentinelPrefixAtEndOfRequest() throws Exception {
+    // "ab" followed by the sentinel "aba" contains the sentinel ending two bytes early
+    Framing.sentinel("aba").writeRequest(new ByteArrayOutputStream(), "foo ab".getBytes("UTF-8"));
+  }
+
+  @Test(expected = EOFException.class)
+  public void testSentinelMissing() throws Exception {
+    Framing.sentinel("END").readResponse(new ByteArrayInputStream("foo EN".getBytes("UTF-8")));
+  }
+
+  private static void assertRoundTrip(Framing framing, String message) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    framing.writeRequest(out, message.getBytes("UTF-8"));
+    framing.writeRequest(out, "second".getBytes("UTF-8"));
+    ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+    Assert.assertEquals(message, new String(framing.readResponse(in), "UTF-8"));
+    Assert.assertEquals("second", new String(framing.readResponse(in), "UTF-8"));
+  }
+
+  private static CoProcessPool newPool(int size) {
+    return new CoProcessPool(new ProcessExecutor("java", "-cp", "target/test-classes", CoProcessServer.class.getName()), Framing.lines(), size);
+  }
+
+}
@@ -0,0 +1,26 @@
+package org.zeroturnaround.exec.test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+
+/**
+ * Answers each line of input with the number of requests served so far and the line itself.
+ * Exits on request "exit" and stops responding on request "hang".
+ */
+public class CoProcessServer {
+  public static void main(String[] args) throws Exception {
+    BufferedReader br = new BufferedReader(new InputStreamReader(System.in));
+    String line;
+    int count = 0;
+    while ((line = br.readLine()) != null) {
+      if (line.equals("exit"))
+        System.exit(1);
+      if (line.equals("hang"))
+        Thread.sleep(Long.MAX_VALUE);
+      count++;
+      System.err.println("Request " + count);
+      System.out.println(count + ":" + line);
+      System.out.flush();
+    }
+  }
+}
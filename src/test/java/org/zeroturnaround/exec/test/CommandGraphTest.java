@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec.test;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.zeroturnaround.exec.CommandGraph;
+import org.zeroturnaround.exec.DurationHistory;
+import org.zeroturnaround.exec.GraphResult;
+import org.zeroturnaround.exec.NodeExecution;
+import org.zeroturnaround.exec.ProcessExecutor;
+
+/**
+ * Tests executing graphs of dependent processes.
+ *
+ * @see CommandGraph
+ */
+public class CommandGraphTest {
+
+  @Before
+  public void setUp() {
+    Assume.assumeTrue("Unsupported OS " + SystemUtils.OS_NAME, !SystemUtils.IS_OS_WINDOWS);
+  }
+
+  private static ProcessExecutor sh(String script) {
+    return new ProcessExecutor("sh", "-c", script).exitValueNormal().readOutput(true);
+  }
+
+  @Test(timeout = 10000)
+  public void testDependenciesFinishFirst() throws Exception {
+    GraphResult result = new CommandGraph()
+        .add("a", sh("sleep 0.2"))
+        .add("b", sh("sleep 0.1"))
+        .add("c", sh("echo c"), "a", "b")
+        .parallelism(4)
+        .execute();
+    Assert.assertTrue(result.isSuccess());
+    Assert.assertEquals(3, result.getCount());
+    NodeExecution c = result.getNode("c");
+    Assert.assertEquals("c", c.getResult().outputUTF8().trim());
+    Assert.assertTrue(c.getStartNanos() >= result.getNode("a").getEndNanos());
+    Assert.assertTrue(c.getStartNanos() >= result.getNode("b").getEndNanos());
+    Assert.assertEquals("c", result.getNodes().get(2).getName());
+  }
+
+  @Test(timeout = 10000)
+  public void testFailureCancelsDownstream() throws Exception {
+    GraphResult result = new CommandGraph()
+        .add("a", sh("exit 1"))
+        .add("b", sh("echo b"), "a")
+        .add("c", sh("echo c"), "b")
+        .add("d", sh("sleep 0.2; echo d"))
+        .parallelism(2)
+        .execute();
+    Assert.assertFalse(result.isSuccess());
+    Assert.assertEquals(1, result.getFailedCount());
+    Assert.assertEquals(2, result.getCancelledCount());
+    Assert.assertTrue(result.getNode("b").isCancelled());
+    Assert.assertTrue(result.getNode("c").isCancelled());
+    Assert.assertEquals(-1, result.getNode("c").getStartNanos());
+    Assert.assertTrue(result.getNode("d").isSuccess());
+  }
+
+  @Test(timeout = 10000)
+  public void testFailFastStopsIndependentNodes() throws Exception {
+    long start = System.nanoTime();
+    GraphResult result = new CommandGraph()
+        .add("slow", sh("sleep 30"))
+        .add("fail", sh("sleep 0.1; exit 1"))
+        .parallelism(2)
+        .failFast(true)
+        .execute();
+    Assert.assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 5);
+    Assert.assertTrue(result.getNode("slow").isCancelled());
+    Assert.assertFalse(result.getNode("fail").isCancelled());
+  }
+
+  @Test(timeout = 10000)
+  public void testCriticalPathFirst() throws Exception {
+    DurationHistory history = new DurationHistory();
+    history.record("short", 1, TimeUnit.MILLISECONDS);
+    history.record("long", 10, TimeUnit.SECONDS);
+    history.record("tail", 10, TimeUnit.SECONDS);
+    GraphResult result = new CommandGraph()
+        .add("short", sh("true"))
+        .add("long", sh("true"))
+        .add("tail", sh("true"), "long")
+        .parallelism(1)
+        .history(history)
+        .execute();
+    Assert.assertEquals("long", result.getNodes().get(0).getName());
+    Assert.assertEquals("tail", result.getNodes().get(1).getName());
+    Assert.assertEquals("short", result.getNodes().get(2).getName());
+    // The history is updated with actual durations
+    Assert.assertTrue(history.getEstimateNanos("long") < TimeUnit.SECONDS.toNanos(10));
+  }
+
+  @Test(timeout = 10000)
+  public void testParallelismIsBounded() throws Exception {
+    CommandGraph graph = new CommandGraph().parallelism(2);
+    for (int i = 0; i < 4; i++) {
+      graph.add("n" + i, sh("sleep 0.3"));
+    }
+    GraphResult result = graph.execute();
+    Assert.assertTrue(result.isSuccess());
+    Assert.assertTrue(result.getWallTimeNanos() >= TimeUnit.MILLISECONDS.toNanos(550));
+    for (NodeExecution node : result.getNodes()) {
+      int running = 0;
+      for (NodeExecution other : result.getNodes()) {
+        if (other.getStartNanos() <= node.getStartNanos() && other.getEndNanos() > node.getStartNanos()) {
+          running++;
+        }
+      }
+      Assert.assertTrue(running <= 2);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownDependency() {
+    new CommandGraph().add("a", sh("true"), "b");
+  }
+
+}
@@ -0,0 +1,107 @@
+package org.zeroturnaround.exec.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.zeroturnaround.exec.CommandTemplate;
+import org.zeroturnaround.exec.ProcessExecutor;
+
+/**
+ * Compares the per-call overhead of building a new {@link ProcessExecutor} for each invocation with binding the arguments of a {@link CommandTemplate}.
+ * The first part measures only preparing the invocation, the second one includes starting and waiting for the process.
+ * <pre>
+ * java -cp ... org.zeroturnaround.exec.test.CommandTemplateBenchmark [iterations] [command...]
+ * </pre>
+ */
+public class CommandTemplateBenchmark {
+
+  private static final int PREPARE_ITERATIONS = 1000000;
+
+  private static volatile Object sink;
+
+  public static void main(String[] args) throws Exception {
+    int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+    List<String> command = args.length > 1 ? Arrays.asList(args).subList(1, args.length) : Arrays.asList("echo", "{0}", "--size={1}");
+    Map<String, String> environment = new HashMap<String, String>();
+    environment.put("LC_ALL", "C");
+    CommandTemplate template = new CommandTemplate(new ProcessExecutor(command).environment(environment));
+
+    // Warm up both paths
+    prepareExecutor(command, environment, PREPARE_ITERATIONS / 10);
+    prepareTemplate(template, PREPARE_ITERATIONS / 10);
+    report("prepare executor", prepareExecutor(command, environment, PREPARE_ITERATIONS));
+    report("prepare template", prepareTemplate(template, PREPARE_ITERATIONS));
+
+    runExecutor(command, environment, iterations / 10);
+    runTemplate(template, iterations / 10);
+    report("execute executor", runExecutor(command, environment, iterations));
+    report("execute template", runTemplate(template, iterations));
+  }
+
+  private static List<String> bind(List<String> command, int i) {
+    List<String> result = new ArrayList<String>(command.size());
+    for (String arg : command) {
+      result.add(arg.replace("{0}", "file" + i).replace("{1}", String.valueOf(i)));
+    }
+    return result;
+  }
+
+  private static ProcessExecutor newExecutor(List<String> command, Map<String, String> environment, int i) {
+    return new ProcessExecutor().command(bind(command, i)).environment(environment);
+  }
+
+  private static List<Long> prepareExecutor(List<String> command, Map<String, String> environment, int iterations) {
+    List<Long> result = new ArrayList<Long>();
+    for (int i = 0; i < iterations; i++) {
+      long start = System.nanoTime();
+      sink = newExecutor(command, environment, i).getCommand();
+      result.add(System.nanoTime() - start);
+    }
+    return result;
+  }
+
+  private static List<Long> prepareTemplate(CommandTemplate template, int iterations) {
+    List<Long> result = new ArrayList<Long>();
+    for (int i = 0; i < iterations; i++) {
+      long start = System.nanoTime();
+      sink = template.bind("file" + i, String.valueOf(i));
+      result.add(System.nanoTime() - start);
+    }
+    return result;
+  }
+
+  private static List<Long> runExecutor(List<String> command, Map<String, String> environment, int iterations) throws Exception {
+    List<Long> result = new ArrayList<Long>();
+    for (int i = 0; i < iterations; i++) {
+      long start = System.nanoTime();
+      newExecutor(command, environment, i).execute();
+      result.add(System.nanoTime() - start);
+    }
+    return result;
+  }
+
+  private static List<Long> runTemplate(CommandTemplate template, int iterations) throws Exception {
+    List<Long> result = new ArrayList<Long>();
+    for (int i = 0; i < iterations; i++) {
+      long start = System.nanoTime();
+      template.execute("file" + i, String.valueOf(i));
+      result.add(System.nanoTime() - start);
+    }
+    return result;
+  }
+
+  private static void report(String name, List<Long> nanos) {
+    Collections.sort(nanos);
+    long sum = 0;
+    for (long n : nanos) {
+      sum += n;
+    }
+    System.out.printf("%s: n=%d mean=%.3f us p50=%.3f us p99=%.3f us%n", name, nanos.size(),
+        sum / 1e3 / nanos.size(), nanos.get(nanos.size() / 2) / 1e3, nanos.get(nanos.size() * 99 / 100) / 1e3);
+  }
+
+}
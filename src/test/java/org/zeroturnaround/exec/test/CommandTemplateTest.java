@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec.test;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.zeroturnaround.exec.CommandTemplate;
+import org.zeroturnaround.exec.InvalidExitValueException;
+import org.zeroturnaround.exec.ProcessExecutor;
+import org.zeroturnaround.exec.listener.ProcessListener;
+
+/**
+ * Tests starting processes from command templates.
+ *
+ * @see CommandTemplate
+ */
+public class CommandTemplateTest {
+
+  private static ProcessExecutor printArguments(String... args) {
+    String[] command = Arrays.copyOf(new String[] { "java", "-cp", "target/test-classes", PrintArguments.class.getName() }, 4 + args.length);
+    System.arraycopy(args, 0, command, 4, args.length);
+    return new ProcessExecutor(command).readOutput(true).exitValueNormal();
+  }
+
+  @Test
+  public void testBind() {
+    CommandTemplate template = new CommandTemplate(new ProcessExecutor("convert", "{0}", "-resize", "{1}%", "{0}.{2}"));
+    Assert.assertEquals(3, template.getParameterCount());
+    Assert.assertEquals(Arrays.asList("convert", "in", "-resize", "50%", "in.png"), template.bind("in", "50", "png"));
+    Assert.assertEquals(Arrays.asList("convert", "{0}", "-resize", "{1}%", "{0}.{2}"), template.getCommand());
+  }
+
+  @Test
+  public void testExecute() throws Exception {
+    CommandTemplate template = new CommandTemplate(printArguments("{1}", "--name={0}"));
+    Assert.assertEquals("b\n--name=a\n", template.execute("a", "b").outputUTF8().replace("\r", ""));
+    Assert.assertEquals("d\n--name=c\n", template.execute("c", "d").outputUTF8().replace("\r", ""));
+    Assert.assertEquals("x\n--name=y\n", template.start("y", "x").getFuture().get(10, TimeUnit.SECONDS).outputUTF8().replace("\r", ""));
+  }
+
+  @Test
+  public void testBeforeStartInvokedOnce() throws Exception {
+    final AtomicInteger beforeStart = new AtomicInteger();
+    final AtomicInteger afterStart = new AtomicInteger();
+    CommandTemplate template = new CommandTemplate(printArguments("{0}").addListener(new ProcessListener() {
+      @Override
+      public void beforeStart(ProcessExecutor executor) {
+        beforeStart.incrementAndGet();
+      }
+
+      @Override
+      public void afterStart(Process process, ProcessExecutor executor) {
+        afterStart.incrementAndGet();
+      }
+    }));
+    for (int i = 0; i < 3; i++) {
+      template.execute(String.valueOf(i));
+    }
+    Assert.assertEquals(1, beforeStart.get());
+    Assert.assertEquals(3, afterStart.get());
+  }
+
+  @Test
+  public void testExitValueMessageShowsBoundCommand() throws Exception {
+    CommandTemplate template = new CommandTemplate(new ProcessExecutor("java", "-cp", "target/test-classes", ExitLikeABoss.class.getName(), "{0}").exitValueNormal());
+    try {
+      template.execute("7");
+      Assert.fail("InvalidExitValueException expected.");
+    }
+    catch (InvalidExitValueException e) {
+      Assert.assertEquals(7, e.getExitValue());
+      Assert.assertTrue(e.getMessage(), e.getMessage().contains(ExitLikeABoss.class.getName() + ", 7]"));
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMissingPlaceholder() {
+    new CommandTemplate(new ProcessExecutor("echo", "{0}", "{2}"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testWrongArgumentCount() {
+    new CommandTemplate(new ProcessExecutor("echo", "{0}", "{1}")).bind("a");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNullArgument() {
+    new CommandTemplate(new ProcessExecutor("echo", "{0}")).bind((String) null);
+  }
+
+}
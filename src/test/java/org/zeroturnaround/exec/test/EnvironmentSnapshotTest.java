@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec.test;
+
+import java.util.Collections;
+
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.zeroturnaround.exec.EnvironmentSnapshot;
+import org.zeroturnaround.exec.ProcessExecutor;
+
+/**
+ * Tests prepared environments of the processes.
+ *
+ * @see EnvironmentSnapshot
+ */
+public class EnvironmentSnapshotTest {
+
+  private static ProcessExecutor echo(String variables) {
+    return new ProcessExecutor("sh", "-c", "echo " + variables).readOutput(true);
+  }
+
+  @Test
+  public void testInherit() {
+    EnvironmentSnapshot env = EnvironmentSnapshot.inherit();
+    Assert.assertTrue(env.isInherited());
+    Assert.assertEquals(System.getenv(), env.getVariables());
+    Assert.assertSame(env, EnvironmentSnapshot.inherit());
+    Assert.assertSame(env, env.with(Collections.<String, String>emptyMap()));
+  }
+
+  @Test
+  public void testDerivedSnapshotsAreIndependent() {
+    EnvironmentSnapshot base = EnvironmentSnapshot.clean().with("A", "1").with("B", "2");
+    EnvironmentSnapshot derived = base.with("A", "3").without("B");
+    Assert.assertEquals("1", base.get("A"));
+    Assert.assertEquals("2", base.get("B"));
+    Assert.assertEquals("3", derived.get("A"));
+    Assert.assertNull(derived.get("B"));
+    Assert.assertFalse(derived.isInherited());
+    Assert.assertTrue(EnvironmentSnapshot.clean().getVariables().isEmpty());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidName() {
+    EnvironmentSnapshot.clean().with("A=B", "1");
+  }
+
+  @Test
+  public void testSharedByExecutors() throws Exception {
+    Assume.assumeTrue("Unsupported OS " + SystemUtils.OS_NAME, !SystemUtils.IS_OS_WINDOWS);
+    EnvironmentSnapshot env = EnvironmentSnapshot.inherit().with("SNAPSHOT_A", "a").without("HOME");
+    ProcessExecutor first = echo("$SNAPSHOT_A-${HOME-none}-$SNAPSHOT_B").environment(env);
+    ProcessExecutor second = echo("$SNAPSHOT_A-${HOME-none}-$SNAPSHOT_B").environment(env).environment("SNAPSHOT_B", "b");
+    Assert.assertEquals("a-none-", first.execute().outputUTF8().trim());
+    Assert.assertEquals("a-none-b", second.execute().outputUTF8().trim());
+    // Executing again reuses the environment already copied
+    Assert.assertEquals("a-none-b", second.execute().outputUTF8().trim());
+    // Going back to the inherited environment
+    second.environment((EnvironmentSnapshot) null);
+    Assert.assertEquals("-" + System.getenv("HOME") + "-b", second.execute().outputUTF8().trim());
+  }
+
+  @Test
+  public void testClean() throws Exception {
+    Assume.assumeTrue("Unsupported OS " + SystemUtils.OS_NAME, !SystemUtils.IS_OS_WINDOWS);
+    EnvironmentSnapshot env = EnvironmentSnapshot.clean().with("SNAPSHOT_A", "a");
+    ProcessExecutor executor = echo("$SNAPSHOT_A-${HOME-none}").environment(env);
+    Assert.assertEquals("a-none", executor.execute().outputUTF8().trim());
+    Assert.assertEquals("a-none", executor.spec().execute().outputUTF8().trim());
+    Assert.assertEquals("a-none", executor.redirectErrorStream(false).spec().execute().outputUTF8().trim());
+  }
+
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.zeroturnaround.exec.ExecutableResolver;
+import org.zeroturnaround.exec.ProcessExecutor;
+
+/**
+ * Tests resolving programs from <code>PATH</code>.
+ *
+ * @see ExecutableResolver
+ */
+public class ExecutableResolverTest {
+
+  private File dir;
+
+  private File first;
+
+  private File second;
+
+  /**
+   * Searches the test directories before the <code>PATH</code> of this JVM.
+   */
+  private ExecutableResolver resolver;
+
+  @Before
+  public void setUp() {
+    Assume.assumeTrue("Unsupported OS " + SystemUtils.OS_NAME, !SystemUtils.IS_OS_WINDOWS);
+    dir = new File("target/ExecutableResolverTest-" + System.nanoTime()).getAbsoluteFile();
+    first = new File(dir, "first");
+    second = new File(dir, "second");
+    Assert.assertTrue(first.mkdirs());
+    Assert.assertTrue(second.mkdirs());
+    resolver = new ExecutableResolver() {
+      @Override
+      protected String getSearchPath() {
+        return first + File.pathSeparator + second + File.pathSeparator + System.getenv("PATH");
+      }
+    };
+  }
+
+  @After
+  public void tearDown() {
+    if (dir != null) {
+      delete(dir);
+    }
+  }
+
+  private static void delete(File file) {
+    File[] files = file.listFiles();
+    if (files != null) {
+      for (File f : files) {
+        delete(f);
+      }
+    }
+    file.delete();
+  }
+
+  private static File script(File dir, String name, String output) throws IOException {
+    File file = new File(dir, name);
+    OutputStream out = new FileOutputStream(file);
+    try {
+      out.write(("#!/bin/sh\necho " + output + "\n").getBytes("UTF-8"));
+    }
+    finally {
+      out.close();
+    }
+    Assert.assertTrue(file.setExecutable(true));
+    return file;
+  }
+
+  @Test
+  public void testResolveAndCache() throws Exception {
+    File script = script(second, "resolver-test", "second");
+    Assert.assertEquals(script.getPath(), resolver.resolve("resolver-test"));
+    Assert.assertEquals(script.getPath(), resolver.resolve("resolver-test"));
+    Assert.assertEquals(1, resolver.getMissCount());
+    Assert.assertEquals(1, resolver.getHitCount());
+    Assert.assertNull(resolver.resolve("resolver-test-missing"));
+    Assert.assertNull(resolver.resolve(script.getPath()));
+  }
+
+  @Test
+  public void testNotExecutableIsSkipped() throws Exception {
+    File plain = new File(first, "resolver-test");
+    Assert.assertTrue(plain.createNewFile());
+    File script = script(second, "resolver-test", "second");
+    Assert.assertEquals(script.getPath(), resolver.resolve("resolver-test"));
+  }
+
+  @Test
+  public void testExecute() throws Exception {
+    script(second, "resolver-test", "second");
+    ProcessExecutor executor = new ProcessExecutor("resolver-test").resolver(resolver).readOutput(true);
+    Assert.assertEquals("second", executor.execute().outputUTF8().trim());
+    Assert.assertEquals("second", executor.execute().outputUTF8().trim());
+    Assert.assertEquals(1, resolver.getHitCount());
+    // The command of the executor is not changed
+    Assert.assertEquals("resolver-test", executor.getCommand().get(0));
+  }
+
+  @Test
+  public void testRemovedExecutableIsResolvedAgain() throws Exception {
+    File script = script(first, "resolver-test", "first");
+    ProcessExecutor executor = new ProcessExecutor("resolver-test").resolver(resolver).readOutput(true);
+    Assert.assertEquals("first", executor.execute().outputUTF8().trim());
+    Assert.assertTrue(script.delete());
+    script(second, "resolver-test", "second");
+    Assert.assertEquals("second", executor.execute().outputUTF8().trim());
+    Assert.assertEquals("second", executor.spec().execute().outputUTF8().trim());
+  }
+
+  @Test
+  public void testNotFoundMessage() throws Exception {
+    File script = script(first, "resolver-test", "first");
+    ProcessExecutor executor = new ProcessExecutor("resolver-test").resolver(resolver);
+    executor.execute();
+    Assert.assertTrue(script.delete());
+    try {
+      executor.execute();
+      Assert.fail("IOException expected.");
+    }
+    catch (IOException e) {
+      Assert.assertTrue(e.getMessage(), e.getMessage().contains("resolver-test was not found in PATH."));
+    }
+  }
+
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec.test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.zeroturnaround.exec.InvalidExitValueException;
+import org.zeroturnaround.exec.ProcessExecutor;
+import org.zeroturnaround.exec.ProcessResult;
+import org.zeroturnaround.exec.ProcessTimeoutException;
+import org.zeroturnaround.exec.listener.ProcessListener;
+import org.zeroturnaround.exec.stop.DestroyProcessStopper;
+
+/**
+ * Tests waiting for processes asynchronously.
+ *
+ * @see ProcessExecutor#startAsync(java.util.concurrent.Executor)
+ */
+public class ProcessExecutorAsyncTest {
+
+  private ExecutorService threads;
+
+  @Before
+  public void setUp() {
+    threads = Executors.newCachedThreadPool();
+  }
+
+  @After
+  public void tearDown() {
+    threads.shutdownNow();
+  }
+
+  /**
+   * Waits until the given stage completes and returns its exception.
+   */
+  private static Throwable failure(CompletableFuture<ProcessResult> stage) throws Exception {
+    final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+    final CountDownLatch done = new CountDownLatch(1);
+    stage.whenComplete(new BiConsumer<ProcessResult, Throwable>() {
+      public void accept(ProcessResult result, Throwable t) {
+        error.set(t);
+        done.countDown();
+      }
+    });
+    Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+    return error.get();
+  }
+
+  @Test
+  public void testCompose() throws Exception {
+    CompletableFuture<String> output = new ProcessExecutor("java", "-cp", "target/test-classes", HelloWorld.class.getName()).readOutput(true).startAsync(threads).toCompletableFuture()
+        .thenApply(new Function<ProcessResult, String>() {
+          public String apply(ProcessResult result) {
+            return result.outputUTF8().toUpperCase();
+          }
+        });
+    Assert.assertEquals("HELLO WORLD!", output.get(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testInvalidExitValueIsNotWrapped() throws Exception {
+    ProcessExecutor executor = new ProcessExecutor("java", "-cp", "target/test-classes", ExitLikeABoss.class.getName(), "3").exitValueNormal();
+    Throwable error = failure(executor.startAsync(threads).toCompletableFuture());
+    Assert.assertTrue(String.valueOf(error), error instanceof InvalidExitValueException);
+    Assert.assertEquals(3, ((InvalidExitValueException) error).getExitValue());
+  }
+
+  @Test
+  public void testTimeoutIsNotWrapped() throws Exception {
+    Throwable error = failure(new ProcessExecutor("java", "-cp", "target/test-classes", Loop.class.getName()).timeout(500, TimeUnit.MILLISECONDS).startAsync(threads).toCompletableFuture());
+    Assert.assertTrue(String.valueOf(error), error instanceof ProcessTimeoutException);
+  }
+
+  @Test
+  public void testCancelStopsProcess() throws Exception {
+    final AtomicReference<Process> stopped = new AtomicReference<Process>();
+    ProcessExecutor executor = new ProcessExecutor("java", "-cp", "target/test-classes", Loop.class.getName()).stopper(new DestroyProcessStopper() {
+      @Override
+      public void stop(Process process) {
+        stopped.set(process);
+        super.stop(process);
+      }
+    });
+    CompletableFuture<ProcessResult> stage = executor.startAsync(threads).toCompletableFuture();
+    Assert.assertTrue(stage.cancel(true));
+    Assert.assertTrue(stage.isCancelled());
+    Process process = stopped.get();
+    Assert.assertNotNull(process);
+    Assert.assertTrue(process.waitFor(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testTimeoutOnGivenExecutor() throws Exception {
+    ProcessExecutor executor = new ProcessExecutor("java", "-cp", "target/test-classes", Loop.class.getName()) {
+      @Override
+      protected ExecutorService newExecutor(String processName) {
+        throw new AssertionError("No threads should be created besides the given executor.");
+      }
+    };
+    Throwable error = failure(executor.timeout(500, TimeUnit.MILLISECONDS).startAsync(threads).toCompletableFuture());
+    Assert.assertTrue(String.valueOf(error), error instanceof ProcessTimeoutException);
+  }
+
+  @Test
+  public void testRejectedDestroysProcess() throws Exception {
+    final AtomicReference<Process> started = new AtomicReference<Process>();
+    ProcessExecutor executor = new ProcessExecutor("java", "-cp", "target/test-classes", Loop.class.getName()).addListener(new ProcessListener() {
+      @Override
+      public void afterStart(Process process, ProcessExecutor executor) {
+        started.set(process);
+      }
+    });
+    threads.shutdown();
+    try {
+      executor.startAsync(threads);
+      Assert.fail("RejectedExecutionException expected.");
+    }
+    catch (RejectedExecutionException e) {
+      // expected
+    }
+    Assert.assertFalse(started.get().isAlive());
+  }
+
+}
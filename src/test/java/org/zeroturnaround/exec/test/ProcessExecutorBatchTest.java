@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.zeroturnaround.exec.BatchExecution;
+import org.zeroturnaround.exec.BatchResult;
+import org.zeroturnaround.exec.CompletedExecution;
+import org.zeroturnaround.exec.InvalidExitValueException;
+import org.zeroturnaround.exec.ProcessExecutor;
+import org.zeroturnaround.exec.listener.ProcessListener;
+
+/**
+ * Tests executing a batch of processes with bounded concurrency.
+ *
+ * @see ProcessExecutor#executeAll(java.util.Collection, int)
+ */
+public class ProcessExecutorBatchTest {
+
+  @Test(timeout = 20000)
+  public void testExecuteAll() throws Exception {
+    List<ProcessExecutor> executors = new ArrayList<ProcessExecutor>();
+    for (int i = 0; i < 6; i++) {
+      executors.add(new ProcessExecutor("java", "-cp", "target/test-classes", HelloWorld.class.getName()).readOutput(true));
+    }
+    BatchResult result = ProcessExecutor.executeAll(executors, 3);
+    Assert.assertTrue(result.isSuccess());
+    Assert.assertEquals(6, result.getCount());
+    Assert.assertEquals(6, result.getSucceededCount());
+    for (CompletedExecution c : result.getCompletions()) {
+      Assert.assertEquals("Hello world!", c.getResult().outputUTF8());
+    }
+    Assert.assertTrue(result.getMinTimeNanos() <= result.getPercentileTimeNanos(50));
+    Assert.assertTrue(result.getPercentileTimeNanos(50) <= result.getMaxTimeNanos());
+    Assert.assertTrue(result.getTotalTimeNanos() >= result.getWallTimeNanos());
+  }
+
+  @Test(timeout = 20000)
+  public void testCompletionOrder() throws Exception {
+    List<ProcessExecutor> executors = new ArrayList<ProcessExecutor>();
+    ProcessExecutor slow = new ProcessExecutor("java", "-cp", "target/test-classes", Loop.class.getName());
+    ProcessExecutor fast = new ProcessExecutor("java", "-cp", "target/test-classes", HelloWorld.class.getName());
+    executors.add(slow);
+    executors.add(fast);
+    BatchExecution batch = ProcessExecutor.startAll(executors, 2, false);
+    Assert.assertSame(fast, batch.next().getExecutor());
+    batch.cancel();
+    CompletedExecution last = batch.next();
+    Assert.assertSame(slow, last.getExecutor());
+    Assert.assertTrue(last.isCancelled());
+    Assert.assertNull(batch.next());
+  }
+
+  @Test(timeout = 20000)
+  public void testFailFast() throws Exception {
+    List<ProcessExecutor> executors = new ArrayList<ProcessExecutor>();
+    for (int i = 0; i < 3; i++) {
+      executors.add(new ProcessExecutor("java", "-cp", "target/test-classes", Loop.class.getName()));
+    }
+    executors.add(new ProcessExecutor("java", "-cp", "target/test-classes", ExitLikeABoss.class.getName(), "5").exitValueNormal());
+    for (int i = 0; i < 3; i++) {
+      executors.add(new ProcessExecutor("java", "-cp", "target/test-classes", Loop.class.getName()));
+    }
+    long start = System.currentTimeMillis();
+    BatchResult result = ProcessExecutor.executeAll(executors, 4, true);
+    Assert.assertTrue(System.currentTimeMillis() - start < 8000);
+    Assert.assertEquals(1, result.getFailedCount());
+    Assert.assertEquals(6, result.getCancelledCount());
+    CompletedExecution first = result.getCompletions().get(0);
+    Assert.assertTrue(first.getFailure() instanceof InvalidExitValueException);
+  }
+
+  @Test(timeout = 20000)
+  public void testFailFastWaitsForStoppedProcesses() throws Exception {
+    final AtomicInteger started = new AtomicInteger();
+    final AtomicInteger stopped = new AtomicInteger();
+    ProcessListener listener = new ProcessListener() {
+      @Override
+      public void afterStart(Process process, ProcessExecutor executor) {
+        started.incrementAndGet();
+      }
+
+      @Override
+      public void afterStop(Process process) {
+        stopped.incrementAndGet();
+      }
+    };
+    List<ProcessExecutor> executors = new ArrayList<ProcessExecutor>();
+    for (int i = 0; i < 3; i++) {
+      executors.add(new ProcessExecutor("java", "-cp", "target/test-classes", Loop.class.getName()).addListener(listener));
+    }
+    executors.add(new ProcessExecutor("java", "-cp", "target/test-classes", ExitLikeABoss.class.getName(), "5").exitValueNormal().addListener(listener));
+    BatchResult result = ProcessExecutor.executeAll(executors, 4, true);
+    Assert.assertEquals(1, result.getFailedCount());
+    Assert.assertEquals(3, result.getCancelledCount());
+    // The cancelled processes are reported once they have been stopped
+    Assert.assertEquals(started.get(), stopped.get());
+  }
+
+}
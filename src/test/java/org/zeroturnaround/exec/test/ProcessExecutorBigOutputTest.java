@@ -22,7 +22,9 @@ import java.util.concurrent.TimeUnit;
 
 import org.junit.Assert;
 import org.junit.Test;
+import org.zeroturnaround.exec.OutputLimitExceededException;
 import org.zeroturnaround.exec.ProcessExecutor;
+import org.zeroturnaround.exec.ProcessResult;
 
 
 /**
@@ -71,6 +73,56 @@ public class ProcessExecutorBigOutputTest {
     Assert.assertEquals(repeat("-"), new String(err.toByteArray()));
   }
 
+  @Test
+  public void testMaxOutputBytesStopsProcess() throws Exception {
+    try {
+      bigOutput().readOutput(true).maxOutputBytes(1000).execute();
+      Assert.fail("OutputLimitExceededException expected.");
+    }
+    catch (OutputLimitExceededException e) {
+      Assert.assertEquals(1000, e.getBytesRetained());
+      Assert.assertTrue(e.getBytesSeen() > 1000);
+      Assert.assertEquals(1000, e.getResult().output().length);
+      Assert.assertEquals(e.getBytesSeen(), e.getResult().getOutputByteCount());
+      Assert.assertTrue(e.getResult().isOutputTruncated());
+    }
+  }
+
+  @Test
+  public void testMaxOutputBytesKeepsRunning() throws Exception {
+    try {
+      bigOutput().readOutput(true).maxOutputBytes(1000).stopOnOutputLimit(false).exitValueNormal().execute();
+      Assert.fail("OutputLimitExceededException expected.");
+    }
+    catch (OutputLimitExceededException e) {
+      Assert.assertEquals(1000, e.getBytesRetained());
+      Assert.assertEquals(BigOutput.LENGTH * 2, e.getBytesSeen());
+      Assert.assertEquals(0, e.getExitValue());
+    }
+  }
+
+  @Test
+  public void testMaxOutputBytesPerStream() throws Exception {
+    ByteArrayOutputStream err = new ByteArrayOutputStream();
+    try {
+      bigOutput().readOutput(true).redirectError(err).maxOutputBytes(10, 20).stopOnOutputLimit(false).execute();
+      Assert.fail("OutputLimitExceededException expected.");
+    }
+    catch (OutputLimitExceededException e) {
+      Assert.assertEquals(30, e.getBytesRetained());
+      Assert.assertEquals("++++++++++", e.getResult().outputUTF8());
+      Assert.assertEquals(20, err.size());
+    }
+  }
+
+  @Test
+  public void testMaxOutputBytesNotExceeded() throws Exception {
+    ProcessResult result = bigOutput().readOutput(true).maxOutputBytes(BigOutput.LENGTH * 2).execute();
+    Assert.assertEquals(repeat("+-"), result.outputUTF8());
+    Assert.assertEquals(BigOutput.LENGTH * 2, result.getOutputByteCount());
+    Assert.assertFalse(result.isOutputTruncated());
+  }
+
   private ProcessExecutor bigOutput() {
     // Use timeout in case we get stuck
     return new ProcessExecutor("java", "-cp", "target/test-classes", BigOutput.class.getName()).timeout(10, TimeUnit.SECONDS);
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.hamcrest.CoreMatchers;
+import org.junit.Assert;
+import org.junit.Test;
+import org.zeroturnaround.exec.ProcessExecutor;
+import org.zeroturnaround.exec.ProcessResult;
+import org.zeroturnaround.exec.stream.StreamPumper;
+
+/**
+ * Tests that pumping the output stays bounded even if a grandchild process keeps the pipe open.
+ */
+public class ProcessExecutorDrainTest {
+
+  @Test(timeout = 8000)
+  public void testGrandchildKeepsOutputOpen() throws Exception {
+    ProcessResult result = new ProcessExecutor("java", "-cp", "target/test-classes", GrandchildStarter.class.getName())
+        .readOutput(true)
+        .drainTimeout(300, 2000, TimeUnit.MILLISECONDS)
+        .execute();
+    Assert.assertThat(result.outputUTF8(), CoreMatchers.containsString("Starting grandchild"));
+    Assert.assertTrue(result.isOutputTruncated());
+  }
+
+  @Test
+  public void testNotTruncated() throws Exception {
+    ProcessResult result = new ProcessExecutor("java", "-cp", "target/test-classes", HelloWorld.class.getName())
+        .readOutput(true)
+        .drainTimeout(300, 2000, TimeUnit.MILLISECONDS)
+        .execute();
+    Assert.assertEquals("Hello world!", result.outputUTF8());
+    Assert.assertFalse(result.isOutputTruncated());
+  }
+
+  @Test(timeout = 5000)
+  public void testAbandonedPumpWritesNothing() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    // Like a pipe on Linux, closing this stream doesn't unblock a pending read
+    InputStream in = new InputStream() {
+      @Override
+      public int read() throws IOException {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        try {
+          release.await();
+        }
+        catch (InterruptedException e) {
+          throw new IOException(e);
+        }
+        b[off] = 'x';
+        return 1;
+      }
+    };
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    StreamPumper pumper = new StreamPumper(in, out);
+    Thread thread = new Thread(pumper);
+    thread.start();
+
+    pumper.abandon();
+    release.countDown();
+    thread.join();
+    Assert.assertEquals(0, out.size());
+  }
+
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.zeroturnaround.exec.ProcessExecutor;
+import org.zeroturnaround.exec.ProcessExecutorGroup;
+import org.zeroturnaround.exec.ProcessResult;
+import org.zeroturnaround.exec.StartedProcess;
+import org.zeroturnaround.exec.admission.AdmissionController;
+import org.zeroturnaround.exec.listener.ProcessListener;
+
+/**
+ * Tests executors sharing the threads, limits and bookkeeping of a group.
+ *
+ * @see ProcessExecutorGroup
+ */
+public class ProcessExecutorGroupTest {
+
+  private ProcessExecutorGroup group;
+
+  @Before
+  public void setUp() {
+    group = new ProcessExecutorGroup("test");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    group.close();
+  }
+
+  private ProcessExecutor loop() {
+    return group.newExecutor("java", "-cp", "target/test-classes", Loop.class.getName());
+  }
+
+  private ProcessExecutor helloWorld() {
+    return group.newExecutor("java", "-cp", "target/test-classes", HelloWorld.class.getName()).readOutput(true);
+  }
+
+  @Test
+  public void testExecute() throws Exception {
+    ProcessResult result = helloWorld().execute();
+    Assert.assertEquals(0, result.getExitValue());
+    Assert.assertTrue(result.outputUTF8().contains("Hello world!"));
+    Assert.assertEquals(1, group.getStartedCount());
+    Assert.assertEquals(1, group.getFinishedCount());
+    Assert.assertEquals(0, group.getFailedCount());
+    Assert.assertEquals(0, group.getLiveCount());
+  }
+
+  @Test
+  public void testLiveProcesses() throws Exception {
+    StartedProcess first = loop().start();
+    StartedProcess second = loop().start();
+    List<Process> live = group.getLiveProcesses();
+    Assert.assertEquals(2, live.size());
+    Assert.assertTrue(live.contains(first.getProcess()));
+    Assert.assertTrue(live.contains(second.getProcess()));
+    first.getProcess().destroy();
+    first.getFuture().get(10, TimeUnit.SECONDS);
+    Assert.assertEquals(1, group.getLiveCount());
+    Assert.assertEquals(second.getProcess(), group.getLiveProcesses().get(0));
+  }
+
+  @Test
+  public void testTimeoutOnSharedThreads() throws Exception {
+    long start = System.nanoTime();
+    try {
+      loop().timeout(500, TimeUnit.MILLISECONDS).execute();
+      Assert.fail("TimeoutException expected.");
+    }
+    catch (TimeoutException e) {
+      // expected
+    }
+    Assert.assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 5);
+    // The interrupted waiting task stops the process in the background
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (group.getLiveCount() > 0 && System.nanoTime() - deadline < 0) {
+      Thread.sleep(10);
+    }
+    Assert.assertEquals(0, group.getLiveCount());
+    Assert.assertEquals(1, group.getFailedCount());
+  }
+
+  @Test(timeout = 20000)
+  public void testCloseDestroysProcessWaitingForAdmission() throws Exception {
+    AdmissionController admission = new AdmissionController(1);
+    final List<Process> processes = new CopyOnWriteArrayList<Process>();
+    group.admission(admission).addListener(new ProcessListener() {
+      @Override
+      public void afterStart(Process process, ProcessExecutor executor) {
+        processes.add(process);
+      }
+    });
+    loop().start();
+    FutureTask<StartedProcess> late = new FutureTask<StartedProcess>(new Callable<StartedProcess>() {
+      public StartedProcess call() throws Exception {
+        return loop().start();
+      }
+    });
+    new Thread(late).start();
+    while (admission.getQueueDepth() == 0) {
+      Thread.sleep(10);
+    }
+    group.close(5, TimeUnit.SECONDS);
+    // Admitted once the first process was destroyed, its task may be rejected by the closed group
+    try {
+      late.get(5, TimeUnit.SECONDS).getFuture().get(5, TimeUnit.SECONDS);
+    }
+    catch (ExecutionException e) {
+      // expected
+    }
+    Assert.assertEquals(2, processes.size());
+    for (Process process : processes) {
+      Assert.assertTrue(process.waitFor(5, TimeUnit.SECONDS));
+    }
+    Assert.assertEquals(0, group.getLiveCount());
+    Assert.assertEquals(0, admission.getRunningCount());
+  }
+
+  @Test(timeout = 20000)
+  public void testTimedExecuteAdmittedAfterClose() throws Exception {
+    final AdmissionController admission = new AdmissionController(1);
+    final List<Process> processes = new CopyOnWriteArrayList<Process>();
+    group.admission(admission).addListener(new ProcessListener() {
+      @Override
+      public void afterStart(Process process, ProcessExecutor executor) {
+        processes.add(process);
+      }
+    });
+    AdmissionController.Permit permit = admission.acquire(0, null);
+    FutureTask<ProcessResult> late = new FutureTask<ProcessResult>(new Callable<ProcessResult>() {
+      public ProcessResult call() throws Exception {
+        return loop().timeout(10, TimeUnit.SECONDS).execute();
+      }
+    });
+    new Thread(late).start();
+    while (admission.getQueueDepth() == 0) {
+      Thread.sleep(10);
+    }
+    group.close(5, TimeUnit.SECONDS);
+    // Admitted once the threads of the group have been shut down
+    permit.release();
+    try {
+      late.get(5, TimeUnit.SECONDS);
+      Assert.fail("Execution should be rejected.");
+    }
+    catch (ExecutionException e) {
+      // expected
+    }
+    Assert.assertEquals(1, processes.size());
+    Assert.assertTrue(processes.get(0).waitFor(5, TimeUnit.SECONDS));
+    Assert.assertEquals(0, group.getLiveCount());
+    Assert.assertEquals(0, admission.getRunningCount());
+  }
+
+  @Test
+  public void testCloseDestroysProcesses() throws Exception {
+    List<StartedProcess> processes = new ArrayList<StartedProcess>();
+    for (int i = 0; i < 3; i++) {
+      processes.add(loop().start());
+    }
+    Assert.assertEquals(3, group.getLiveCount());
+    long start = System.nanoTime();
+    Assert.assertTrue(group.close(5, TimeUnit.SECONDS));
+    Assert.assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 5);
+    for (StartedProcess process : processes) {
+      Assert.assertFalse(process.getProcess().isAlive());
+      process.getFuture().get(5, TimeUnit.SECONDS);
+    }
+    Assert.assertEquals(0, group.getLiveCount());
+    Assert.assertEquals(3, group.getStartedCount());
+  }
+
+  @Test
+  public void testStartAfterClose() throws Exception {
+    ProcessExecutor executor = helloWorld();
+    group.close();
+    Assert.assertTrue(group.isClosed());
+    try {
+      executor.execute();
+      Assert.fail("IllegalStateException expected.");
+    }
+    catch (IllegalStateException e) {
+      // expected
+    }
+    try {
+      helloWorld();
+      Assert.fail("IllegalStateException expected.");
+    }
+    catch (IllegalStateException e) {
+      // expected
+    }
+    Assert.assertEquals(0, group.getStartedCount());
+  }
+
+  @Test
+  public void testSharedAdmissionAndListeners() throws Exception {
+    AdmissionController admission = new AdmissionController(1);
+    final AtomicInteger finished = new AtomicInteger();
+    group.admission(admission).addListener(new ProcessListener() {
+      @Override
+      public void afterFinish(Process process, ProcessResult result) {
+        finished.incrementAndGet();
+      }
+    });
+    StartedProcess running = loop().start();
+    Assert.assertEquals(1, admission.getRunningCount());
+    try {
+      admission.maxQueue(0);
+      helloWorld().execute();
+      Assert.fail("Admission should be rejected.");
+    }
+    catch (java.io.IOException e) {
+      // expected
+    }
+    running.getProcess().destroy();
+    running.getFuture().get(10, TimeUnit.SECONDS);
+    helloWorld().execute();
+    Assert.assertEquals(2, finished.get());
+    Assert.assertEquals(0, admission.getRunningCount());
+  }
+
+}
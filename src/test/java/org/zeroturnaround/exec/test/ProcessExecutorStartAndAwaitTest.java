@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec.test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.hamcrest.CoreMatchers;
+import org.junit.Assert;
+import org.junit.Test;
+import org.zeroturnaround.exec.InvalidOutputException;
+import org.zeroturnaround.exec.ProcessExecutor;
+import org.zeroturnaround.exec.ProcessResult;
+import org.zeroturnaround.exec.ProcessTimeoutException;
+import org.zeroturnaround.exec.StartedProcess;
+
+/**
+ * Tests waiting for a started process to write the expected output.
+ *
+ * @see ProcessExecutor#startAndAwait(String, long, TimeUnit)
+ */
+public class ProcessExecutorStartAndAwaitTest {
+
+  @Test(timeout = 8000)
+  public void testAwaitLiteral() throws Exception {
+    StartedProcess started = loop().startAndAwait("Started", 5, TimeUnit.SECONDS);
+    Assert.assertFalse(started.getFuture().isDone());
+    started.getProcess().destroy();
+  }
+
+  @Test(timeout = 8000)
+  public void testAwaitPattern() throws Exception {
+    StartedProcess started = loop().readOutput(true).startAndAwait(Pattern.compile("^1$"), 5, TimeUnit.SECONDS);
+    Assert.assertFalse(started.getFuture().isDone());
+    started.getProcess().destroy();
+    ProcessResult result = started.getFuture().get();
+    Assert.assertThat(result.outputUTF8(), CoreMatchers.containsString("Started"));
+  }
+
+  @Test(timeout = 8000)
+  public void testAwaitTimeout() throws Exception {
+    long start = System.currentTimeMillis();
+    try {
+      loop().startAndAwait("Finished", 500, TimeUnit.MILLISECONDS);
+      Assert.fail("ProcessTimeoutException expected.");
+    }
+    catch (ProcessTimeoutException e) {
+      Assert.assertEquals(ProcessTimeoutException.Phase.READY, e.getPhase());
+      Assert.assertThat(e.getMessage(), CoreMatchers.containsString("to write 'Finished'"));
+    }
+    Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+  }
+
+  @Test(timeout = 8000)
+  public void testFinishedWithoutOutput() throws Exception {
+    try {
+      new ProcessExecutor("java", "-cp", "target/test-classes", HelloWorld.class.getName())
+          .startAndAwait("Goodbye", 5, TimeUnit.SECONDS);
+      Assert.fail("InvalidOutputException expected.");
+    }
+    catch (InvalidOutputException e) {
+      Assert.assertEquals(0, e.getResult().getExitValue());
+    }
+  }
+
+  private static ProcessExecutor loop() {
+    return new ProcessExecutor("java", "-cp", "target/test-classes", Loop.class.getName());
+  }
+
+}
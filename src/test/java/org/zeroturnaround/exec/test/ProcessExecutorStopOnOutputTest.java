@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec.test;
+
+import java.io.ByteArrayOutputStream;
+
+import org.hamcrest.CoreMatchers;
+import org.junit.Assert;
+import org.junit.Test;
+import org.zeroturnaround.exec.InvalidExitValueException;
+import org.zeroturnaround.exec.ProcessExecutor;
+import org.zeroturnaround.exec.ProcessResult;
+import org.zeroturnaround.exec.stream.MatchingOutputStream;
+import org.zeroturnaround.exec.stream.MultiPatternMatcher;
+
+/**
+ * Tests stopping the process once its output matches a pattern.
+ *
+ * @see MultiPatternMatcher
+ */
+public class ProcessExecutorStopOnOutputTest {
+
+  @Test
+  public void testMatcherFindsOverlappingPatterns() throws Exception {
+    MultiPatternMatcher matcher = new MultiPatternMatcher("he", "she", "hers");
+    Assert.assertEquals("she", find(matcher, "ushers"));
+    Assert.assertEquals("he", find(matcher, "ahhers"));
+    Assert.assertNull(find(matcher, "hhhhh"));
+  }
+
+  @Test
+  public void testMatcherFindsSuffixPattern() throws Exception {
+    MultiPatternMatcher matcher = new MultiPatternMatcher("FATAL ERROR", "ERROR!");
+    Assert.assertEquals("ERROR!", find(matcher, "FATAL ERROX ERROR!"));
+  }
+
+  @Test
+  public void testMatchAcrossWrites() throws Exception {
+    MultiPatternMatcher matcher = new MultiPatternMatcher("OutOfMemoryError");
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    MatchingOutputStream matching = new MatchingOutputStream(out, matcher, null);
+    matching.write("java.lang.OutOf".getBytes("UTF-8"));
+    Assert.assertNull(matching.getMatch());
+    matching.write('M');
+    matching.write("emoryError: Java heap space".getBytes("UTF-8"));
+    Assert.assertEquals("OutOfMemoryError", matching.getMatch());
+    Assert.assertEquals("java.lang.OutOfMemoryError: Java heap space", out.toString("UTF-8"));
+  }
+
+  @Test(timeout = 8000)
+  public void testStopOnOutput() throws Exception {
+    ProcessResult result = new ProcessExecutor("java", "-cp", "target/test-classes", Loop.class.getName())
+        .readOutput(true)
+        .stopOnOutput("Finished", "1")
+        .exitValueAny()
+        .execute();
+    Assert.assertEquals("1", result.getMatchedPattern());
+    Assert.assertFalse(result.outputUTF8().contains("Finished"));
+  }
+
+  @Test(timeout = 8000)
+  public void testStopOnOutputExitValue() throws Exception {
+    try {
+      new ProcessExecutor("java", "-cp", "target/test-classes", Loop.class.getName())
+          .stopOnOutput("Started")
+          .exitValueNormal()
+          .execute();
+      Assert.fail("InvalidExitValueException expected.");
+    }
+    catch (InvalidExitValueException e) {
+      Assert.assertEquals("Started", e.getResult().getMatchedPattern());
+      Assert.assertThat(e.getMessage(), CoreMatchers.containsString("process was stopped on output 'Started'"));
+    }
+  }
+
+  @Test
+  public void testNoMatch() throws Exception {
+    ProcessResult result = new ProcessExecutor("java", "-cp", "target/test-classes", HelloWorld.class.getName())
+        .readOutput(true)
+        .stopOnOutput("Goodbye")
+        .execute();
+    Assert.assertEquals("Hello world!", result.outputUTF8());
+    Assert.assertNull(result.getMatchedPattern());
+  }
+
+  private static String find(MultiPatternMatcher matcher, String text) throws Exception {
+    int state = MultiPatternMatcher.INITIAL_STATE;
+    for (byte b : text.getBytes("UTF-8")) {
+      state = matcher.next(state, b);
+      if (matcher.getMatch(state) >= 0) {
+        return matcher.getPattern(matcher.getMatch(state));
+      }
+    }
+    return null;
+  }
+
+}
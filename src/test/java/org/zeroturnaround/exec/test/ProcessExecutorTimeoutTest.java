@@ -22,6 +22,8 @@ import org.hamcrest.CoreMatchers;
 import org.junit.Assert;
 import org.junit.Test;
 import org.zeroturnaround.exec.ProcessExecutor;
+import org.zeroturnaround.exec.ProcessResult;
+import org.zeroturnaround.exec.ProcessTimeoutException;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -57,6 +59,99 @@ public class ProcessExecutorTimeoutTest {
     }
   }
 
+  @Test
+  public void testExecuteIdleTimeout() throws Exception {
+    try {
+      new ProcessExecutor()
+          .command(getSleepCommand())
+          .idleTimeout(500, TimeUnit.MILLISECONDS)
+          .timeout(10, TimeUnit.SECONDS)
+          .execute();
+      Assert.fail("TimeoutException expected.");
+    }
+    catch (ProcessTimeoutException e) {
+      Assert.assertEquals(ProcessTimeoutException.Phase.IDLE, e.getPhase());
+      Assert.assertThat(e.getMessage(), CoreMatchers.containsString("silent for"));
+      Assert.assertThat(e.getMessage(), CoreMatchers.containsString("idle timeout: 500 milliseconds"));
+    }
+  }
+
+  @Test
+  public void testExecuteFirstOutputTimeout() throws Exception {
+    try {
+      new ProcessExecutor()
+          .command(getSleepCommand())
+          .firstOutputTimeout(500, TimeUnit.MILLISECONDS)
+          .timeout(10, TimeUnit.SECONDS)
+          .execute();
+      Assert.fail("TimeoutException expected.");
+    }
+    catch (ProcessTimeoutException e) {
+      Assert.assertEquals(ProcessTimeoutException.Phase.FIRST_OUTPUT, e.getPhase());
+      Assert.assertThat(e.getMessage(), CoreMatchers.containsString("first output timeout: 500 milliseconds"));
+    }
+  }
+
+  @Test
+  public void testExecuteFirstOutputTimeoutNotReached() throws Exception {
+    try {
+      // Loop writes its first line immediately and keeps running past the first output timeout
+      new ProcessExecutor()
+          .command(getWriterLoopCommand())
+          .firstOutputTimeout(1500, TimeUnit.MILLISECONDS)
+          .timeout(3, TimeUnit.SECONDS)
+          .execute();
+      Assert.fail("TimeoutException expected.");
+    }
+    catch (ProcessTimeoutException e) {
+      Assert.assertEquals(ProcessTimeoutException.Phase.RUNNING, e.getPhase());
+    }
+  }
+
+  @Test
+  public void testExecuteIdleTimeoutNotReached() throws Exception {
+    ProcessResult result = new ProcessExecutor()
+        .command("java", "-cp", "target/test-classes", HelloWorld.class.getName())
+        .idleTimeout(10, TimeUnit.SECONDS)
+        .readOutput(true)
+        .execute();
+    Assert.assertEquals("Hello world!", result.outputUTF8());
+  }
+
+  @Test
+  public void testExecuteTimeoutBeforeIdleTimeout() throws Exception {
+    try {
+      // Loop keeps writing output so only the total timeout is reached
+      new ProcessExecutor()
+          .command(getWriterLoopCommand())
+          .idleTimeout(5, TimeUnit.SECONDS)
+          .timeout(2, TimeUnit.SECONDS)
+          .execute();
+      Assert.fail("TimeoutException expected.");
+    }
+    catch (TimeoutException e) {
+      Assert.assertThat(e.getMessage(), CoreMatchers.containsString("timeout: 2 seconds"));
+    }
+  }
+
+  private List<String> getSleepCommand() {
+    List<String> commands = new ArrayList<String>();
+    if (SystemUtils.IS_OS_WINDOWS) {
+      // native sleep command is not available on Windows platform
+      // mock using standard ping to localhost instead
+      // (Windows ping does 4 requests which takes about 3 seconds)
+      // ping writes output once a second so it needs to be silenced
+      commands.add("cmd");
+      commands.add("/c");
+      commands.add("ping 127.0.0.1 > nul");
+    }
+    else {
+      commands.add("sleep");
+      commands.add("3");
+    }
+    return commands;
+  }
+
   private List<String> getWriterLoopCommand() {
     List<String> args = new ArrayList<String>() {
       {
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec.test;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.zeroturnaround.exec.ExecutableResolver;
+import org.zeroturnaround.exec.InvalidExitValueException;
+import org.zeroturnaround.exec.PipelineResult;
+import org.zeroturnaround.exec.ProcessExecutor;
+import org.zeroturnaround.exec.ProcessPipeline;
+import org.zeroturnaround.exec.admission.AdmissionController;
+
+/**
+ * Tests executing native process pipelines.
+ *
+ * @see ProcessPipeline
+ */
+public class ProcessPipelineTest {
+
+  @Before
+  public void setUp() {
+    Assume.assumeTrue("Unsupported OS " + SystemUtils.OS_NAME, !SystemUtils.IS_OS_WINDOWS);
+    Assume.assumeTrue("Native pipelines require Java 9", ProcessPipeline.isSupported());
+  }
+
+  @Test(timeout = 10000)
+  public void testOutputOfLastStage() throws Exception {
+    PipelineResult result = new ProcessPipeline(
+        new ProcessExecutor("sh", "-c", "printf 'c\\nb\\na\\n'"),
+        new ProcessExecutor("sort"),
+        new ProcessExecutor("head", "-n", "2").readOutput(true)
+    ).execute();
+    Assert.assertEquals(0, result.getExitValue());
+    Assert.assertEquals("a\nb\n", result.outputUTF8());
+    Assert.assertEquals(3, result.getStageResults().size());
+  }
+
+  @Test(timeout = 10000)
+  public void testErrorOfIntermediateStageIsNotPiped() throws Exception {
+    PipelineResult result = new ProcessPipeline(
+        new ProcessExecutor("printf", "a\nb\n"),
+        new ProcessExecutor("sh", "-c", "cat; echo warning >&2"),
+        new ProcessExecutor("wc", "-l").readOutput(true)
+    ).execute();
+    Assert.assertEquals("2", result.outputUTF8().trim());
+  }
+
+  @Test(timeout = 10000)
+  public void testPermitPerStageAndResolver() throws Exception {
+    AdmissionController admission = new AdmissionController(2);
+    ExecutableResolver resolver = new ExecutableResolver();
+    PipelineResult result = new ProcessPipeline(
+        new ProcessExecutor("printf", "a").admission(admission).resolver(resolver),
+        new ProcessExecutor("cat").admission(admission).resolver(resolver).readOutput(true)
+    ).execute();
+    Assert.assertEquals("a", result.outputUTF8());
+    Assert.assertEquals(2, admission.getAdmittedCount());
+    Assert.assertEquals(0, admission.getRunningCount());
+    Assert.assertEquals(2, resolver.getMissCount());
+  }
+
+  @Test(timeout = 10000)
+  public void testInputOfFirstStage() throws Exception {
+    PipelineResult result = new ProcessPipeline(
+        new ProcessExecutor("cat").redirectInput(new ByteArrayInputStream("hello\nworld\n".getBytes("UTF-8"))),
+        new ProcessExecutor("wc", "-l").readOutput(true)
+    ).execute();
+    Assert.assertEquals("2", result.outputUTF8().trim());
+  }
+
+  @Test(timeout = 10000)
+  public void testExitValuesOfStages() throws Exception {
+    PipelineResult result = new ProcessPipeline(
+        new ProcessExecutor("sh", "-c", "echo x; exit 3").exitValues(3),
+        new ProcessExecutor("cat").readOutput(true)
+    ).execute();
+    Assert.assertEquals(3, result.getStageResults().get(0).getExitValue());
+    Assert.assertEquals(0, result.getExitValue());
+    Assert.assertEquals("x\n", result.outputUTF8());
+  }
+
+  @Test(timeout = 10000)
+  public void testFailingStageStopsOthers() throws Exception {
+    long start = System.nanoTime();
+    try {
+      new ProcessPipeline(
+          new ProcessExecutor("sleep", "30"),
+          new ProcessExecutor("sh", "-c", "exit 5").exitValueNormal(),
+          new ProcessExecutor("sleep", "30")
+      ).execute();
+      Assert.fail("Exception expected");
+    }
+    catch (InvalidExitValueException e) {
+      Assert.assertEquals(5, e.getExitValue());
+    }
+    Assert.assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 5);
+  }
+
+  @Test(timeout = 10000)
+  public void testTimeout() throws Exception {
+    try {
+      new ProcessPipeline(
+          new ProcessExecutor("sleep", "30").timeout(200, TimeUnit.MILLISECONDS),
+          new ProcessExecutor("cat")
+      ).execute();
+      Assert.fail("Exception expected");
+    }
+    catch (TimeoutException e) {
+      // expected
+    }
+  }
+
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec.test;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.zeroturnaround.exec.InvalidExitValueException;
+import org.zeroturnaround.exec.ProcessExecutor;
+import org.zeroturnaround.exec.ProcessExecutorGroup;
+import org.zeroturnaround.exec.ProcessResult;
+import org.zeroturnaround.exec.ProcessSpec;
+import org.zeroturnaround.exec.listener.ProcessListener;
+
+/**
+ * Tests starting processes from an immutable specification.
+ *
+ * @see ProcessSpec
+ */
+public class ProcessSpecTest {
+
+  @Test
+  public void testExecute() throws Exception {
+    ProcessSpec spec = new ProcessExecutor("java", "-cp", "target/test-classes", HelloWorld.class.getName()).readOutput(true).spec();
+    ProcessResult result = spec.execute();
+    Assert.assertEquals("Hello world!", result.outputUTF8());
+    Assert.assertEquals("Hello world!", spec.execute().outputUTF8());
+  }
+
+  @Test
+  public void testSeparateErrorStream() throws Exception {
+    ProcessSpec spec = new ProcessExecutor("java", "-cp", "target/test-classes", HelloWorld.class.getName()).readOutput(true).redirectErrorStream(false).spec();
+    Assert.assertFalse(spec.isRedirectErrorStream());
+    Assert.assertEquals("Hello ", spec.execute().outputUTF8());
+  }
+
+  @Test
+  public void testExitValues() throws Exception {
+    ProcessSpec spec = new ProcessExecutor("java", "-cp", "target/test-classes", ExitLikeABoss.class.getName(), "3").exitValues(0, 3).spec();
+    Assert.assertTrue(spec.isAllowedExitValue(3));
+    Assert.assertFalse(spec.isAllowedExitValue(1));
+    Assert.assertEquals(3, spec.execute().getExitValue());
+    try {
+      new ProcessExecutor("java", "-cp", "target/test-classes", ExitLikeABoss.class.getName(), "3").exitValueNormal().spec().execute();
+      Assert.fail("InvalidExitValueException expected.");
+    }
+    catch (InvalidExitValueException e) {
+      Assert.assertEquals(3, e.getExitValue());
+      Assert.assertTrue(e.getMessage().contains("allowed exit values: [0]"));
+    }
+  }
+
+  @Test
+  public void testEnvironment() throws Exception {
+    Assume.assumeTrue("Unsupported OS " + SystemUtils.OS_NAME, !SystemUtils.IS_OS_WINDOWS);
+    ProcessExecutor executor = new ProcessExecutor("sh", "-c", "echo $SPEC_A-$SPEC_B").readOutput(true)
+        .environment("SPEC_A", "a").environment("SPEC_B", "b");
+    ProcessSpec spec = executor.spec();
+    // Changing the executor doesn't affect the spec
+    executor.environment("SPEC_A", "changed");
+    Assert.assertEquals("a", spec.getEnvironment().get("SPEC_A"));
+    Assert.assertEquals("a-b", spec.execute().outputUTF8().trim());
+    Assert.assertEquals("a-b", executor.redirectErrorStream(false).environment("SPEC_A", "a").spec().execute().outputUTF8().trim());
+  }
+
+  @Test
+  public void testConcurrentStarts() throws Exception {
+    final ProcessSpec spec = new ProcessExecutor("java", "-cp", "target/test-classes", PrintArguments.class.getName(), "concurrent").readOutput(true).exitValueNormal().spec();
+    ExecutorService threads = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<String>> futures = new ArrayList<Future<String>>();
+      for (int i = 0; i < 8; i++) {
+        futures.add(threads.submit(new Callable<String>() {
+          public String call() throws Exception {
+            return spec.execute().outputUTF8().trim();
+          }
+        }));
+      }
+      for (Future<String> future : futures) {
+        Assert.assertEquals("concurrent", future.get(30, TimeUnit.SECONDS));
+      }
+    }
+    finally {
+      threads.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testTimeout() throws Exception {
+    ProcessSpec spec = new ProcessExecutor("java", "-cp", "target/test-classes", Loop.class.getName()).timeout(500, TimeUnit.MILLISECONDS).spec();
+    long start = System.nanoTime();
+    try {
+      spec.execute();
+      Assert.fail("TimeoutException expected.");
+    }
+    catch (TimeoutException e) {
+      Assert.assertTrue(e.getMessage().contains("Timed out waiting for"));
+    }
+    Assert.assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 5);
+  }
+
+  @Test
+  public void testStart() throws Exception {
+    ProcessSpec spec = new ProcessExecutor("java", "-cp", "target/test-classes", HelloWorld.class.getName()).readOutput(true).spec();
+    Assert.assertEquals("Hello world!", spec.start().getFuture().get(10, TimeUnit.SECONDS).outputUTF8());
+  }
+
+  @Test
+  public void testWaitsOnExecutorThreads() throws Exception {
+    final List<String> threads = new CopyOnWriteArrayList<String>();
+    ProcessExecutorGroup group = new ProcessExecutorGroup("spec");
+    try {
+      group.addListener(new ProcessListener() {
+        @Override
+        public void afterFinish(Process process, ProcessResult result) {
+          threads.add(Thread.currentThread().getName());
+        }
+      });
+      ProcessSpec spec = group.newExecutor("java", "-cp", "target/test-classes", HelloWorld.class.getName())
+          .readOutput(true).timeout(10, TimeUnit.SECONDS).spec();
+      Assert.assertEquals("Hello world!", spec.execute().outputUTF8());
+      Assert.assertEquals("Hello world!", spec.start().getFuture().get(10, TimeUnit.SECONDS).outputUTF8());
+    }
+    finally {
+      group.close();
+    }
+    Assert.assertEquals(2, threads.size());
+    for (String thread : threads) {
+      Assert.assertTrue(thread, thread.startsWith("ProcessExecutorGroup-spec-"));
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testInputIsNotShared() throws Exception {
+    new ProcessExecutor("java", "-cp", "target/test-classes", PrintInputToOutput.class.getName()).redirectInput(new ByteArrayInputStream(new byte[0])).spec();
+  }
+
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec.test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.zeroturnaround.exec.ProcessExecutor;
+import org.zeroturnaround.exec.ProcessResult;
+import org.zeroturnaround.exec.flow.PublishingProcess;
+
+/**
+ * Tests publishing the process output with backpressure.
+ *
+ * @see PublishingProcess
+ */
+public class PublishingProcessTest {
+
+  /**
+   * Records the received signals, requesting the given number of items on subscribe.
+   */
+  private static class RecordingSubscriber<T> implements Flow.Subscriber<T> {
+
+    private final long initialRequest;
+
+    final List<T> items = new ArrayList<T>();
+
+    final CountDownLatch completed = new CountDownLatch(1);
+
+    volatile Flow.Subscription subscription;
+
+    volatile Throwable error;
+
+    RecordingSubscriber(long initialRequest) {
+      this.initialRequest = initialRequest;
+    }
+
+    public void onSubscribe(Flow.Subscription subscription) {
+      this.subscription = subscription;
+      if (initialRequest > 0) {
+        subscription.request(initialRequest);
+      }
+    }
+
+    public synchronized void onNext(T item) {
+      items.add(item);
+    }
+
+    public void onError(Throwable throwable) {
+      error = throwable;
+      completed.countDown();
+    }
+
+    public void onComplete() {
+      completed.countDown();
+    }
+
+    synchronized int size() {
+      return items.size();
+    }
+
+  }
+
+  private static int remaining(List<ByteBuffer> buffers) {
+    int result = 0;
+    for (ByteBuffer buffer : buffers) {
+      result += buffer.remaining();
+    }
+    return result;
+  }
+
+  @Test
+  public void testLines() throws Exception {
+    PublishingProcess<String> process = PublishingProcess.startLines(new ProcessExecutor("java", "-cp", "target/test-classes", PrintArguments.class.getName(), "one", "two", "three"));
+    RecordingSubscriber<String> output = new RecordingSubscriber<String>(Long.MAX_VALUE);
+    RecordingSubscriber<String> error = new RecordingSubscriber<String>(Long.MAX_VALUE);
+    process.getOutput().subscribe(output);
+    process.getError().subscribe(error);
+    ProcessResult result = process.getFuture().get(10, TimeUnit.SECONDS);
+    Assert.assertEquals(0, result.getExitValue());
+    Assert.assertTrue(output.completed.await(5, TimeUnit.SECONDS));
+    Assert.assertTrue(error.completed.await(5, TimeUnit.SECONDS));
+    Assert.assertNull(output.error);
+    Assert.assertEquals(Arrays.asList("one", "two", "three"), output.items);
+    Assert.assertTrue(error.items.isEmpty());
+  }
+
+  @Test
+  public void testSlowSubscriberBlocksProcess() throws Exception {
+    PublishingProcess<ByteBuffer> process = PublishingProcess.start(new ProcessExecutor("java", "-cp", "target/test-classes", BigOutput.class.getName()).redirectErrorStream(false));
+    RecordingSubscriber<ByteBuffer> output = new RecordingSubscriber<ByteBuffer>(1);
+    RecordingSubscriber<ByteBuffer> error = new RecordingSubscriber<ByteBuffer>(Long.MAX_VALUE);
+    process.getOutput().subscribe(output);
+    process.getError().subscribe(error);
+
+    // The output doesn't fit into the pipe while only one chunk is requested
+    Thread.sleep(1000);
+    Assert.assertTrue(process.getProcess().isAlive());
+    Assert.assertEquals(1, output.size());
+
+    output.subscription.request(Long.MAX_VALUE);
+    process.getFuture().get(10, TimeUnit.SECONDS);
+    Assert.assertTrue(output.completed.await(5, TimeUnit.SECONDS));
+    Assert.assertTrue(error.completed.await(5, TimeUnit.SECONDS));
+    Assert.assertEquals(BigOutput.LENGTH, remaining(output.items));
+    Assert.assertEquals(BigOutput.LENGTH, remaining(error.items));
+  }
+
+  @Test
+  public void testCancelDiscardsOutput() throws Exception {
+    PublishingProcess<ByteBuffer> process = PublishingProcess.start(new ProcessExecutor("java", "-cp", "target/test-classes", BigOutput.class.getName()));
+    RecordingSubscriber<ByteBuffer> output = new RecordingSubscriber<ByteBuffer>(1);
+    process.getOutput().subscribe(output);
+    process.getError().subscribe(new RecordingSubscriber<ByteBuffer>(Long.MAX_VALUE));
+    output.subscription.cancel();
+    process.getFuture().get(10, TimeUnit.SECONDS);
+    Assert.assertTrue(output.size() <= 1);
+    Assert.assertEquals(1, output.completed.getCount());
+  }
+
+  @Test
+  public void testSingleSubscriber() throws Exception {
+    PublishingProcess<String> process = PublishingProcess.startLines(new ProcessExecutor("java", "-cp", "target/test-classes", PrintArguments.class.getName(), "one"));
+    RecordingSubscriber<String> first = new RecordingSubscriber<String>(Long.MAX_VALUE);
+    RecordingSubscriber<String> second = new RecordingSubscriber<String>(Long.MAX_VALUE);
+    process.getOutput().subscribe(first);
+    process.getOutput().subscribe(second);
+    process.getError().subscribe(new RecordingSubscriber<String>(Long.MAX_VALUE));
+    process.getFuture().get(10, TimeUnit.SECONDS);
+    Assert.assertTrue(second.error instanceof IllegalStateException);
+    Assert.assertTrue(first.completed.await(5, TimeUnit.SECONDS));
+    Assert.assertEquals(Arrays.asList("one"), first.items);
+  }
+
+  @Test
+  public void testInvalidRequest() throws Exception {
+    PublishingProcess<String> process = PublishingProcess.startLines(new ProcessExecutor("java", "-cp", "target/test-classes", PrintArguments.class.getName(), "one"));
+    RecordingSubscriber<String> output = new RecordingSubscriber<String>(0);
+    process.getOutput().subscribe(output);
+    process.getError().subscribe(new RecordingSubscriber<String>(Long.MAX_VALUE));
+    output.subscription.request(0);
+    Assert.assertTrue(output.completed.await(5, TimeUnit.SECONDS));
+    Assert.assertTrue(output.error instanceof IllegalArgumentException);
+    process.getFuture().get(10, TimeUnit.SECONDS);
+  }
+
+}
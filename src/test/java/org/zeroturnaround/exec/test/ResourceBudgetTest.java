@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.zeroturnaround.exec.admission.AdmissionController;
+import org.zeroturnaround.exec.admission.AdmissionRejectedException;
+import org.zeroturnaround.exec.admission.AdmissionRejectedException.Reason;
+import org.zeroturnaround.exec.admission.ResourceBudget;
+import org.zeroturnaround.exec.admission.SystemStats;
+
+/**
+ * Tests admitting processes based on available memory and file descriptors.
+ *
+ * @see ResourceBudget
+ */
+public class ResourceBudgetTest {
+
+  private static final long MB = 1024 * 1024;
+
+  private File dir;
+
+  private SystemStats stats;
+
+  private ExecutorService threads;
+
+  @Before
+  public void setUp() {
+    dir = new File("target/ResourceBudgetTest-" + System.nanoTime()).getAbsoluteFile();
+    Assert.assertTrue(dir.mkdirs());
+    stats = new SystemStats(new File(dir, "proc"), new File(dir, "cgroup"));
+    threads = Executors.newCachedThreadPool();
+  }
+
+  @After
+  public void tearDown() {
+    threads.shutdownNow();
+    delete(dir);
+  }
+
+  private static void delete(File file) {
+    File[] files = file.listFiles();
+    if (files != null) {
+      for (File f : files) {
+        delete(f);
+      }
+    }
+    file.delete();
+  }
+
+  private void setAvailableMemory(long bytes) throws IOException {
+    write("proc/meminfo", "MemTotal:       16384000 kB\nMemFree:         1000000 kB\nMemAvailable:   " + bytes / 1024 + " kB\n");
+  }
+
+  @Test
+  public void testFailFastWithoutMemory() throws Exception {
+    setAvailableMemory(100 * MB);
+    AdmissionController admission = new AdmissionController(10).waitForResources(false)
+        .check(new ResourceBudget(stats).minAvailableMemory(64 * MB).memoryPerProcess(20 * MB).interval(1, TimeUnit.HOURS));
+    admission.acquire(0, null);
+    try {
+      admission.acquire(0, null);
+      Assert.fail("Exception expected");
+    }
+    catch (AdmissionRejectedException e) {
+      Assert.assertEquals(Reason.RESOURCES, e.getReason());
+    }
+    Assert.assertEquals(1, admission.getRunningCount());
+    Assert.assertEquals(1, admission.getRejectedCount(Reason.RESOURCES));
+  }
+
+  @Test(timeout = 10000)
+  public void testWaitForMemory() throws Exception {
+    setAvailableMemory(50 * MB);
+    final AdmissionController admission = new AdmissionController(10).queueTimeout(5, TimeUnit.SECONDS)
+        .check(new ResourceBudget(stats).minAvailableMemory(64 * MB).interval(0, TimeUnit.MILLISECONDS));
+    Future<AdmissionController.Permit> permit = threads.submit(new Callable<AdmissionController.Permit>() {
+      public AdmissionController.Permit call() throws Exception {
+        return admission.acquire(0, null);
+      }
+    });
+    while (admission.getQueueDepth() == 0) {
+      Thread.sleep(5);
+    }
+    Thread.sleep(100);
+    Assert.assertFalse(permit.isDone());
+    setAvailableMemory(500 * MB);
+    permit.get().release();
+    Assert.assertEquals(0, admission.getRunningCount());
+  }
+
+  @Test(timeout = 10000)
+  public void testQueueTimeoutWithoutMemory() throws Exception {
+    setAvailableMemory(10 * MB);
+    AdmissionController admission = new AdmissionController(10).queueTimeout(100, TimeUnit.MILLISECONDS)
+        .check(new ResourceBudget(stats));
+    try {
+      admission.acquire(0, null);
+      Assert.fail("Exception expected");
+    }
+    catch (AdmissionRejectedException e) {
+      Assert.assertEquals(Reason.TIMEOUT, e.getReason());
+    }
+  }
+
+  @Test
+  public void testFileDescriptors() throws Exception {
+    write("proc/self/limits", "Limit                     Soft Limit           Hard Limit           Units\n"
+        + "Max open files            100                  4096                 files\n");
+    for (int i = 0; i < 40; i++) {
+      write("proc/self/fd/" + i, "");
+    }
+    Assert.assertEquals(40, stats.getOpenFileCount());
+    Assert.assertEquals(100, stats.getMaxOpenFiles());
+    Assert.assertNotNull(new ResourceBudget(stats).check());
+    ResourceBudget budget = new ResourceBudget(stats).minFreeFiles(10).interval(1, TimeUnit.HOURS);
+    // 60 free, 10 kept free and 6 for each admitted process until the next reading
+    for (int i = 0; i < 8; i++) {
+      Assert.assertNull(budget.check());
+    }
+    Assert.assertNotNull(budget.check());
+  }
+
+  @Test
+  public void testCgroupMemoryLimit() throws Exception {
+    setAvailableMemory(1024 * MB);
+    Assert.assertEquals(1024 * MB, stats.getAvailableMemory());
+    write("proc/self/cgroup", "0::/app\n");
+    write("cgroup/app/memory.max", 200 * MB + "\n");
+    write("cgroup/app/memory.current", 150 * MB + "\n");
+    Assert.assertEquals(50 * MB, stats.getAvailableMemory());
+    write("cgroup/app/memory.max", "max\n");
+    Assert.assertEquals(1024 * MB, stats.getAvailableMemory());
+  }
+
+  @Test
+  public void testCgroupV1MemoryLimit() throws Exception {
+    setAvailableMemory(1024 * MB);
+    write("proc/self/cgroup", "4:memory:/app\n0::/\n");
+    write("cgroup/memory/app/memory.limit_in_bytes", "9223372036854771712\n");
+    write("cgroup/memory/app/memory.usage_in_bytes", 150 * MB + "\n");
+    Assert.assertEquals(1024 * MB, stats.getAvailableMemory());
+    write("cgroup/memory/app/memory.limit_in_bytes", 300 * MB + "\n");
+    Assert.assertEquals(150 * MB, stats.getAvailableMemory());
+  }
+
+  private void write(String path, String content) throws IOException {
+    File file = new File(dir, path);
+    file.getParentFile().mkdirs();
+    FileOutputStream out = new FileOutputStream(file);
+    try {
+      out.write(content.getBytes("UTF-8"));
+    }
+    finally {
+      out.close();
+    }
+  }
+
+}
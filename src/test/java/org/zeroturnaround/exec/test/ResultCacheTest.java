@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.zeroturnaround.exec.InvalidExitValueException;
+import org.zeroturnaround.exec.ProcessExecutor;
+import org.zeroturnaround.exec.ProcessResult;
+import org.zeroturnaround.exec.ResultCache;
+
+/**
+ * Tests caching the results of processes.
+ *
+ * @see ResultCache
+ */
+public class ResultCacheTest {
+
+  private File dir;
+
+  @Before
+  public void setUp() {
+    Assume.assumeTrue("Unsupported OS " + SystemUtils.OS_NAME, !SystemUtils.IS_OS_WINDOWS);
+    dir = new File("target/ResultCacheTest-" + System.nanoTime()).getAbsoluteFile();
+    Assert.assertTrue(dir.mkdirs());
+  }
+
+  @After
+  public void tearDown() {
+    if (dir != null) {
+      delete(dir);
+    }
+  }
+
+  private static void delete(File file) {
+    File[] files = file.listFiles();
+    if (files != null) {
+      for (File f : files) {
+        delete(f);
+      }
+    }
+    file.delete();
+  }
+
+  /**
+   * Appends a line to a file for each execution and prints the input and the number of executions.
+   */
+  private ProcessExecutor counter() {
+    return new ProcessExecutor("sh", "-c", "echo x >> runs; cat; wc -l < runs").directory(dir).readOutput(true);
+  }
+
+  private int runs() throws Exception {
+    return Integer.parseInt(new ProcessExecutor("sh", "-c", "wc -l < runs").directory(dir).readOutput(true).execute().outputUTF8().trim());
+  }
+
+  @Test
+  public void testHitDoesNotStartProcess() throws Exception {
+    ResultCache cache = new ResultCache(10);
+    ProcessResult first = cache.execute(counter());
+    ProcessResult second = cache.execute(counter());
+    Assert.assertEquals("1", first.outputUTF8().trim());
+    Assert.assertEquals("1", second.outputUTF8().trim());
+    Assert.assertEquals(1, runs());
+    Assert.assertEquals(1, cache.getMissCount());
+    Assert.assertEquals(1, cache.getMemoryHitCount());
+    Assert.assertEquals(0.5, cache.getHitRate(), 0.001);
+  }
+
+  @Test
+  public void testInputIsPartOfKey() throws Exception {
+    ResultCache cache = new ResultCache(10);
+    Assert.assertEquals("a\n1", cache.execute(counter(), "a\n".getBytes("UTF-8")).outputUTF8().trim());
+    Assert.assertEquals("b\n2", cache.execute(counter(), "b\n".getBytes("UTF-8")).outputUTF8().trim());
+    Assert.assertEquals("a\n1", cache.execute(counter(), "a\n".getBytes("UTF-8")).outputUTF8().trim());
+    Assert.assertEquals(2, runs());
+  }
+
+  @Test
+  public void testEnvironmentIsPartOfKey() throws Exception {
+    ResultCache cache = new ResultCache(10);
+    cache.execute(counter().environment("FOO", "1"));
+    cache.execute(counter().environment("FOO", "2"));
+    cache.execute(counter().environment("FOO", "1"));
+    Assert.assertEquals(2, runs());
+  }
+
+  @Test
+  public void testModifiedInputFileInvalidates() throws Exception {
+    ResultCache cache = new ResultCache(10);
+    File input = new File(dir, "input.txt");
+    write(input, "one");
+    cache.execute(counter(), input);
+    cache.execute(counter(), input);
+    Assert.assertEquals(1, runs());
+    write(input, "two!");
+    input.setLastModified(input.lastModified() + 2000);
+    cache.execute(counter(), input);
+    Assert.assertEquals(2, runs());
+    // Files inside input directories are checked as well
+    File sub = new File(dir, "sub");
+    Assert.assertTrue(sub.mkdir());
+    cache.execute(counter(), sub);
+    write(new File(sub, "added.txt"), "three");
+    cache.execute(counter(), sub);
+    Assert.assertEquals(4, runs());
+  }
+
+  @Test
+  public void testDiskTier() throws Exception {
+    File cacheDir = new File(dir, "cache");
+    ProcessResult first = new ResultCache(10).directory(cacheDir).execute(counter());
+    ResultCache cache = new ResultCache(10).directory(cacheDir);
+    ProcessResult second = cache.execute(counter());
+    Assert.assertEquals(first.outputUTF8(), second.outputUTF8());
+    Assert.assertEquals(1, runs());
+    Assert.assertEquals(1, cache.getDiskHitCount());
+    cache.execute(counter());
+    Assert.assertEquals(1, cache.getMemoryHitCount());
+    cache.clear();
+    Assert.assertEquals(0, cacheDir.list().length);
+  }
+
+  @Test
+  public void testLeastRecentlyUsedIsEvicted() throws Exception {
+    ResultCache cache = new ResultCache(2);
+    cache.execute(counter(), "a".getBytes("UTF-8"));
+    cache.execute(counter(), "b".getBytes("UTF-8"));
+    cache.execute(counter(), "a".getBytes("UTF-8"));
+    cache.execute(counter(), "c".getBytes("UTF-8"));
+    Assert.assertEquals(1, cache.getEvictionCount());
+    Assert.assertEquals(2, cache.size());
+    cache.execute(counter(), "a".getBytes("UTF-8"));
+    cache.execute(counter(), "b".getBytes("UTF-8"));
+    Assert.assertEquals(4, runs());
+  }
+
+  @Test
+  public void testExitValueCheckedOnHit() throws Exception {
+    ResultCache cache = new ResultCache(10);
+    Assert.assertEquals(3, cache.execute(new ProcessExecutor("sh", "-c", "exit 3").exitValues(3)).getExitValue());
+    try {
+      cache.execute(new ProcessExecutor("sh", "-c", "exit 3").exitValueNormal());
+      Assert.fail("Exception expected");
+    }
+    catch (InvalidExitValueException e) {
+      Assert.assertEquals(3, e.getExitValue());
+    }
+    Assert.assertEquals(1, cache.getMissCount());
+  }
+
+  @Test
+  public void testOutputSettingsArePartOfKey() throws Exception {
+    ResultCache cache = new ResultCache(10);
+    cache.execute(counter());
+    cache.execute(counter().maxOutputBytes(1000));
+    cache.execute(counter().stopOnOutput("never printed"));
+    cache.execute(counter().maxOutputBytes(1000));
+    Assert.assertEquals(3, runs());
+  }
+
+  @Test
+  public void testStoppedOnOutputNotCached() throws Exception {
+    ResultCache cache = new ResultCache(10);
+    Assert.assertEquals("1", cache.execute(counter().stopOnOutput("1")).getMatchedPattern());
+    Assert.assertEquals("2", cache.execute(counter().stopOnOutput("2")).getMatchedPattern());
+    // Executed again as the previous result wasn't cached, this one completes normally
+    Assert.assertNull(cache.execute(counter().stopOnOutput("2")).getMatchedPattern());
+    Assert.assertEquals(3, runs());
+    Assert.assertEquals(1, cache.size());
+  }
+
+  @Test
+  public void testInputDoesNotModifyExecutor() throws Exception {
+    ResultCache cache = new ResultCache(10);
+    ProcessExecutor executor = counter();
+    Assert.assertEquals("a\n1", cache.execute(executor, "a\n".getBytes("UTF-8")).outputUTF8().trim());
+    Assert.assertEquals("2", cache.execute(executor).outputUTF8().trim());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInputStreamRejected() throws Exception {
+    new ResultCache(10).execute(counter().redirectInput(new ByteArrayInputStream(new byte[1])));
+  }
+
+  private static void write(File file, String content) throws IOException {
+    FileOutputStream out = new FileOutputStream(file);
+    try {
+      out.write(content.getBytes("UTF-8"));
+    }
+    finally {
+      out.close();
+    }
+  }
+
+}
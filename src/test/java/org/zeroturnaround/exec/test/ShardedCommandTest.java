@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.zeroturnaround.exec.ProcessExecutor;
+import org.zeroturnaround.exec.ShardedCommand;
+import org.zeroturnaround.exec.ShardedResult;
+
+/**
+ * Tests running a command over chunks of arguments.
+ *
+ * @see ShardedCommand
+ */
+public class ShardedCommandTest {
+
+  @Test
+  public void testShardByCount() {
+    List<List<String>> chunks = new ShardedCommand("cmd").maxArgs(2).shard(Arrays.asList("a", "b", "c", "d", "e"));
+    Assert.assertEquals(Arrays.asList(Arrays.asList("a", "b"), Arrays.asList("c", "d"), Arrays.asList("e")), chunks);
+  }
+
+  @Test
+  public void testShardByBytes() {
+    // "cmd" takes 4 bytes, each argument 3 bytes
+    List<List<String>> chunks = new ShardedCommand("cmd").maxBytes(10).shard(Arrays.asList("aa", "bb", "cc", "dd"));
+    Assert.assertEquals(Arrays.asList(Arrays.asList("aa", "bb"), Arrays.asList("cc", "dd")), chunks);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testArgumentTooLong() {
+    new ShardedCommand("cmd").maxBytes(10).shard(Arrays.asList("too long"));
+  }
+
+  @Test(timeout = 20000)
+  public void testExecute() throws Exception {
+    List<String> args = new ArrayList<String>();
+    StringBuilder expected = new StringBuilder();
+    for (int i = 0; i < 10; i++) {
+      args.add("arg" + i);
+      expected.append("arg").append(i).append(System.getProperty("line.separator"));
+    }
+    ShardedResult result = command(PrintArguments.class).maxArgs(3).parallelism(2).execute(args);
+    Assert.assertEquals(4, result.getChunks().size());
+    Assert.assertEquals(0, result.getExitValue());
+    Assert.assertEquals("[0, 0, 0, 0]", Arrays.toString(result.getExitValues()));
+    Assert.assertEquals(expected.toString(), result.outputUTF8());
+    Assert.assertEquals(4, result.getBatch().getSucceededCount());
+  }
+
+  @Test(timeout = 20000)
+  public void testExitValues() throws Exception {
+    ShardedResult result = command(ExitLikeABoss.class).maxArgs(1).execute(Arrays.asList("0", "3", "0", "7"));
+    Assert.assertEquals("[0, 3, 0, 7]", Arrays.toString(result.getExitValues()));
+    Assert.assertEquals(3, result.getExitValue());
+  }
+
+  private static ShardedCommand command(Class<?> mainClass) {
+    return new ShardedCommand("java", "-cp", "target/test-classes", mainClass.getName()) {
+      @Override
+      protected ProcessExecutor newExecutor(List<String> command) {
+        return super.newExecutor(command).redirectErrorStream(false);
+      }
+    };
+  }
+
+}
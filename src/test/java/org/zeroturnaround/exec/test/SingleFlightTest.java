@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec.test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.zeroturnaround.exec.InvalidExitValueException;
+import org.zeroturnaround.exec.ProcessExecutor;
+import org.zeroturnaround.exec.ProcessResult;
+import org.zeroturnaround.exec.SingleFlight;
+import org.zeroturnaround.exec.listener.ProcessListener;
+
+/**
+ * Tests deduplicating identical concurrent executions.
+ *
+ * @see SingleFlight
+ */
+public class SingleFlightTest {
+
+  private File dir;
+
+  private ExecutorService threads;
+
+  @Before
+  public void setUp() {
+    Assume.assumeTrue("Unsupported OS " + SystemUtils.OS_NAME, !SystemUtils.IS_OS_WINDOWS);
+    dir = new File("target/SingleFlightTest-" + System.nanoTime()).getAbsoluteFile();
+    Assert.assertTrue(dir.mkdirs());
+    threads = Executors.newCachedThreadPool();
+  }
+
+  @After
+  public void tearDown() {
+    if (threads != null) {
+      threads.shutdownNow();
+    }
+    if (dir != null) {
+      new File(dir, "runs").delete();
+      dir.delete();
+    }
+  }
+
+  /**
+   * Appends a line to a file for each execution and prints the number of executions after a while.
+   */
+  private ProcessExecutor counter(String delay) {
+    return new ProcessExecutor("sh", "-c", "echo x >> runs; sleep " + delay + "; wc -l < runs").directory(dir).readOutput(true);
+  }
+
+  @Test(timeout = 10000)
+  public void testConcurrentExecutionsShareProcess() throws Exception {
+    final SingleFlight flights = new SingleFlight();
+    final CountDownLatch ready = new CountDownLatch(1);
+    List<Future<ProcessResult>> results = new ArrayList<Future<ProcessResult>>();
+    for (int i = 0; i < 10; i++) {
+      results.add(threads.submit(new Callable<ProcessResult>() {
+        public ProcessResult call() throws Exception {
+          ready.await();
+          return flights.execute(counter("1"));
+        }
+      }));
+    }
+    ready.countDown();
+    for (Future<ProcessResult> result : results) {
+      Assert.assertEquals("1", result.get().outputUTF8().trim());
+    }
+    Assert.assertEquals(1, flights.getStartedCount());
+    Assert.assertEquals(9, flights.getJoinedCount());
+    Assert.assertEquals(0, flights.getInFlightCount());
+    // A finished process is not reused
+    Assert.assertEquals("2", flights.execute(counter("0")).outputUTF8().trim());
+  }
+
+  @Test(timeout = 10000)
+  public void testInputDoesNotModifyExecutor() throws Exception {
+    SingleFlight flights = new SingleFlight();
+    ProcessExecutor executor = counter("0");
+    flights.execute(executor, "a\n".getBytes("UTF-8"));
+    Assert.assertEquals("2", flights.execute(executor).outputUTF8().trim());
+  }
+
+  @Test(timeout = 10000)
+  public void testDifferentExecutionsAreNotShared() throws Exception {
+    SingleFlight flights = new SingleFlight();
+    Future<ProcessResult> first = flights.submit(counter("0.5"));
+    Future<ProcessResult> second = flights.submit(counter("0.5").environment("FOO", "bar"));
+    first.get();
+    second.get();
+    Assert.assertEquals(2, flights.getStartedCount());
+    Assert.assertEquals(0, flights.getJoinedCount());
+  }
+
+  @Test(timeout = 10000)
+  public void testStoppedOnlyWhenAllCancel() throws Exception {
+    SingleFlight flights = new SingleFlight();
+    final CountDownLatch stopped = new CountDownLatch(1);
+    ProcessExecutor leader = new ProcessExecutor("sleep", "30").addListener(new ProcessListener() {
+      @Override
+      public void afterStop(Process process) {
+        stopped.countDown();
+      }
+    });
+    Future<ProcessResult> first = flights.submit(leader);
+    Future<ProcessResult> second = flights.submit(new ProcessExecutor("sleep", "30"));
+    Assert.assertTrue(first.cancel(true));
+    Assert.assertFalse(stopped.await(300, TimeUnit.MILLISECONDS));
+    Assert.assertFalse(second.isDone());
+    Assert.assertEquals(1, flights.getInFlightCount());
+    Assert.assertTrue(second.cancel(true));
+    Assert.assertTrue(stopped.await(5, TimeUnit.SECONDS));
+    Assert.assertEquals(0, flights.getInFlightCount());
+  }
+
+  @Test(timeout = 10000)
+  public void testExitValueCheckedPerExecution() throws Exception {
+    SingleFlight flights = new SingleFlight();
+    Future<ProcessResult> strict = flights.submit(new ProcessExecutor("sh", "-c", "sleep 0.3; exit 3").exitValueNormal());
+    Future<ProcessResult> lenient = flights.submit(new ProcessExecutor("sh", "-c", "sleep 0.3; exit 3").exitValues(3));
+    Assert.assertEquals(3, lenient.get().getExitValue());
+    try {
+      strict.get();
+      Assert.fail("Exception expected");
+    }
+    catch (ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof InvalidExitValueException);
+    }
+    Assert.assertEquals(1, flights.getStartedCount());
+  }
+
+}
@@ -0,0 +1,65 @@
+package org.zeroturnaround.exec.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.zeroturnaround.exec.ProcessExecutor;
+import org.zeroturnaround.exec.spawn.ProcessSpawner;
+import org.zeroturnaround.exec.spawn.ZygoteSpawner;
+
+/**
+ * Compares the latency of starting short processes directly and through a zygote.
+ * Run it with a large heap (e.g. <code>-Xms8g -XX:+AlwaysPreTouch</code>) to see the effect of forking a big JVM.
+ * <pre>
+ * java -cp ... org.zeroturnaround.exec.test.SpawnBenchmark [iterations] [command...]
+ * </pre>
+ */
+public class SpawnBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+    String[] command = args.length > 1 ? copyOfRange(args, 1) : new String[] { "true" };
+
+    ZygoteSpawner zygote = new ZygoteSpawner();
+    try {
+      // Warm up both paths
+      run(command, null, iterations / 10);
+      run(command, zygote, iterations / 10);
+
+      report("direct", run(command, null, iterations));
+      report("zygote", run(command, zygote, iterations));
+    }
+    finally {
+      zygote.close();
+    }
+  }
+
+  private static List<Long> run(String[] command, ProcessSpawner spawner, int iterations) throws Exception {
+    List<Long> result = new ArrayList<Long>();
+    ProcessExecutor executor = new ProcessExecutor(command).spawner(spawner);
+    for (int i = 0; i < iterations; i++) {
+      long start = System.nanoTime();
+      executor.execute();
+      result.add(System.nanoTime() - start);
+    }
+    return result;
+  }
+
+  private static void report(String name, List<Long> nanos) {
+    Collections.sort(nanos);
+    long sum = 0;
+    for (long n : nanos) {
+      sum += n;
+    }
+    System.out.printf("%s: n=%d mean=%.3f ms p50=%.3f ms p99=%.3f ms%n", name, nanos.size(),
+        sum / 1e6 / nanos.size(), nanos.get(nanos.size() / 2) / 1e6, nanos.get(nanos.size() * 99 / 100) / 1e6);
+  }
+
+  private static String[] copyOfRange(String[] args, int from) {
+    String[] result = new String[args.length - from];
+    System.arraycopy(args, from, result, 0, result.length);
+    return result;
+  }
+
+}
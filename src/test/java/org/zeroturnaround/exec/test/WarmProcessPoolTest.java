@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec.test;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.zeroturnaround.exec.ProcessExecutor;
+import org.zeroturnaround.exec.pool.WarmProcess;
+import org.zeroturnaround.exec.pool.WarmProcessPool;
+
+/**
+ * Tests handing out processes started in advance.
+ *
+ * @see WarmProcessPool
+ */
+public class WarmProcessPoolTest {
+
+  @Test(timeout = 10000)
+  public void testAcquire() throws Exception {
+    WarmProcessPool pool = newPool(2);
+    try {
+      awaitWarm(pool, 2);
+      WarmProcess process = pool.acquire();
+      Assert.assertTrue(process.getProcess().isAlive());
+      process.getInput().write("foo\nbar\nbaz\n".getBytes("UTF-8"));
+      process.getInput().close();
+      Assert.assertEquals("foobarbaz", process.getFuture().get().outputUTF8());
+      // Replaced in the background
+      awaitWarm(pool, 2);
+    }
+    finally {
+      pool.close();
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testCustomStreamHandler() throws Exception {
+    new WarmProcessPool(new ProcessExecutor("cat").streams(new SetFailExecuteStreamHandler()), 1);
+  }
+
+  @Test(timeout = 10000)
+  public void testIdleTimeout() throws Exception {
+    WarmProcessPool pool = newPool(1);
+    try {
+      awaitWarm(pool, 1);
+      pool.idleTimeout(200, TimeUnit.MILLISECONDS);
+      Thread.sleep(500);
+      WarmProcess process = pool.acquire();
+      Assert.assertTrue(System.nanoTime() - process.getStartedTime() < TimeUnit.MILLISECONDS.toNanos(400));
+      process.getProcess().destroy();
+    }
+    finally {
+      pool.close();
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void testCloseStopsWarmProcesses() throws Exception {
+    WarmProcessPool pool = newPool(1);
+    awaitWarm(pool, 1);
+    WarmProcess process = pool.acquire();
+    awaitWarm(pool, 1);
+    pool.close();
+    Assert.assertEquals(0, pool.getWarmCount());
+    // Acquired processes are not affected
+    Assert.assertTrue(process.getProcess().isAlive());
+    process.getInput().close();
+    process.getFuture().get();
+  }
+
+  private static void awaitWarm(WarmProcessPool pool, int count) throws InterruptedException {
+    while (pool.getWarmCount() < count) {
+      Thread.sleep(10);
+    }
+  }
+
+  private static WarmProcessPool newPool(int size) {
+    return new WarmProcessPool(new ProcessExecutor("java", "-cp", "target/test-classes", PrintInputToOutput.class.getName()).readOutput(true), size);
+  }
+
+}
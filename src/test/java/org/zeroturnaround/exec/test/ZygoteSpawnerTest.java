@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2014 ZeroTurnaround <support@zeroturnaround.com>
+ * Contains fragments of code from Apache Commons Exec, rights owned
+ * by Apache Software Foundation (ASF).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zeroturnaround.exec.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.zeroturnaround.exec.ProcessExecutor;
+import org.zeroturnaround.exec.ProcessResult;
+import org.zeroturnaround.exec.spawn.ZygoteSpawner;
+
+/**
+ * Tests starting processes through a zygote.
+ *
+ * @see ZygoteSpawner
+ */
+public class ZygoteSpawnerTest {
+
+  private ZygoteSpawner zygote;
+
+  @Before
+  public void setUp() throws Exception {
+    Assume.assumeTrue("Unsupported OS " + SystemUtils.OS_NAME, !SystemUtils.IS_OS_WINDOWS);
+    zygote = new ZygoteSpawner();
+  }
+
+  @After
+  public void tearDown() {
+    if (zygote != null) {
+      zygote.close();
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void testOutputAndExitValue() throws Exception {
+    ProcessResult result = new ProcessExecutor("java", "-cp", "target/test-classes", HelloWorld.class.getName())
+        .spawner(zygote)
+        .readOutput(true)
+        .execute();
+    Assert.assertEquals(0, result.getExitValue());
+    Assert.assertEquals("Hello world!", result.outputUTF8());
+  }
+
+  @Test(timeout = 10000)
+  public void testProgramStartingWithDash() throws Exception {
+    // Not taken for an option of env, so it's just not found
+    ProcessResult result = new ProcessExecutor("-zt-exec-missing")
+        .spawner(zygote)
+        .execute();
+    Assert.assertEquals(127, result.getExitValue());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testProgramWithEqualsSign() throws Exception {
+    zygote.spawn(Collections.singletonList("FOO=bar"), null, Collections.<String, String>emptyMap(), true);
+  }
+
+  @Test(timeout = 10000)
+  public void testStartTimeout() throws Exception {
+    // cat never reports the process as started
+    ZygoteSpawner wedged = new ZygoteSpawner("cat").startTimeout(500, TimeUnit.MILLISECONDS);
+    try {
+      wedged.spawn(Collections.singletonList("true"), null, Collections.<String, String>emptyMap(), true);
+      Assert.fail("IOException expected.");
+    }
+    catch (IOException e) {
+      Assert.assertTrue(e.getMessage(), e.getMessage().contains("did not start"));
+    }
+    finally {
+      wedged.close();
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void testInputEnvironmentAndDirectory() throws Exception {
+    File dir = new File("target").getAbsoluteFile();
+    ProcessResult result = new ProcessExecutor("sh", "-c", "read line; echo \"$line $FOO it's $(pwd)\"; exit 3")
+        .spawner(zygote)
+        .directory(dir)
+        .environment("FOO", "bar baz")
+        .redirectInput(new ByteArrayInputStream("hello\n".getBytes("UTF-8")))
+        .readOutput(true)
+        .exitValue(3)
+        .execute();
+    Assert.assertEquals("hello bar baz it's " + dir.getCanonicalPath(), result.outputUTF8().trim());
+  }
+
+  @Test(timeout = 10000)
+  public void testSeparateErrorStream() throws Exception {
+    ProcessResult result = new ProcessExecutor("sh", "-c", "echo out; echo err >&2")
+        .spawner(zygote)
+        .redirectErrorStream(false)
+        .readOutput(true)
+        .execute();
+    Assert.assertEquals("out", result.outputUTF8().trim());
+  }
+
+  @Test(timeout = 10000)
+  public void testTimeoutStopsProcess() throws Exception {
+    long start = System.currentTimeMillis();
+    try {
+      new ProcessExecutor("sleep", "10").spawner(zygote).timeout(500, TimeUnit.MILLISECONDS).execute();
+      Assert.fail("TimeoutException expected.");
+    }
+    catch (TimeoutException e) {
+      // expected
+    }
+    Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+  }
+
+}